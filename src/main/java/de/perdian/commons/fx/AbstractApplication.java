@@ -1,7 +1,9 @@
 package de.perdian.commons.fx;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Path;
+import java.time.Duration;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,6 +11,7 @@ import org.slf4j.LoggerFactory;
 import de.perdian.commons.fx.preferences.Preferences;
 import de.perdian.commons.fx.preferences.PreferencesBuilder;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.layout.Pane;
 import javafx.stage.Stage;
@@ -21,11 +24,35 @@ public abstract class AbstractApplication extends Application {
     @Override
     public void init() throws Exception {
         log.info("Creating preferences");
-        this.setPreferences(this.createPreferences());
+        Preferences preferences = this.createPreferences();
+        log.info("Created preferences after {} ms", AbstractApplication.computeUptimeMillis());
+        preferences.whenLoaded().thenRun(() -> log.info("Loaded preferences after {} ms", AbstractApplication.computeUptimeMillis()));
+        this.setPreferences(preferences);
     }
 
     protected Preferences createPreferences() {
-        return new PreferencesBuilder().path(this.resolveApplicationDirectory().resolve("preferences")).buildPreferences();
+        PreferencesBuilder preferencesBuilder = new PreferencesBuilder()
+            .path(this.resolveApplicationDirectory().resolve("preferences"))
+            .writeDelay(Duration.ofMillis(500))
+            .maxWriteDelay(Duration.ofSeconds(5));
+        return this.isLoadPreferencesAsync() ? preferencesBuilder.buildPreferencesAsync(Platform::runLater) : preferencesBuilder.buildPreferences();
+    }
+
+    /**
+     * Determines whether the preferences file is loaded on a background thread while the JavaFX
+     * components are created. If enabled, the properties retrieved from the preferences while the
+     * components are created are updated on the JavaFX application thread as soon as the values
+     * have been loaded, so components should bind to the properties instead of reading their values
+     * once. Applications that want to start loading even earlier can create the preferences using
+     * {@link PreferencesBuilder#buildPreferencesAsync} before launching the application and return
+     * them from {@link #createPreferences()}.
+     */
+    protected boolean isLoadPreferencesAsync() {
+        return false;
+    }
+
+    private static long computeUptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
     }
 
     protected Path resolveApplicationDirectory() {
@@ -38,15 +65,32 @@ public abstract class AbstractApplication extends Application {
         log.info("Preparing JavaFX components");
         Pane mainPane = this.createMainPane();
         Scene mainScene = this.createMainScene(mainPane);
+        log.info("Prepared JavaFX components after {} ms", AbstractApplication.computeUptimeMillis());
 
         log.info("Opening JavaFX stage");
         primaryStage.setScene(mainScene);
-        primaryStage.setOnCloseRequest(event -> System.exit(0));
+        primaryStage.setOnCloseRequest(event -> {
+            this.closePreferences();
+            System.exit(0);
+        });
         primaryStage.setMinWidth(800);
         primaryStage.setMinHeight(600);
         this.configurePrimaryStage(primaryStage);
         primaryStage.show();
+        log.info("Opened JavaFX stage after {} ms", AbstractApplication.computeUptimeMillis());
+
+    }
+
+    @Override
+    public void stop() throws Exception {
+        this.closePreferences();
+    }
 
+    private void closePreferences() {
+        if (this.getPreferences() != null) {
+            log.info("Storing pending preferences");
+            this.getPreferences().close();
+        }
     }
 
     protected void configurePrimaryStage(Stage primaryStage) {
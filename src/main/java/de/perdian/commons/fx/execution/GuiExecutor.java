@@ -2,7 +2,44 @@ package de.perdian.commons.fx.execution;
 
 public interface GuiExecutor {
 
-    void execute(GuiJob job);
+    /**
+     * Executes the given job on a background thread using the default priority
+     */
+    default GuiJobHandle<Void> execute(GuiJob job) {
+        return this.execute(job, 0, null);
+    }
+
+    /**
+     * Executes the given job on a background thread.
+     *
+     * @param priority
+     *      the priority of the job. Jobs with a higher priority are started before waiting jobs with
+     *      a lower priority, jobs with the same priority are started in the order in which they
+     *      have been passed to the executor.
+     * @param key
+     *      the key of the job, or {@code null} if the job may run in parallel to any other job. Jobs
+     *      with the same key are started in the order in which they have been passed to the executor
+     *      and are executed one after another, unless the executor allows a higher number of
+     *      parallel jobs for the key.
+     * @return
+     *      a handle, which can be used to wait for the job to be completed or to cancel the job. If
+     *      the job is already running, cancelling the job with interruption interrupts the thread
+     *      executing the job.
+     */
+    GuiJobHandle<Void> execute(GuiJob job, int priority, Object key);
+
+    /**
+     * Executes the given job on a background thread using the default priority
+     */
+    default <T> GuiJobHandle<T> submit(GuiResultJob<T> job) {
+        return this.submit(job, 0, null);
+    }
+
+    /**
+     * Executes the given job on a background thread, passing the result of the job to the returned
+     * handle. The priority and the key are handled like for {@link #execute(GuiJob, int, Object)}.
+     */
+    <T> GuiJobHandle<T> submit(GuiResultJob<T> job, int priority, Object key);
 
     boolean addProgressListener(GuiProgressListener progressListener);
     boolean removeProgressListener(GuiProgressListener progressListener);
@@ -0,0 +1,168 @@
+package de.perdian.commons.fx.execution;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javafx.application.Platform;
+
+/**
+ * Used to create new {@code GuiExecutor} instances.
+ *
+ * By default a single worker executes the jobs and the number of jobs waiting to be started is not
+ * limited. Executors intended for jobs mostly blocking on I/O can use a new virtual thread for every
+ * job instead, limiting the number of parallel jobs per category by executing them with a key for
+ * which a {@code concurrencyLimit} has been configured. If a {@code queueCapacity} is configured,
+ * the configured {@code rejectionPolicy} is called for every job exceeding the capacity, which by
+ * default throws a {@code RejectedExecutionException}.
+ *
+ * Progress updates reported by the jobs are coalesced and delivered to the progress listeners on the
+ * {@code fxExecutor} (the JavaFX application thread by default), no more than once per
+ * {@code progressInterval}. Stages appended to a job using {@code GuiJobHandle.thenOnFx} are
+ * executed on the {@code fxExecutor} as well.
+ *
+ * @author Christian Seifert
+ */
+
+public class GuiExecutorBuilder {
+
+    static final Duration DEFAULT_PROGRESS_INTERVAL = Duration.ofMillis(16);
+
+    private int workerCount = 1;
+    private boolean virtualThreads = false;
+    private Map<Object, Integer> concurrencyLimits = null;
+    private int queueCapacity = 0;
+    private GuiExecutorRejectionPolicy rejectionPolicy = null;
+    private Executor fxExecutor = null;
+    private Duration progressInterval = null;
+
+    public GuiExecutor buildExecutor() {
+        if (this.getWorkerCount() <= 0) {
+            throw new IllegalArgumentException("Property 'workerCount' must be greater than zero");
+        }
+        GuiExecutorRejectionPolicy rejectionPolicy = this.getRejectionPolicy();
+        if (rejectionPolicy == null) {
+            rejectionPolicy = job -> {
+                throw new RejectedExecutionException("Job rejected: " + job);
+            };
+        }
+        Executor fxExecutor = this.getFxExecutor() == null ? Platform::runLater : this.getFxExecutor();
+        Duration progressInterval = this.getProgressInterval() == null ? DEFAULT_PROGRESS_INTERVAL : this.getProgressInterval();
+        Map<Object, Integer> concurrencyLimits = this.getConcurrencyLimits() == null ? Map.of() : this.getConcurrencyLimits();
+        return new GuiExecutorImpl(this.getWorkerCount(), this.isVirtualThreads(), this.getQueueCapacity(), rejectionPolicy, concurrencyLimits, fxExecutor, progressInterval);
+    }
+
+    /**
+     * Sets the number of threads executing the jobs in parallel
+     */
+    public GuiExecutorBuilder workerCount(int workerCount) {
+        this.setWorkerCount(workerCount);
+        return this;
+    }
+    private int getWorkerCount() {
+        return this.workerCount;
+    }
+    private void setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Executes every job on a new virtual thread instead of on a fixed number of workers, so that
+     * jobs blocking on I/O don't prevent any other job from being started. If the runtime doesn't
+     * support virtual threads, a new platform thread is used instead. The {@code workerCount} is
+     * ignored in this mode, and so is the priority of the jobs, as no job ever waits for a worker.
+     */
+    public GuiExecutorBuilder virtualThreads(boolean virtualThreads) {
+        this.setVirtualThreads(virtualThreads);
+        return this;
+    }
+    private boolean isVirtualThreads() {
+        return this.virtualThreads;
+    }
+    private void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Sets the maximum number of jobs with the given key that are executed in parallel. For keys
+     * without any configured limit, jobs with the same key are executed one after another.
+     */
+    public GuiExecutorBuilder concurrencyLimit(Object key, int concurrencyLimit) {
+        if (concurrencyLimit <= 0) {
+            throw new IllegalArgumentException("Concurrency limit must be greater than zero");
+        } else {
+            if (this.getConcurrencyLimits() == null) {
+                this.setConcurrencyLimits(new HashMap<>());
+            }
+            this.getConcurrencyLimits().put(key, concurrencyLimit);
+            return this;
+        }
+    }
+    private Map<Object, Integer> getConcurrencyLimits() {
+        return this.concurrencyLimits;
+    }
+    private void setConcurrencyLimits(Map<Object, Integer> concurrencyLimits) {
+        this.concurrencyLimits = concurrencyLimits;
+    }
+
+    /**
+     * Sets the maximum number of jobs waiting to be started, including the jobs waiting for another
+     * job with the same key to be completed. A capacity of zero (which is the default) doesn't limit
+     * the number of waiting jobs.
+     */
+    public GuiExecutorBuilder queueCapacity(int queueCapacity) {
+        this.setQueueCapacity(queueCapacity);
+        return this;
+    }
+    private int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+    private void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public GuiExecutorBuilder rejectionPolicy(GuiExecutorRejectionPolicy rejectionPolicy) {
+        this.setRejectionPolicy(rejectionPolicy);
+        return this;
+    }
+    private GuiExecutorRejectionPolicy getRejectionPolicy() {
+        return this.rejectionPolicy;
+    }
+    private void setRejectionPolicy(GuiExecutorRejectionPolicy rejectionPolicy) {
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * Sets the executor on which the progress listeners and the stages appended to a job on the
+     * JavaFX application thread are called. If not set, the JavaFX application thread is used.
+     */
+    public GuiExecutorBuilder fxExecutor(Executor fxExecutor) {
+        this.setFxExecutor(fxExecutor);
+        return this;
+    }
+    private Executor getFxExecutor() {
+        return this.fxExecutor;
+    }
+    private void setFxExecutor(Executor fxExecutor) {
+        this.fxExecutor = fxExecutor;
+    }
+
+    /**
+     * Sets the minimum time between two deliveries of progress updates to the listeners, which
+     * defaults to the duration of a single frame at 60 frames per second. Updates reported in the
+     * meantime are coalesced, so that only the most recent update of every job is delivered.
+     */
+    public GuiExecutorBuilder progressInterval(Duration progressInterval) {
+        this.setProgressInterval(progressInterval);
+        return this;
+    }
+    private Duration getProgressInterval() {
+        return this.progressInterval;
+    }
+    private void setProgressInterval(Duration progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+}
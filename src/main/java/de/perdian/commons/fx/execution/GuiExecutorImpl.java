@@ -1,39 +1,240 @@
 package de.perdian.commons.fx.execution;
 
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javafx.application.Platform;
+
+/**
+ * Executes jobs either on a fixed number of worker threads, or on a new virtual thread per job.
+ *
+ * Waiting jobs are started in the order of their priority. Jobs sharing the same key are handed to
+ * the workers one after another, so that a job is only started once the previous job with the same
+ * key has been completed, while jobs with other keys (or without any key) are executed in parallel.
+ * For a key with a configured concurrency limit, up to that many jobs are executed in parallel.
+ * Optionally the number of jobs waiting to be started can be limited, in which case the
+ * {@code GuiExecutorRejectionPolicy} decides what happens with any further job.
+ *
+ * Jobs sharing the same key are always started in the order in which they have been submitted,
+ * regardless of their priority. In virtual thread mode a job never waits for a worker, as every job
+ * is started on its own thread right away, so the priority has no effect in that mode.
+ *
+ * The progress reported by every job is coalesced and delivered to the progress listeners on the
+ * {@code fxExecutor} (the JavaFX application thread by default), at most once per progress interval.
+ *
+ * Every job is tracked by a {@code GuiJobHandle}, which is completed with the result of the job, the
+ * exception thrown by the job or the cancellation of the job, and which records the time the job has
+ * been waiting and running.
+ *
+ * New {@code GuiExecutorImpl} instances with a configuration other than a single worker and an
+ * unlimited number of waiting jobs should be created via the {@code GuiExecutorBuilder}.
+ *
+ * @author Christian Seifert
+ */
+
 public class GuiExecutorImpl implements GuiExecutor {
 
     private static final Logger log = LoggerFactory.getLogger(GuiExecutorImpl.class);
+    private static final AtomicInteger EXECUTOR_COUNTER = new AtomicInteger();
 
     private List<GuiProgressListener> progressListeners = null;
     private List<GuiExecutorListener> executorListeners = null;
     private Executor executor = null;
+    private int queueCapacity = 0;
+    private GuiExecutorRejectionPolicy rejectionPolicy = null;
+    private AtomicLong sequence = null;
+    private int queuedCount = 0;
+    private Map<Object, GuiExecutorImplKeyState> keyStates = null;
+    private Map<Object, Integer> concurrencyLimits = null;
+    private GuiExecutorImplProgressDispatcher progressDispatcher = null;
+    private Executor fxExecutor = null;
 
     public GuiExecutorImpl() {
+        this(1, false, 0, null, Map.of(), Platform::runLater, GuiExecutorBuilder.DEFAULT_PROGRESS_INTERVAL);
+    }
+
+    /**
+     * @param virtualThreads
+     *      whether every job should be executed on a new virtual thread instead of on one of the
+     *      {@code workerCount} workers
+     * @param fxExecutor
+     *      the executor on which the progress listeners and the stages appended to a job on the
+     *      JavaFX application thread are called
+     */
+    GuiExecutorImpl(int workerCount, boolean virtualThreads, int queueCapacity, GuiExecutorRejectionPolicy rejectionPolicy, Map<Object, Integer> concurrencyLimits, Executor fxExecutor, Duration progressInterval) {
         this.setExecutorListeners(new CopyOnWriteArrayList<>());
         this.setProgressListeners(new CopyOnWriteArrayList<>());
-        this.setExecutor(Executors.newFixedThreadPool(1));
+        this.setFxExecutor(fxExecutor);
+        this.setProgressDispatcher(new GuiExecutorImplProgressDispatcher(this.getProgressListeners(), fxExecutor, progressInterval));
+        this.setQueueCapacity(queueCapacity);
+        this.setRejectionPolicy(rejectionPolicy);
+        this.setConcurrencyLimits(Map.copyOf(concurrencyLimits));
+        this.setSequence(new AtomicLong());
+        this.setKeyStates(new HashMap<>());
+        String threadNamePrefix = "GuiExecutor-" + EXECUTOR_COUNTER.incrementAndGet() + "-";
+        if (virtualThreads) {
+            ThreadFactory threadFactory = GuiExecutorThreadFactories.createVirtualThreadFactory(threadNamePrefix);
+            this.setExecutor(runnable -> threadFactory.newThread(runnable).start());
+        } else {
+            ThreadFactory threadFactory = GuiExecutorThreadFactories.createPlatformThreadFactory(threadNamePrefix);
+            this.setExecutor(new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), threadFactory));
+        }
     }
 
     @Override
-    public void execute(GuiJob job) {
-        this.getExecutor().execute(() -> {
-            this.getExecutorListeners().forEach(listener -> listener.onExecutionStarting(job));
-            try {
-                job.execute((message, progress) -> this.getProgressListeners().forEach(progressListener -> progressListener.onProgress(message, progress)));
-            } catch (Exception e) {
-                log.error("Error occured while executing job: {}", job, e);
-            } finally {
-                this.getExecutorListeners().forEach(listener -> listener.onExecutionCompleted(job));
+    public GuiJobHandle<Void> execute(GuiJob job, int priority, Object key) {
+        GuiResultJob<Void> resultJob = progressController -> {
+            job.execute(progressController);
+            return null;
+        };
+        return this.submitJob(job, resultJob, new GuiJobHandleImpl<>(this, this.getFxExecutor(), priority, key));
+    }
+
+    @Override
+    public <T> GuiJobHandle<T> submit(GuiResultJob<T> job, int priority, Object key) {
+        return this.submitJob(progressController -> job.execute(progressController), job, new GuiJobHandleImpl<>(this, this.getFxExecutor(), priority, key));
+    }
+
+    /**
+     * Passes a job to the workers, completing the given handle once the job has been completed
+     *
+     * @param job
+     *      the job as passed to the executor listeners and the rejection policy
+     * @param resultJob
+     *      the job actually being executed, providing the result for the handle
+     */
+    <T> GuiJobHandle<T> submitJob(GuiJob job, GuiResultJob<T> resultJob, GuiJobHandleImpl<T> handle) {
+        Object key = handle.getKey();
+        AtomicReference<GuiExecutorImplTask<T>> taskReference = new AtomicReference<>();
+        GuiExecutorImplTask<T> task = new GuiExecutorImplTask<>(job, resultJob, handle, this.getSequence().incrementAndGet(), () -> this.runTask(taskReference.get()), this::onTaskDone);
+        taskReference.set(task);
+        handle.markSubmitted(task);
+        boolean accepted = false;
+        boolean executeDirectly = false;
+        synchronized (this) {
+            if (this.getQueueCapacity() <= 0 || this.getQueuedCount() < this.getQueueCapacity()) {
+                accepted = true;
+                task.setQueued(true);
+                this.setQueuedCount(this.getQueuedCount() + 1);
+                if (key == null) {
+                    executeDirectly = true;
+                } else {
+                    GuiExecutorImplKeyState keyState = this.getKeyStates().computeIfAbsent(key, k -> new GuiExecutorImplKeyState());
+                    if (keyState.getActiveCount() < this.getConcurrencyLimits().getOrDefault(key, 1)) {
+                        keyState.setActiveCount(keyState.getActiveCount() + 1);
+                        executeDirectly = true;
+                    } else {
+                        keyState.getWaitingTasks().add(task);
+                    }
+                }
             }
-        });
+        }
+        if (!accepted) {
+            log.debug("Rejecting job: {}", job);
+            this.getRejectionPolicy().onJobRejected(job);
+            handle.cancel(false);
+        } else if (executeDirectly) {
+            this.getExecutor().execute(task);
+        }
+        return handle;
+    }
+
+    private <T> Void runTask(GuiExecutorImplTask<T> task) {
+        synchronized (this) {
+            if (!task.isQueued()) {
+                return null;
+            } else {
+                task.setQueued(false);
+                this.setQueuedCount(this.getQueuedCount() - 1);
+            }
+        }
+        GuiJob job = task.getJob();
+        GuiJobHandleImpl<T> handle = task.getHandle();
+        try {
+            if (handle.markStarted()) {
+                this.getExecutorListeners().forEach(listener -> listener.onExecutionStarting(job));
+                this.getExecutorListeners().forEach(listener -> listener.onJobStarting(handle));
+                try {
+                    handle.complete(task.getResultJob().execute(this.getProgressDispatcher().createController()));
+                } catch (InterruptedException e) {
+                    log.debug("Job has been interrupted: {}", job);
+                    handle.completeExceptionally(e);
+                } catch (Throwable e) {
+                    log.error("Error occured while executing job: {}", job, e);
+                    handle.completeExceptionally(e);
+                    if (e instanceof Error) {
+                        throw (Error)e;
+                    }
+                } finally {
+                    this.getExecutorListeners().forEach(listener -> listener.onExecutionCompleted(job));
+                    this.getExecutorListeners().forEach(listener -> listener.onJobCompleted(handle));
+                }
+            }
+        } finally {
+            this.releaseKey(task);
+        }
+        return null;
+    }
+
+    /**
+     * Cleans up a task that has been cancelled before it has been started. Tasks that have been
+     * started are cleaned up by the worker once the job has actually returned, even if the task has
+     * been cancelled while the job is running.
+     */
+    private void onTaskDone(GuiExecutorImplTask<?> task) {
+        boolean releaseKey = false;
+        synchronized (this) {
+            if (!task.isQueued()) {
+                return;
+            } else {
+                task.setQueued(false);
+                this.setQueuedCount(this.getQueuedCount() - 1);
+                GuiExecutorImplKeyState keyState = task.getKey() == null ? null : this.getKeyStates().get(task.getKey());
+                releaseKey = keyState != null && !keyState.getWaitingTasks().remove(task);
+            }
+        }
+        if (this.getExecutor() instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor)this.getExecutor()).remove(task);
+        }
+        if (releaseKey) {
+            this.releaseKey(task);
+        }
+    }
+
+    /**
+     * Hands the next task waiting for the key of the given task to the workers
+     */
+    private void releaseKey(GuiExecutorImplTask<?> task) {
+        if (task.getKey() != null) {
+            GuiExecutorImplTask<?> nextTask = null;
+            synchronized (this) {
+                GuiExecutorImplKeyState keyState = this.getKeyStates().get(task.getKey());
+                nextTask = keyState.getWaitingTasks().poll();
+                if (nextTask == null) {
+                    keyState.setActiveCount(keyState.getActiveCount() - 1);
+                    if (keyState.getActiveCount() == 0) {
+                        this.getKeyStates().remove(task.getKey());
+                    }
+                }
+            }
+            if (nextTask != null) {
+                this.getExecutor().execute(nextTask);
+            }
+        }
     }
 
     @Override
@@ -51,6 +252,69 @@ public class GuiExecutorImpl implements GuiExecutor {
         this.progressListeners = progressListeners;
     }
 
+    private Executor getExecutor() {
+        return this.executor;
+    }
+    private void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    private int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+    private void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    private GuiExecutorRejectionPolicy getRejectionPolicy() {
+        return this.rejectionPolicy;
+    }
+    private void setRejectionPolicy(GuiExecutorRejectionPolicy rejectionPolicy) {
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    private AtomicLong getSequence() {
+        return this.sequence;
+    }
+    private void setSequence(AtomicLong sequence) {
+        this.sequence = sequence;
+    }
+
+    private int getQueuedCount() {
+        return this.queuedCount;
+    }
+    private void setQueuedCount(int queuedCount) {
+        this.queuedCount = queuedCount;
+    }
+
+    private Map<Object, GuiExecutorImplKeyState> getKeyStates() {
+        return this.keyStates;
+    }
+    private void setKeyStates(Map<Object, GuiExecutorImplKeyState> keyStates) {
+        this.keyStates = keyStates;
+    }
+
+    private GuiExecutorImplProgressDispatcher getProgressDispatcher() {
+        return this.progressDispatcher;
+    }
+    private void setProgressDispatcher(GuiExecutorImplProgressDispatcher progressDispatcher) {
+        this.progressDispatcher = progressDispatcher;
+    }
+
+    private Executor getFxExecutor() {
+        return this.fxExecutor;
+    }
+    private void setFxExecutor(Executor fxExecutor) {
+        this.fxExecutor = fxExecutor;
+    }
+
+    private Map<Object, Integer> getConcurrencyLimits() {
+        return this.concurrencyLimits;
+    }
+    private void setConcurrencyLimits(Map<Object, Integer> concurrencyLimits) {
+        this.concurrencyLimits = concurrencyLimits;
+    }
+
     @Override
     public boolean addExecutorListener(GuiExecutorListener executorListener) {
         return this.getExecutorListeners().add(executorListener);
@@ -66,11 +330,4 @@ public class GuiExecutorImpl implements GuiExecutor {
         this.executorListeners = executorListeners;
     }
 
-    private Executor getExecutor() {
-        return this.executor;
-    }
-    private void setExecutor(Executor executor) {
-        this.executor = executor;
-    }
-
 }
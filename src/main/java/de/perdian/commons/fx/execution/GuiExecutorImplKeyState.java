@@ -0,0 +1,35 @@
+package de.perdian.commons.fx.execution;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The jobs of a single key within the {@code GuiExecutorImpl}: the number of jobs that have been
+ * handed to the workers and the jobs waiting for one of them to be completed. Only accessed while
+ * holding the monitor of the executor.
+ */
+
+class GuiExecutorImplKeyState {
+
+    private int activeCount = 0;
+    private Deque<GuiExecutorImplTask<?>> waitingTasks = null;
+
+    GuiExecutorImplKeyState() {
+        this.setWaitingTasks(new ArrayDeque<>());
+    }
+
+    int getActiveCount() {
+        return this.activeCount;
+    }
+    void setActiveCount(int activeCount) {
+        this.activeCount = activeCount;
+    }
+
+    Deque<GuiExecutorImplTask<?>> getWaitingTasks() {
+        return this.waitingTasks;
+    }
+    private void setWaitingTasks(Deque<GuiExecutorImplTask<?>> waitingTasks) {
+        this.waitingTasks = waitingTasks;
+    }
+
+}
@@ -0,0 +1,149 @@
+package de.perdian.commons.fx.execution;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers the progress reported by the jobs to the listeners.
+ *
+ * Updates are coalesced per job, so that only the most recent update of every job that has reported
+ * any progress since the last delivery is delivered, and the listeners are called on the delivery
+ * executor (usually the JavaFX application thread) no more than once per interval. At any time there
+ * is at most one pending delivery, so the number of tasks handed to the delivery executor depends on
+ * the interval instead of on the number of updates reported. The deliveries of all executors are
+ * scheduled on a single daemon thread.
+ */
+
+class GuiExecutorImplProgressDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(GuiExecutorImplProgressDispatcher.class);
+    private static final ScheduledThreadPoolExecutor SCHEDULER = GuiExecutorImplProgressDispatcher.createScheduler();
+
+    private List<GuiProgressListener> progressListeners = null;
+    private Executor deliveryExecutor = null;
+    private long intervalNanos = 0;
+    private Map<Object, GuiExecutorImplProgressUpdate> latestUpdates = null;
+    private AtomicBoolean deliveryPending = null;
+    private volatile long lastDeliveryNanos = 0;
+
+    GuiExecutorImplProgressDispatcher(List<GuiProgressListener> progressListeners, Executor deliveryExecutor, Duration interval) {
+        this.setProgressListeners(progressListeners);
+        this.setDeliveryExecutor(deliveryExecutor);
+        this.setIntervalNanos(interval.toNanos());
+        this.setLatestUpdates(new LinkedHashMap<>());
+        this.setDeliveryPending(new AtomicBoolean());
+        this.setLastDeliveryNanos(System.nanoTime() - interval.toNanos());
+    }
+
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "GuiProgressDispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * Creates the controller through which a single job reports its progress
+     */
+    GuiProgressController createController() {
+        Object job = new Object();
+        return (message, progress) -> this.updateProgress(job, message, progress);
+    }
+
+    private void updateProgress(Object job, String message, Double progress) {
+        synchronized (this.getLatestUpdates()) {
+            this.getLatestUpdates().put(job, new GuiExecutorImplProgressUpdate(message, progress));
+        }
+        if (this.getDeliveryPending().compareAndSet(false, true)) {
+            long remainingNanos = this.getLastDeliveryNanos() + this.getIntervalNanos() - System.nanoTime();
+            if (remainingNanos <= 0) {
+                this.scheduleDelivery();
+            } else {
+                SCHEDULER.schedule(this::scheduleDelivery, remainingNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void scheduleDelivery() {
+        try {
+            this.getDeliveryExecutor().execute(this::deliverLatestUpdate);
+        } catch (RuntimeException e) {
+            this.getDeliveryPending().set(false);
+            log.warn("Cannot deliver progress update", e);
+        }
+    }
+
+    private void deliverLatestUpdate() {
+        this.setLastDeliveryNanos(System.nanoTime());
+        this.getDeliveryPending().set(false);
+        List<GuiExecutorImplProgressUpdate> updates = null;
+        synchronized (this.getLatestUpdates()) {
+            updates = List.copyOf(this.getLatestUpdates().values());
+            this.getLatestUpdates().clear();
+        }
+        for (GuiExecutorImplProgressUpdate update : updates) {
+            for (GuiProgressListener progressListener : this.getProgressListeners()) {
+                try {
+                    progressListener.onProgress(update.getMessage(), update.getProgress());
+                } catch (Exception e) {
+                    log.warn("Error occured in progress listener: {}", progressListener, e);
+                }
+            }
+        }
+    }
+
+    private List<GuiProgressListener> getProgressListeners() {
+        return this.progressListeners;
+    }
+    private void setProgressListeners(List<GuiProgressListener> progressListeners) {
+        this.progressListeners = progressListeners;
+    }
+
+    private Executor getDeliveryExecutor() {
+        return this.deliveryExecutor;
+    }
+    private void setDeliveryExecutor(Executor deliveryExecutor) {
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    private long getIntervalNanos() {
+        return this.intervalNanos;
+    }
+    private void setIntervalNanos(long intervalNanos) {
+        this.intervalNanos = intervalNanos;
+    }
+
+    private Map<Object, GuiExecutorImplProgressUpdate> getLatestUpdates() {
+        return this.latestUpdates;
+    }
+    private void setLatestUpdates(Map<Object, GuiExecutorImplProgressUpdate> latestUpdates) {
+        this.latestUpdates = latestUpdates;
+    }
+
+    private AtomicBoolean getDeliveryPending() {
+        return this.deliveryPending;
+    }
+    private void setDeliveryPending(AtomicBoolean deliveryPending) {
+        this.deliveryPending = deliveryPending;
+    }
+
+    private long getLastDeliveryNanos() {
+        return this.lastDeliveryNanos;
+    }
+    private void setLastDeliveryNanos(long lastDeliveryNanos) {
+        this.lastDeliveryNanos = lastDeliveryNanos;
+    }
+
+}
@@ -0,0 +1,31 @@
+package de.perdian.commons.fx.execution;
+
+/**
+ * A progress update reported by a job that has not yet been delivered to the listeners.
+ */
+
+class GuiExecutorImplProgressUpdate {
+
+    private String message = null;
+    private Double progress = null;
+
+    GuiExecutorImplProgressUpdate(String message, Double progress) {
+        this.setMessage(message);
+        this.setProgress(progress);
+    }
+
+    String getMessage() {
+        return this.message;
+    }
+    private void setMessage(String message) {
+        this.message = message;
+    }
+
+    Double getProgress() {
+        return this.progress;
+    }
+    private void setProgress(Double progress) {
+        this.progress = progress;
+    }
+
+}
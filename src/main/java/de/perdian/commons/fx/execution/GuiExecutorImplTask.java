@@ -0,0 +1,118 @@
+package de.perdian.commons.fx.execution;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+
+/**
+ * A job waiting for or being executed within the {@code GuiExecutorImpl}, ordered by priority and
+ * then by the order in which the jobs have been passed to the executor.
+ */
+
+class GuiExecutorImplTask<T> extends FutureTask<Void> implements Comparable<GuiExecutorImplTask<?>> {
+
+    private GuiJob job = null;
+    private GuiResultJob<T> resultJob = null;
+    private GuiJobHandleImpl<T> handle = null;
+    private long sequence = 0;
+    private boolean queued = false;
+    private Consumer<GuiExecutorImplTask<?>> doneCallback = null;
+
+    /**
+     * @param job
+     *      the job as passed to the executor listeners and the rejection policy
+     * @param resultJob
+     *      the job actually being executed, providing the result for the handle
+     */
+    GuiExecutorImplTask(GuiJob job, GuiResultJob<T> resultJob, GuiJobHandleImpl<T> handle, long sequence, Callable<Void> callable, Consumer<GuiExecutorImplTask<?>> doneCallback) {
+        super(callable);
+        this.setJob(job);
+        this.setResultJob(resultJob);
+        this.setHandle(handle);
+        this.setSequence(sequence);
+        this.setDoneCallback(doneCallback);
+    }
+
+    @Override
+    public int compareTo(GuiExecutorImplTask<?> other) {
+        int priorityComparison = Integer.compare(other.getPriority(), this.getPriority());
+        return priorityComparison != 0 ? priorityComparison : Long.compare(this.getSequence(), other.getSequence());
+    }
+
+    /**
+     * Rethrows an {@code Error} thrown by the job after the task has been completed, so that it
+     * reaches the uncaught exception handler of the worker instead of being swallowed by the task
+     */
+    @Override
+    protected void setException(Throwable exception) {
+        super.setException(exception);
+        if (exception instanceof Error) {
+            throw (Error)exception;
+        }
+    }
+
+    @Override
+    protected void done() {
+        this.getDoneCallback().accept(this);
+    }
+
+    @Override
+    public String toString() {
+        return "GuiExecutorImplTask[job=" + this.getJob() + ", priority=" + this.getPriority() + ", key=" + this.getKey() + "]";
+    }
+
+    GuiJob getJob() {
+        return this.job;
+    }
+    private void setJob(GuiJob job) {
+        this.job = job;
+    }
+
+    GuiResultJob<T> getResultJob() {
+        return this.resultJob;
+    }
+    private void setResultJob(GuiResultJob<T> resultJob) {
+        this.resultJob = resultJob;
+    }
+
+    GuiJobHandleImpl<T> getHandle() {
+        return this.handle;
+    }
+    private void setHandle(GuiJobHandleImpl<T> handle) {
+        this.handle = handle;
+    }
+
+    int getPriority() {
+        return this.getHandle().getPriority();
+    }
+
+    Object getKey() {
+        return this.getHandle().getKey();
+    }
+
+    private long getSequence() {
+        return this.sequence;
+    }
+    private void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Whether or not the task has been accepted by the executor but has neither been started nor
+     * cancelled yet. Only accessed while holding the monitor of the executor.
+     */
+    boolean isQueued() {
+        return this.queued;
+    }
+    void setQueued(boolean queued) {
+        this.queued = queued;
+    }
+
+    private Consumer<GuiExecutorImplTask<?>> getDoneCallback() {
+        return this.doneCallback;
+    }
+    private void setDoneCallback(Consumer<GuiExecutorImplTask<?>> doneCallback) {
+        this.doneCallback = doneCallback;
+    }
+
+}
@@ -2,7 +2,23 @@ package de.perdian.commons.fx.execution;
 
 public interface GuiExecutorListener {
 
-    void onExecutionStarting(GuiJob job);
-    void onExecutionCompleted(GuiJob job);
+    default void onExecutionStarting(GuiJob job) {
+    }
+
+    default void onExecutionCompleted(GuiJob job) {
+    }
+
+    /**
+     * Called on the thread executing the job directly before the job is started
+     */
+    default void onJobStarting(GuiJobHandle<?> handle) {
+    }
+
+    /**
+     * Called on the thread executing the job directly after the job has been completed, at which
+     * point the handle already reflects the final state of the job
+     */
+    default void onJobCompleted(GuiJobHandle<?> handle) {
+    }
 
 }
@@ -0,0 +1,19 @@
+package de.perdian.commons.fx.execution;
+
+/**
+ * Decides what happens with a job that cannot be accepted by a {@code GuiExecutor}, because the
+ * maximum number of waiting jobs has been reached.
+ *
+ * @author Christian Seifert
+ */
+
+public interface GuiExecutorRejectionPolicy {
+
+    /**
+     * Called for a job that has been rejected. Implementations may throw a
+     * {@code RejectedExecutionException}, which is passed on to the caller trying to execute the
+     * job. Otherwise the job is discarded and the handle returned to the caller is cancelled.
+     */
+    void onJobRejected(GuiJob job);
+
+}
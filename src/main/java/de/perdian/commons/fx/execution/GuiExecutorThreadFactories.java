@@ -0,0 +1,48 @@
+package de.perdian.commons.fx.execution;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the factories for the threads executing the jobs of a {@code GuiExecutorImpl}.
+ *
+ * Virtual threads are created via reflection, so that the library can still be compiled and used
+ * with runtimes that don't support virtual threads, in which case platform threads are used instead.
+ */
+
+class GuiExecutorThreadFactories {
+
+    private static final Logger log = LoggerFactory.getLogger(GuiExecutorThreadFactories.class);
+
+    static ThreadFactory createPlatformThreadFactory(String threadNamePrefix) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates a factory for virtual threads, or a factory for platform threads if virtual threads are
+     * not supported by the current runtime
+     */
+    static ThreadFactory createVirtualThreadFactory(String threadNamePrefix) {
+        try {
+            Object threadBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> threadBuilderClass = Class.forName("java.lang.Thread$Builder");
+            Method nameMethod = threadBuilderClass.getMethod("name", String.class, long.class);
+            Method factoryMethod = threadBuilderClass.getMethod("factory");
+            return (ThreadFactory)factoryMethod.invoke(nameMethod.invoke(threadBuilder, threadNamePrefix, 1L));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.info("Virtual threads not supported by runtime, using platform threads instead");
+            log.debug("Cannot create virtual thread factory", e);
+            return GuiExecutorThreadFactories.createPlatformThreadFactory(threadNamePrefix);
+        }
+    }
+
+}
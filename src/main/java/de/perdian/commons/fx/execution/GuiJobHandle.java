@@ -0,0 +1,67 @@
+package de.perdian.commons.fx.execution;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A handle to a job that has been passed to a {@code GuiExecutor}, providing the state, the result and
+ * the timings of the job.
+ *
+ * Further stages can be appended to a job using {@link #thenOnFx(Function)}, which is executed on the
+ * JavaFX application thread, and {@link #thenInBackground(GuiJobStage)}, which is executed by the
+ * executor that executed the job. A stage is only executed if the previous stage has succeeded.
+ * Otherwise the stage fails with the same exception as the previous stage, or is cancelled if the
+ * previous stage has been cancelled. Cancelling a stage doesn't cancel any previous stage.
+ *
+ * @author Christian Seifert
+ */
+
+public interface GuiJobHandle<T> extends Future<T> {
+
+    GuiJobState getState();
+
+    /**
+     * Gets the exception thrown by the job if the job has failed
+     */
+    Throwable getException();
+
+    /**
+     * Gets the time between the job being passed to the executor and the job being started, or
+     * {@code null} if the job hasn't been started yet
+     */
+    Duration getWaitDuration();
+
+    /**
+     * Gets the time between the job being started and the job being completed, or {@code null} if the
+     * job hasn't been completed yet
+     */
+    Duration getRunDuration();
+
+    /**
+     * Gets a stage that is completed with the result of the job, or exceptionally if the job fails or
+     * is cancelled
+     */
+    CompletionStage<T> toCompletionStage();
+
+    /**
+     * Appends a stage that is executed on the JavaFX application thread using the result of the job
+     */
+    <R> GuiJobHandle<R> thenOnFx(Function<? super T, ? extends R> function);
+
+    /**
+     * Appends a stage that is executed in the background using the result of the job, using the same
+     * priority and key as the job
+     */
+    <R> GuiJobHandle<R> thenInBackground(GuiJobStage<? super T, ? extends R> stage);
+
+    /**
+     * Calls the given consumer on the JavaFX application thread once the job has been completed,
+     * passing either the result of the job or the exception causing the job to fail or to be
+     * cancelled
+     */
+    GuiJobHandle<T> whenCompleteOnFx(BiConsumer<? super T, ? super Throwable> consumer);
+
+}
@@ -0,0 +1,307 @@
+package de.perdian.commons.fx.execution;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The handle of a job or a stage within the {@code GuiExecutorImpl}, backed by a
+ * {@code CompletableFuture} holding the result.
+ */
+
+class GuiJobHandleImpl<T> implements GuiJobHandle<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(GuiJobHandleImpl.class);
+
+    private GuiExecutorImpl executor = null;
+    private Executor fxExecutor = null;
+    private int priority = 0;
+    private Object key = null;
+    private CompletableFuture<T> future = null;
+    private volatile GuiJobState state = GuiJobState.WAITING;
+    private volatile Throwable exception = null;
+    private volatile Future<?> task = null;
+    private volatile long submittedNanos = 0;
+    private volatile long startedNanos = 0;
+    private volatile long completedNanos = 0;
+
+    GuiJobHandleImpl(GuiExecutorImpl executor, Executor fxExecutor, int priority, Object key) {
+        this.setExecutor(executor);
+        this.setFxExecutor(fxExecutor);
+        this.setPriority(priority);
+        this.setKey(key);
+        this.setFuture(new CompletableFuture<>());
+    }
+
+    void markSubmitted(Future<?> task) {
+        this.setTask(task);
+        this.setSubmittedNanos(System.nanoTime());
+    }
+
+    /**
+     * Marks the job as running
+     *
+     * @return
+     *      {@code false} if the job has already been completed (usually because it has been
+     *      cancelled) and must not be executed
+     */
+    synchronized boolean markStarted() {
+        if (this.getState() != GuiJobState.WAITING) {
+            return false;
+        } else {
+            this.setStartedNanos(System.nanoTime());
+            this.setState(GuiJobState.RUNNING);
+            return true;
+        }
+    }
+
+    /**
+     * Completes the job with the given result. The state is updated while holding the monitor of the
+     * handle, so that only the first completion takes effect, and the future is completed after the
+     * monitor has been released, so that stages appended to the future are never executed while
+     * holding it. Any thread waiting for the result therefore always sees the final state.
+     */
+    void complete(T result) {
+        if (this.markCompleted(GuiJobState.SUCCEEDED, null)) {
+            this.getFuture().complete(result);
+        }
+    }
+
+    void completeExceptionally(Throwable exception) {
+        if (exception instanceof CancellationException) {
+            this.cancel(false);
+        } else if (this.markCompleted(GuiJobState.FAILED, exception)) {
+            this.getFuture().completeExceptionally(exception);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (this.markCompleted(GuiJobState.CANCELLED, null)) {
+            this.getFuture().cancel(mayInterruptIfRunning);
+            if (this.getTask() != null) {
+                this.getTask().cancel(mayInterruptIfRunning);
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Moves the job into the given final state
+     *
+     * @return
+     *      {@code false} if the job has already been completed before
+     */
+    private synchronized boolean markCompleted(GuiJobState state, Throwable exception) {
+        if (this.getState().isCompleted()) {
+            return false;
+        } else {
+            this.setCompletedNanos(System.nanoTime());
+            this.setException(exception);
+            this.setState(state);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return this.getFuture().isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+        return this.getFuture().isDone();
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        return this.getFuture().get();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return this.getFuture().get(timeout, unit);
+    }
+
+    @Override
+    public Throwable getException() {
+        return this.exception;
+    }
+    private void setException(Throwable exception) {
+        this.exception = exception;
+    }
+
+    @Override
+    public Duration getWaitDuration() {
+        long startedNanos = this.getStartedNanos();
+        return startedNanos == 0 ? null : Duration.ofNanos(startedNanos - this.getSubmittedNanos());
+    }
+
+    @Override
+    public Duration getRunDuration() {
+        long startedNanos = this.getStartedNanos();
+        long completedNanos = this.getCompletedNanos();
+        return startedNanos == 0 || completedNanos == 0 ? null : Duration.ofNanos(completedNanos - startedNanos);
+    }
+
+    @Override
+    public CompletionStage<T> toCompletionStage() {
+        return this.getFuture().minimalCompletionStage();
+    }
+
+    @Override
+    public <R> GuiJobHandle<R> thenOnFx(Function<? super T, ? extends R> function) {
+        GuiJobHandleImpl<R> nextHandle = new GuiJobHandleImpl<>(this.getExecutor(), this.getFxExecutor(), this.getPriority(), this.getKey());
+        this.getFuture().whenComplete((result, exception) -> {
+            if (exception != null) {
+                nextHandle.completeExceptionally(GuiJobHandleImpl.unwrapException(exception));
+            } else {
+                nextHandle.markSubmitted(null);
+                try {
+                    this.getFxExecutor().execute(() -> {
+                        if (nextHandle.markStarted()) {
+                            try {
+                                nextHandle.complete(function.apply(result));
+                            } catch (Throwable e) {
+                                log.error("Error occured while executing stage on fxExecutor: {}", function, e);
+                                nextHandle.completeExceptionally(e);
+                                if (e instanceof Error) {
+                                    throw (Error)e;
+                                }
+                            }
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    nextHandle.completeExceptionally(e);
+                }
+            }
+        });
+        return nextHandle;
+    }
+
+    @Override
+    public <R> GuiJobHandle<R> thenInBackground(GuiJobStage<? super T, ? extends R> stage) {
+        GuiJobHandleImpl<R> nextHandle = new GuiJobHandleImpl<>(this.getExecutor(), this.getFxExecutor(), this.getPriority(), this.getKey());
+        this.getFuture().whenComplete((result, exception) -> {
+            if (exception != null) {
+                nextHandle.completeExceptionally(GuiJobHandleImpl.unwrapException(exception));
+            } else {
+                GuiResultJob<R> resultJob = progressController -> stage.execute(result, progressController);
+                try {
+                    this.getExecutor().submitJob(progressController -> resultJob.execute(progressController), resultJob, nextHandle);
+                } catch (RuntimeException e) {
+                    nextHandle.completeExceptionally(e);
+                }
+            }
+        });
+        return nextHandle;
+    }
+
+    @Override
+    public GuiJobHandle<T> whenCompleteOnFx(BiConsumer<? super T, ? super Throwable> consumer) {
+        this.getFuture().whenComplete((result, exception) -> {
+            Throwable unwrappedException = exception == null ? null : GuiJobHandleImpl.unwrapException(exception);
+            try {
+                this.getFxExecutor().execute(() -> consumer.accept(result, unwrappedException));
+            } catch (RuntimeException e) {
+                log.warn("Cannot pass completion of job to consumer: {}", consumer, e);
+            }
+        });
+        return this;
+    }
+
+    private static Throwable unwrapException(Throwable exception) {
+        return exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception;
+    }
+
+    @Override
+    public String toString() {
+        return "GuiJobHandle[state=" + this.getState() + ", priority=" + this.getPriority() + ", key=" + this.getKey() + "]";
+    }
+
+    private GuiExecutorImpl getExecutor() {
+        return this.executor;
+    }
+    private void setExecutor(GuiExecutorImpl executor) {
+        this.executor = executor;
+    }
+
+    private Executor getFxExecutor() {
+        return this.fxExecutor;
+    }
+    private void setFxExecutor(Executor fxExecutor) {
+        this.fxExecutor = fxExecutor;
+    }
+
+    int getPriority() {
+        return this.priority;
+    }
+    private void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    Object getKey() {
+        return this.key;
+    }
+    private void setKey(Object key) {
+        this.key = key;
+    }
+
+    private CompletableFuture<T> getFuture() {
+        return this.future;
+    }
+    private void setFuture(CompletableFuture<T> future) {
+        this.future = future;
+    }
+
+    @Override
+    public GuiJobState getState() {
+        return this.state;
+    }
+    private void setState(GuiJobState state) {
+        this.state = state;
+    }
+
+    private Future<?> getTask() {
+        return this.task;
+    }
+    private void setTask(Future<?> task) {
+        this.task = task;
+    }
+
+    private long getSubmittedNanos() {
+        return this.submittedNanos;
+    }
+    private void setSubmittedNanos(long submittedNanos) {
+        this.submittedNanos = submittedNanos;
+    }
+
+    private long getStartedNanos() {
+        return this.startedNanos;
+    }
+    private void setStartedNanos(long startedNanos) {
+        this.startedNanos = startedNanos;
+    }
+
+    private long getCompletedNanos() {
+        return this.completedNanos;
+    }
+    private void setCompletedNanos(long completedNanos) {
+        this.completedNanos = completedNanos;
+    }
+
+}
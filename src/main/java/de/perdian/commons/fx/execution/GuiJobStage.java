@@ -0,0 +1,14 @@
+package de.perdian.commons.fx.execution;
+
+/**
+ * A stage of a pipeline of jobs, computing a result from the result of the previous stage.
+ *
+ * @author Christian Seifert
+ * @see GuiJobHandle#thenInBackground(GuiJobStage)
+ */
+
+public interface GuiJobStage<T, R> {
+
+    R execute(T input, GuiProgressController progressController) throws Exception;
+
+}
@@ -0,0 +1,21 @@
+package de.perdian.commons.fx.execution;
+
+/**
+ * The lifecycle states of a job passed to a {@code GuiExecutor}.
+ *
+ * @author Christian Seifert
+ */
+
+public enum GuiJobState {
+
+    WAITING,
+    RUNNING,
+    SUCCEEDED,
+    FAILED,
+    CANCELLED;
+
+    public boolean isCompleted() {
+        return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+    }
+
+}
@@ -0,0 +1,14 @@
+package de.perdian.commons.fx.execution;
+
+/**
+ * A job computing a result, which is made available through the {@code GuiJobHandle} returned by the
+ * {@code GuiExecutor}.
+ *
+ * @author Christian Seifert
+ */
+
+public interface GuiResultJob<T> {
+
+    T execute(GuiProgressController progressController) throws Exception;
+
+}
@@ -0,0 +1,185 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Stores records in a compact binary format.
+ *
+ * The binary format contains exactly the same information as the XML format (the elements, attributes
+ * and texts created by the records), so that files can be converted between both formats without any
+ * loss using {@link #convertFromXml} and {@link #convertToXml}. Compared to the XML format, names and
+ * values are stored as length-prefixed strings in a string table, so that repeated names and values
+ * are only written once, and attribute values representing dates, integral numbers or decimal numbers
+ * in their canonical form are stored in a primitive encoding.
+ *
+ * Records implementing {@code PersistenceStreamingEnabled} are read and written directly through a
+ * StAX view of the binary stream, so that no DOM is created for them. The children of an element are
+ * terminated by an end marker, so that elements can be written as soon as they are started. Streams
+ * written by the first version of the format, which stores the number of children in front of them,
+ * can still be read.
+ *
+ * @author Christian Seifert
+ */
+
+public class BinaryPersistenceCodec implements PersistenceCodec {
+
+    static final byte[] MAGIC = { 'P', 'F', 'X', 'B' };
+    static final byte VERSION = 2;
+    static final byte VERSION_COUNTED_CHILDREN = 1;
+    static final byte FRAME_END = 0;
+    static final byte FRAME_RECORD = 1;
+    static final byte NODE_ELEMENT = 0;
+    static final byte NODE_TEXT = 1;
+    static final byte NODE_CDATA = 2;
+    static final byte NODE_END = 3;
+    static final byte VALUE_STRING = 0;
+    static final byte VALUE_DATE = 1;
+    static final byte VALUE_LONG = 2;
+    static final byte VALUE_DOUBLE = 3;
+    static final int MAX_STRING_TABLE_SIZE = 64 * 1024;
+    static final int MAX_STRING_TABLE_ENTRY_LENGTH = 256;
+
+    @Override
+    public <T extends PersistenceEnabled> void readRecords(InputStream inputStream, Class<T> recordClass, Supplier<T> recordFactory, Consumer<T> recordConsumer, PersistenceContext context) throws IOException {
+        try {
+            BinaryPersistenceCodecInput codecInput = new BinaryPersistenceCodecInput(new BufferedInputStream(inputStream));
+            codecInput.readHeader();
+            String recordElementName = recordClass.getSimpleName();
+            DocumentBuilder documentBuilder = null;
+            while (codecInput.readRecordStart()) {
+                BinaryPersistenceCodecStreamReader recordReader = new BinaryPersistenceCodecStreamReader(codecInput);
+                if (recordElementName.equals(recordReader.getLocalName())) {
+                    T record = recordFactory.get();
+                    if (record instanceof PersistenceStreamingEnabled) {
+                        ((PersistenceStreamingEnabled)record).loadFromXML(recordReader);
+                    } else {
+                        documentBuilder = documentBuilder == null ? context.getDocumentBuilder() : documentBuilder;
+                        Document recordDocument = documentBuilder.newDocument();
+                        Element recordElement = PersistenceEnabledStreamSupport.readElement(recordReader, recordDocument);
+                        recordDocument.appendChild(recordElement);
+                        record.loadFromXML(recordElement, recordDocument);
+                    }
+                    recordReader.skipRecord();
+                    recordConsumer.accept(record);
+                } else {
+                    recordReader.skipRecord();
+                }
+            }
+        } catch (Exception e) {
+            throw new IOException("Cannot import records of class: " + recordClass.getName(), e);
+        }
+    }
+
+    @Override
+    public <T extends PersistenceEnabled> List<T> readRecordsParallel(InputStream inputStream, Class<T> recordClass, Supplier<T> recordFactory, ForkJoinPool forkJoinPool, PersistenceContext context) throws IOException {
+        PersistenceEnabledParallelDecoder<T> recordDecoder = new PersistenceEnabledParallelDecoder<>(recordClass, recordFactory, forkJoinPool, PersistenceEnabledParallelDecoder.DEFAULT_CHUNK_SIZE, context);
+        try {
+            BinaryPersistenceCodecInput codecInput = new BinaryPersistenceCodecInput(new BufferedInputStream(inputStream));
+            codecInput.readHeader();
+            String recordElementName = recordClass.getSimpleName();
+            while (codecInput.readRecordStart()) {
+                BinaryPersistenceCodecStreamReader recordReader = new BinaryPersistenceCodecStreamReader(codecInput);
+                if (recordElementName.equals(recordReader.getLocalName())) {
+                    recordDecoder.accept(recordReader);
+                }
+                recordReader.skipRecord();
+            }
+            return recordDecoder.join();
+        } catch (Exception e) {
+            recordDecoder.cancel();
+            throw new IOException("Cannot import records of class: " + recordClass.getName(), e);
+        }
+    }
+
+    @Override
+    public void writeRecords(Collection<? extends PersistenceEnabled> records, OutputStream outputStream, PersistenceContext context) throws IOException {
+        try {
+            BinaryPersistenceCodecOutput codecOutput = new BinaryPersistenceCodecOutput(new BufferedOutputStream(outputStream));
+            BinaryPersistenceCodecStreamWriter recordWriter = new BinaryPersistenceCodecStreamWriter(codecOutput);
+            codecOutput.writeHeader("records");
+            for (PersistenceEnabled record : records) {
+                if (record.isPersistable()) {
+                    codecOutput.writeRecordStart();
+                    PersistenceEnabledStreamSupport.writeRecord(record, recordWriter, context);
+                }
+            }
+            codecOutput.writeEnd();
+        } catch (Exception e) {
+            throw new IOException("Cannot export records", e);
+        }
+    }
+
+    /**
+     * Converts a stream in the XML format into the binary format, without the need to know the
+     * classes of the records contained in the stream
+     */
+    public static void convertFromXml(InputStream xmlInputStream, OutputStream binaryOutputStream, PersistenceContext context) throws IOException {
+        try {
+            XMLStreamReader xmlReader = context.createXMLStreamReader(xmlInputStream);
+            try {
+                BinaryPersistenceCodecOutput codecOutput = new BinaryPersistenceCodecOutput(new BufferedOutputStream(binaryOutputStream));
+                BinaryPersistenceCodecStreamWriter recordWriter = new BinaryPersistenceCodecStreamWriter(codecOutput);
+                String rootElementName = null;
+                while (xmlReader.hasNext()) {
+                    if (xmlReader.next() == XMLStreamConstants.START_ELEMENT) {
+                        if (rootElementName == null) {
+                            rootElementName = xmlReader.getLocalName();
+                            codecOutput.writeHeader(rootElementName);
+                        } else {
+                            codecOutput.writeRecordStart();
+                            PersistenceEnabledStreamSupport.copyElement(xmlReader, recordWriter);
+                        }
+                    }
+                }
+                if (rootElementName == null) {
+                    codecOutput.writeHeader("records");
+                }
+                codecOutput.writeEnd();
+            } finally {
+                xmlReader.close();
+            }
+        } catch (Exception e) {
+            throw new IOException("Cannot convert XML records into binary format", e);
+        }
+    }
+
+    /**
+     * Converts a stream in the binary format into the XML format, without the need to know the
+     * classes of the records contained in the stream
+     */
+    public static void convertToXml(InputStream binaryInputStream, OutputStream xmlOutputStream, PersistenceContext context) throws IOException {
+        try {
+            BinaryPersistenceCodecInput codecInput = new BinaryPersistenceCodecInput(new BufferedInputStream(binaryInputStream));
+            XMLStreamWriter xmlWriter = context.createXMLStreamWriter(xmlOutputStream);
+            xmlWriter.writeStartDocument("UTF-8", "1.0");
+            xmlWriter.writeStartElement(codecInput.readHeader());
+            while (codecInput.readRecordStart()) {
+                PersistenceEnabledStreamSupport.copyElement(new BinaryPersistenceCodecStreamReader(codecInput), xmlWriter);
+            }
+            xmlWriter.writeEndElement();
+            xmlWriter.writeEndDocument();
+            xmlWriter.flush();
+            xmlWriter.close();
+        } catch (Exception e) {
+            throw new IOException("Cannot convert binary records into XML format", e);
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+class BinaryPersistenceCodecInput {
+
+    private DataInputStream inputStream = null;
+    private List<String> stringTable = null;
+    private byte version = 0;
+    private Deque<Long> remainingChildren = null;
+
+    BinaryPersistenceCodecInput(InputStream inputStream) {
+        this.setInputStream(new DataInputStream(inputStream));
+        this.setStringTable(new ArrayList<>());
+        this.setRemainingChildren(new ArrayDeque<>());
+    }
+
+    /**
+     * Reads the header of the stream
+     *
+     * @return the name of the root element
+     */
+    String readHeader() throws IOException {
+        byte[] magic = new byte[BinaryPersistenceCodec.MAGIC.length];
+        this.getInputStream().readFully(magic);
+        if (!Arrays.equals(BinaryPersistenceCodec.MAGIC, magic)) {
+            throw new IOException("Invalid binary record stream");
+        }
+        byte version = this.getInputStream().readByte();
+        if (version != BinaryPersistenceCodec.VERSION && version != BinaryPersistenceCodec.VERSION_COUNTED_CHILDREN) {
+            throw new IOException("Unsupported binary record stream version: " + version);
+        }
+        this.setVersion(version);
+        return this.readString();
+    }
+
+    /**
+     * Reads the type of the next frame
+     *
+     * @return {@code true} if a record follows, {@code false} if the end of the stream has been reached
+     */
+    boolean readRecordStart() throws IOException {
+        byte frameType = this.getInputStream().readByte();
+        if (frameType == BinaryPersistenceCodec.FRAME_END) {
+            return false;
+        } else if (frameType == BinaryPersistenceCodec.FRAME_RECORD) {
+            return true;
+        } else {
+            throw new IOException("Invalid frame type: " + frameType);
+        }
+    }
+
+    /**
+     * Reads the name and the attributes of an element, after which the children of the element can be
+     * read via {@link #readNodeType()}
+     *
+     * @return the name of the element
+     */
+    String readElementStart(List<String> attributeNames, List<String> attributeValues) throws IOException {
+        String elementName = this.readString();
+        for (long attributeCount = this.readVarLong(); attributeCount > 0; attributeCount--) {
+            attributeNames.add(this.readString());
+            attributeValues.add(this.readValue());
+        }
+        this.getRemainingChildren().push(this.getVersion() == BinaryPersistenceCodec.VERSION_COUNTED_CHILDREN ? this.readVarLong() : -1L);
+        return elementName;
+    }
+
+    /**
+     * Reads the type of the next child of the current element
+     *
+     * @return the type of the child or {@code NODE_END} if all children of the current element have been
+     *      read
+     */
+    byte readNodeType() throws IOException {
+        long remainingChildren = this.getRemainingChildren().pop();
+        if (remainingChildren == 0) {
+            return BinaryPersistenceCodec.NODE_END;
+        }
+        byte nodeType = this.getInputStream().readByte();
+        if (nodeType == BinaryPersistenceCodec.NODE_END && remainingChildren < 0) {
+            return nodeType;
+        } else if (nodeType != BinaryPersistenceCodec.NODE_ELEMENT && nodeType != BinaryPersistenceCodec.NODE_TEXT && nodeType != BinaryPersistenceCodec.NODE_CDATA) {
+            throw new IOException("Invalid node type: " + nodeType);
+        }
+        this.getRemainingChildren().push(remainingChildren < 0 ? remainingChildren : remainingChildren - 1);
+        return nodeType;
+    }
+
+    /**
+     * Reads the content of a text or CDATA child
+     */
+    String readText() throws IOException {
+        return this.readString();
+    }
+
+    private String readValue() throws IOException {
+        byte valueType = this.getInputStream().readByte();
+        if (valueType == BinaryPersistenceCodec.VALUE_STRING) {
+            return this.readString();
+        } else if (valueType == BinaryPersistenceCodec.VALUE_DATE) {
+            return LocalDate.ofEpochDay(this.unZigZag(this.readVarLong())).toString();
+        } else if (valueType == BinaryPersistenceCodec.VALUE_LONG) {
+            return Long.toString(this.unZigZag(this.readVarLong()));
+        } else if (valueType == BinaryPersistenceCodec.VALUE_DOUBLE) {
+            return Double.toString(this.getInputStream().readDouble());
+        } else {
+            throw new IOException("Invalid value type: " + valueType);
+        }
+    }
+
+    private String readString() throws IOException {
+        long tableReference = this.readVarLong();
+        if (tableReference > 0) {
+            return this.getStringTable().get((int)(tableReference - 1));
+        } else {
+            byte[] valueBytes = new byte[(int)this.readVarLong()];
+            this.getInputStream().readFully(valueBytes);
+            String value = new String(valueBytes, StandardCharsets.UTF_8);
+            if (this.getStringTable().size() < BinaryPersistenceCodec.MAX_STRING_TABLE_SIZE && valueBytes.length <= BinaryPersistenceCodec.MAX_STRING_TABLE_ENTRY_LENGTH) {
+                this.getStringTable().add(value);
+            }
+            return value;
+        }
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte nextByte = this.getInputStream().readByte();
+            value |= (long)(nextByte & 0x7F) << shift;
+            if ((nextByte & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid variable length number");
+    }
+
+    private long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private DataInputStream getInputStream() {
+        return this.inputStream;
+    }
+    private void setInputStream(DataInputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    private List<String> getStringTable() {
+        return this.stringTable;
+    }
+    private void setStringTable(List<String> stringTable) {
+        this.stringTable = stringTable;
+    }
+
+    private byte getVersion() {
+        return this.version;
+    }
+    private void setVersion(byte version) {
+        this.version = version;
+    }
+
+    private Deque<Long> getRemainingChildren() {
+        return this.remainingChildren;
+    }
+    private void setRemainingChildren(Deque<Long> remainingChildren) {
+        this.remainingChildren = remainingChildren;
+    }
+
+}
@@ -0,0 +1,148 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+class BinaryPersistenceCodecOutput {
+
+    private static final Pattern DATE_PATTERN = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+    private static final Pattern LONG_PATTERN = Pattern.compile("0|-?[1-9]\\d{0,17}");
+    private static final Pattern DOUBLE_PATTERN = Pattern.compile("-?\\d+\\.\\d+(E-?\\d+)?");
+
+    private DataOutputStream outputStream = null;
+    private Map<String, Integer> stringTable = null;
+
+    BinaryPersistenceCodecOutput(OutputStream outputStream) {
+        this.setOutputStream(new DataOutputStream(outputStream));
+        this.setStringTable(new HashMap<>());
+    }
+
+    void writeHeader(String rootElementName) throws IOException {
+        this.getOutputStream().write(BinaryPersistenceCodec.MAGIC);
+        this.getOutputStream().writeByte(BinaryPersistenceCodec.VERSION);
+        this.writeString(rootElementName);
+    }
+
+    void writeRecordStart() throws IOException {
+        this.getOutputStream().writeByte(BinaryPersistenceCodec.FRAME_RECORD);
+    }
+
+    /**
+     * Writes the name and the attributes of an element, after which its children are written followed
+     * by {@link #writeElementEnd()}
+     *
+     * @param childElement
+     *      {@code true} if the element is a child of another element, {@code false} if it is the
+     *      element of a record
+     */
+    void writeElementStart(String elementName, List<String> attributeNames, List<String> attributeValues, boolean childElement) throws IOException {
+        if (childElement) {
+            this.getOutputStream().writeByte(BinaryPersistenceCodec.NODE_ELEMENT);
+        }
+        this.writeString(elementName);
+        this.writeVarLong(attributeNames.size());
+        for (int attributeIndex = 0; attributeIndex < attributeNames.size(); attributeIndex++) {
+            this.writeString(attributeNames.get(attributeIndex));
+            this.writeValue(attributeValues.get(attributeIndex));
+        }
+    }
+
+    void writeText(String text, boolean cdata) throws IOException {
+        this.getOutputStream().writeByte(cdata ? BinaryPersistenceCodec.NODE_CDATA : BinaryPersistenceCodec.NODE_TEXT);
+        this.writeString(text);
+    }
+
+    void writeElementEnd() throws IOException {
+        this.getOutputStream().writeByte(BinaryPersistenceCodec.NODE_END);
+    }
+
+    void writeEnd() throws IOException {
+        this.getOutputStream().writeByte(BinaryPersistenceCodec.FRAME_END);
+        this.getOutputStream().flush();
+    }
+
+    void flush() throws IOException {
+        this.getOutputStream().flush();
+    }
+
+    /**
+     * Writes an attribute value, using a primitive encoding whenever the value can be restored from
+     * that encoding without any difference to the original string
+     */
+    private void writeValue(String value) throws IOException {
+        if (value.length() == 10 && DATE_PATTERN.matcher(value).matches() && this.isDate(value)) {
+            this.getOutputStream().writeByte(BinaryPersistenceCodec.VALUE_DATE);
+            this.writeVarLong(this.zigZag(LocalDate.parse(value).toEpochDay()));
+        } else if (LONG_PATTERN.matcher(value).matches()) {
+            this.getOutputStream().writeByte(BinaryPersistenceCodec.VALUE_LONG);
+            this.writeVarLong(this.zigZag(Long.parseLong(value)));
+        } else if (DOUBLE_PATTERN.matcher(value).matches() && Double.toString(Double.parseDouble(value)).equals(value)) {
+            this.getOutputStream().writeByte(BinaryPersistenceCodec.VALUE_DOUBLE);
+            this.getOutputStream().writeDouble(Double.parseDouble(value));
+        } else {
+            this.getOutputStream().writeByte(BinaryPersistenceCodec.VALUE_STRING);
+            this.writeString(value);
+        }
+    }
+
+    private boolean isDate(String value) {
+        try {
+            return LocalDate.parse(value).toString().equals(value);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes a string either as reference into the string table (if it has been written before) or as
+     * length-prefixed UTF-8 literal, which is then added to the string table
+     */
+    private void writeString(String value) throws IOException {
+        Integer tableIndex = this.getStringTable().get(value);
+        if (tableIndex != null) {
+            this.writeVarLong(tableIndex.intValue() + 1);
+        } else {
+            byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+            this.writeVarLong(0);
+            this.writeVarLong(valueBytes.length);
+            this.getOutputStream().write(valueBytes);
+            if (this.getStringTable().size() < BinaryPersistenceCodec.MAX_STRING_TABLE_SIZE && valueBytes.length <= BinaryPersistenceCodec.MAX_STRING_TABLE_ENTRY_LENGTH) {
+                this.getStringTable().put(value, this.getStringTable().size());
+            }
+        }
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            this.getOutputStream().writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        this.getOutputStream().writeByte((int)value);
+    }
+
+    private long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private DataOutputStream getOutputStream() {
+        return this.outputStream;
+    }
+    private void setOutputStream(DataOutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    private Map<String, Integer> getStringTable() {
+        return this.stringTable;
+    }
+    private void setStringTable(Map<String, Integer> stringTable) {
+        this.stringTable = stringTable;
+    }
+
+}
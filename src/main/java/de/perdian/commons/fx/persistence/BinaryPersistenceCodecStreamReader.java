@@ -0,0 +1,388 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Exposes a single record of a binary stream as {@code XMLStreamReader}, so that records can be read
+ * from the binary format the same way as from the XML format, without creating a DOM first.
+ *
+ * The reader is positioned at the {@code START_ELEMENT} of the record when it is created and reaches
+ * its end with the matching {@code END_ELEMENT}. Namespaces, comments and processing instructions are
+ * not contained in the binary format and are therefore never reported.
+ */
+
+class BinaryPersistenceCodecStreamReader implements XMLStreamReader {
+
+    private BinaryPersistenceCodecInput codecInput = null;
+    private int eventType = 0;
+    private String localName = null;
+    private List<String> attributeNames = null;
+    private List<String> attributeValues = null;
+    private String text = null;
+    private Deque<String> openElementNames = null;
+
+    BinaryPersistenceCodecStreamReader(BinaryPersistenceCodecInput codecInput) throws IOException {
+        this.setCodecInput(codecInput);
+        this.setOpenElementNames(new ArrayDeque<>());
+        this.readElementStart();
+    }
+
+    /**
+     * Skips all remaining content of the record, so that the binary stream is positioned at the next
+     * frame
+     */
+    void skipRecord() throws XMLStreamException {
+        while (this.hasNext()) {
+            this.next();
+        }
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException("End of record has been reached");
+        }
+        try {
+            byte nodeType = this.getCodecInput().readNodeType();
+            if (nodeType == BinaryPersistenceCodec.NODE_ELEMENT) {
+                this.readElementStart();
+            } else if (nodeType == BinaryPersistenceCodec.NODE_END) {
+                this.setCurrentEvent(XMLStreamConstants.END_ELEMENT, this.getOpenElementNames().pop(), null);
+            } else {
+                String text = this.getCodecInput().readText();
+                this.setCurrentEvent(nodeType == BinaryPersistenceCodec.NODE_CDATA ? XMLStreamConstants.CDATA : XMLStreamConstants.CHARACTERS, null, text);
+            }
+            return this.getEventType();
+        } catch (IOException e) {
+            throw new XMLStreamException("Cannot read binary record stream", e);
+        }
+    }
+
+    private void readElementStart() throws IOException {
+        List<String> attributeNames = new ArrayList<>();
+        List<String> attributeValues = new ArrayList<>();
+        String elementName = this.getCodecInput().readElementStart(attributeNames, attributeValues);
+        this.getOpenElementNames().push(elementName);
+        this.setCurrentEvent(XMLStreamConstants.START_ELEMENT, elementName, null);
+        this.setAttributeNames(attributeNames);
+        this.setAttributeValues(attributeValues);
+    }
+
+    private void setCurrentEvent(int eventType, String localName, String text) {
+        this.setEventType(eventType);
+        this.setLocalName(localName);
+        this.setText(text);
+        this.setAttributeNames(List.of());
+        this.setAttributeValues(List.of());
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !this.getOpenElementNames().isEmpty();
+    }
+
+    @Override
+    public void require(int type, String namespaceURI, String localName) throws XMLStreamException {
+        if (type != this.getEventType()) {
+            throw new XMLStreamException("Expected event " + type + " but found event " + this.getEventType());
+        } else if (localName != null && !localName.equals(this.getLocalName())) {
+            throw new XMLStreamException("Expected element " + localName + " but found element " + this.getLocalName());
+        }
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+        this.require(XMLStreamConstants.START_ELEMENT, null, null);
+        StringBuilder elementText = new StringBuilder();
+        for (int eventType = this.next(); eventType != XMLStreamConstants.END_ELEMENT; eventType = this.next()) {
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                throw new XMLStreamException("Element text must not contain child elements: " + this.getLocalName());
+            }
+            elementText.append(this.getText());
+        }
+        return elementText.toString();
+    }
+
+    @Override
+    public int nextTag() throws XMLStreamException {
+        int eventType = this.next();
+        while ((eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.CDATA) && this.isWhiteSpace()) {
+            eventType = this.next();
+        }
+        if (eventType != XMLStreamConstants.START_ELEMENT && eventType != XMLStreamConstants.END_ELEMENT) {
+            throw new XMLStreamException("Expected start or end element but found text: " + this.getText());
+        }
+        return eventType;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Parameter 'name' must not be null");
+        }
+        return null;
+    }
+
+    @Override
+    public String getNamespaceURI(String prefix) {
+        return null;
+    }
+
+    @Override
+    public boolean isStartElement() {
+        return this.getEventType() == XMLStreamConstants.START_ELEMENT;
+    }
+
+    @Override
+    public boolean isEndElement() {
+        return this.getEventType() == XMLStreamConstants.END_ELEMENT;
+    }
+
+    @Override
+    public boolean isCharacters() {
+        return this.getEventType() == XMLStreamConstants.CHARACTERS;
+    }
+
+    @Override
+    public boolean isWhiteSpace() {
+        return this.hasText() && this.getText().isBlank();
+    }
+
+    @Override
+    public String getAttributeValue(String namespaceURI, String localName) {
+        int attributeIndex = this.getAttributeNames().indexOf(localName);
+        return attributeIndex < 0 ? null : this.getAttributeValues().get(attributeIndex);
+    }
+
+    @Override
+    public int getAttributeCount() {
+        this.requireStartElement();
+        return this.getAttributeNames().size();
+    }
+
+    @Override
+    public QName getAttributeName(int index) {
+        return new QName(this.getAttributeLocalName(index));
+    }
+
+    @Override
+    public String getAttributeNamespace(int index) {
+        return null;
+    }
+
+    @Override
+    public String getAttributeLocalName(int index) {
+        this.requireStartElement();
+        return this.getAttributeNames().get(index);
+    }
+
+    @Override
+    public String getAttributePrefix(int index) {
+        return null;
+    }
+
+    @Override
+    public String getAttributeType(int index) {
+        return "CDATA";
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        this.requireStartElement();
+        return this.getAttributeValues().get(index);
+    }
+
+    @Override
+    public boolean isAttributeSpecified(int index) {
+        return true;
+    }
+
+    private void requireStartElement() {
+        if (!this.isStartElement()) {
+            throw new IllegalStateException("Current event is not a start element: " + this.getEventType());
+        }
+    }
+
+    @Override
+    public int getNamespaceCount() {
+        return 0;
+    }
+
+    @Override
+    public String getNamespacePrefix(int index) {
+        throw new IndexOutOfBoundsException("No namespaces available");
+    }
+
+    @Override
+    public String getNamespaceURI(int index) {
+        throw new IndexOutOfBoundsException("No namespaces available");
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        return null;
+    }
+
+    @Override
+    public int getEventType() {
+        return this.eventType;
+    }
+    private void setEventType(int eventType) {
+        this.eventType = eventType;
+    }
+
+    @Override
+    public String getText() {
+        if (!this.hasText()) {
+            throw new IllegalStateException("Current event has no text: " + this.getEventType());
+        }
+        return this.text;
+    }
+    private void setText(String text) {
+        this.text = text;
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        return this.getText().toCharArray();
+    }
+
+    @Override
+    public int getTextCharacters(int sourceStart, char[] target, int targetStart, int length) {
+        String text = this.getText();
+        int copyLength = Math.max(0, Math.min(length, text.length() - sourceStart));
+        text.getChars(sourceStart, sourceStart + copyLength, target, targetStart);
+        return copyLength;
+    }
+
+    @Override
+    public int getTextStart() {
+        return 0;
+    }
+
+    @Override
+    public int getTextLength() {
+        return this.getText().length();
+    }
+
+    @Override
+    public String getEncoding() {
+        return null;
+    }
+
+    @Override
+    public boolean hasText() {
+        return this.getEventType() == XMLStreamConstants.CHARACTERS || this.getEventType() == XMLStreamConstants.CDATA;
+    }
+
+    @Override
+    public Location getLocation() {
+        return null;
+    }
+
+    @Override
+    public QName getName() {
+        return new QName(this.getLocalName());
+    }
+
+    @Override
+    public String getLocalName() {
+        if (!this.hasName()) {
+            throw new IllegalStateException("Current event has no name: " + this.getEventType());
+        }
+        return this.localName;
+    }
+    private void setLocalName(String localName) {
+        this.localName = localName;
+    }
+
+    @Override
+    public boolean hasName() {
+        return this.getEventType() == XMLStreamConstants.START_ELEMENT || this.getEventType() == XMLStreamConstants.END_ELEMENT;
+    }
+
+    @Override
+    public String getNamespaceURI() {
+        return null;
+    }
+
+    @Override
+    public String getPrefix() {
+        return null;
+    }
+
+    @Override
+    public String getVersion() {
+        return null;
+    }
+
+    @Override
+    public boolean isStandalone() {
+        return false;
+    }
+
+    @Override
+    public boolean standaloneSet() {
+        return false;
+    }
+
+    @Override
+    public String getCharacterEncodingScheme() {
+        return null;
+    }
+
+    @Override
+    public String getPITarget() {
+        return null;
+    }
+
+    @Override
+    public String getPIData() {
+        return null;
+    }
+
+    private BinaryPersistenceCodecInput getCodecInput() {
+        return this.codecInput;
+    }
+    private void setCodecInput(BinaryPersistenceCodecInput codecInput) {
+        this.codecInput = codecInput;
+    }
+
+    private List<String> getAttributeNames() {
+        return this.attributeNames;
+    }
+    private void setAttributeNames(List<String> attributeNames) {
+        this.attributeNames = attributeNames;
+    }
+
+    private List<String> getAttributeValues() {
+        return this.attributeValues;
+    }
+    private void setAttributeValues(List<String> attributeValues) {
+        this.attributeValues = attributeValues;
+    }
+
+    private Deque<String> getOpenElementNames() {
+        return this.openElementNames;
+    }
+    private void setOpenElementNames(Deque<String> openElementNames) {
+        this.openElementNames = openElementNames;
+    }
+
+}
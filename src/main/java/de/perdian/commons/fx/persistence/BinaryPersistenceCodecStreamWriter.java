@@ -0,0 +1,282 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Exposes the records of a binary stream as {@code XMLStreamWriter}, so that records can be written
+ * into the binary format the same way as into the XML format, without creating a DOM first.
+ *
+ * Every element written while no other element is open is written as the element of a record, so the
+ * caller must start every record frame before writing the element of the record. Namespaces, comments
+ * and processing instructions cannot be represented in the binary format and are ignored.
+ */
+
+class BinaryPersistenceCodecStreamWriter implements XMLStreamWriter {
+
+    private BinaryPersistenceCodecOutput codecOutput = null;
+    private String pendingElementName = null;
+    private List<String> pendingAttributeNames = null;
+    private List<String> pendingAttributeValues = null;
+    private boolean pendingElementEmpty = false;
+    private int depth = 0;
+
+    BinaryPersistenceCodecStreamWriter(BinaryPersistenceCodecOutput codecOutput) {
+        this.setCodecOutput(codecOutput);
+        this.setPendingAttributeNames(new ArrayList<>());
+        this.setPendingAttributeValues(new ArrayList<>());
+    }
+
+    @Override
+    public void writeStartElement(String localName) throws XMLStreamException {
+        this.writePendingElement();
+        this.setPendingElementName(localName);
+        this.setPendingElementEmpty(false);
+    }
+
+    @Override
+    public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+        this.writeStartElement(localName);
+    }
+
+    @Override
+    public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        this.writeStartElement(localName);
+    }
+
+    @Override
+    public void writeEmptyElement(String localName) throws XMLStreamException {
+        this.writeStartElement(localName);
+        this.setPendingElementEmpty(true);
+    }
+
+    @Override
+    public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+        this.writeEmptyElement(localName);
+    }
+
+    @Override
+    public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        this.writeEmptyElement(localName);
+    }
+
+    @Override
+    public void writeAttribute(String localName, String value) throws XMLStreamException {
+        if (this.getPendingElementName() == null) {
+            throw new XMLStreamException("Attribute must directly follow the start of an element: " + localName);
+        }
+        this.getPendingAttributeNames().add(localName);
+        this.getPendingAttributeValues().add(value);
+    }
+
+    @Override
+    public void writeAttribute(String prefix, String namespaceURI, String localName, String value) throws XMLStreamException {
+        this.writeAttribute(localName, value);
+    }
+
+    @Override
+    public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+        this.writeAttribute(localName, value);
+    }
+
+    @Override
+    public void writeEndElement() throws XMLStreamException {
+        this.writePendingElement();
+        if (this.getDepth() == 0) {
+            throw new XMLStreamException("No element has been started");
+        }
+        try {
+            this.getCodecOutput().writeElementEnd();
+            this.setDepth(this.getDepth() - 1);
+        } catch (IOException e) {
+            throw new XMLStreamException("Cannot write binary record stream", e);
+        }
+    }
+
+    @Override
+    public void writeCharacters(String text) throws XMLStreamException {
+        this.writeText(text, false);
+    }
+
+    @Override
+    public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+        this.writeText(new String(text, start, len), false);
+    }
+
+    @Override
+    public void writeCData(String data) throws XMLStreamException {
+        this.writeText(data, true);
+    }
+
+    private void writeText(String text, boolean cdata) throws XMLStreamException {
+        this.writePendingElement();
+        if (this.getDepth() > 0 && !text.isEmpty()) {
+            try {
+                this.getCodecOutput().writeText(text, cdata);
+            } catch (IOException e) {
+                throw new XMLStreamException("Cannot write binary record stream", e);
+            }
+        }
+    }
+
+    /**
+     * Writes the element that has been started, once it is known that no further attributes follow
+     */
+    private void writePendingElement() throws XMLStreamException {
+        String elementName = this.getPendingElementName();
+        if (elementName != null) {
+            try {
+                this.getCodecOutput().writeElementStart(elementName, this.getPendingAttributeNames(), this.getPendingAttributeValues(), this.getDepth() > 0);
+                this.setDepth(this.getDepth() + 1);
+                this.setPendingElementName(null);
+                this.getPendingAttributeNames().clear();
+                this.getPendingAttributeValues().clear();
+                if (this.isPendingElementEmpty()) {
+                    this.writeEndElement();
+                }
+            } catch (IOException e) {
+                throw new XMLStreamException("Cannot write binary record stream", e);
+            }
+        }
+    }
+
+    @Override
+    public void writeEndDocument() throws XMLStreamException {
+        this.writePendingElement();
+        while (this.getDepth() > 0) {
+            this.writeEndElement();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void flush() throws XMLStreamException {
+        try {
+            this.getCodecOutput().flush();
+        } catch (IOException e) {
+            throw new XMLStreamException("Cannot write binary record stream", e);
+        }
+    }
+
+    @Override
+    public void writeNamespace(String prefix, String namespaceURI) {
+    }
+
+    @Override
+    public void writeDefaultNamespace(String namespaceURI) {
+    }
+
+    @Override
+    public void writeComment(String data) throws XMLStreamException {
+        this.writePendingElement();
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target) throws XMLStreamException {
+        this.writePendingElement();
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+        this.writePendingElement();
+    }
+
+    @Override
+    public void writeDTD(String dtd) {
+    }
+
+    @Override
+    public void writeEntityRef(String name) throws XMLStreamException {
+        throw new XMLStreamException("Entity references cannot be written into the binary format: " + name);
+    }
+
+    @Override
+    public void writeStartDocument() {
+    }
+
+    @Override
+    public void writeStartDocument(String version) {
+    }
+
+    @Override
+    public void writeStartDocument(String encoding, String version) {
+    }
+
+    @Override
+    public String getPrefix(String uri) {
+        return null;
+    }
+
+    @Override
+    public void setPrefix(String prefix, String uri) {
+    }
+
+    @Override
+    public void setDefaultNamespace(String uri) {
+    }
+
+    @Override
+    public void setNamespaceContext(NamespaceContext context) {
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        return null;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        throw new IllegalArgumentException("Property not supported: " + name);
+    }
+
+    private BinaryPersistenceCodecOutput getCodecOutput() {
+        return this.codecOutput;
+    }
+    private void setCodecOutput(BinaryPersistenceCodecOutput codecOutput) {
+        this.codecOutput = codecOutput;
+    }
+
+    private String getPendingElementName() {
+        return this.pendingElementName;
+    }
+    private void setPendingElementName(String pendingElementName) {
+        this.pendingElementName = pendingElementName;
+    }
+
+    private List<String> getPendingAttributeNames() {
+        return this.pendingAttributeNames;
+    }
+    private void setPendingAttributeNames(List<String> pendingAttributeNames) {
+        this.pendingAttributeNames = pendingAttributeNames;
+    }
+
+    private List<String> getPendingAttributeValues() {
+        return this.pendingAttributeValues;
+    }
+    private void setPendingAttributeValues(List<String> pendingAttributeValues) {
+        this.pendingAttributeValues = pendingAttributeValues;
+    }
+
+    private boolean isPendingElementEmpty() {
+        return this.pendingElementEmpty;
+    }
+    private void setPendingElementEmpty(boolean pendingElementEmpty) {
+        this.pendingElementEmpty = pendingElementEmpty;
+    }
+
+    private int getDepth() {
+        return this.depth;
+    }
+    private void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+}
@@ -0,0 +1,49 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Defines the format in which records are stored.
+ *
+ * Implementations must be stateless, so that a single codec can be used by multiple threads at the
+ * same time. All state needed while reading or writing must be kept local to the invocation.
+ *
+ * @author Christian Seifert
+ */
+
+public interface PersistenceCodec {
+
+    /**
+     * Reads the records from the given stream, handing every record to the given consumer as soon as
+     * it has been read.
+     */
+    <T extends PersistenceEnabled> void readRecords(InputStream inputStream, Class<T> recordClass, Supplier<T> recordFactory, Consumer<T> recordConsumer, PersistenceContext context) throws IOException;
+
+    /**
+     * Reads the records from the given stream, decoding them on the given {@code ForkJoinPool}. The
+     * record factory must therefore be safe to be called from multiple threads. The default
+     * implementation reads all records sequentially.
+     *
+     * @return
+     *      the records in the order in which they are contained in the stream
+     */
+    default <T extends PersistenceEnabled> List<T> readRecordsParallel(InputStream inputStream, Class<T> recordClass, Supplier<T> recordFactory, ForkJoinPool forkJoinPool, PersistenceContext context) throws IOException {
+        List<T> records = new ArrayList<>();
+        this.readRecords(inputStream, recordClass, recordFactory, records::add, context);
+        return records;
+    }
+
+    /**
+     * Writes all persistable records into the given stream
+     */
+    void writeRecords(Collection<? extends PersistenceEnabled> records, OutputStream outputStream, PersistenceContext context) throws IOException;
+
+}
@@ -0,0 +1,146 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+
+/**
+ * Provides the XML parsers and serializers used to read and write records.
+ *
+ * Looking up and configuring the JAXP factories is expensive, so a context creates the factories only
+ * once and caches the {@code DocumentBuilder} and {@code Transformer} instances (which are not
+ * thread-safe) per thread. A context can therefore be shared between all threads reading and writing
+ * records. Once the first parser or serializer has been requested, changes to the configuration of
+ * the context are no longer reflected.
+ *
+ * By default, secure processing is enabled as in the JDK defaults, and neither external DTDs nor
+ * external entities are loaded, as the records written by this library never reference any of them.
+ * Both the DOM and the streaming parsers leave references to external entities unresolved unless
+ * {@code loadExternalDtd} is enabled explicitly.
+ *
+ * @author Christian Seifert
+ */
+
+public class PersistenceContext {
+
+    private static final PersistenceContext DEFAULT_CONTEXT = new PersistenceContext();
+
+    private boolean secureProcessing = true;
+    private boolean loadExternalDtd = false;
+    private volatile PersistenceContextFactories factories = null;
+    private final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<>();
+    private final ThreadLocal<Transformer> transformers = new ThreadLocal<>();
+
+    /**
+     * Gets the context that is used whenever no explicit context is passed to one of the persistence
+     * methods
+     */
+    public static PersistenceContext getDefault() {
+        return DEFAULT_CONTEXT;
+    }
+
+    public DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder documentBuilder = this.documentBuilders.get();
+        if (documentBuilder == null) {
+            documentBuilder = this.getFactories().getDocumentBuilderFactory().newDocumentBuilder();
+            this.documentBuilders.set(documentBuilder);
+        } else {
+            documentBuilder.reset();
+        }
+        return documentBuilder;
+    }
+
+    public Transformer getTransformer() throws TransformerConfigurationException {
+        Transformer transformer = this.transformers.get();
+        if (transformer == null) {
+            transformer = this.getFactories().getTransformerFactory().newTransformer();
+            this.transformers.set(transformer);
+        } else {
+            transformer.reset();
+        }
+        return transformer;
+    }
+
+    public XMLStreamReader createXMLStreamReader(InputStream inputStream) throws XMLStreamException {
+        return this.getFactories().getXmlInputFactory().createXMLStreamReader(inputStream);
+    }
+
+    public XMLStreamWriter createXMLStreamWriter(OutputStream outputStream) throws XMLStreamException {
+        return this.getFactories().getXmlOutputFactory().createXMLStreamWriter(outputStream, "UTF-8");
+    }
+
+    private PersistenceContextFactories getFactories() {
+        PersistenceContextFactories factories = this.factories;
+        if (factories == null) {
+            synchronized (this) {
+                if (this.factories == null) {
+                    this.factories = this.createFactories();
+                }
+                factories = this.factories;
+            }
+        }
+        return factories;
+    }
+
+    private PersistenceContextFactories createFactories() {
+        try {
+
+            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+            documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, this.isSecureProcessing());
+            documentBuilderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", this.isLoadExternalDtd());
+            documentBuilderFactory.setFeature("http://xml.org/sax/features/external-general-entities", this.isLoadExternalDtd());
+            documentBuilderFactory.setFeature("http://xml.org/sax/features/external-parameter-entities", this.isLoadExternalDtd());
+            documentBuilderFactory.setExpandEntityReferences(this.isLoadExternalDtd());
+            documentBuilderFactory.setXIncludeAware(false);
+
+            TransformerFactory transformerFactory = TransformerFactory.newInstance();
+            transformerFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, this.isSecureProcessing());
+
+            XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+            xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, this.isLoadExternalDtd());
+            xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, this.isLoadExternalDtd());
+
+            XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+
+            return new PersistenceContextFactories(documentBuilderFactory, transformerFactory, xmlInputFactory, xmlOutputFactory);
+
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot configure XML factories", e);
+        }
+    }
+
+    public PersistenceContext secureProcessing(boolean secureProcessing) {
+        this.setSecureProcessing(secureProcessing);
+        return this;
+    }
+    private boolean isSecureProcessing() {
+        return this.secureProcessing;
+    }
+    private void setSecureProcessing(boolean secureProcessing) {
+        this.secureProcessing = secureProcessing;
+    }
+
+    public PersistenceContext loadExternalDtd(boolean loadExternalDtd) {
+        this.setLoadExternalDtd(loadExternalDtd);
+        return this;
+    }
+    private boolean isLoadExternalDtd() {
+        return this.loadExternalDtd;
+    }
+    private void setLoadExternalDtd(boolean loadExternalDtd) {
+        this.loadExternalDtd = loadExternalDtd;
+    }
+
+}
@@ -0,0 +1,50 @@
+package de.perdian.commons.fx.persistence;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.transform.TransformerFactory;
+
+class PersistenceContextFactories {
+
+    private DocumentBuilderFactory documentBuilderFactory = null;
+    private TransformerFactory transformerFactory = null;
+    private XMLInputFactory xmlInputFactory = null;
+    private XMLOutputFactory xmlOutputFactory = null;
+
+    PersistenceContextFactories(DocumentBuilderFactory documentBuilderFactory, TransformerFactory transformerFactory, XMLInputFactory xmlInputFactory, XMLOutputFactory xmlOutputFactory) {
+        this.setDocumentBuilderFactory(documentBuilderFactory);
+        this.setTransformerFactory(transformerFactory);
+        this.setXmlInputFactory(xmlInputFactory);
+        this.setXmlOutputFactory(xmlOutputFactory);
+    }
+
+    DocumentBuilderFactory getDocumentBuilderFactory() {
+        return this.documentBuilderFactory;
+    }
+    private void setDocumentBuilderFactory(DocumentBuilderFactory documentBuilderFactory) {
+        this.documentBuilderFactory = documentBuilderFactory;
+    }
+
+    TransformerFactory getTransformerFactory() {
+        return this.transformerFactory;
+    }
+    private void setTransformerFactory(TransformerFactory transformerFactory) {
+        this.transformerFactory = transformerFactory;
+    }
+
+    XMLInputFactory getXmlInputFactory() {
+        return this.xmlInputFactory;
+    }
+    private void setXmlInputFactory(XMLInputFactory xmlInputFactory) {
+        this.xmlInputFactory = xmlInputFactory;
+    }
+
+    XMLOutputFactory getXmlOutputFactory() {
+        return this.xmlOutputFactory;
+    }
+    private void setXmlOutputFactory(XMLOutputFactory xmlOutputFactory) {
+        this.xmlOutputFactory = xmlOutputFactory;
+    }
+
+}
@@ -1,32 +1,26 @@
 package de.perdian.commons.fx.persistence;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
-import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import javafx.beans.value.ChangeListener;
-import javafx.collections.FXCollections;
-import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 
 public interface PersistenceEnabled {
@@ -42,28 +36,7 @@ public interface PersistenceEnabled {
     }
 
     public static <T extends PersistenceEnabled> ObservableList<T> loadRecordsObserved(Path storageFile, Class<T> recordClass, Supplier<T> recordFacory) {
-
-        ObservableList<T> records = FXCollections.observableArrayList();
-        ChangeListener<Object> changeListener = (o, oldValue, newValue) -> PersistenceEnabled.writeRecords(records, storageFile);
-        records.addListener((ListChangeListener.Change<? extends T> change) -> {
-            while (change.next()) {
-                change.getRemoved().forEach(removedRecord -> removedRecord.removeChangeListener(changeListener));
-                change.getAddedSubList().forEach(addedRecord -> addedRecord.addChangeListener(changeListener));
-            }
-        });
-
-        if (Files.exists(storageFile)) {
-            LoggerFactory.getLogger(PersistenceEnabled.class).info("Loading records of class {} from file: {}", recordClass.getName(), storageFile);
-            try (InputStream storageFileStream = new BufferedInputStream(Files.newInputStream(storageFile))) {
-                records.addAll(PersistenceEnabled.loadRecords(storageFileStream, recordClass, recordFacory));
-            } catch (Exception e) {
-                LoggerFactory.getLogger(PersistenceEnabled.class).warn("Cannot load records of class {} from file: {}", recordClass.getName(), storageFile, e);
-            }
-        }
-
-        records.addListener((ListChangeListener.Change<? extends T> change) -> PersistenceEnabled.writeRecords(records, storageFile));
-        return records;
-
+        return new PersistenceStoreBuilder<>(recordClass).recordFactory(recordFacory).storageFile(storageFile).fragmentCache(true).buildStore().getRecords();
     }
 
     public static <T extends PersistenceEnabled> List<T> loadRecords(InputStream inputStream, Class<T> recordClass) throws IOException {
@@ -71,8 +44,12 @@ public interface PersistenceEnabled {
     }
 
     public static <T extends PersistenceEnabled> List<T> loadRecords(InputStream inputStream, Class<T> recordClass, Supplier<T> recordFactory) throws IOException {
+        return PersistenceEnabled.loadRecords(inputStream, recordClass, recordFactory, PersistenceContext.getDefault());
+    }
+
+    public static <T extends PersistenceEnabled> List<T> loadRecords(InputStream inputStream, Class<T> recordClass, Supplier<T> recordFactory, PersistenceContext context) throws IOException {
         try {
-            DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            DocumentBuilder documentBuilder = context.getDocumentBuilder();
             Document document = documentBuilder.parse(inputStream);
             NodeList recordElements = document.getDocumentElement().getElementsByTagName(recordClass.getSimpleName());
             List<T> records = new ArrayList<>();
@@ -88,10 +65,67 @@ public interface PersistenceEnabled {
         }
     }
 
+    /**
+     * Loads the records from the given stream using a StAX reader, so that no DOM representation of
+     * the complete stream needs to be created. The format is the same as used in {@link #loadRecords}.
+     */
+    public static <T extends PersistenceEnabled> List<T> loadRecordsStreaming(InputStream inputStream, Class<T> recordClass, Supplier<T> recordFactory) throws IOException {
+        return PersistenceEnabled.loadRecordsStreaming(inputStream, recordClass, recordFactory, PersistenceContext.getDefault());
+    }
+
+    public static <T extends PersistenceEnabled> List<T> loadRecordsStreaming(InputStream inputStream, Class<T> recordClass, Supplier<T> recordFactory, PersistenceContext context) throws IOException {
+        List<T> records = new ArrayList<>();
+        PersistenceEnabled.readRecordsStreaming(inputStream, recordClass, recordFactory, records::add, context);
+        return records;
+    }
+
+    /**
+     * Loads the records from the given stream, decoding them in parallel on the common
+     * {@code ForkJoinPool}. The record elements are read sequentially and handed to the pool in
+     * chunks, so the record factory must be safe to be called from multiple threads. The returned
+     * list contains the records in the order in which they are contained in the stream.
+     */
+    public static <T extends PersistenceEnabled> List<T> loadRecordsParallel(InputStream inputStream, Class<T> recordClass) throws IOException {
+        return PersistenceEnabled.loadRecordsParallel(inputStream, recordClass, new PersistenceEnabledDefaultConstructorSupplier<>(recordClass), ForkJoinPool.commonPool(), PersistenceContext.getDefault());
+    }
+
+    public static <T extends PersistenceEnabled> List<T> loadRecordsParallel(InputStream inputStream, Class<T> recordClass, Supplier<T> recordFactory, ForkJoinPool forkJoinPool, PersistenceContext context) throws IOException {
+        return new XmlPersistenceCodec().readRecordsParallel(inputStream, recordClass, recordFactory, forkJoinPool, context);
+    }
+
+    /**
+     * Reads the records from the given stream one after another, handing every record to the given
+     * consumer as soon as it has been read.
+     */
+    public static <T extends PersistenceEnabled> void readRecordsStreaming(InputStream inputStream, Class<T> recordClass, Supplier<T> recordFactory, Consumer<T> recordConsumer) throws IOException {
+        PersistenceEnabled.readRecordsStreaming(inputStream, recordClass, recordFactory, recordConsumer, PersistenceContext.getDefault());
+    }
+
+    public static <T extends PersistenceEnabled> void readRecordsStreaming(InputStream inputStream, Class<T> recordClass, Supplier<T> recordFactory, Consumer<T> recordConsumer, PersistenceContext context) throws IOException {
+        PersistenceEnabledStreamSupport.readRecords(inputStream, recordClass, recordFactory, recordConsumer, context);
+    }
+
+    /**
+     * Writes the records into the given stream using a StAX writer, so that no DOM representation of
+     * the complete set of records needs to be created. The format is the same as used in
+     * {@link #writeRecords}.
+     */
+    public static <T extends PersistenceEnabled> void writeRecordsStreaming(Collection<T> records, OutputStream outputStream) throws IOException {
+        PersistenceEnabled.writeRecordsStreaming(records, outputStream, PersistenceContext.getDefault());
+    }
+
+    public static <T extends PersistenceEnabled> void writeRecordsStreaming(Collection<T> records, OutputStream outputStream, PersistenceContext context) throws IOException {
+        PersistenceEnabledStreamSupport.writeRecords(records, outputStream, context);
+    }
+
     public static <T extends PersistenceEnabled> void writeRecords(Collection<T> records, OutputStream outputStream) throws IOException {
+        PersistenceEnabled.writeRecords(records, outputStream, PersistenceContext.getDefault());
+    }
+
+    public static <T extends PersistenceEnabled> void writeRecords(Collection<T> records, OutputStream outputStream, PersistenceContext context) throws IOException {
         try {
 
-            DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            DocumentBuilder documentBuilder = context.getDocumentBuilder();
             Document document = documentBuilder.newDocument();
             Element rootElement = document.createElement("records");
             document.appendChild(rootElement);
@@ -103,8 +137,7 @@ public interface PersistenceEnabled {
                 }
             }
 
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
+            Transformer transformer = context.getTransformer();
             transformer.transform(new DOMSource(document), new StreamResult(outputStream));
 
         } catch (Exception e) {
@@ -112,22 +145,4 @@ public interface PersistenceEnabled {
         }
     }
 
-    private static <T extends PersistenceEnabled> void writeRecords(List<T> records, Path storageFile) {
-        if (!Files.exists(storageFile.getParent())) {
-            try {
-                LoggerFactory.getLogger(PersistenceEnabled.class).debug("Creating target directory: {}", storageFile.getParent());
-                Files.createDirectories(storageFile.getParent());
-            } catch (IOException e) {
-                LoggerFactory.getLogger(PersistenceEnabled.class).warn("Cannot create target directory: {}", storageFile.getParent(), e);
-            }
-        }
-        LoggerFactory.getLogger(PersistenceEnabled.class).debug("Storing {} records into file: {}", records.size(), storageFile);
-        try (OutputStream storageFileStream = new BufferedOutputStream(Files.newOutputStream(storageFile))) {
-            PersistenceEnabled.writeRecords(records, storageFileStream);
-            storageFileStream.flush();
-        } catch (Exception e) {
-            LoggerFactory.getLogger(PersistenceEnabled.class).warn("Cannot write records into file: {}", storageFile, e);
-        }
-    }
-
 }
@@ -0,0 +1,77 @@
+package de.perdian.commons.fx.persistence;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches a factory invoking the default constructor per record class.
+ *
+ * The factory is a {@code Supplier} generated via the {@code LambdaMetafactory}, so that creating a
+ * new record is as fast as calling the constructor directly. If no such {@code Supplier} can be
+ * generated for a class (for example because the class isn't accessible from this module), a
+ * {@code MethodHandle} of the constructor is used instead. If the package of the class isn't opened
+ * to this module, the handle is looked up via the public lookup, so that the class and its default
+ * constructor must be public in that case, just as for {@code Constructor.newInstance}. Using a
+ * {@code ClassValue} makes sure that the cache doesn't prevent record classes from being unloaded.
+ */
+
+class PersistenceEnabledDefaultConstructorFactories extends ClassValue<Supplier<?>> {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistenceEnabledDefaultConstructorFactories.class);
+    private static final PersistenceEnabledDefaultConstructorFactories INSTANCE = new PersistenceEnabledDefaultConstructorFactories();
+
+    @SuppressWarnings("unchecked")
+    static <T> Supplier<T> getFactory(Class<T> type) {
+        return (Supplier<T>)INSTANCE.get(type);
+    }
+
+    @Override
+    protected Supplier<?> computeValue(Class<?> type) {
+        MethodHandles.Lookup lookup = null;
+        try {
+            lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            log.debug("Cannot access class {} privately, using public constructor instead", type.getName(), e);
+            return this.createMethodHandleFactory(this.findConstructor(MethodHandles.publicLookup(), type));
+        }
+        MethodHandle constructorHandle = this.findConstructor(lookup, type);
+        try {
+            CallSite callSite = LambdaMetafactory.metafactory(lookup, "get", MethodType.methodType(Supplier.class), MethodType.methodType(Object.class), constructorHandle, MethodType.methodType(type));
+            return (Supplier<?>)callSite.getTarget().invoke();
+        } catch (Throwable e) {
+            log.debug("Cannot generate factory for class {}, using method handle instead", type.getName(), e);
+            return this.createMethodHandleFactory(constructorHandle);
+        }
+    }
+
+    private MethodHandle findConstructor(MethodHandles.Lookup lookup, Class<?> type) {
+        try {
+            return lookup.findConstructor(type, MethodType.methodType(void.class));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("No default constructor found for class: " + type.getName());
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access default constructor of class: " + type.getName(), e);
+        }
+    }
+
+    private Supplier<?> createMethodHandleFactory(MethodHandle constructorHandle) {
+        MethodHandle factoryHandle = constructorHandle.asType(MethodType.methodType(Object.class));
+        return () -> {
+            try {
+                return factoryHandle.invokeExact();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalArgumentException("Cannot instantiate new record", e);
+            }
+        };
+    }
+
+}
@@ -1,34 +1,25 @@
 package de.perdian.commons.fx.persistence;
 
-import java.lang.reflect.Constructor;
 import java.util.function.Supplier;
 
 class PersistenceEnabledDefaultConstructorSupplier<T> implements Supplier<T> {
 
-    private Constructor<T> constructor = null;
+    private Supplier<T> factory = null;
 
     PersistenceEnabledDefaultConstructorSupplier(Class<T> type) {
-        try {
-            this.setConstructor(type.getDeclaredConstructor());
-        } catch (NoSuchMethodException e) {
-            throw new IllegalArgumentException("No default constructor found for class: " + type.getName());
-        }
+        this.setFactory(PersistenceEnabledDefaultConstructorFactories.getFactory(type));
     }
 
     @Override
     public T get() {
-        try {
-            return this.getConstructor().newInstance();
-        } catch (ReflectiveOperationException e) {
-            throw new IllegalArgumentException("Cannot instantiate new record", e);
-        }
+        return this.getFactory().get();
     }
 
-    private Constructor<T> getConstructor() {
-        return this.constructor;
+    private Supplier<T> getFactory() {
+        return this.factory;
     }
-    private void setConstructor(Constructor<T> constructor) {
-        this.constructor = constructor;
+    private void setFactory(Supplier<T> factory) {
+        this.factory = factory;
     }
 
-}
\ No newline at end of file
+}
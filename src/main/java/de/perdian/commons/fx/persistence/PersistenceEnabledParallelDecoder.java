@@ -0,0 +1,186 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Decodes record elements into records on a {@code ForkJoinPool}.
+ *
+ * The elements are copied into chunks of XML while they are being read, and every complete chunk is
+ * decoded in the pool while the reader continues with the next chunk. Decoding a chunk dispatches
+ * every record the same way as a sequential read does, so that records implementing
+ * {@code PersistenceStreamingEnabled} are read from a StAX reader, and all other records from their
+ * own {@code Document}. The records are returned in the order in which the elements have been passed
+ * to the decoder.
+ */
+
+class PersistenceEnabledParallelDecoder<T extends PersistenceEnabled> {
+
+    static final int DEFAULT_CHUNK_SIZE = 256;
+
+    private Class<T> recordClass = null;
+    private Supplier<T> recordFactory = null;
+    private ForkJoinPool forkJoinPool = null;
+    private int chunkSize = 0;
+    private PersistenceContext context = null;
+    private ByteArrayOutputStream currentChunk = null;
+    private XMLStreamWriter currentChunkWriter = null;
+    private int currentChunkRecords = 0;
+    private List<ForkJoinTask<List<T>>> chunkTasks = null;
+
+    PersistenceEnabledParallelDecoder(Class<T> recordClass, Supplier<T> recordFactory, ForkJoinPool forkJoinPool, int chunkSize, PersistenceContext context) {
+        this.setRecordClass(recordClass);
+        this.setRecordFactory(recordFactory);
+        this.setForkJoinPool(forkJoinPool);
+        this.setChunkSize(chunkSize);
+        this.setContext(context);
+        this.setChunkTasks(new ArrayList<>());
+    }
+
+    /**
+     * Copies the record element the reader is currently positioned at into the current chunk, so that
+     * afterwards the reader is positioned at the matching {@code END_ELEMENT}
+     */
+    void accept(XMLStreamReader xmlReader) throws XMLStreamException {
+        if (this.getCurrentChunk() == null) {
+            ByteArrayOutputStream currentChunk = new ByteArrayOutputStream();
+            currentChunk.writeBytes(PersistenceEnabledStreamSupport.DOCUMENT_PREFIX);
+            this.setCurrentChunk(currentChunk);
+            this.setCurrentChunkWriter(this.getContext().createXMLStreamWriter(currentChunk));
+            this.setCurrentChunkRecords(0);
+        }
+        PersistenceEnabledStreamSupport.copyElement(xmlReader, this.getCurrentChunkWriter());
+        this.setCurrentChunkRecords(this.getCurrentChunkRecords() + 1);
+        if (this.getCurrentChunkRecords() >= this.getChunkSize()) {
+            this.submitCurrentChunk();
+        }
+    }
+
+    /**
+     * Waits until all chunks have been decoded
+     *
+     * @return
+     *      the decoded records in the order of their elements
+     */
+    List<T> join() throws XMLStreamException {
+        this.submitCurrentChunk();
+        try {
+            List<T> records = new ArrayList<>();
+            for (ForkJoinTask<List<T>> chunkTask : this.getChunkTasks()) {
+                records.addAll(chunkTask.join());
+            }
+            return records;
+        } catch (RuntimeException e) {
+            this.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Cancels the decoding of all chunks not yet started, for example because reading the elements
+     * has failed
+     */
+    void cancel() {
+        this.getChunkTasks().forEach(chunkTask -> chunkTask.cancel(false));
+    }
+
+    private void submitCurrentChunk() throws XMLStreamException {
+        ByteArrayOutputStream currentChunk = this.getCurrentChunk();
+        if (currentChunk != null) {
+            this.getCurrentChunkWriter().flush();
+            this.getCurrentChunkWriter().close();
+            currentChunk.writeBytes(PersistenceEnabledStreamSupport.DOCUMENT_SUFFIX);
+            byte[] chunkContent = currentChunk.toByteArray();
+            int chunkRecords = this.getCurrentChunkRecords();
+            Class<T> recordClass = this.getRecordClass();
+            Supplier<T> recordFactory = this.getRecordFactory();
+            PersistenceContext context = this.getContext();
+            this.getChunkTasks().add(this.getForkJoinPool().submit(() -> {
+                List<T> records = new ArrayList<>(chunkRecords);
+                try {
+                    PersistenceEnabledStreamSupport.readRecords(new ByteArrayInputStream(chunkContent), recordClass, recordFactory, records::add, context);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return records;
+            }));
+            this.setCurrentChunk(null);
+            this.setCurrentChunkWriter(null);
+        }
+    }
+
+    private Class<T> getRecordClass() {
+        return this.recordClass;
+    }
+    private void setRecordClass(Class<T> recordClass) {
+        this.recordClass = recordClass;
+    }
+
+    private Supplier<T> getRecordFactory() {
+        return this.recordFactory;
+    }
+    private void setRecordFactory(Supplier<T> recordFactory) {
+        this.recordFactory = recordFactory;
+    }
+
+    private ForkJoinPool getForkJoinPool() {
+        return this.forkJoinPool;
+    }
+    private void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    private int getChunkSize() {
+        return this.chunkSize;
+    }
+    private void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    private PersistenceContext getContext() {
+        return this.context;
+    }
+    private void setContext(PersistenceContext context) {
+        this.context = context;
+    }
+
+    private ByteArrayOutputStream getCurrentChunk() {
+        return this.currentChunk;
+    }
+    private void setCurrentChunk(ByteArrayOutputStream currentChunk) {
+        this.currentChunk = currentChunk;
+    }
+
+    private XMLStreamWriter getCurrentChunkWriter() {
+        return this.currentChunkWriter;
+    }
+    private void setCurrentChunkWriter(XMLStreamWriter currentChunkWriter) {
+        this.currentChunkWriter = currentChunkWriter;
+    }
+
+    private int getCurrentChunkRecords() {
+        return this.currentChunkRecords;
+    }
+    private void setCurrentChunkRecords(int currentChunkRecords) {
+        this.currentChunkRecords = currentChunkRecords;
+    }
+
+    private List<ForkJoinTask<List<T>>> getChunkTasks() {
+        return this.chunkTasks;
+    }
+    private void setChunkTasks(List<ForkJoinTask<List<T>>> chunkTasks) {
+        this.chunkTasks = chunkTasks;
+    }
+
+}
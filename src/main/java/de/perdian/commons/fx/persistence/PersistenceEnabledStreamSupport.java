@@ -0,0 +1,215 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+class PersistenceEnabledStreamSupport {
+
+    static final byte[] DOCUMENT_PREFIX = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><records>".getBytes(StandardCharsets.UTF_8);
+    static final byte[] DOCUMENT_SUFFIX = "</records>".getBytes(StandardCharsets.UTF_8);
+
+    static <T extends PersistenceEnabled> void readRecords(InputStream inputStream, Class<T> recordClass, Supplier<T> recordFactory, Consumer<T> recordConsumer, PersistenceContext context) throws IOException {
+        try {
+            XMLStreamReader xmlReader = context.createXMLStreamReader(inputStream);
+            try {
+                String recordElementName = recordClass.getSimpleName();
+                DocumentBuilder documentBuilder = null;
+                int depth = 0;
+                while (xmlReader.hasNext()) {
+                    int eventType = xmlReader.next();
+                    if (eventType == XMLStreamConstants.START_ELEMENT) {
+                        if (depth == 1 && recordElementName.equals(xmlReader.getLocalName())) {
+                            T record = recordFactory.get();
+                            if (record instanceof PersistenceStreamingEnabled) {
+                                ((PersistenceStreamingEnabled)record).loadFromXML(xmlReader);
+                                if (xmlReader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+                                    PersistenceEnabledStreamSupport.skipElement(xmlReader);
+                                }
+                            } else {
+                                documentBuilder = documentBuilder == null ? context.getDocumentBuilder() : documentBuilder;
+                                Document recordDocument = documentBuilder.newDocument();
+                                Element recordElement = PersistenceEnabledStreamSupport.readElement(xmlReader, recordDocument);
+                                recordDocument.appendChild(recordElement);
+                                record.loadFromXML(recordElement, recordDocument);
+                            }
+                            recordConsumer.accept(record);
+                        } else {
+                            depth++;
+                        }
+                    } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                    }
+                }
+            } finally {
+                xmlReader.close();
+            }
+        } catch (Exception e) {
+            throw new IOException("Cannot import records of class: " + recordClass.getName(), e);
+        }
+    }
+
+    /**
+     * Passes the record elements from the given stream to the decoder
+     */
+    static void readRecordElements(InputStream inputStream, String recordElementName, PersistenceEnabledParallelDecoder<?> recordDecoder, PersistenceContext context) throws IOException {
+        try {
+            XMLStreamReader xmlReader = context.createXMLStreamReader(inputStream);
+            try {
+                int depth = 0;
+                while (xmlReader.hasNext()) {
+                    int eventType = xmlReader.next();
+                    if (eventType == XMLStreamConstants.START_ELEMENT) {
+                        if (depth == 1 && recordElementName.equals(xmlReader.getLocalName())) {
+                            recordDecoder.accept(xmlReader);
+                        } else {
+                            depth++;
+                        }
+                    } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                    }
+                }
+            } finally {
+                xmlReader.close();
+            }
+        } catch (Exception e) {
+            throw new IOException("Cannot read record elements: " + recordElementName, e);
+        }
+    }
+
+    static void writeRecords(Collection<? extends PersistenceEnabled> records, OutputStream outputStream, PersistenceContext context) throws IOException {
+        try {
+            XMLStreamWriter xmlWriter = context.createXMLStreamWriter(outputStream);
+            xmlWriter.writeStartDocument("UTF-8", "1.0");
+            xmlWriter.writeStartElement("records");
+            for (PersistenceEnabled record : records) {
+                if (record.isPersistable()) {
+                    PersistenceEnabledStreamSupport.writeRecord(record, xmlWriter, context);
+                }
+            }
+            xmlWriter.writeEndElement();
+            xmlWriter.writeEndDocument();
+            xmlWriter.flush();
+            xmlWriter.close();
+        } catch (Exception e) {
+            throw new IOException("Cannot export records", e);
+        }
+    }
+
+    /**
+     * Writes the element representing the given record, regardless of whether or not the record is
+     * persistable
+     */
+    static void writeRecord(PersistenceEnabled record, XMLStreamWriter xmlWriter, PersistenceContext context) throws Exception {
+        xmlWriter.writeStartElement(record.getClass().getSimpleName());
+        if (record instanceof PersistenceStreamingEnabled) {
+            ((PersistenceStreamingEnabled)record).appendToXML(xmlWriter);
+        } else {
+            Document recordDocument = context.getDocumentBuilder().newDocument();
+            Element recordElement = recordDocument.createElement(record.getClass().getSimpleName());
+            recordDocument.appendChild(recordElement);
+            record.appendToXML(recordElement, recordDocument);
+            PersistenceEnabledStreamSupport.writeElementContent(recordElement, xmlWriter);
+        }
+        xmlWriter.writeEndElement();
+    }
+
+    /**
+     * Skips the element the reader is currently positioned at, so that afterwards the reader is
+     * positioned at the matching {@code END_ELEMENT}
+     */
+    static void skipElement(XMLStreamReader xmlReader) throws XMLStreamException {
+        for (int depth = 1; depth > 0;) {
+            int eventType = xmlReader.next();
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Copies the element the reader is currently positioned at into the given writer, so that
+     * afterwards the reader is positioned at the matching {@code END_ELEMENT}
+     */
+    static void copyElement(XMLStreamReader xmlReader, XMLStreamWriter xmlWriter) throws XMLStreamException {
+        for (int depth = 0; ; xmlReader.next()) {
+            int eventType = xmlReader.getEventType();
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                xmlWriter.writeStartElement(xmlReader.getLocalName());
+                for (int attributeIndex = 0; attributeIndex < xmlReader.getAttributeCount(); attributeIndex++) {
+                    xmlWriter.writeAttribute(xmlReader.getAttributeLocalName(attributeIndex), xmlReader.getAttributeValue(attributeIndex));
+                }
+                depth++;
+            } else if (eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.SPACE) {
+                xmlWriter.writeCharacters(xmlReader.getText());
+            } else if (eventType == XMLStreamConstants.CDATA) {
+                xmlWriter.writeCData(xmlReader.getText());
+            } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                xmlWriter.writeEndElement();
+                if (--depth == 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    static Element readElement(XMLStreamReader xmlReader, Document owningDocument) throws XMLStreamException {
+        Element element = owningDocument.createElement(xmlReader.getLocalName());
+        for (int attributeIndex = 0; attributeIndex < xmlReader.getAttributeCount(); attributeIndex++) {
+            element.setAttribute(xmlReader.getAttributeLocalName(attributeIndex), xmlReader.getAttributeValue(attributeIndex));
+        }
+        while (true) {
+            int eventType = xmlReader.next();
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                element.appendChild(PersistenceEnabledStreamSupport.readElement(xmlReader, owningDocument));
+            } else if (eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.SPACE) {
+                element.appendChild(owningDocument.createTextNode(xmlReader.getText()));
+            } else if (eventType == XMLStreamConstants.CDATA) {
+                element.appendChild(owningDocument.createCDATASection(xmlReader.getText()));
+            } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                return element;
+            }
+        }
+    }
+
+    static void writeElementContent(Element element, XMLStreamWriter xmlWriter) throws XMLStreamException {
+        NamedNodeMap attributes = element.getAttributes();
+        for (int attributeIndex = 0; attributeIndex < attributes.getLength(); attributeIndex++) {
+            Attr attribute = (Attr)attributes.item(attributeIndex);
+            xmlWriter.writeAttribute(attribute.getName(), attribute.getValue());
+        }
+        NodeList childNodes = element.getChildNodes();
+        for (int childIndex = 0; childIndex < childNodes.getLength(); childIndex++) {
+            Node childNode = childNodes.item(childIndex);
+            if (childNode.getNodeType() == Node.ELEMENT_NODE) {
+                xmlWriter.writeStartElement(childNode.getNodeName());
+                PersistenceEnabledStreamSupport.writeElementContent((Element)childNode, xmlWriter);
+                xmlWriter.writeEndElement();
+            } else if (childNode.getNodeType() == Node.CDATA_SECTION_NODE) {
+                xmlWriter.writeCData(childNode.getNodeValue());
+            } else if (childNode.getNodeType() == Node.TEXT_NODE) {
+                xmlWriter.writeCharacters(childNode.getNodeValue());
+            }
+        }
+    }
+
+}
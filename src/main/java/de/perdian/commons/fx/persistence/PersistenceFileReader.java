@@ -0,0 +1,88 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens files on the local filesystem for reading.
+ *
+ * By default files are read using a regular buffered stream. In memory mapped mode files exceeding
+ * the mapping threshold are mapped into memory via {@code FileChannel.map} instead, so that the
+ * parser reads the content directly from the page cache of the operating system instead of copying
+ * it through intermediate buffers on the heap. Smaller files, as well as files on filesystems that
+ * don't support memory mapping, are still read using a regular buffered stream. The mapping is not
+ * released when the returned stream is closed but only once it has been garbage collected. As
+ * platforms like Windows don't allow a mapped file to be replaced, memory mapped mode is never used
+ * on Windows, even if it has been enabled.
+ *
+ * @author Christian Seifert
+ */
+
+public class PersistenceFileReader {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistenceFileReader.class);
+    private static final boolean MAPPED_FILES_REPLACEABLE = !System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+
+    private boolean memoryMapped = false;
+    private long mappingThreshold = 1024 * 1024;
+
+    public InputStream open(Path sourceFile) throws IOException {
+        if (this.isMemoryMapped() && MAPPED_FILES_REPLACEABLE && Files.size(sourceFile) >= this.getMappingThreshold()) {
+            try (FileChannel sourceChannel = FileChannel.open(sourceFile, StandardOpenOption.READ)) {
+                List<MappedByteBuffer> mappedBuffers = new ArrayList<>();
+                long sourceSize = sourceChannel.size();
+                for (long mappedSize = 0; mappedSize < sourceSize;) {
+                    long segmentSize = Math.min(Integer.MAX_VALUE, sourceSize - mappedSize);
+                    mappedBuffers.add(sourceChannel.map(FileChannel.MapMode.READ_ONLY, mappedSize, segmentSize));
+                    mappedSize += segmentSize;
+                }
+                return new PersistenceFileReaderMappedInputStream(mappedBuffers);
+            } catch (UnsupportedOperationException e) {
+                log.debug("Memory mapping not supported for file: {}", sourceFile);
+            }
+        }
+        return new BufferedInputStream(Files.newInputStream(sourceFile));
+    }
+
+    /**
+     * Enables reading files exceeding the mapping threshold via a memory mapping. Defaults to
+     * {@code false} and has no effect on Windows.
+     */
+    public PersistenceFileReader memoryMapped(boolean memoryMapped) {
+        this.setMemoryMapped(memoryMapped);
+        return this;
+    }
+    private boolean isMemoryMapped() {
+        return this.memoryMapped;
+    }
+    private void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * Sets the minimum size in bytes of a file to be mapped into memory. Defaults to 1 MB, as the
+     * cost of creating a mapping outweighs its benefits for small files.
+     */
+    public PersistenceFileReader mappingThreshold(long mappingThreshold) {
+        this.setMappingThreshold(mappingThreshold);
+        return this;
+    }
+    private long getMappingThreshold() {
+        return this.mappingThreshold;
+    }
+    private void setMappingThreshold(long mappingThreshold) {
+        this.mappingThreshold = mappingThreshold;
+    }
+
+}
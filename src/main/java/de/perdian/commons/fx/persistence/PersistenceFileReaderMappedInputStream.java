@@ -0,0 +1,98 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.List;
+
+/**
+ * Reads the content of a file that has been mapped into memory.
+ *
+ * Closing the stream only drops its references to the mapped buffers, the mapping itself is released
+ * by the garbage collector once the buffers are no longer reachable. Releasing it explicitly would
+ * crash the JVM if any buffer was still being accessed by another thread.
+ */
+
+class PersistenceFileReaderMappedInputStream extends InputStream {
+
+    private List<MappedByteBuffer> buffers = null;
+    private int bufferIndex = 0;
+
+    PersistenceFileReaderMappedInputStream(List<MappedByteBuffer> buffers) {
+        this.setBuffers(buffers);
+    }
+
+    @Override
+    public int read() throws IOException {
+        ByteBuffer currentBuffer = this.currentBuffer();
+        return currentBuffer == null ? -1 : currentBuffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] target, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        } else {
+            ByteBuffer currentBuffer = this.currentBuffer();
+            if (currentBuffer == null) {
+                return -1;
+            } else {
+                int readLength = Math.min(length, currentBuffer.remaining());
+                currentBuffer.get(target, offset, readLength);
+                return readLength;
+            }
+        }
+    }
+
+    @Override
+    public long skip(long length) throws IOException {
+        long skippedLength = 0;
+        for (ByteBuffer currentBuffer = this.currentBuffer(); currentBuffer != null && skippedLength < length; currentBuffer = this.currentBuffer()) {
+            int skipLength = (int)Math.min(length - skippedLength, currentBuffer.remaining());
+            currentBuffer.position(currentBuffer.position() + skipLength);
+            skippedLength += skipLength;
+        }
+        return skippedLength;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ByteBuffer currentBuffer = this.currentBuffer();
+        return currentBuffer == null ? 0 : currentBuffer.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.setBuffers(null);
+    }
+
+    private ByteBuffer currentBuffer() throws IOException {
+        if (this.getBuffers() == null) {
+            throw new IOException("Stream has already been closed");
+        }
+        while (this.getBufferIndex() < this.getBuffers().size()) {
+            ByteBuffer currentBuffer = this.getBuffers().get(this.getBufferIndex());
+            if (currentBuffer.hasRemaining()) {
+                return currentBuffer;
+            }
+            this.setBufferIndex(this.getBufferIndex() + 1);
+        }
+        return null;
+    }
+
+    private List<MappedByteBuffer> getBuffers() {
+        return this.buffers;
+    }
+    private void setBuffers(List<MappedByteBuffer> buffers) {
+        this.buffers = buffers;
+    }
+
+    private int getBufferIndex() {
+        return this.bufferIndex;
+    }
+    private void setBufferIndex(int bufferIndex) {
+        this.bufferIndex = bufferIndex;
+    }
+
+}
@@ -0,0 +1,157 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the content of a file on the local filesystem in a way that a failure while the content is
+ * written (or a crash of the application) never leaves the file in an empty or half-written state.
+ *
+ * In atomic mode (which is the default) the content is first written into a temporary file next to
+ * the target file. Once the content has been completely written and forced to the underlying storage
+ * device, the temporary file is moved over the target file in a single atomic operation. Optionally a
+ * number of previous versions of the target file can be kept as backup files named
+ * {@code <filename>.1.bak}, {@code <filename>.2.bak} and so on, with {@code 1} being the most recent one.
+ *
+ * @author Christian Seifert
+ */
+
+public class PersistenceFileWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistenceFileWriter.class);
+
+    private boolean atomic = true;
+    private int backupGenerations = 0;
+
+    public void write(Path targetFile, PersistenceFileWriterCallback callback) throws IOException {
+        this.write(targetFile, callback, new Object(), () -> {});
+    }
+
+    /**
+     * Writes the content of the target file, running the given callback right after the target file
+     * has been replaced. The given lock is only held while the target file is actually replaced and
+     * the callback is running (or during the whole write if the file is not written atomically), so
+     * that readers of the target file synchronizing on the same lock are not blocked while the new
+     * content is being written.
+     */
+    void write(Path targetFile, PersistenceFileWriterCallback callback, Object replaceLock, Runnable replaceCallback) throws IOException {
+        Path targetDirectory = targetFile.toAbsolutePath().getParent();
+        if (!Files.exists(targetDirectory)) {
+            log.debug("Creating target directory: {}", targetDirectory);
+            Files.createDirectories(targetDirectory);
+        }
+        if (!this.isAtomic()) {
+            synchronized (replaceLock) {
+                this.rotateBackups(targetFile, false);
+                try (FileChannel targetChannel = FileChannel.open(targetFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    this.writeToChannel(targetChannel, callback);
+                }
+                replaceCallback.run();
+            }
+        } else {
+            Path temporaryFile = Files.createTempFile(targetDirectory, "." + targetFile.getFileName(), ".tmp");
+            try {
+                try (FileChannel temporaryChannel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    this.writeToChannel(temporaryChannel, callback);
+                }
+                synchronized (replaceLock) {
+                    this.rotateBackups(targetFile, true);
+                    try {
+                        Files.move(temporaryFile, targetFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        log.debug("Atomic move not supported for file: {}", targetFile);
+                        Files.move(temporaryFile, targetFile, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    replaceCallback.run();
+                }
+                this.forceDirectory(targetDirectory);
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+    }
+
+    private void writeToChannel(FileChannel fileChannel, PersistenceFileWriterCallback callback) throws IOException {
+        OutputStream channelStream = new BufferedOutputStream(Channels.newOutputStream(fileChannel));
+        callback.writeTo(channelStream);
+        channelStream.flush();
+        fileChannel.force(true);
+    }
+
+    /**
+     * Moves the existing backups one generation further and creates the most recent backup from the
+     * current target file. A hard link is only used if the target file will be replaced by a new file
+     * instead of being overwritten in place, as otherwise the backup would be overwritten as well.
+     */
+    private void rotateBackups(Path targetFile, boolean linkAllowed) throws IOException {
+        if (this.getBackupGenerations() > 0 && Files.exists(targetFile)) {
+            Files.deleteIfExists(this.resolveBackupFile(targetFile, this.getBackupGenerations()));
+            for (int generation = this.getBackupGenerations() - 1; generation >= 1; generation--) {
+                Path backupFile = this.resolveBackupFile(targetFile, generation);
+                if (Files.exists(backupFile)) {
+                    Files.move(backupFile, this.resolveBackupFile(targetFile, generation + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Path mostRecentBackupFile = this.resolveBackupFile(targetFile, 1);
+            try {
+                if (linkAllowed) {
+                    Files.createLink(mostRecentBackupFile, targetFile);
+                    return;
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                log.trace("Cannot create link for backup file: {}", mostRecentBackupFile, e);
+            }
+            Files.copy(targetFile, mostRecentBackupFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path resolveBackupFile(Path targetFile, int generation) {
+        return targetFile.resolveSibling(targetFile.getFileName() + "." + generation + ".bak");
+    }
+
+    /**
+     * Makes sure the rename of the target file is durable. Not every platform allows a directory to be
+     * opened as channel, so any problem here is ignored.
+     */
+    private void forceDirectory(Path directory) {
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (Exception e) {
+            log.trace("Cannot force directory: {}", directory, e);
+        }
+    }
+
+    public PersistenceFileWriter atomic(boolean atomic) {
+        this.setAtomic(atomic);
+        return this;
+    }
+    boolean isAtomic() {
+        return this.atomic;
+    }
+    private void setAtomic(boolean atomic) {
+        this.atomic = atomic;
+    }
+
+    public PersistenceFileWriter backupGenerations(int backupGenerations) {
+        this.setBackupGenerations(backupGenerations);
+        return this;
+    }
+    private int getBackupGenerations() {
+        return this.backupGenerations;
+    }
+    private void setBackupGenerations(int backupGenerations) {
+        this.backupGenerations = backupGenerations;
+    }
+
+}
@@ -0,0 +1,10 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface PersistenceFileWriterCallback {
+
+    void writeTo(OutputStream outputStream) throws IOException;
+
+}
@@ -5,6 +5,10 @@ import java.time.LocalDate;
 import java.util.Optional;
 import java.util.function.Function;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.apache.commons.lang3.StringUtils;
 import org.w3c.dom.Element;
 
@@ -28,6 +32,12 @@ public class PersistenceHelper {
         }
     }
 
+    public static <T> void appendAttribute(Element targetElement, String attributeName, Number number, PersistenceNumberFormat numberFormat) {
+        if (number != null) {
+            PersistenceHelper.appendAttribute(targetElement, attributeName, numberFormat.format(number.doubleValue()));
+        }
+    }
+
     public static <T> Optional<T> extractAttribute(Element element, String attributeName, Function<String, T> stringConverterFunction) {
         String stringValue = element.getAttribute(attributeName);
         if (StringUtils.isEmpty(stringValue)) {
@@ -46,11 +56,132 @@ public class PersistenceHelper {
     }
 
     public static Optional<LocalDate> extractAttributeDate(Element transactionElement, String attributeName) {
-        return PersistenceHelper.extractAttribute(transactionElement, attributeName, LocalDate::parse);
+        return PersistenceHelper.extractAttribute(transactionElement, attributeName, stringValue -> LocalDate.ofEpochDay(PersistenceHelper.parseEpochDay(stringValue)));
     }
 
     public static Optional<Double> extractAttributeDouble(Element transactionElement, String attributeName, NumberFormat numberFormat) {
         return PersistenceHelper.extractAttribute(transactionElement, attributeName, new PersistenceHelperStringToDoubleFunction(numberFormat));
     }
 
+    public static Optional<Double> extractAttributeDouble(Element transactionElement, String attributeName, PersistenceNumberFormat numberFormat) {
+        return PersistenceHelper.extractAttribute(transactionElement, attributeName, numberFormat::parseDouble);
+    }
+
+    public static double extractAttributeDoubleOrDefault(Element element, String attributeName, NumberFormat numberFormat, double defaultValue) {
+        String stringValue = element.getAttribute(attributeName);
+        return StringUtils.isEmpty(stringValue) ? defaultValue : PersistenceHelperParser.parseDouble(stringValue, numberFormat);
+    }
+
+    /**
+     * Extracts a numeric attribute without creating any intermediate objects for plain values like
+     * {@code 1234} or {@code 12.34} (using the decimal separator of the given format). All other
+     * values are parsed using the given format.
+     */
+    public static double extractAttributeDoubleOrDefault(Element element, String attributeName, PersistenceNumberFormat numberFormat, double defaultValue) {
+        String stringValue = element.getAttribute(attributeName);
+        return StringUtils.isEmpty(stringValue) ? defaultValue : numberFormat.parseDouble(stringValue);
+    }
+
+    public static int extractAttributeIntOrDefault(Element element, String attributeName, int defaultValue) {
+        String stringValue = element.getAttribute(attributeName);
+        return StringUtils.isEmpty(stringValue) ? defaultValue : Integer.parseInt(stringValue);
+    }
+
+    public static long extractAttributeLongOrDefault(Element element, String attributeName, long defaultValue) {
+        String stringValue = element.getAttribute(attributeName);
+        return StringUtils.isEmpty(stringValue) ? defaultValue : Long.parseLong(stringValue);
+    }
+
+    /**
+     * Extracts a date attribute as the number of days since the epoch, without creating a
+     * {@code LocalDate} for dates in the format {@code yyyy-MM-dd}
+     */
+    public static long extractAttributeEpochDayOrDefault(Element element, String attributeName, long defaultValue) {
+        String stringValue = element.getAttribute(attributeName);
+        return StringUtils.isEmpty(stringValue) ? defaultValue : PersistenceHelper.parseEpochDay(stringValue);
+    }
+
+    public static void appendAttribute(XMLStreamWriter xmlWriter, String attributeName, String value) throws XMLStreamException {
+        if (StringUtils.isNotEmpty(value)) {
+            xmlWriter.writeAttribute(attributeName, value);
+        }
+    }
+
+    public static void appendAttribute(XMLStreamWriter xmlWriter, String attributeName, LocalDate date) throws XMLStreamException {
+        if (date != null) {
+            PersistenceHelper.appendAttribute(xmlWriter, attributeName, date.toString());
+        }
+    }
+
+    public static void appendAttribute(XMLStreamWriter xmlWriter, String attributeName, Number number, NumberFormat numberFormat) throws XMLStreamException {
+        if (number != null) {
+            PersistenceHelper.appendAttribute(xmlWriter, attributeName, numberFormat.format(number.doubleValue()));
+        }
+    }
+
+    public static void appendAttribute(XMLStreamWriter xmlWriter, String attributeName, Number number, PersistenceNumberFormat numberFormat) throws XMLStreamException {
+        if (number != null) {
+            PersistenceHelper.appendAttribute(xmlWriter, attributeName, numberFormat.format(number.doubleValue()));
+        }
+    }
+
+    public static <T> Optional<T> extractAttribute(XMLStreamReader xmlReader, String attributeName, Function<String, T> stringConverterFunction) {
+        String stringValue = xmlReader.getAttributeValue(null, attributeName);
+        if (StringUtils.isEmpty(stringValue)) {
+            return Optional.empty();
+        } else {
+            return Optional.ofNullable(stringConverterFunction.apply(stringValue));
+        }
+    }
+
+    public static Optional<String> extractAttributeString(XMLStreamReader xmlReader, String attributeName) {
+        return PersistenceHelper.extractAttribute(xmlReader, attributeName, Function.identity());
+    }
+
+    public static <E extends Enum<E>> Optional<E> extractAttributeEnum(XMLStreamReader xmlReader, String attributeName, Class<E> enumClass) {
+        return PersistenceHelper.extractAttributeString(xmlReader, attributeName).map(stringValue -> Enum.valueOf(enumClass, stringValue));
+    }
+
+    public static Optional<LocalDate> extractAttributeDate(XMLStreamReader xmlReader, String attributeName) {
+        return PersistenceHelper.extractAttribute(xmlReader, attributeName, stringValue -> LocalDate.ofEpochDay(PersistenceHelper.parseEpochDay(stringValue)));
+    }
+
+    public static Optional<Double> extractAttributeDouble(XMLStreamReader xmlReader, String attributeName, NumberFormat numberFormat) {
+        return PersistenceHelper.extractAttribute(xmlReader, attributeName, new PersistenceHelperStringToDoubleFunction(numberFormat));
+    }
+
+    public static Optional<Double> extractAttributeDouble(XMLStreamReader xmlReader, String attributeName, PersistenceNumberFormat numberFormat) {
+        return PersistenceHelper.extractAttribute(xmlReader, attributeName, numberFormat::parseDouble);
+    }
+
+    public static double extractAttributeDoubleOrDefault(XMLStreamReader xmlReader, String attributeName, NumberFormat numberFormat, double defaultValue) {
+        String stringValue = xmlReader.getAttributeValue(null, attributeName);
+        return StringUtils.isEmpty(stringValue) ? defaultValue : PersistenceHelperParser.parseDouble(stringValue, numberFormat);
+    }
+
+    public static double extractAttributeDoubleOrDefault(XMLStreamReader xmlReader, String attributeName, PersistenceNumberFormat numberFormat, double defaultValue) {
+        String stringValue = xmlReader.getAttributeValue(null, attributeName);
+        return StringUtils.isEmpty(stringValue) ? defaultValue : numberFormat.parseDouble(stringValue);
+    }
+
+    public static int extractAttributeIntOrDefault(XMLStreamReader xmlReader, String attributeName, int defaultValue) {
+        String stringValue = xmlReader.getAttributeValue(null, attributeName);
+        return StringUtils.isEmpty(stringValue) ? defaultValue : Integer.parseInt(stringValue);
+    }
+
+    public static long extractAttributeLongOrDefault(XMLStreamReader xmlReader, String attributeName, long defaultValue) {
+        String stringValue = xmlReader.getAttributeValue(null, attributeName);
+        return StringUtils.isEmpty(stringValue) ? defaultValue : Long.parseLong(stringValue);
+    }
+
+    public static long extractAttributeEpochDayOrDefault(XMLStreamReader xmlReader, String attributeName, long defaultValue) {
+        String stringValue = xmlReader.getAttributeValue(null, attributeName);
+        return StringUtils.isEmpty(stringValue) ? defaultValue : PersistenceHelper.parseEpochDay(stringValue);
+    }
+
+    private static long parseEpochDay(String stringValue) {
+        long epochDay = PersistenceHelperParser.parseEpochDay(stringValue);
+        return epochDay == Long.MIN_VALUE ? LocalDate.parse(stringValue).toEpochDay() : epochDay;
+    }
+
 }
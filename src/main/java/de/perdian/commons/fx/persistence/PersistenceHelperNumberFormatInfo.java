@@ -0,0 +1,54 @@
+package de.perdian.commons.fx.persistence;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+
+/**
+ * Describes whether values of a {@code NumberFormat} can be parsed without involving the format
+ * itself, which is the case for a {@code DecimalFormat} without any prefixes, suffixes or
+ * multipliers, as long as the value consists of nothing but an optional minus sign, digits and at
+ * most one decimal separator.
+ *
+ * The information is only valid as long as the format isn't changed, so it must only be derived
+ * from formats that are never modified afterwards, like the prototype of a
+ * {@code PersistenceNumberFormat}.
+ */
+
+class PersistenceHelperNumberFormatInfo {
+
+    private final boolean plain;
+    private final char decimalSeparator;
+    private final char minusSign;
+
+    PersistenceHelperNumberFormatInfo(NumberFormat numberFormat) {
+        if (numberFormat instanceof DecimalFormat) {
+            DecimalFormat decimalFormat = (DecimalFormat)numberFormat;
+            this.decimalSeparator = decimalFormat.getDecimalFormatSymbols().getDecimalSeparator();
+            this.minusSign = decimalFormat.getDecimalFormatSymbols().getMinusSign();
+            this.plain = decimalFormat.getMultiplier() == 1
+                && !decimalFormat.isParseIntegerOnly()
+                && !decimalFormat.isParseBigDecimal()
+                && decimalFormat.getPositivePrefix().isEmpty()
+                && decimalFormat.getPositiveSuffix().isEmpty()
+                && decimalFormat.getNegativePrefix().equals(String.valueOf(this.minusSign))
+                && decimalFormat.getNegativeSuffix().isEmpty();
+        } else {
+            this.decimalSeparator = 0;
+            this.minusSign = 0;
+            this.plain = false;
+        }
+    }
+
+    boolean isPlain() {
+        return this.plain;
+    }
+
+    char getDecimalSeparator() {
+        return this.decimalSeparator;
+    }
+
+    char getMinusSign() {
+        return this.minusSign;
+    }
+
+}
@@ -0,0 +1,128 @@
+package de.perdian.commons.fx.persistence;
+
+import java.text.NumberFormat;
+import java.text.ParseException;
+
+/**
+ * Parses the values written by the {@code PersistenceHelper} without creating any intermediate
+ * objects for the values in their most common form. Values in any other form are handed to the
+ * regular parsers, so that the results are always identical.
+ */
+
+class PersistenceHelperParser {
+
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final long DAYS_0000_TO_1970 = 719528L;
+
+    /**
+     * Parses the value using the given format. As a {@code NumberFormat} is mutable, it cannot be
+     * determined in advance whether the value may be parsed without the format, so callers parsing
+     * values repeatedly should use a {@code PersistenceNumberFormat} instead.
+     */
+    static double parseDouble(String value, NumberFormat numberFormat) {
+        try {
+            return numberFormat.parse(value).doubleValue();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid numeric value: " + value, e);
+        }
+    }
+
+    static double parseDouble(String value, PersistenceHelperNumberFormatInfo numberFormatInfo, NumberFormat numberFormat) {
+        double fastValue = PersistenceHelperParser.parsePlainDouble(value, numberFormatInfo);
+        return Double.isNaN(fastValue) ? PersistenceHelperParser.parseDouble(value, numberFormat) : fastValue;
+    }
+
+    /**
+     * Parses a value consisting of an optional minus sign, digits and an optional decimal separator
+     * followed by further digits, as long as the result can be computed exactly
+     *
+     * @return
+     *      the parsed value or {@code NaN} if the value must be parsed by the format itself
+     */
+    private static double parsePlainDouble(String value, PersistenceHelperNumberFormatInfo numberFormatInfo) {
+        if (!numberFormatInfo.isPlain() || value.isEmpty()) {
+            return Double.NaN;
+        }
+        int index = 0;
+        boolean negative = value.charAt(0) == numberFormatInfo.getMinusSign();
+        if (negative) {
+            index++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; index < value.length(); index++) {
+            char nextChar = value.charAt(index);
+            if (nextChar >= '0' && nextChar <= '9') {
+                mantissa = mantissa * 10 + (nextChar - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    return Double.NaN;
+                }
+            } else if (nextChar == numberFormatInfo.getDecimalSeparator() && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0 || fractionDigits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.NaN;
+        }
+        double result = fractionDigits <= 0 ? mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses a date in the ISO format {@code yyyy-MM-dd} into the number of days since the epoch
+     *
+     * @return
+     *      the epoch day or {@code Long.MIN_VALUE} if the value isn't a date in the expected format
+     */
+    static long parseEpochDay(String value) {
+        if (value.length() != 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            return Long.MIN_VALUE;
+        }
+        int year = PersistenceHelperParser.parseDigits(value, 0, 4);
+        int month = PersistenceHelperParser.parseDigits(value, 5, 7);
+        int day = PersistenceHelperParser.parseDigits(value, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > PersistenceHelperParser.lengthOfMonth(year, month)) {
+            return Long.MIN_VALUE;
+        }
+        long epochDay = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        epochDay += (367 * month - 362) / 12;
+        epochDay += day - 1;
+        if (month > 2) {
+            epochDay -= PersistenceHelperParser.isLeapYear(year) ? 1 : 2;
+        }
+        return epochDay - DAYS_0000_TO_1970;
+    }
+
+    private static int parseDigits(String value, int startIndex, int endIndex) {
+        int result = 0;
+        for (int index = startIndex; index < endIndex; index++) {
+            char nextChar = value.charAt(index);
+            if (nextChar < '0' || nextChar > '9') {
+                return -1;
+            }
+            result = result * 10 + (nextChar - '0');
+        }
+        return result;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            return PersistenceHelperParser.isLeapYear(year) ? 29 : 28;
+        } else {
+            return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+        }
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+}
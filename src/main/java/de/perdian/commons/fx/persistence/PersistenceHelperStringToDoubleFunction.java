@@ -1,7 +1,6 @@
 package de.perdian.commons.fx.persistence;
 
 import java.text.NumberFormat;
-import java.text.ParseException;
 import java.util.function.Function;
 
 class PersistenceHelperStringToDoubleFunction implements Function<String, Double> {
@@ -14,11 +13,7 @@ class PersistenceHelperStringToDoubleFunction implements Function<String, Double
 
     @Override
     public Double apply(String stringValue) {
-        try {
-            return this.getNumberFormat().parse(stringValue).doubleValue();
-        } catch (ParseException e) {
-            throw new IllegalArgumentException("Invalid numeric value: " + stringValue, e);
-        }
+        return PersistenceHelperParser.parseDouble(stringValue, this.getNumberFormat());
     }
 
     private NumberFormat getNumberFormat() {
@@ -0,0 +1,81 @@
+package de.perdian.commons.fx.persistence;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.util.Locale;
+
+/**
+ * A thread-safe replacement for a {@code NumberFormat} that can be shared between all threads
+ * reading and writing records.
+ *
+ * The {@code NumberFormat} passed when creating the instance is copied and never used directly. Every
+ * thread formats and parses values using its own copy, so that changes made to the original format
+ * afterwards are not reflected and values can be formatted and parsed on multiple threads at the
+ * same time.
+ *
+ * @author Christian Seifert
+ */
+
+public class PersistenceNumberFormat {
+
+    private PersistenceHelperNumberFormatInfo numberFormatInfo = null;
+    private ThreadLocal<NumberFormat> numberFormats = null;
+
+    public PersistenceNumberFormat(NumberFormat numberFormat) {
+        NumberFormat prototype = (NumberFormat)numberFormat.clone();
+        this.setNumberFormatInfo(new PersistenceHelperNumberFormatInfo(prototype));
+        this.setNumberFormats(ThreadLocal.withInitial(() -> (NumberFormat)prototype.clone()));
+    }
+
+    public static PersistenceNumberFormat ofPattern(String pattern, Locale locale) {
+        return new PersistenceNumberFormat(new DecimalFormat(pattern, DecimalFormatSymbols.getInstance(locale)));
+    }
+
+    public String format(Number number) {
+        return this.getNumberFormat().format(number);
+    }
+
+    public String format(double number) {
+        return this.getNumberFormat().format(number);
+    }
+
+    public Number parse(String value) throws ParseException {
+        return this.getNumberFormat().parse(value);
+    }
+
+    /**
+     * Parses the given value, without creating any intermediate objects for plain values like
+     * {@code 1234} or {@code 12.34} (using the decimal separator of the format)
+     *
+     * @throws IllegalArgumentException
+     *      if the value cannot be parsed
+     */
+    public double parseDouble(String value) {
+        return PersistenceHelperParser.parseDouble(value, this.getNumberFormatInfo(), this.getNumberFormat());
+    }
+
+    /**
+     * Gets the copy of the format for the current thread, which must not be passed on to any other
+     * thread.
+     */
+    public NumberFormat getNumberFormat() {
+        return this.getNumberFormats().get();
+    }
+
+    private PersistenceHelperNumberFormatInfo getNumberFormatInfo() {
+        return this.numberFormatInfo;
+    }
+    private void setNumberFormatInfo(PersistenceHelperNumberFormatInfo numberFormatInfo) {
+        this.numberFormatInfo = numberFormatInfo;
+    }
+
+    private ThreadLocal<NumberFormat> getNumberFormats() {
+        return this.numberFormats;
+    }
+    private void setNumberFormats(ThreadLocal<NumberFormat> numberFormats) {
+        this.numberFormats = numberFormats;
+    }
+
+}
@@ -0,0 +1,248 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.beans.value.ChangeListener;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+/**
+ * An {@code ObservableList} of records that is kept synchronized with a storage file.
+ *
+ * Any change to the list itself or to one of the records contained in the list will be written
+ * into the storage file, either directly or deferred, depending upon the configuration of the
+ * {@code PersistenceStoreBuilder} that created the store. Callers using a deferred configuration
+ * should call {@link #close()} before the application terminates, so that pending changes are not
+ * lost.
+ *
+ * When the store is configured to use a journal, only the records that have actually been changed
+ * are appended to a journal file next to the storage file, which is merged into the storage file
+ * in the background from time to time. As the journal identifies records only by their identity,
+ * changes to the order of the records within the list are not reflected until the next compaction.
+ *
+ * When the store is configured to load records lazily, records are only decoded from the storage
+ * file when they are accessed for the first time, so that opening a large storage file doesn't
+ * require all of its records to be held in memory.
+ *
+ * When the store is configured to use shards, the records are distributed across multiple files
+ * within a storage directory. Only the files containing changed records are written again, and the
+ * files are loaded in parallel when the store is created.
+ *
+ * The records are only serialized on the thread changing them: Synchronously within the change if
+ * no write delay has been configured, otherwise on the {@code fxExecutor} of the builder once the
+ * write delay has expired, after which the serialized content is written on a background thread.
+ * {@link #flush()} and {@link #close()} serialize pending changes on the calling thread, so they
+ * must be called on the thread changing the records (or while no further changes are made).
+ *
+ * New {@code PersistenceStore} instances should only be created via the {@code PersistenceStoreBuilder}.
+ *
+ * @author Christian Seifert
+ */
+
+public class PersistenceStore<T extends PersistenceEnabled> implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistenceStore.class);
+
+    private ObservableList<T> records = null;
+    private PersistenceStoreLazyList<T> lazyRecords = null;
+    private PersistenceStoreWriter<T> storeWriter = null;
+    private Map<T, ChangeListener<Object>> recordChangeListeners = null;
+    private ListChangeListener<T> listChangeListener = null;
+    private ListChangeListener<T> recordListenerRegistration = null;
+
+    PersistenceStore(Path storageFile, Class<T> recordClass, Supplier<T> recordFactory, ForkJoinPool loadPool, PersistenceStoreLazyList<T> lazyRecords, PersistenceFileReader fileReader, PersistenceStoreWriter<T> storeWriter) {
+        this.setStoreWriter(storeWriter);
+        this.setRecordChangeListeners(new IdentityHashMap<>());
+        if (lazyRecords == null) {
+            this.initializeRecords(storageFile, recordClass, recordFactory, loadPool, fileReader);
+        } else {
+            this.initializeLazyRecords(storageFile, recordClass, lazyRecords, fileReader);
+        }
+    }
+
+    private void initializeRecords(Path storageFile, Class<T> recordClass, Supplier<T> recordFactory, ForkJoinPool loadPool, PersistenceFileReader fileReader) {
+
+        PersistenceStoreWriter<T> storeWriter = this.getStoreWriter();
+        ObservableList<T> records = FXCollections.observableArrayList();
+        Map<T, ChangeListener<Object>> recordChangeListeners = this.getRecordChangeListeners();
+        ListChangeListener<T> recordListenerRegistration = change -> {
+            while (change.next()) {
+                change.getRemoved().forEach(removedRecord -> {
+                    ChangeListener<Object> recordChangeListener = recordChangeListeners.remove(removedRecord);
+                    if (recordChangeListener != null) {
+                        removedRecord.removeChangeListener(recordChangeListener);
+                    }
+                });
+                change.getAddedSubList().forEach(addedRecord -> {
+                    ChangeListener<Object> recordChangeListener = (o, oldValue, newValue) -> storeWriter.markDirty(false, List.of(addedRecord), Collections.emptyList());
+                    recordChangeListeners.put(addedRecord, recordChangeListener);
+                    addedRecord.addChangeListener(recordChangeListener);
+                });
+            }
+        };
+        records.addListener(recordListenerRegistration);
+
+        if (storeWriter.getShards() != null) {
+            log.info("Loading records of class {} from shards in directory: {}", recordClass.getName(), storageFile);
+            try {
+                records.addAll(storeWriter.getShards().loadRecords(recordClass, recordFactory, fileReader, loadPool == null ? ForkJoinPool.commonPool() : loadPool, storeWriter.getCodec(), storeWriter.getContext()));
+            } catch (Exception e) {
+                log.warn("Cannot load records of class {} from shards in directory: {}", recordClass.getName(), storageFile, e);
+            }
+        } else if (Files.exists(storageFile) || (storeWriter.getJournal() != null && storeWriter.getJournal().isPresent())) {
+            log.info("Loading records of class {} from file: {}", recordClass.getName(), storageFile);
+            List<T> storedRecords = new ArrayList<>();
+            if (Files.exists(storageFile)) {
+                try (InputStream storageFileStream = fileReader.open(storageFile)) {
+                    if (loadPool == null) {
+                        storeWriter.getCodec().readRecords(storageFileStream, recordClass, recordFactory, storedRecords::add, storeWriter.getContext());
+                    } else {
+                        storedRecords.addAll(storeWriter.getCodec().readRecordsParallel(storageFileStream, recordClass, recordFactory, loadPool, storeWriter.getContext()));
+                    }
+                } catch (Exception e) {
+                    log.warn("Cannot load records of class {} from file: {}", recordClass.getName(), storageFile, e);
+                }
+            }
+            if (storeWriter.getJournal() != null) {
+                storedRecords = storeWriter.getJournal().replay(storedRecords, recordClass, recordFactory);
+            }
+            records.addAll(storedRecords);
+        }
+
+        ListChangeListener<T> listChangeListener = change -> {
+            List<T> changedRecords = new ArrayList<>();
+            List<T> removedRecords = new ArrayList<>();
+            while (change.next()) {
+                removedRecords.addAll(change.getRemoved());
+                changedRecords.addAll(change.getAddedSubList());
+            }
+            storeWriter.markDirty(true, changedRecords, removedRecords);
+        };
+        records.addListener(listChangeListener);
+        storeWriter.markClean(records);
+
+        this.setRecords(records);
+        this.setListChangeListener(listChangeListener);
+        this.setRecordListenerRegistration(recordListenerRegistration);
+
+    }
+
+    private void initializeLazyRecords(Path storageFile, Class<T> recordClass, PersistenceStoreLazyList<T> lazyRecords, PersistenceFileReader fileReader) {
+        log.info("Indexing records of class {} in file: {}", recordClass.getName(), storageFile);
+        try {
+            lazyRecords.loadIndex(fileReader);
+        } catch (Exception e) {
+            log.warn("Cannot index records of class {} in file: {}", recordClass.getName(), storageFile, e);
+        }
+        PersistenceStoreWriter<T> storeWriter = this.getStoreWriter();
+        ListChangeListener<T> listChangeListener = change -> storeWriter.markDirty(true, Collections.emptyList(), Collections.emptyList());
+        lazyRecords.addListener(listChangeListener);
+        storeWriter.markClean(lazyRecords);
+        this.setRecords(lazyRecords);
+        this.setLazyRecords(lazyRecords);
+        this.setListChangeListener(listChangeListener);
+    }
+
+    /**
+     * Writes all pending changes into the storage file and waits until the write has been completed.
+     */
+    public void flush() {
+        this.getStoreWriter().flush();
+    }
+
+    /**
+     * Writes all pending changes into the storage file and detaches the store from the records, so
+     * that any further change will no longer be persisted.
+     */
+    @Override
+    public void close() {
+        this.getRecords().removeListener(this.getListChangeListener());
+        if (this.getLazyRecords() != null) {
+            this.getLazyRecords().detach();
+        } else {
+            this.getRecords().removeListener(this.getRecordListenerRegistration());
+            this.getRecordChangeListeners().forEach((record, recordChangeListener) -> record.removeChangeListener(recordChangeListener));
+            this.getRecordChangeListeners().clear();
+        }
+        this.getStoreWriter().close();
+    }
+
+    /**
+     * Gets the number of records whose cached serialized form could be reused when writing the
+     * storage file, if the store has been configured to use a fragment cache
+     */
+    public long getFragmentCacheHits() {
+        return this.getStoreWriter().getFragmentCache() == null ? 0 : this.getStoreWriter().getFragmentCache().getHits();
+    }
+
+    /**
+     * Gets the number of records that had to be serialized when writing the storage file, if the
+     * store has been configured to use a fragment cache
+     */
+    public long getFragmentCacheMisses() {
+        return this.getStoreWriter().getFragmentCache() == null ? 0 : this.getStoreWriter().getFragmentCache().getMisses();
+    }
+
+    public double getFragmentCacheHitRatio() {
+        long fragmentCacheHits = this.getFragmentCacheHits();
+        long fragmentCacheRequests = fragmentCacheHits + this.getFragmentCacheMisses();
+        return fragmentCacheRequests == 0 ? 0d : (double)fragmentCacheHits / fragmentCacheRequests;
+    }
+
+    public ObservableList<T> getRecords() {
+        return this.records;
+    }
+    private void setRecords(ObservableList<T> records) {
+        this.records = records;
+    }
+
+    private PersistenceStoreLazyList<T> getLazyRecords() {
+        return this.lazyRecords;
+    }
+    private void setLazyRecords(PersistenceStoreLazyList<T> lazyRecords) {
+        this.lazyRecords = lazyRecords;
+    }
+
+    private PersistenceStoreWriter<T> getStoreWriter() {
+        return this.storeWriter;
+    }
+    private void setStoreWriter(PersistenceStoreWriter<T> storeWriter) {
+        this.storeWriter = storeWriter;
+    }
+
+    private Map<T, ChangeListener<Object>> getRecordChangeListeners() {
+        return this.recordChangeListeners;
+    }
+    private void setRecordChangeListeners(Map<T, ChangeListener<Object>> recordChangeListeners) {
+        this.recordChangeListeners = recordChangeListeners;
+    }
+
+    private ListChangeListener<T> getListChangeListener() {
+        return this.listChangeListener;
+    }
+    private void setListChangeListener(ListChangeListener<T> listChangeListener) {
+        this.listChangeListener = listChangeListener;
+    }
+
+    private ListChangeListener<T> getRecordListenerRegistration() {
+        return this.recordListenerRegistration;
+    }
+    private void setRecordListenerRegistration(ListChangeListener<T> recordListenerRegistration) {
+        this.recordListenerRegistration = recordListenerRegistration;
+    }
+
+}
@@ -0,0 +1,376 @@
+package de.perdian.commons.fx.persistence;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Used to create new {@code PersistenceStore} instances that keep an {@code ObservableList} of
+ * records synchronized with a storage file on the local filesystem.
+ *
+ * By default every change is written synchronously on the thread that performed the change. When
+ * a {@code writeDelay} is configured, changes are coalesced and written on a dedicated background
+ * thread once no further change has been made within the delay, but no later than the configured
+ * {@code maxWriteDelay} after the first pending change. If the records are changed on the JavaFX
+ * application thread, an {@code fxExecutor} should be set, on which the pending changes are then
+ * serialized before they are handed to the background thread, as the records must not be accessed
+ * while they are changed.
+ *
+ * @author Christian Seifert
+ */
+
+public class PersistenceStoreBuilder<T extends PersistenceEnabled> {
+
+    private Class<T> recordClass = null;
+    private Supplier<T> recordFactory = null;
+    private Path storageFile = null;
+    private Duration writeDelay = Duration.ZERO;
+    private Duration maxWriteDelay = null;
+    private Executor fxExecutor = null;
+    private PersistenceFileReader fileReader = null;
+    private PersistenceFileWriter fileWriter = null;
+    private PersistenceContext context = null;
+    private PersistenceCodec codec = null;
+    private ForkJoinPool loadPool = null;
+    private boolean fragmentCache = false;
+    private int lazyPageSize = 0;
+    private int lazyCachedPages = 0;
+    private int shardCount = 0;
+    private Function<T, ?> shardKeyFunction = null;
+    private Function<T, String> journalIdentityFunction = null;
+    private long journalCompactionSize = 4 * 1024 * 1024;
+    private double journalCompactionRatio = 1d;
+
+    public PersistenceStoreBuilder(Class<T> recordClass) {
+        this.setRecordClass(Objects.requireNonNull(recordClass, "Parameter 'recordClass' must not be null"));
+    }
+
+    public PersistenceStore<T> buildStore() {
+        Path storageFile = this.getStorageFile();
+        if (storageFile == null) {
+            throw new IllegalArgumentException("Property 'storageFile' must not be null");
+        }
+        Supplier<T> recordFactory = this.getRecordFactory() == null ? new PersistenceEnabledDefaultConstructorSupplier<>(this.getRecordClass()) : this.getRecordFactory();
+        Duration writeDelay = this.getWriteDelay() == null ? Duration.ZERO : this.getWriteDelay();
+        Duration maxWriteDelay = this.getMaxWriteDelay() == null ? writeDelay : this.getMaxWriteDelay();
+        PersistenceFileReader fileReader = this.getFileReader() == null ? new PersistenceFileReader() : this.getFileReader();
+        PersistenceFileWriter fileWriter = this.getFileWriter() == null ? new PersistenceFileWriter() : this.getFileWriter();
+        PersistenceContext context = this.getContext() == null ? PersistenceContext.getDefault() : this.getContext();
+        PersistenceCodec codec = this.getCodec() == null ? new XmlPersistenceCodec() : this.getCodec();
+        PersistenceStoreJournal<T> journal = this.getJournalIdentityFunction() == null ? null : new PersistenceStoreJournal<>(storageFile, this.getJournalIdentityFunction(), this.getJournalCompactionSize(), this.getJournalCompactionRatio(), codec, context);
+        if (this.getLazyPageSize() > 0) {
+            if (journal != null) {
+                throw new IllegalArgumentException("Lazy loading cannot be combined with a journal");
+            } else if (!(codec instanceof XmlPersistenceCodec)) {
+                throw new IllegalArgumentException("Lazy loading is only supported for the XML format");
+            } else if (!fileWriter.isAtomic()) {
+                throw new IllegalArgumentException("Lazy loading requires an atomic file writer");
+            }
+        }
+        if (this.isFragmentCache() && (!(codec instanceof XmlPersistenceCodec) || this.getLazyPageSize() > 0)) {
+            throw new IllegalArgumentException("Fragment cache is only supported for the XML format without lazy loading");
+        }
+        if (this.getShardCount() > 0 && (journal != null || this.getLazyPageSize() > 0 || this.isFragmentCache())) {
+            throw new IllegalArgumentException("Sharded storage cannot be combined with a journal, lazy loading or a fragment cache");
+        }
+        PersistenceStoreFragmentCache<T> fragmentCache = this.isFragmentCache() ? new PersistenceStoreFragmentCache<>() : null;
+        PersistenceStoreShards<T> shards = this.getShardCount() <= 0 ? null : new PersistenceStoreShards<>(storageFile, this.getShardCount(), this.getShardKeyFunction());
+        PersistenceStoreWriter<T> storeWriter = new PersistenceStoreWriter<>(storageFile, fileWriter, journal, writeDelay, maxWriteDelay, codec, fragmentCache, shards, context, this.getFxExecutor());
+        PersistenceStoreLazyList<T> lazyRecords = this.getLazyPageSize() <= 0 ? null : new PersistenceStoreLazyList<>(storageFile, this.getRecordClass(), recordFactory, this.getLazyPageSize(), this.getLazyCachedPages(), context, storeWriter);
+        return new PersistenceStore<>(storageFile, this.getRecordClass(), recordFactory, this.getLoadPool(), lazyRecords, fileReader, storeWriter);
+    }
+
+    private Class<T> getRecordClass() {
+        return this.recordClass;
+    }
+    private void setRecordClass(Class<T> recordClass) {
+        this.recordClass = recordClass;
+    }
+
+    public PersistenceStoreBuilder<T> recordFactory(Supplier<T> recordFactory) {
+        this.setRecordFactory(recordFactory);
+        return this;
+    }
+    private Supplier<T> getRecordFactory() {
+        return this.recordFactory;
+    }
+    private void setRecordFactory(Supplier<T> recordFactory) {
+        this.recordFactory = recordFactory;
+    }
+
+    public PersistenceStoreBuilder<T> storageFile(Path storageFile) {
+        this.setStorageFile(storageFile);
+        return this;
+    }
+    private Path getStorageFile() {
+        return this.storageFile;
+    }
+    private void setStorageFile(Path storageFile) {
+        this.storageFile = storageFile;
+    }
+
+    /**
+     * Sets the quiet window after which pending changes are written into the storage file. A zero
+     * delay (which is the default) writes every change synchronously.
+     */
+    public PersistenceStoreBuilder<T> writeDelay(Duration writeDelay) {
+        this.setWriteDelay(writeDelay);
+        return this;
+    }
+    private Duration getWriteDelay() {
+        return this.writeDelay;
+    }
+    private void setWriteDelay(Duration writeDelay) {
+        this.writeDelay = writeDelay;
+    }
+
+    /**
+     * Sets the maximum time a change may stay pending, even if further changes keep arriving within
+     * the quiet window. If not set, the {@code writeDelay} is used.
+     */
+    public PersistenceStoreBuilder<T> maxWriteDelay(Duration maxWriteDelay) {
+        this.setMaxWriteDelay(maxWriteDelay);
+        return this;
+    }
+    private Duration getMaxWriteDelay() {
+        return this.maxWriteDelay;
+    }
+    private void setMaxWriteDelay(Duration maxWriteDelay) {
+        this.maxWriteDelay = maxWriteDelay;
+    }
+
+    /**
+     * Sets the executor running tasks on the thread on which the records are changed, which is used
+     * to serialize pending changes once the {@code writeDelay} has expired and to compact the journal,
+     * for example {@code Platform::runLater} for records bound to JavaFX controls. If not set, the
+     * records are serialized on the background thread writing the storage file, which requires the
+     * records not to be changed concurrently.
+     */
+    public PersistenceStoreBuilder<T> fxExecutor(Executor fxExecutor) {
+        this.setFxExecutor(fxExecutor);
+        return this;
+    }
+    private Executor getFxExecutor() {
+        return this.fxExecutor;
+    }
+    private void setFxExecutor(Executor fxExecutor) {
+        this.fxExecutor = fxExecutor;
+    }
+
+    /**
+     * Sets the reader used to read the storage file. If not set, a {@code PersistenceFileReader} with
+     * its default settings is used.
+     */
+    public PersistenceStoreBuilder<T> fileReader(PersistenceFileReader fileReader) {
+        this.setFileReader(fileReader);
+        return this;
+    }
+    private PersistenceFileReader getFileReader() {
+        return this.fileReader;
+    }
+    private void setFileReader(PersistenceFileReader fileReader) {
+        this.fileReader = fileReader;
+    }
+
+    /**
+     * Sets the writer used to write the storage file. If not set, a {@code PersistenceFileWriter} in
+     * atomic mode without any backups is used.
+     */
+    public PersistenceStoreBuilder<T> fileWriter(PersistenceFileWriter fileWriter) {
+        this.setFileWriter(fileWriter);
+        return this;
+    }
+    private PersistenceFileWriter getFileWriter() {
+        return this.fileWriter;
+    }
+    private void setFileWriter(PersistenceFileWriter fileWriter) {
+        this.fileWriter = fileWriter;
+    }
+
+    /**
+     * Enables the sharded mode, in which the {@code storageFile} is used as a directory containing the
+     * given number of shard files. Every record is placed into the shard containing the fewest records
+     * when it is added to the list.
+     *
+     * @see #shardedStorage(int, Function)
+     */
+    public PersistenceStoreBuilder<T> shardedStorage(int shardCount) {
+        return this.shardedStorage(shardCount, null);
+    }
+
+    /**
+     * Enables the sharded mode, in which the {@code storageFile} is used as a directory containing the
+     * given number of shard files. A shard file is only written when one of its records has been
+     * added, changed or removed, and all shard files are loaded in parallel on the pool configured
+     * via {@link #parallelLoad(ForkJoinPool)} (or the common pool), so that the record factory must
+     * be safe to be called from multiple threads. The order of the records within the list is only
+     * retained for records contained in the same shard. The sharded mode cannot be combined with a
+     * journal, lazy loading or a fragment cache.
+     *
+     * @param shardKeyFunction
+     *      computes the key whose hash code determines the shard of a record. If {@code null}, every
+     *      record is placed into the shard containing the fewest records when it is added.
+     */
+    public PersistenceStoreBuilder<T> shardedStorage(int shardCount, Function<T, ?> shardKeyFunction) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Parameter 'shardCount' must be greater than zero");
+        }
+        this.setShardCount(shardCount);
+        this.setShardKeyFunction(shardKeyFunction);
+        return this;
+    }
+    private int getShardCount() {
+        return this.shardCount;
+    }
+    private void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+    private Function<T, ?> getShardKeyFunction() {
+        return this.shardKeyFunction;
+    }
+    private void setShardKeyFunction(Function<T, ?> shardKeyFunction) {
+        this.shardKeyFunction = shardKeyFunction;
+    }
+
+    /**
+     * Enables the journal mode, in which only changed records are appended to a journal file instead
+     * of writing the complete storage file after every change. Changed records are serialized on the
+     * thread changing them, but the journal is always appended and compacted on a background thread,
+     * even if no {@code writeDelay} has been configured.
+     *
+     * @param identityFunction
+     *      computes the identity of a record, which must never change during the lifetime of a record
+     */
+    public PersistenceStoreBuilder<T> journal(Function<T, String> identityFunction) {
+        this.setJournalIdentityFunction(identityFunction);
+        return this;
+    }
+    private Function<T, String> getJournalIdentityFunction() {
+        return this.journalIdentityFunction;
+    }
+    private void setJournalIdentityFunction(Function<T, String> journalIdentityFunction) {
+        this.journalIdentityFunction = journalIdentityFunction;
+    }
+
+    /**
+     * Sets the size in bytes of the journal file after which the journal is merged into the storage
+     * file. Defaults to 4 MB.
+     */
+    public PersistenceStoreBuilder<T> journalCompactionSize(long journalCompactionSize) {
+        this.setJournalCompactionSize(journalCompactionSize);
+        return this;
+    }
+    private long getJournalCompactionSize() {
+        return this.journalCompactionSize;
+    }
+    private void setJournalCompactionSize(long journalCompactionSize) {
+        this.journalCompactionSize = journalCompactionSize;
+    }
+
+    /**
+     * Sets the ratio of journal entries to records after which the journal is merged into the
+     * storage file. Defaults to {@code 1}, so the journal is compacted once it contains more entries
+     * than there are records in the store.
+     */
+    public PersistenceStoreBuilder<T> journalCompactionRatio(double journalCompactionRatio) {
+        this.setJournalCompactionRatio(journalCompactionRatio);
+        return this;
+    }
+    private double getJournalCompactionRatio() {
+        return this.journalCompactionRatio;
+    }
+    private void setJournalCompactionRatio(double journalCompactionRatio) {
+        this.journalCompactionRatio = journalCompactionRatio;
+    }
+
+    /**
+     * Sets the context providing the XML parsers and serializers. If not set, the default context is
+     * used.
+     */
+    public PersistenceStoreBuilder<T> context(PersistenceContext context) {
+        this.setContext(context);
+        return this;
+    }
+    private PersistenceContext getContext() {
+        return this.context;
+    }
+    private void setContext(PersistenceContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Sets the format in which the records are stored in the storage file and in the journal. If not
+     * set, the XML format is used.
+     */
+    public PersistenceStoreBuilder<T> codec(PersistenceCodec codec) {
+        this.setCodec(codec);
+        return this;
+    }
+    private PersistenceCodec getCodec() {
+        return this.codec;
+    }
+    private void setCodec(PersistenceCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Decodes the records of the storage file in parallel on the given pool when the store is
+     * created, so that the record factory must be safe to be called from multiple threads. If not
+     * set, all records are decoded on the calling thread.
+     */
+    public PersistenceStoreBuilder<T> parallelLoad(ForkJoinPool loadPool) {
+        this.setLoadPool(loadPool);
+        return this;
+    }
+    private ForkJoinPool getLoadPool() {
+        return this.loadPool;
+    }
+    private void setLoadPool(ForkJoinPool loadPool) {
+        this.loadPool = loadPool;
+    }
+
+    /**
+     * Enables the lazy mode, in which records are only decoded from the storage file when they are
+     * accessed for the first time. Records are decoded in pages of the given size, and the records of
+     * the given number of pages that have been used most recently are kept in memory. The lazy mode
+     * requires the XML format, an atomic file writer and cannot be combined with a journal.
+     */
+    public PersistenceStoreBuilder<T> lazyLoad(int pageSize, int cachedPages) {
+        this.setLazyPageSize(pageSize);
+        this.setLazyCachedPages(cachedPages);
+        return this;
+    }
+    private int getLazyPageSize() {
+        return this.lazyPageSize;
+    }
+    private void setLazyPageSize(int lazyPageSize) {
+        this.lazyPageSize = lazyPageSize;
+    }
+    private int getLazyCachedPages() {
+        return this.lazyCachedPages;
+    }
+    private void setLazyCachedPages(int lazyCachedPages) {
+        this.lazyCachedPages = lazyCachedPages;
+    }
+
+    /**
+     * Keeps the serialized form of every record after the storage file has been written, so that
+     * the next write only needs to serialize the records that have been added or changed since.
+     * Only supported for the XML format without lazy loading.
+     */
+    public PersistenceStoreBuilder<T> fragmentCache(boolean fragmentCache) {
+        this.setFragmentCache(fragmentCache);
+        return this;
+    }
+    private boolean isFragmentCache() {
+        return this.fragmentCache;
+    }
+    private void setFragmentCache(boolean fragmentCache) {
+        this.fragmentCache = fragmentCache;
+    }
+
+}
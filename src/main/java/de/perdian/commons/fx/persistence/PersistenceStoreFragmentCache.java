@@ -0,0 +1,121 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Keeps the XML fragment that has been written for every record during the last write of the
+ * storage file.
+ *
+ * When the storage file is written again, only the records that have been added or marked as dirty
+ * since the previous write are serialized, whereas the cached fragments are copied into the storage
+ * file for all other records. Records are identified by identity, so neither {@code equals} nor
+ * {@code hashCode} of the records is used.
+ */
+
+class PersistenceStoreFragmentCache<T extends PersistenceEnabled> {
+
+    private Map<T, byte[]> fragments = null;
+    private Set<T> dirtyRecords = null;
+    private long hits = 0;
+    private long misses = 0;
+
+    PersistenceStoreFragmentCache() {
+        this.setFragments(new IdentityHashMap<>());
+        this.setDirtyRecords(Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    /**
+     * Marks the given records as changed, so that they are serialized again during the next write
+     */
+    synchronized void markDirty(Collection<T> records) {
+        this.getDirtyRecords().addAll(records);
+    }
+
+    /**
+     * Writes the records into the given stream, using the same format as the XML codec
+     */
+    void writeRecords(List<T> records, OutputStream outputStream, PersistenceContext context) throws IOException {
+        Map<T, byte[]> previousFragments = null;
+        Set<T> dirtyRecords = null;
+        synchronized (this) {
+            previousFragments = this.getFragments();
+            dirtyRecords = this.getDirtyRecords();
+            this.setFragments(new IdentityHashMap<>());
+            this.setDirtyRecords(Collections.newSetFromMap(new IdentityHashMap<>()));
+        }
+        Map<T, byte[]> fragments = new IdentityHashMap<>(records.size());
+        long hits = 0;
+        long misses = 0;
+        try {
+            ByteArrayOutputStream fragmentBuffer = new ByteArrayOutputStream();
+            XMLStreamWriter xmlWriter = context.createXMLStreamWriter(fragmentBuffer);
+            outputStream.write(PersistenceEnabledStreamSupport.DOCUMENT_PREFIX);
+            for (T record : records) {
+                if (record.isPersistable()) {
+                    byte[] fragment = dirtyRecords.contains(record) ? null : previousFragments.get(record);
+                    if (fragment == null) {
+                        fragmentBuffer.reset();
+                        PersistenceEnabledStreamSupport.writeRecord(record, xmlWriter, context);
+                        xmlWriter.flush();
+                        fragment = fragmentBuffer.toByteArray();
+                        misses++;
+                    } else {
+                        hits++;
+                    }
+                    fragments.put(record, fragment);
+                    outputStream.write(fragment);
+                }
+            }
+            outputStream.write(PersistenceEnabledStreamSupport.DOCUMENT_SUFFIX);
+        } catch (Exception e) {
+            synchronized (this) {
+                this.getDirtyRecords().addAll(dirtyRecords);
+            }
+            throw e instanceof IOException ? (IOException)e : new IOException("Cannot export records", e);
+        }
+        synchronized (this) {
+            this.setFragments(fragments);
+            this.setHits(this.getHits() + hits);
+            this.setMisses(this.getMisses() + misses);
+        }
+    }
+
+    private Map<T, byte[]> getFragments() {
+        return this.fragments;
+    }
+    private void setFragments(Map<T, byte[]> fragments) {
+        this.fragments = fragments;
+    }
+
+    private Set<T> getDirtyRecords() {
+        return this.dirtyRecords;
+    }
+    private void setDirtyRecords(Set<T> dirtyRecords) {
+        this.dirtyRecords = dirtyRecords;
+    }
+
+    synchronized long getHits() {
+        return this.hits;
+    }
+    private void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    synchronized long getMisses() {
+        return this.misses;
+    }
+    private void setMisses(long misses) {
+        this.misses = misses;
+    }
+
+}
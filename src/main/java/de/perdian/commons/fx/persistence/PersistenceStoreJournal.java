@@ -0,0 +1,256 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of changes made to the records of a {@code PersistenceStore} since the storage
+ * file has been written completely for the last time.
+ *
+ * Every entry consists of the identity of the record and either the complete new content of the
+ * record or a marker that the record has been removed. When the journal is replayed on top of the
+ * records from the storage file, records with an identity already known are replaced in place and
+ * new records are appended at the end of the list.
+ *
+ * During a compaction the current journal is moved aside, so that changes made while the storage
+ * file is being written go into a fresh journal. Replaying an old journal on top of a newer storage
+ * file (after a crash during compaction) always yields the same result, as the last entry for every
+ * record wins.
+ */
+
+class PersistenceStoreJournal<T extends PersistenceEnabled> {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistenceStoreJournal.class);
+    private static final byte ENTRY_PUT = 1;
+    private static final byte ENTRY_REMOVE = 2;
+
+    private Path journalFile = null;
+    private Path compactingJournalFile = null;
+    private Function<T, String> identityFunction = null;
+    private PersistenceCodec codec = null;
+    private PersistenceContext context = null;
+    private long compactionSize = 0;
+    private double compactionRatio = 0;
+    private long journalSize = 0;
+    private long journalEntries = 0;
+
+    PersistenceStoreJournal(Path storageFile, Function<T, String> identityFunction, long compactionSize, double compactionRatio, PersistenceCodec codec, PersistenceContext context) {
+        this.setCodec(codec);
+        this.setContext(context);
+        this.setJournalFile(storageFile.resolveSibling(storageFile.getFileName() + ".journal"));
+        this.setCompactingJournalFile(storageFile.resolveSibling(storageFile.getFileName() + ".journal.compacting"));
+        this.setIdentityFunction(identityFunction);
+        this.setCompactionSize(compactionSize);
+        this.setCompactionRatio(compactionRatio);
+    }
+
+    String identify(T record) {
+        return Objects.requireNonNull(this.getIdentityFunction().apply(record), "Identity of record must not be null: " + record);
+    }
+
+    /**
+     * Applies all entries of the journal to the given records as read from the storage file
+     */
+    synchronized List<T> replay(List<T> storedRecords, Class<T> recordClass, Supplier<T> recordFactory) {
+        Map<String, T> recordsByIdentity = new LinkedHashMap<>();
+        storedRecords.forEach(record -> recordsByIdentity.put(this.identify(record), record));
+        this.setJournalSize(0);
+        this.setJournalEntries(0);
+        for (Path journalFile : List.of(this.getCompactingJournalFile(), this.getJournalFile())) {
+            if (Files.exists(journalFile)) {
+                log.debug("Replaying journal from file: {}", journalFile);
+                try (DataInputStream journalStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile)))) {
+                    while (true) {
+                        byte entryType = journalStream.readByte();
+                        String identity = journalStream.readUTF();
+                        if (entryType == ENTRY_PUT) {
+                            byte[] recordBytes = new byte[journalStream.readInt()];
+                            journalStream.readFully(recordBytes);
+                            this.getCodec().readRecords(new ByteArrayInputStream(recordBytes), recordClass, recordFactory, record -> recordsByIdentity.put(identity, record), this.getContext());
+                        } else if (entryType == ENTRY_REMOVE) {
+                            recordsByIdentity.remove(identity);
+                        } else {
+                            throw new IOException("Invalid journal entry type: " + entryType);
+                        }
+                        this.setJournalEntries(this.getJournalEntries() + 1);
+                    }
+                } catch (EOFException e) {
+                    log.trace("Reached end of journal file: {}", journalFile);
+                } catch (Exception e) {
+                    log.warn("Cannot replay journal completely from file: {}", journalFile, e);
+                }
+                try {
+                    this.setJournalSize(this.getJournalSize() + Files.size(journalFile));
+                } catch (IOException e) {
+                    log.debug("Cannot determine size of journal file: {}", journalFile, e);
+                }
+            }
+        }
+        return new ArrayList<>(recordsByIdentity.values());
+    }
+
+    /**
+     * Serializes the given changes into journal entries
+     *
+     * @param changes
+     *      the changed records by their identity. A {@code null} value marks the record as removed.
+     */
+    byte[] encodeEntries(Map<String, T> changes) throws IOException {
+        ByteArrayOutputStream entriesBuffer = new ByteArrayOutputStream();
+        DataOutputStream entriesStream = new DataOutputStream(entriesBuffer);
+        ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+        for (Map.Entry<String, T> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                entriesStream.writeByte(ENTRY_REMOVE);
+                entriesStream.writeUTF(change.getKey());
+            } else {
+                recordBuffer.reset();
+                this.getCodec().writeRecords(List.of(change.getValue()), recordBuffer, this.getContext());
+                entriesStream.writeByte(ENTRY_PUT);
+                entriesStream.writeUTF(change.getKey());
+                entriesStream.writeInt(recordBuffer.size());
+                recordBuffer.writeTo(entriesStream);
+            }
+        }
+        entriesStream.flush();
+        return entriesBuffer.toByteArray();
+    }
+
+    /**
+     * Appends the given entries as created by {@link #encodeEntries(Map)} to the journal
+     */
+    synchronized void appendEntries(byte[] entries, int entryCount) throws IOException {
+        if (entryCount > 0) {
+            Files.createDirectories(this.getJournalFile().toAbsolutePath().getParent());
+            try (FileChannel journalChannel = FileChannel.open(this.getJournalFile(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer entriesBytes = ByteBuffer.wrap(entries);
+                while (entriesBytes.hasRemaining()) {
+                    journalChannel.write(entriesBytes);
+                }
+                journalChannel.force(false);
+            }
+            this.setJournalSize(this.getJournalSize() + entries.length);
+            this.setJournalEntries(this.getJournalEntries() + entryCount);
+        }
+    }
+
+    synchronized boolean isPresent() {
+        return Files.exists(this.getJournalFile()) || Files.exists(this.getCompactingJournalFile());
+    }
+
+    synchronized boolean isCompactionRequired(int recordCount) {
+        if (this.getJournalEntries() == 0) {
+            return false;
+        } else {
+            return this.getJournalSize() >= this.getCompactionSize() || this.getJournalEntries() > this.getCompactionRatio() * Math.max(1, recordCount);
+        }
+    }
+
+    /**
+     * Moves the current journal aside, so that all further changes are written into a new journal
+     */
+    synchronized void startCompaction() throws IOException {
+        if (Files.exists(this.getJournalFile())) {
+            if (Files.exists(this.getCompactingJournalFile())) {
+                Files.write(this.getCompactingJournalFile(), Files.readAllBytes(this.getJournalFile()), StandardOpenOption.APPEND);
+                Files.delete(this.getJournalFile());
+            } else {
+                Files.move(this.getJournalFile(), this.getCompactingJournalFile());
+            }
+        }
+        this.setJournalSize(0);
+        this.setJournalEntries(0);
+    }
+
+    /**
+     * Removes the journal moved aside when the compaction has been started, after the storage file
+     * containing all of its changes has been written
+     */
+    void completeCompaction() throws IOException {
+        Files.deleteIfExists(this.getCompactingJournalFile());
+    }
+
+    private Path getJournalFile() {
+        return this.journalFile;
+    }
+    private void setJournalFile(Path journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    private Path getCompactingJournalFile() {
+        return this.compactingJournalFile;
+    }
+    private void setCompactingJournalFile(Path compactingJournalFile) {
+        this.compactingJournalFile = compactingJournalFile;
+    }
+
+    private Function<T, String> getIdentityFunction() {
+        return this.identityFunction;
+    }
+    private void setIdentityFunction(Function<T, String> identityFunction) {
+        this.identityFunction = identityFunction;
+    }
+
+    private PersistenceCodec getCodec() {
+        return this.codec;
+    }
+    private void setCodec(PersistenceCodec codec) {
+        this.codec = codec;
+    }
+
+    private PersistenceContext getContext() {
+        return this.context;
+    }
+    private void setContext(PersistenceContext context) {
+        this.context = context;
+    }
+
+    private long getCompactionSize() {
+        return this.compactionSize;
+    }
+    private void setCompactionSize(long compactionSize) {
+        this.compactionSize = compactionSize;
+    }
+
+    private double getCompactionRatio() {
+        return this.compactionRatio;
+    }
+    private void setCompactionRatio(double compactionRatio) {
+        this.compactionRatio = compactionRatio;
+    }
+
+    private long getJournalSize() {
+        return this.journalSize;
+    }
+    private void setJournalSize(long journalSize) {
+        this.journalSize = journalSize;
+    }
+
+    private long getJournalEntries() {
+        return this.journalEntries;
+    }
+    private void setJournalEntries(long journalEntries) {
+        this.journalEntries = journalEntries;
+    }
+
+}
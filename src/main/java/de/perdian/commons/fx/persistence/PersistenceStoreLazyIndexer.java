@@ -0,0 +1,175 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Determines the byte ranges of the record elements within a storage file in the XML format.
+ *
+ * The file is scanned on the byte level without decoding any element, which is sufficient for the
+ * subset of XML written by the persistence classes: processing instructions, comments, CDATA
+ * sections and the document type declaration (without an internal subset) are skipped, and only the
+ * elements that are direct children of the root element are considered.
+ */
+
+class PersistenceStoreLazyIndexer {
+
+    private InputStream inputStream = null;
+    private long position = 0;
+    private int pushback = -1;
+
+    private PersistenceStoreLazyIndexer(InputStream inputStream) {
+        this.setInputStream(inputStream);
+    }
+
+    static <T extends PersistenceEnabled> List<PersistenceStoreLazyRecord<T>> indexRecords(InputStream storageStream, String recordElementName) throws IOException {
+        return new PersistenceStoreLazyIndexer(storageStream).indexRecords(recordElementName.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private <T extends PersistenceEnabled> List<PersistenceStoreLazyRecord<T>> indexRecords(byte[] recordElementName) throws IOException {
+        List<PersistenceStoreLazyRecord<T>> records = new ArrayList<>();
+        int depth = 0;
+        long recordOffset = -1;
+        for (int nextByte = this.read(); nextByte >= 0; nextByte = this.read()) {
+            if (nextByte == '<') {
+                long elementOffset = this.getPosition() - 1;
+                int markerByte = this.readRequired();
+                if (markerByte == '?') {
+                    this.skipTo("?>");
+                } else if (markerByte == '!') {
+                    int commentByte = this.readRequired();
+                    if (commentByte == '-') {
+                        this.skipTo("-->");
+                    } else if (commentByte == '[') {
+                        this.skipTo("]]>");
+                    } else {
+                        this.skipTo(">");
+                    }
+                } else if (markerByte == '/') {
+                    this.skipTo(">");
+                    depth--;
+                    if (depth == 1 && recordOffset >= 0) {
+                        records.add(new PersistenceStoreLazyRecord<>(recordOffset, (int)(this.getPosition() - recordOffset)));
+                        recordOffset = -1;
+                    }
+                } else {
+                    boolean recordElement = depth == 1 && this.readElementName(markerByte, recordElementName);
+                    boolean emptyElement = this.skipElementTag();
+                    if (recordElement && emptyElement) {
+                        records.add(new PersistenceStoreLazyRecord<>(elementOffset, (int)(this.getPosition() - elementOffset)));
+                    } else if (!emptyElement) {
+                        if (recordElement) {
+                            recordOffset = elementOffset;
+                        }
+                        depth++;
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Reads the name of the element and checks whether it matches the given name. Afterwards the
+     * stream is positioned directly behind the name, or at the end of the tag if the element is empty.
+     */
+    private boolean readElementName(int firstByte, byte[] expectedName) throws IOException {
+        byte[] nameBuffer = new byte[expectedName.length + 1];
+        int nameLength = 0;
+        for (int nextByte = firstByte; ; nextByte = this.readRequired()) {
+            if (nextByte == ' ' || nextByte == '\t' || nextByte == '\r' || nextByte == '\n') {
+                break;
+            } else if (nextByte == '/' || nextByte == '>') {
+                this.setPushback(nextByte);
+                break;
+            } else if (nameLength < nameBuffer.length) {
+                nameBuffer[nameLength] = (byte)nextByte;
+            }
+            nameLength++;
+        }
+        return nameLength == expectedName.length && Arrays.equals(expectedName, 0, nameLength, nameBuffer, 0, nameLength);
+    }
+
+    /**
+     * Skips the remainder of a start tag, honoring quoted attribute values
+     *
+     * @return
+     *      whether or not the tag marks an empty element
+     */
+    private boolean skipElementTag() throws IOException {
+        int quoteByte = -1;
+        int previousByte = -1;
+        for (int nextByte = this.readRequired(); ; nextByte = this.readRequired()) {
+            if (quoteByte >= 0) {
+                if (nextByte == quoteByte) {
+                    quoteByte = -1;
+                }
+            } else if (nextByte == '"' || nextByte == '\'') {
+                quoteByte = nextByte;
+            } else if (nextByte == '>') {
+                return previousByte == '/';
+            }
+            previousByte = nextByte;
+        }
+    }
+
+    private void skipTo(String terminator) throws IOException {
+        byte[] terminatorBytes = terminator.getBytes(StandardCharsets.US_ASCII);
+        byte[] windowBytes = new byte[terminatorBytes.length];
+        for (int readBytes = 1; ; readBytes++) {
+            System.arraycopy(windowBytes, 1, windowBytes, 0, windowBytes.length - 1);
+            windowBytes[windowBytes.length - 1] = (byte)this.readRequired();
+            if (readBytes >= windowBytes.length && Arrays.equals(windowBytes, terminatorBytes)) {
+                return;
+            }
+        }
+    }
+
+    private int readRequired() throws IOException {
+        int nextByte = this.read();
+        if (nextByte < 0) {
+            throw new EOFException("Unexpected end of storage file at position: " + this.getPosition());
+        }
+        return nextByte;
+    }
+
+    private int read() throws IOException {
+        int nextByte = this.getPushback();
+        if (nextByte >= 0) {
+            this.setPushback(-1);
+        } else {
+            nextByte = this.getInputStream().read();
+            if (nextByte >= 0) {
+                this.setPosition(this.getPosition() + 1);
+            }
+        }
+        return nextByte;
+    }
+
+    private InputStream getInputStream() {
+        return this.inputStream;
+    }
+    private void setInputStream(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    private long getPosition() {
+        return this.position;
+    }
+    private void setPosition(long position) {
+        this.position = position;
+    }
+
+    private int getPushback() {
+        return this.pushback;
+    }
+    private void setPushback(int pushback) {
+        this.pushback = pushback;
+    }
+
+}
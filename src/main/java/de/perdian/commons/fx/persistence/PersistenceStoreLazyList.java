@@ -0,0 +1,299 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javafx.beans.value.ChangeListener;
+import javafx.collections.ModifiableObservableListBase;
+
+/**
+ * An {@code ObservableList} whose records are decoded from the storage file on demand.
+ *
+ * When the store is created only the byte ranges of the records within the storage file are
+ * determined. Whenever a record is accessed that hasn't been decoded yet, all records of the page
+ * the record belongs to are decoded at once. The most recently used records are kept in a bounded
+ * cache, all other records that have not been changed may be collected and are decoded again when
+ * they are accessed the next time. Change listeners are only attached to records that have been
+ * decoded.
+ */
+
+class PersistenceStoreLazyList<T extends PersistenceEnabled> extends ModifiableObservableListBase<T> {
+
+    private static final byte[] PAGE_PREFIX = "<records>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PAGE_SUFFIX = "</records>".getBytes(StandardCharsets.UTF_8);
+
+    private Path storageFile = null;
+    private Class<T> recordClass = null;
+    private Supplier<T> recordFactory = null;
+    private PersistenceContext context = null;
+    private PersistenceStoreWriter<T> storeWriter = null;
+    private int pageSize = 0;
+    private int maxCachedRecords = 0;
+    private List<PersistenceStoreLazyRecord<T>> lazyRecords = null;
+    private Map<PersistenceStoreLazyRecord<T>, T> cachedRecords = null;
+    private final Object fileLock = new Object();
+
+    PersistenceStoreLazyList(Path storageFile, Class<T> recordClass, Supplier<T> recordFactory, int pageSize, int cachedPages, PersistenceContext context, PersistenceStoreWriter<T> storeWriter) {
+        this.setStorageFile(storageFile);
+        this.setRecordClass(recordClass);
+        this.setRecordFactory(recordFactory);
+        this.setPageSize(pageSize);
+        this.setMaxCachedRecords(pageSize * Math.max(1, cachedPages));
+        this.setContext(context);
+        this.setStoreWriter(storeWriter);
+        this.setLazyRecords(new ArrayList<>());
+        this.setCachedRecords(new LinkedHashMap<>(16, 0.75f, true));
+    }
+
+    /**
+     * Determines the positions of all records within the storage file, without decoding any of them
+     */
+    synchronized void loadIndex(PersistenceFileReader fileReader) throws IOException {
+        if (Files.exists(this.getStorageFile())) {
+            synchronized (this.getFileLock()) {
+                try (InputStream storageStream = fileReader.open(this.getStorageFile())) {
+                    this.setLazyRecords(PersistenceStoreLazyIndexer.indexRecords(storageStream, this.getRecordClass().getSimpleName()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a snapshot of the current list of records that can be written into the storage file
+     * without decoding the records that haven't been changed
+     */
+    synchronized PersistenceStoreLazySnapshot<T> createSnapshot() throws IOException {
+        return new PersistenceStoreLazySnapshot<>(new ArrayList<>(this.getLazyRecords()), this.getContext(), this.getFileLock());
+    }
+
+    /**
+     * Removes the change listeners from all records that have been decoded
+     */
+    synchronized void detach() {
+        this.getLazyRecords().forEach(this::detachRecord);
+        this.getCachedRecords().clear();
+    }
+
+    /**
+     * Gets the record at the given index, decoding its page if necessary. If the page cannot be read
+     * from the storage file, an {@code UncheckedIOException} is thrown. The content of such a record
+     * is kept in the storage file, so that it will not be lost when the list is written again.
+     */
+    @Override
+    public synchronized T get(int index) {
+        PersistenceStoreLazyRecord<T> lazyRecord = this.getLazyRecords().get(index);
+        T record = lazyRecord.lookupRecord();
+        if (record == null) {
+            try {
+                record = this.loadPage(index).get(lazyRecord);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot load record " + index + " from storage file: " + this.getStorageFile(), e);
+            }
+        } else if (!lazyRecord.isPinned()) {
+            this.cacheRecord(lazyRecord, record);
+        }
+        return record;
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.getLazyRecords().size();
+    }
+
+    @Override
+    protected synchronized void doAdd(int index, T element) {
+        this.getLazyRecords().add(index, this.createPinnedRecord(element));
+    }
+
+    /**
+     * Replaces the record at the given index. The previous record is decoded if necessary, so that
+     * it can be reported to the listeners.
+     */
+    @Override
+    protected synchronized T doSet(int index, T element) {
+        T previousRecord = this.get(index);
+        this.detachRecord(this.getLazyRecords().get(index));
+        this.getCachedRecords().remove(this.getLazyRecords().get(index));
+        this.getLazyRecords().set(index, this.createPinnedRecord(element));
+        return previousRecord;
+    }
+
+    /**
+     * Removes the record at the given index. The removed record is decoded if necessary, so that it
+     * can be reported to the listeners.
+     */
+    @Override
+    protected synchronized T doRemove(int index) {
+        T previousRecord = this.get(index);
+        this.detachRecord(this.getLazyRecords().get(index));
+        this.getCachedRecords().remove(this.getLazyRecords().remove(index));
+        return previousRecord;
+    }
+
+    /**
+     * Decodes all records of the page containing the given index that are not available any more
+     *
+     * @return
+     *      the records that have been decoded
+     */
+    private Map<PersistenceStoreLazyRecord<T>, T> loadPage(int index) throws IOException {
+        int pageStart = index - (index % this.getPageSize());
+        int pageEnd = Math.min(this.getLazyRecords().size(), pageStart + this.getPageSize());
+        List<PersistenceStoreLazyRecord<T>> pageRecords = new ArrayList<>();
+        for (PersistenceStoreLazyRecord<T> lazyRecord : this.getLazyRecords().subList(pageStart, pageEnd)) {
+            if (lazyRecord.lookupRecord() == null) {
+                pageRecords.add(lazyRecord);
+            }
+        }
+        ByteArrayOutputStream pageBuffer = new ByteArrayOutputStream();
+        pageBuffer.write(PAGE_PREFIX);
+        synchronized (this.getFileLock()) {
+            try (FileChannel storageChannel = FileChannel.open(this.getStorageFile(), StandardOpenOption.READ)) {
+                for (PersistenceStoreLazyRecord<T> lazyRecord : pageRecords) {
+                    ByteBuffer recordBuffer = ByteBuffer.allocate(lazyRecord.getFileLength());
+                    while (recordBuffer.hasRemaining()) {
+                        if (storageChannel.read(recordBuffer, lazyRecord.getFileOffset() + recordBuffer.position()) < 0) {
+                            throw new IOException("Unexpected end of storage file: " + this.getStorageFile());
+                        }
+                    }
+                    pageBuffer.write(recordBuffer.array());
+                }
+            }
+        }
+        pageBuffer.write(PAGE_SUFFIX);
+        List<T> records = new ArrayList<>(pageRecords.size());
+        PersistenceEnabledStreamSupport.readRecords(new ByteArrayInputStream(pageBuffer.toByteArray()), this.getRecordClass(), this.getRecordFactory(), records::add, this.getContext());
+        if (records.size() != pageRecords.size()) {
+            throw new IOException("Expected " + pageRecords.size() + " records but found " + records.size() + " in storage file: " + this.getStorageFile());
+        }
+        Map<PersistenceStoreLazyRecord<T>, T> loadedRecords = new LinkedHashMap<>();
+        for (int recordIndex = 0; recordIndex < records.size(); recordIndex++) {
+            PersistenceStoreLazyRecord<T> lazyRecord = pageRecords.get(recordIndex);
+            T record = records.get(recordIndex);
+            lazyRecord.materialize(record);
+            this.attachRecord(lazyRecord, record);
+            this.cacheRecord(lazyRecord, record);
+            loadedRecords.put(lazyRecord, record);
+        }
+        return loadedRecords;
+    }
+
+    private void cacheRecord(PersistenceStoreLazyRecord<T> lazyRecord, T record) {
+        this.getCachedRecords().put(lazyRecord, record);
+        for (Iterator<PersistenceStoreLazyRecord<T>> cachedRecordsIterator = this.getCachedRecords().keySet().iterator(); this.getCachedRecords().size() > this.getMaxCachedRecords();) {
+            cachedRecordsIterator.next();
+            cachedRecordsIterator.remove();
+        }
+    }
+
+    private PersistenceStoreLazyRecord<T> createPinnedRecord(T record) {
+        PersistenceStoreLazyRecord<T> lazyRecord = new PersistenceStoreLazyRecord<>(record);
+        this.attachRecord(lazyRecord, record);
+        return lazyRecord;
+    }
+
+    private void attachRecord(PersistenceStoreLazyRecord<T> lazyRecord, T record) {
+        ChangeListener<Object> changeListener = (o, oldValue, newValue) -> {
+            lazyRecord.markChanged();
+            synchronized (this) {
+                this.getCachedRecords().remove(lazyRecord);
+            }
+            this.getStoreWriter().markDirty(false, List.of(record), Collections.emptyList());
+        };
+        lazyRecord.setChangeListener(changeListener);
+        record.addChangeListener(changeListener);
+    }
+
+    private void detachRecord(PersistenceStoreLazyRecord<T> lazyRecord) {
+        T record = lazyRecord.lookupRecord();
+        ChangeListener<Object> changeListener = lazyRecord.getChangeListener();
+        if (record != null && changeListener != null) {
+            record.removeChangeListener(changeListener);
+            lazyRecord.setChangeListener(null);
+        }
+    }
+
+    private Path getStorageFile() {
+        return this.storageFile;
+    }
+    private void setStorageFile(Path storageFile) {
+        this.storageFile = storageFile;
+    }
+
+    private Class<T> getRecordClass() {
+        return this.recordClass;
+    }
+    private void setRecordClass(Class<T> recordClass) {
+        this.recordClass = recordClass;
+    }
+
+    private Supplier<T> getRecordFactory() {
+        return this.recordFactory;
+    }
+    private void setRecordFactory(Supplier<T> recordFactory) {
+        this.recordFactory = recordFactory;
+    }
+
+    private PersistenceContext getContext() {
+        return this.context;
+    }
+    private void setContext(PersistenceContext context) {
+        this.context = context;
+    }
+
+    private PersistenceStoreWriter<T> getStoreWriter() {
+        return this.storeWriter;
+    }
+    private void setStoreWriter(PersistenceStoreWriter<T> storeWriter) {
+        this.storeWriter = storeWriter;
+    }
+
+    private int getPageSize() {
+        return this.pageSize;
+    }
+    private void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    private int getMaxCachedRecords() {
+        return this.maxCachedRecords;
+    }
+    private void setMaxCachedRecords(int maxCachedRecords) {
+        this.maxCachedRecords = maxCachedRecords;
+    }
+
+    private List<PersistenceStoreLazyRecord<T>> getLazyRecords() {
+        return this.lazyRecords;
+    }
+    private void setLazyRecords(List<PersistenceStoreLazyRecord<T>> lazyRecords) {
+        this.lazyRecords = lazyRecords;
+    }
+
+    private Map<PersistenceStoreLazyRecord<T>, T> getCachedRecords() {
+        return this.cachedRecords;
+    }
+    private void setCachedRecords(Map<PersistenceStoreLazyRecord<T>, T> cachedRecords) {
+        this.cachedRecords = cachedRecords;
+    }
+
+    private Object getFileLock() {
+        return this.fileLock;
+    }
+
+}
@@ -0,0 +1,119 @@
+package de.perdian.commons.fx.persistence;
+
+import java.lang.ref.WeakReference;
+
+import javafx.beans.value.ChangeListener;
+
+/**
+ * Position of a single record within a {@code PersistenceStoreLazyList}.
+ *
+ * A record that hasn't been changed since the storage file has been written is only referenced
+ * weakly, so that it can be decoded again from the storage file once it has been collected (the
+ * cache of the list keeps the recently used records reachable). Records that have been added or
+ * changed are pinned, which means that they are referenced strongly until they have been written
+ * into the storage file.
+ */
+
+class PersistenceStoreLazyRecord<T extends PersistenceEnabled> {
+
+    private long fileOffset = -1;
+    private int fileLength = -1;
+    private T record = null;
+    private WeakReference<T> recordReference = null;
+    private long modificationCount = 0;
+    private boolean pinned = false;
+    private ChangeListener<Object> changeListener = null;
+
+    PersistenceStoreLazyRecord(long fileOffset, int fileLength) {
+        this.setFileOffset(fileOffset);
+        this.setFileLength(fileLength);
+    }
+
+    PersistenceStoreLazyRecord(T record) {
+        this.setRecord(record);
+        this.setRecordReference(new WeakReference<>(record));
+        this.setPinned(true);
+    }
+
+    /**
+     * Gets the record if it has already been decoded and hasn't been collected since
+     */
+    synchronized T lookupRecord() {
+        return this.getRecord() != null ? this.getRecord() : this.getRecordReference() == null ? null : this.getRecordReference().get();
+    }
+
+    synchronized void materialize(T record) {
+        this.setRecordReference(new WeakReference<>(record));
+    }
+
+    synchronized void markChanged() {
+        if (this.getRecord() == null && this.getRecordReference() != null) {
+            this.setRecord(this.getRecordReference().get());
+        }
+        this.setModificationCount(this.getModificationCount() + 1);
+        this.setPinned(true);
+    }
+
+    /**
+     * Updates the position of the record after the storage file has been written. The record is
+     * unpinned, unless it has been changed again after the write has been started.
+     */
+    synchronized void commit(long fileOffset, int fileLength, long writtenModificationCount) {
+        this.setFileOffset(fileOffset);
+        this.setFileLength(fileLength);
+        if (this.getModificationCount() == writtenModificationCount) {
+            this.setPinned(false);
+            this.setRecord(null);
+        }
+    }
+
+    synchronized long getFileOffset() {
+        return this.fileOffset;
+    }
+    private void setFileOffset(long fileOffset) {
+        this.fileOffset = fileOffset;
+    }
+
+    synchronized int getFileLength() {
+        return this.fileLength;
+    }
+    private void setFileLength(int fileLength) {
+        this.fileLength = fileLength;
+    }
+
+    private T getRecord() {
+        return this.record;
+    }
+    private void setRecord(T record) {
+        this.record = record;
+    }
+
+    private WeakReference<T> getRecordReference() {
+        return this.recordReference;
+    }
+    private void setRecordReference(WeakReference<T> recordReference) {
+        this.recordReference = recordReference;
+    }
+
+    synchronized long getModificationCount() {
+        return this.modificationCount;
+    }
+    private void setModificationCount(long modificationCount) {
+        this.modificationCount = modificationCount;
+    }
+
+    synchronized ChangeListener<Object> getChangeListener() {
+        return this.changeListener;
+    }
+    synchronized void setChangeListener(ChangeListener<Object> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    synchronized boolean isPinned() {
+        return this.pinned;
+    }
+    private void setPinned(boolean pinned) {
+        this.pinned = pinned;
+    }
+
+}
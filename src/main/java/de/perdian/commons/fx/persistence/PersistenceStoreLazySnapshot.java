@@ -0,0 +1,139 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * The records of a {@code PersistenceStoreLazyList} at the time a write has been requested.
+ *
+ * The records that have been added or changed are encoded when the snapshot is created, so that
+ * the records are not accessed again while the snapshot is written. When the snapshot is written,
+ * the bytes of all other records are copied from the current storage file. As the storage file is
+ * read while the new content is being written, the storage file must be written atomically. After
+ * the storage file has been replaced, the positions of the records are updated to reflect the new
+ * storage file.
+ */
+
+class PersistenceStoreLazySnapshot<T extends PersistenceEnabled> {
+
+    private List<PersistenceStoreLazyRecord<T>> lazyRecords = null;
+    private byte[][] recordContents = null;
+    private long[] modificationCounts = null;
+    private Object fileLock = null;
+
+    PersistenceStoreLazySnapshot(List<PersistenceStoreLazyRecord<T>> lazyRecords, PersistenceContext context, Object fileLock) throws IOException {
+        this.setLazyRecords(lazyRecords);
+        this.setFileLock(fileLock);
+        this.encodePinnedRecords(context);
+    }
+
+    /**
+     * Encodes all records that have been added or changed since the storage file has been written
+     */
+    private void encodePinnedRecords(PersistenceContext context) throws IOException {
+        byte[][] recordContents = new byte[this.getLazyRecords().size()][];
+        long[] modificationCounts = new long[this.getLazyRecords().size()];
+        try {
+            ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+            XMLStreamWriter xmlWriter = context.createXMLStreamWriter(recordBuffer);
+            for (int recordIndex = 0; recordIndex < this.getLazyRecords().size(); recordIndex++) {
+                PersistenceStoreLazyRecord<T> lazyRecord = this.getLazyRecords().get(recordIndex);
+                modificationCounts[recordIndex] = lazyRecord.getModificationCount();
+                if (lazyRecord.isPinned()) {
+                    T record = lazyRecord.lookupRecord();
+                    if (record.isPersistable()) {
+                        recordBuffer.reset();
+                        PersistenceEnabledStreamSupport.writeRecord(record, xmlWriter, context);
+                        xmlWriter.flush();
+                        recordContents[recordIndex] = recordBuffer.toByteArray();
+                    } else {
+                        recordContents[recordIndex] = new byte[0];
+                        modificationCounts[recordIndex] = -1;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Cannot export records", e);
+        }
+        this.setRecordContents(recordContents);
+        this.setModificationCounts(modificationCounts);
+    }
+
+    /**
+     * Writes the snapshot into the storage file and updates the positions of the records
+     */
+    void write(Path storageFile, PersistenceFileWriter fileWriter) throws IOException {
+        long[] fileOffsets = new long[this.getLazyRecords().size()];
+        int[] fileLengths = new int[this.getLazyRecords().size()];
+        fileWriter.write(storageFile, outputStream -> this.writeTo(storageFile, outputStream, fileOffsets, fileLengths), this.getFileLock(), () -> {
+            for (int recordIndex = 0; recordIndex < this.getLazyRecords().size(); recordIndex++) {
+                this.getLazyRecords().get(recordIndex).commit(fileOffsets[recordIndex], fileLengths[recordIndex], this.getModificationCounts()[recordIndex]);
+            }
+        });
+    }
+
+    private void writeTo(Path storageFile, OutputStream outputStream, long[] fileOffsets, int[] fileLengths) throws IOException {
+        try (FileChannel storageChannel = Files.exists(storageFile) ? FileChannel.open(storageFile, StandardOpenOption.READ) : null) {
+            outputStream.write(PersistenceEnabledStreamSupport.DOCUMENT_PREFIX);
+            long fileOffset = PersistenceEnabledStreamSupport.DOCUMENT_PREFIX.length;
+            for (int recordIndex = 0; recordIndex < this.getLazyRecords().size(); recordIndex++) {
+                PersistenceStoreLazyRecord<T> lazyRecord = this.getLazyRecords().get(recordIndex);
+                byte[] recordContent = this.getRecordContents()[recordIndex];
+                if (recordContent == null) {
+                    ByteBuffer recordBytes = ByteBuffer.allocate(lazyRecord.getFileLength());
+                    while (recordBytes.hasRemaining()) {
+                        if (storageChannel.read(recordBytes, lazyRecord.getFileOffset() + recordBytes.position()) < 0) {
+                            throw new IOException("Unexpected end of storage file: " + storageFile);
+                        }
+                    }
+                    recordContent = recordBytes.array();
+                }
+                fileOffsets[recordIndex] = recordContent.length == 0 ? -1 : fileOffset;
+                fileLengths[recordIndex] = recordContent.length == 0 ? -1 : recordContent.length;
+                outputStream.write(recordContent);
+                fileOffset += recordContent.length;
+            }
+            outputStream.write(PersistenceEnabledStreamSupport.DOCUMENT_SUFFIX);
+        }
+    }
+
+    private List<PersistenceStoreLazyRecord<T>> getLazyRecords() {
+        return this.lazyRecords;
+    }
+    private void setLazyRecords(List<PersistenceStoreLazyRecord<T>> lazyRecords) {
+        this.lazyRecords = lazyRecords;
+    }
+
+    private byte[][] getRecordContents() {
+        return this.recordContents;
+    }
+    private void setRecordContents(byte[][] recordContents) {
+        this.recordContents = recordContents;
+    }
+
+    private long[] getModificationCounts() {
+        return this.modificationCounts;
+    }
+    private void setModificationCounts(long[] modificationCounts) {
+        this.modificationCounts = modificationCounts;
+    }
+
+    private Object getFileLock() {
+        return this.fileLock;
+    }
+    private void setFileLock(Object fileLock) {
+        this.fileLock = fileLock;
+    }
+
+}
@@ -0,0 +1,363 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Distributes the records of a {@code PersistenceStore} across a fixed number of shard files within
+ * a storage directory.
+ *
+ * If a shard key function is available, the shard of a record is derived from the hash code of its
+ * key, so that a record moves into another shard as soon as its key changes. Otherwise a record is
+ * placed into the shard containing the fewest records when it is added and stays there until it is
+ * removed. Only the shards containing records that have been added, changed or removed since the
+ * last write are written again.
+ *
+ * As every shard is stored separately, the order of the records within the list is only retained
+ * for records contained in the same shard. After loading, the records of the first shard are
+ * followed by the records of the second shard and so on.
+ */
+
+class PersistenceStoreShards<T extends PersistenceEnabled> {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistenceStoreShards.class);
+    private static final String SHARD_FILE_PREFIX = "shard-";
+    private static final Pattern SHARD_FILE_PATTERN = Pattern.compile(SHARD_FILE_PREFIX + "\\d{1,9}");
+    private static final String BACKUP_FILE_INFIX = ".failed-";
+
+    private Path storageDirectory = null;
+    private int shardCount = 0;
+    private Function<T, ?> shardKeyFunction = null;
+    private Map<T, Integer> recordShards = null;
+    private int[] shardSizes = null;
+    private BitSet dirtyShards = null;
+    private BitSet failedShards = null;
+    private List<Path> staleShardFiles = null;
+
+    PersistenceStoreShards(Path storageDirectory, int shardCount, Function<T, ?> shardKeyFunction) {
+        this.setStorageDirectory(storageDirectory);
+        this.setShardCount(shardCount);
+        this.setShardKeyFunction(shardKeyFunction);
+        this.setRecordShards(new IdentityHashMap<>());
+        this.setShardSizes(new int[shardCount]);
+        this.setDirtyShards(new BitSet(shardCount));
+        this.setFailedShards(new BitSet(shardCount));
+        this.setStaleShardFiles(new ArrayList<>());
+    }
+
+    /**
+     * Loads the records from all shard files found in the storage directory, each shard on a
+     * separate task of the given pool. A shard that cannot be read completely is logged and ignored,
+     * so that the records of all other shards are still available. Before such a shard is written
+     * again, its file is copied into a backup file next to it, so that the records it contains can
+     * still be recovered manually. If no backup can be created, the shard is never written again.
+     *
+     * Records found in a shard file that doesn't match the current shard configuration (for example
+     * after the number of shards has been changed) are moved into their new shards during the next
+     * write, after which the outdated shard files are removed, unless they could not be read
+     * completely.
+     */
+    List<T> loadRecords(Class<T> recordClass, Supplier<T> recordFactory, PersistenceFileReader fileReader, ForkJoinPool loadPool, PersistenceCodec codec, PersistenceContext context) throws IOException {
+        List<Path> shardFiles = this.listShardFiles();
+        Set<Path> failedShardFiles = ConcurrentHashMap.newKeySet();
+        List<CompletableFuture<List<T>>> shardLoads = new ArrayList<>(shardFiles.size());
+        for (Path shardFile : shardFiles) {
+            shardLoads.add(CompletableFuture.supplyAsync(() -> PersistenceStoreShards.loadShard(shardFile, recordClass, recordFactory, fileReader, codec, context, failedShardFiles), loadPool));
+        }
+        List<T> records = new ArrayList<>();
+        synchronized (this) {
+            for (int shardFileIndex = 0; shardFileIndex < shardFiles.size(); shardFileIndex++) {
+                Path shardFile = shardFiles.get(shardFileIndex);
+                int shardIndex = PersistenceStoreShards.parseShardIndex(shardFile);
+                for (T record : shardLoads.get(shardFileIndex).join()) {
+                    Integer recordShardIndex = shardIndex < this.getShardCount() ? Integer.valueOf(shardIndex) : null;
+                    int targetShardIndex = this.computeShardIndex(record, recordShardIndex);
+                    if (recordShardIndex == null) {
+                        this.getDirtyShards().set(targetShardIndex);
+                    } else if (targetShardIndex != shardIndex) {
+                        this.getDirtyShards().set(targetShardIndex);
+                        this.getDirtyShards().set(shardIndex);
+                    }
+                    this.getRecordShards().put(record, targetShardIndex);
+                    this.getShardSizes()[targetShardIndex]++;
+                    records.add(record);
+                }
+                if (shardIndex >= this.getShardCount() && !failedShardFiles.contains(shardFile)) {
+                    this.getStaleShardFiles().add(shardFile);
+                } else if (shardIndex < this.getShardCount() && failedShardFiles.contains(shardFile)) {
+                    this.backupShardFile(shardFile, shardIndex);
+                }
+            }
+        }
+        return records;
+    }
+
+    private static <T extends PersistenceEnabled> List<T> loadShard(Path shardFile, Class<T> recordClass, Supplier<T> recordFactory, PersistenceFileReader fileReader, PersistenceCodec codec, PersistenceContext context, Set<Path> failedShardFiles) {
+        log.debug("Loading records of class {} from shard file: {}", recordClass.getName(), shardFile);
+        List<T> shardRecords = new ArrayList<>();
+        try (InputStream shardFileStream = fileReader.open(shardFile)) {
+            codec.readRecords(shardFileStream, recordClass, recordFactory, shardRecords::add, context);
+            return shardRecords;
+        } catch (Exception e) {
+            log.warn("Cannot load records of class {} from shard file: {}", recordClass.getName(), shardFile, e);
+            failedShardFiles.add(shardFile);
+            return List.of();
+        }
+    }
+
+    /**
+     * Copies a shard file that could not be loaded into a backup file, or excludes the shard from all
+     * further writes if the backup cannot be created
+     */
+    private void backupShardFile(Path shardFile, int shardIndex) {
+        Path backupFile = shardFile.resolveSibling(shardFile.getFileName() + BACKUP_FILE_INFIX + System.currentTimeMillis());
+        try {
+            Files.copy(shardFile, backupFile);
+            log.warn("Created backup of shard file {} that could not be loaded: {}", shardFile, backupFile);
+        } catch (Exception e) {
+            log.warn("Cannot create backup of shard file {}, the shard will not be written again", shardFile, e);
+            this.getFailedShards().set(shardIndex);
+        }
+    }
+
+    private List<Path> listShardFiles() throws IOException {
+        if (!Files.isDirectory(this.getStorageDirectory())) {
+            return List.of();
+        } else {
+            try (Stream<Path> directoryFiles = Files.list(this.getStorageDirectory())) {
+                return directoryFiles
+                    .filter(file -> SHARD_FILE_PATTERN.matcher(file.getFileName().toString()).matches())
+                    .filter(Files::isRegularFile)
+                    .sorted(Comparator.comparingInt(PersistenceStoreShards::parseShardIndex))
+                    .collect(Collectors.toList());
+            }
+        }
+    }
+
+    private static int parseShardIndex(Path shardFile) {
+        return Integer.parseInt(shardFile.getFileName().toString().substring(SHARD_FILE_PREFIX.length()));
+    }
+
+    Path getShardFile(int shardIndex) {
+        return this.getStorageDirectory().resolve(SHARD_FILE_PREFIX + shardIndex);
+    }
+
+    /**
+     * Marks the shards containing the given records as outdated
+     *
+     * @param listChanged
+     *      {@code true} if the list itself has changed, {@code false} if only the content of one of
+     *      the records has changed. If neither records have been changed nor removed, the order of
+     *      the records has changed and all shards are marked as outdated.
+     * @param changedRecords
+     *      the records that have been added or whose content has been changed
+     * @param removedRecords
+     *      the records that have been removed
+     */
+    synchronized void markDirty(boolean listChanged, Collection<T> changedRecords, Collection<T> removedRecords) {
+        for (T removedRecord : removedRecords) {
+            Integer shardIndex = this.getRecordShards().remove(removedRecord);
+            if (shardIndex != null) {
+                this.getShardSizes()[shardIndex]--;
+                this.getDirtyShards().set(shardIndex);
+            }
+        }
+        for (T changedRecord : changedRecords) {
+            Integer previousShardIndex = this.getRecordShards().get(changedRecord);
+            int shardIndex = this.computeShardIndex(changedRecord, previousShardIndex);
+            if (previousShardIndex == null || previousShardIndex.intValue() != shardIndex) {
+                if (previousShardIndex != null) {
+                    this.getShardSizes()[previousShardIndex]--;
+                    this.getDirtyShards().set(previousShardIndex);
+                }
+                this.getRecordShards().put(changedRecord, shardIndex);
+                this.getShardSizes()[shardIndex]++;
+            }
+            this.getDirtyShards().set(shardIndex);
+        }
+        if (listChanged && changedRecords.isEmpty() && removedRecords.isEmpty()) {
+            this.getDirtyShards().set(0, this.getShardCount());
+        }
+    }
+
+    private int computeShardIndex(T record, Integer currentShardIndex) {
+        if (this.getShardKeyFunction() != null) {
+            return Math.floorMod(Objects.hashCode(this.getShardKeyFunction().apply(record)), this.getShardCount());
+        } else if (currentShardIndex != null) {
+            return currentShardIndex;
+        } else {
+            int[] shardSizes = this.getShardSizes();
+            int smallestShardIndex = -1;
+            for (int shardIndex = 0; shardIndex < shardSizes.length; shardIndex++) {
+                if (!this.getFailedShards().get(shardIndex) && (smallestShardIndex < 0 || shardSizes[shardIndex] < shardSizes[smallestShardIndex])) {
+                    smallestShardIndex = shardIndex;
+                }
+            }
+            return Math.max(0, smallestShardIndex);
+        }
+    }
+
+    /**
+     * Serializes the records of all outdated shards and marks the shards as up to date
+     *
+     * @return
+     *      the content to be written into the shard file by the index of the shard
+     */
+    synchronized Map<Integer, byte[]> captureDirtyShards(List<T> records, PersistenceCodec codec, PersistenceContext context) throws IOException {
+        BitSet dirtyShards = this.getDirtyShards();
+        Map<Integer, List<T>> shardRecords = new LinkedHashMap<>();
+        for (int shardIndex = dirtyShards.nextSetBit(0); shardIndex >= 0; shardIndex = dirtyShards.nextSetBit(shardIndex + 1)) {
+            shardRecords.put(shardIndex, new ArrayList<>());
+        }
+        if (!shardRecords.isEmpty()) {
+            for (T record : records) {
+                Integer shardIndex = this.getRecordShards().get(record);
+                if (shardIndex != null && dirtyShards.get(shardIndex)) {
+                    shardRecords.get(shardIndex).add(record);
+                }
+            }
+        }
+        Map<Integer, byte[]> shardContents = new LinkedHashMap<>();
+        ByteArrayOutputStream shardBuffer = new ByteArrayOutputStream();
+        for (Map.Entry<Integer, List<T>> shardEntry : shardRecords.entrySet()) {
+            if (this.getFailedShards().get(shardEntry.getKey())) {
+                log.warn("Not writing {} records into shard file that could not be loaded: {}", shardEntry.getValue().size(), this.getShardFile(shardEntry.getKey()));
+            } else {
+                shardBuffer.reset();
+                codec.writeRecords(shardEntry.getValue(), shardBuffer, context);
+                shardContents.put(shardEntry.getKey(), shardBuffer.toByteArray());
+            }
+        }
+        dirtyShards.clear();
+        return shardContents;
+    }
+
+    /**
+     * Writes the given content into the shard files. Shards that cannot be written are marked as
+     * outdated again, so that they are written together with the next change.
+     *
+     * @return
+     *      {@code true} if all shards have been written successfully
+     */
+    boolean writeShards(Map<Integer, byte[]> shardContents, PersistenceFileWriter fileWriter) {
+        boolean success = true;
+        for (Map.Entry<Integer, byte[]> shardEntry : shardContents.entrySet()) {
+            Path shardFile = this.getShardFile(shardEntry.getKey());
+            log.debug("Storing {} bytes into shard file: {}", shardEntry.getValue().length, shardFile);
+            try {
+                fileWriter.write(shardFile, outputStream -> outputStream.write(shardEntry.getValue()));
+            } catch (Exception e) {
+                log.warn("Cannot write records into shard file: {}", shardFile, e);
+                synchronized (this) {
+                    this.getDirtyShards().set(shardEntry.getKey());
+                }
+                success = false;
+            }
+        }
+        if (success) {
+            this.removeStaleShardFiles();
+        }
+        return success;
+    }
+
+    private void removeStaleShardFiles() {
+        List<Path> staleShardFiles = null;
+        synchronized (this) {
+            if (this.getStaleShardFiles().isEmpty() || !this.getDirtyShards().isEmpty()) {
+                return;
+            } else {
+                staleShardFiles = this.getStaleShardFiles();
+                this.setStaleShardFiles(new ArrayList<>());
+            }
+        }
+        for (Path staleShardFile : staleShardFiles) {
+            try {
+                log.debug("Removing outdated shard file: {}", staleShardFile);
+                Files.deleteIfExists(staleShardFile);
+            } catch (Exception e) {
+                log.warn("Cannot remove outdated shard file: {}", staleShardFile, e);
+            }
+        }
+    }
+
+    private Path getStorageDirectory() {
+        return this.storageDirectory;
+    }
+    private void setStorageDirectory(Path storageDirectory) {
+        this.storageDirectory = storageDirectory;
+    }
+
+    private int getShardCount() {
+        return this.shardCount;
+    }
+    private void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    private Function<T, ?> getShardKeyFunction() {
+        return this.shardKeyFunction;
+    }
+    private void setShardKeyFunction(Function<T, ?> shardKeyFunction) {
+        this.shardKeyFunction = shardKeyFunction;
+    }
+
+    private Map<T, Integer> getRecordShards() {
+        return this.recordShards;
+    }
+    private void setRecordShards(Map<T, Integer> recordShards) {
+        this.recordShards = recordShards;
+    }
+
+    private int[] getShardSizes() {
+        return this.shardSizes;
+    }
+    private void setShardSizes(int[] shardSizes) {
+        this.shardSizes = shardSizes;
+    }
+
+    private BitSet getDirtyShards() {
+        return this.dirtyShards;
+    }
+    private void setDirtyShards(BitSet dirtyShards) {
+        this.dirtyShards = dirtyShards;
+    }
+
+    private BitSet getFailedShards() {
+        return this.failedShards;
+    }
+    private void setFailedShards(BitSet failedShards) {
+        this.failedShards = failedShards;
+    }
+
+    private List<Path> getStaleShardFiles() {
+        return this.staleShardFiles;
+    }
+    private void setStaleShardFiles(List<Path> staleShardFiles) {
+        this.staleShardFiles = staleShardFiles;
+    }
+
+}
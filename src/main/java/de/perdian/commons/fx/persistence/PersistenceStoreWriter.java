@@ -0,0 +1,403 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the records of a {@code PersistenceStore} into the storage file.
+ *
+ * Without a write delay the records are serialized directly within the change. Once the write
+ * delay has expired, the records are serialized on a dedicated background thread, unless an
+ * {@code fxExecutor} has been set, in which case the serialization is handed to the thread on which
+ * the records are changed. The serialized content is then written on the background thread, so that
+ * the records may be changed again while the file is being written. Without a write delay the storage file is written directly as well, whereas journal
+ * entries are always appended on the background thread, so that neither appending nor compacting
+ * the journal blocks the thread changing the records. {@link #flush()} and {@link #close()} serialize the pending changes on the calling
+ * thread and must therefore only be called on the thread changing the records, or while the records
+ * are not changed concurrently.
+ */
+
+class PersistenceStoreWriter<T extends PersistenceEnabled> {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistenceStoreWriter.class);
+
+    private Path storageFile = null;
+    private PersistenceFileWriter fileWriter = null;
+    private PersistenceStoreJournal<T> journal = null;
+    private PersistenceCodec codec = null;
+    private PersistenceStoreFragmentCache<T> fragmentCache = null;
+    private PersistenceStoreShards<T> shards = null;
+    private PersistenceContext context = null;
+    private Executor fxExecutor = null;
+    private List<T> records = Collections.emptyList();
+    private Map<String, T> pendingChanges = new LinkedHashMap<>();
+    private ScheduledThreadPoolExecutor executor = null;
+    private PersistenceWriteScheduler writeScheduler = null;
+    private boolean compactionScheduled = false;
+
+    PersistenceStoreWriter(Path storageFile, PersistenceFileWriter fileWriter, PersistenceStoreJournal<T> journal, Duration writeDelay, Duration maxWriteDelay, PersistenceCodec codec, PersistenceStoreFragmentCache<T> fragmentCache, PersistenceStoreShards<T> shards, PersistenceContext context, Executor fxExecutor) {
+        this.setStorageFile(storageFile);
+        this.setFragmentCache(fragmentCache);
+        this.setShards(shards);
+        this.setCodec(codec);
+        this.setContext(context);
+        this.setFileWriter(fileWriter);
+        this.setJournal(journal);
+        this.setFxExecutor(fxExecutor);
+        if (!writeDelay.isZero() || journal != null) {
+            this.setExecutor(PersistenceWriteScheduler.createExecutor("PersistenceStoreWriter-" + storageFile.getFileName()));
+        }
+        this.setWriteScheduler(new PersistenceWriteScheduler(this.getExecutor(), writeDelay, maxWriteDelay));
+    }
+
+    /**
+     * Sets the list of records that is currently reflected in the storage file without scheduling a
+     * write. The list is not copied, but read whenever pending changes are serialized.
+     */
+    synchronized void markClean(List<T> records) {
+        this.setRecords(records);
+        if (this.getJournal() != null && this.getJournal().isPresent()) {
+            this.scheduleCompaction();
+        }
+    }
+
+    /**
+     * Marks the storage file as outdated
+     *
+     * @param listChanged
+     *      {@code true} if the list itself has changed, {@code false} if only the content of one of
+     *      the records has changed. If neither records have been changed nor removed, the order of
+     *      the records has changed.
+     * @param changedRecords
+     *      the records that have been added or whose content has been changed
+     * @param removedRecords
+     *      the records that have been removed
+     */
+    void markDirty(boolean listChanged, Collection<T> changedRecords, Collection<T> removedRecords) {
+        boolean writeImmediately = false;
+        synchronized (this) {
+            if (this.getFragmentCache() != null) {
+                this.getFragmentCache().markDirty(changedRecords);
+            }
+            if (this.getShards() != null) {
+                this.getShards().markDirty(listChanged, changedRecords, removedRecords);
+            }
+            if (this.getJournal() != null) {
+                removedRecords.forEach(record -> this.getPendingChanges().put(this.getJournal().identify(record), null));
+                changedRecords.forEach(record -> this.getPendingChanges().put(this.getJournal().identify(record), record));
+            }
+            writeImmediately = !this.getWriteScheduler().schedule(this::requestPendingChanges);
+        }
+        if (writeImmediately) {
+            this.writePendingChanges(this.getJournal() == null);
+        }
+    }
+
+    /**
+     * Writes all pending changes and waits until the write has been completed
+     */
+    void flush() {
+        this.writePendingChanges(false);
+        if (this.getExecutor() != null && !this.getExecutor().isShutdown()) {
+            try {
+                this.getExecutor().submit(() -> {}).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | RejectedExecutionException e) {
+                log.warn("Cannot flush records into file: {}", this.getStorageFile(), e);
+            }
+        }
+    }
+
+    void close() {
+        this.flush();
+        if (this.getExecutor() != null) {
+            this.getExecutor().shutdown();
+            try {
+                this.getExecutor().awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Called on the background thread once the write delay has expired, to let the pending changes be
+     * serialized on the thread changing the records, or directly if no such thread has been set
+     */
+    private void requestPendingChanges() {
+        if (this.getFxExecutor() == null) {
+            this.writePendingChanges(true);
+            return;
+        }
+        try {
+            this.getFxExecutor().execute(() -> this.writePendingChanges(false));
+        } catch (RuntimeException e) {
+            log.warn("Cannot hand off pending changes of file {} to the thread changing the records, the changes will be written during the next flush", this.getStorageFile(), e);
+        }
+    }
+
+    /**
+     * Serializes all pending changes on the calling thread and writes them either directly or on the
+     * background thread
+     */
+    private void writePendingChanges(boolean writeImmediately) {
+        Runnable pendingWrite = null;
+        synchronized (this) {
+            pendingWrite = this.capturePendingChanges();
+            if (pendingWrite != null && !writeImmediately && this.getExecutor() != null && !this.getExecutor().isShutdown()) {
+                try {
+                    this.getExecutor().execute(pendingWrite);
+                    pendingWrite = null;
+                } catch (RejectedExecutionException e) {
+                    log.debug("Writer of file {} has been shut down, writing pending changes directly", this.getStorageFile());
+                }
+            }
+        }
+        if (pendingWrite != null) {
+            pendingWrite.run();
+        }
+    }
+
+    /**
+     * Serializes all pending changes, so that they can be written without accessing the records
+     *
+     * @return
+     *      the write to be performed, or {@code null} if nothing needs to be written
+     */
+    private synchronized Runnable capturePendingChanges() {
+        if (!this.getWriteScheduler().takePending()) {
+            return null;
+        }
+        try {
+            if (this.getShards() != null) {
+                Map<Integer, byte[]> shardContents = this.getShards().captureDirtyShards(this.getRecords(), this.getCodec(), this.getContext());
+                return () -> {
+                    log.debug("Storing {} shards into directory: {}", shardContents.size(), this.getStorageFile());
+                    this.getShards().writeShards(shardContents, this.getFileWriter());
+                };
+            } else if (this.getJournal() == null) {
+                PersistenceStoreWriterOperation recordsWrite = this.captureRecords();
+                return () -> this.writeRecords(recordsWrite);
+            } else {
+                Map<String, T> changes = this.getPendingChanges();
+                byte[] journalEntries = this.getJournal().encodeEntries(changes);
+                int recordCount = this.getRecords().size();
+                this.setPendingChanges(new LinkedHashMap<>());
+                return () -> this.appendJournal(journalEntries, changes.size(), recordCount);
+            }
+        } catch (Exception e) {
+            log.warn("Cannot export records for file: {}", this.getStorageFile(), e);
+            return null;
+        }
+    }
+
+    private void appendJournal(byte[] journalEntries, int entryCount, int recordCount) {
+        try {
+            log.debug("Appending {} changes to journal of file: {}", entryCount, this.getStorageFile());
+            this.getJournal().appendEntries(journalEntries, entryCount);
+        } catch (Exception e) {
+            log.warn("Cannot append changes to journal of file: {}", this.getStorageFile(), e);
+            this.scheduleCompaction();
+        }
+        if (this.getJournal().isCompactionRequired(recordCount)) {
+            this.scheduleCompaction();
+        }
+    }
+
+    private synchronized void scheduleCompaction() {
+        if (!this.isCompactionScheduled() && !this.getExecutor().isShutdown()) {
+            this.setCompactionScheduled(true);
+            try {
+                Executor compactionExecutor = this.getFxExecutor() == null ? this.getExecutor() : this.getFxExecutor();
+                compactionExecutor.execute(this::compactJournal);
+            } catch (RuntimeException e) {
+                log.warn("Cannot hand off compaction of journal for file {} to the thread changing the records", this.getStorageFile(), e);
+                this.setCompactionScheduled(false);
+            }
+        }
+    }
+
+    /**
+     * Serializes all records on the thread changing the records (or on the background thread if no
+     * such thread has been set) and hands them to the background thread, which moves the journal aside, writes the storage file and removes the old journal.
+     * As all journal entries are appended on the background thread as well, entries serialized
+     * before the records are still appended to the old journal, whereas all later entries go into
+     * the new journal.
+     */
+    private void compactJournal() {
+        PersistenceStoreWriterOperation recordsWrite = null;
+        synchronized (this) {
+            this.setCompactionScheduled(false);
+            if (this.getExecutor().isShutdown()) {
+                return;
+            }
+            try {
+                recordsWrite = this.captureRecords();
+            } catch (Exception e) {
+                log.warn("Cannot export records for compaction of journal for file: {}", this.getStorageFile(), e);
+                return;
+            }
+            this.getExecutor().execute(this.createCompaction(recordsWrite));
+        }
+    }
+
+    private Runnable createCompaction(PersistenceStoreWriterOperation recordsWrite) {
+        return () -> {
+            try {
+                this.getJournal().startCompaction();
+            } catch (Exception e) {
+                log.warn("Cannot start compaction of journal for file: {}", this.getStorageFile(), e);
+                return;
+            }
+            log.debug("Compacting journal into file: {}", this.getStorageFile());
+            if (this.writeRecords(recordsWrite)) {
+                try {
+                    this.getJournal().completeCompaction();
+                } catch (Exception e) {
+                    log.warn("Cannot complete compaction of journal for file: {}", this.getStorageFile(), e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Serializes all records into memory
+     *
+     * @return
+     *      the write storing the serialized records into the storage file
+     */
+    private PersistenceStoreWriterOperation captureRecords() throws IOException {
+        List<T> records = this.getRecords();
+        if (records instanceof PersistenceStoreLazyList) {
+            PersistenceStoreLazySnapshot<T> snapshot = ((PersistenceStoreLazyList<T>)records).createSnapshot();
+            return () -> snapshot.write(this.getStorageFile(), this.getFileWriter());
+        } else {
+            ByteArrayOutputStream recordsBuffer = new ByteArrayOutputStream();
+            if (this.getFragmentCache() != null) {
+                this.getFragmentCache().writeRecords(records, recordsBuffer, this.getContext());
+            } else {
+                this.getCodec().writeRecords(records, recordsBuffer, this.getContext());
+            }
+            return () -> this.getFileWriter().write(this.getStorageFile(), recordsBuffer::writeTo);
+        }
+    }
+
+    private boolean writeRecords(PersistenceStoreWriterOperation recordsWrite) {
+        log.debug("Storing records into file: {}", this.getStorageFile());
+        try {
+            recordsWrite.write();
+            return true;
+        } catch (Exception e) {
+            log.warn("Cannot write records into file: {}", this.getStorageFile(), e);
+            return false;
+        }
+    }
+
+    PersistenceStoreJournal<T> getJournal() {
+        return this.journal;
+    }
+    private void setJournal(PersistenceStoreJournal<T> journal) {
+        this.journal = journal;
+    }
+
+    PersistenceCodec getCodec() {
+        return this.codec;
+    }
+    private void setCodec(PersistenceCodec codec) {
+        this.codec = codec;
+    }
+
+    PersistenceStoreFragmentCache<T> getFragmentCache() {
+        return this.fragmentCache;
+    }
+    private void setFragmentCache(PersistenceStoreFragmentCache<T> fragmentCache) {
+        this.fragmentCache = fragmentCache;
+    }
+
+    PersistenceStoreShards<T> getShards() {
+        return this.shards;
+    }
+    private void setShards(PersistenceStoreShards<T> shards) {
+        this.shards = shards;
+    }
+
+    PersistenceContext getContext() {
+        return this.context;
+    }
+    private void setContext(PersistenceContext context) {
+        this.context = context;
+    }
+
+    private PersistenceFileWriter getFileWriter() {
+        return this.fileWriter;
+    }
+    private void setFileWriter(PersistenceFileWriter fileWriter) {
+        this.fileWriter = fileWriter;
+    }
+
+    private Path getStorageFile() {
+        return this.storageFile;
+    }
+    private void setStorageFile(Path storageFile) {
+        this.storageFile = storageFile;
+    }
+
+    private Executor getFxExecutor() {
+        return this.fxExecutor;
+    }
+    private void setFxExecutor(Executor fxExecutor) {
+        this.fxExecutor = fxExecutor;
+    }
+
+    private synchronized List<T> getRecords() {
+        return this.records;
+    }
+    private synchronized void setRecords(List<T> records) {
+        this.records = records;
+    }
+
+    private Map<String, T> getPendingChanges() {
+        return this.pendingChanges;
+    }
+    private void setPendingChanges(Map<String, T> pendingChanges) {
+        this.pendingChanges = pendingChanges;
+    }
+
+    private ScheduledThreadPoolExecutor getExecutor() {
+        return this.executor;
+    }
+    private void setExecutor(ScheduledThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    private PersistenceWriteScheduler getWriteScheduler() {
+        return this.writeScheduler;
+    }
+    private void setWriteScheduler(PersistenceWriteScheduler writeScheduler) {
+        this.writeScheduler = writeScheduler;
+    }
+
+    private boolean isCompactionScheduled() {
+        return this.compactionScheduled;
+    }
+    private void setCompactionScheduled(boolean compactionScheduled) {
+        this.compactionScheduled = compactionScheduled;
+    }
+
+}
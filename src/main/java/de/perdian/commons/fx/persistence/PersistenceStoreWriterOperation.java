@@ -0,0 +1,14 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.IOException;
+
+/**
+ * A write whose content has been serialized on the thread changing the records, so that it can be
+ * performed on any other thread without accessing the records
+ */
+
+interface PersistenceStoreWriterOperation {
+
+    void write() throws IOException;
+
+}
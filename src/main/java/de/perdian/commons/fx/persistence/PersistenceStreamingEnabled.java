@@ -0,0 +1,37 @@
+package de.perdian.commons.fx.persistence;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Extension of {@code PersistenceEnabled} for records that can read and write their content directly
+ * from and into a StAX stream, without the need to create a DOM representation first.
+ *
+ * Records not implementing this interface can still be used with the streaming methods of
+ * {@code PersistenceEnabled}, in which case a small DOM containing only the single record is created
+ * and passed to the {@code loadFromXML} and {@code appendToXML} methods.
+ *
+ * @author Christian Seifert
+ */
+
+public interface PersistenceStreamingEnabled extends PersistenceEnabled {
+
+    /**
+     * Loads the content of the record from the given reader.
+     *
+     * @param xmlReader
+     *      the reader, positioned at the {@code START_ELEMENT} of the record. When the method returns,
+     *      the reader must either still be positioned at that {@code START_ELEMENT} (in which case the
+     *      remaining content of the record element is skipped) or at the matching {@code END_ELEMENT}.
+     */
+    void loadFromXML(XMLStreamReader xmlReader) throws XMLStreamException;
+
+    /**
+     * Writes the content of the record into the given writer. The start element of the record has
+     * already been written when this method is called and will be closed afterwards, so the
+     * implementation only has to write the attributes and children of the record.
+     */
+    void appendToXML(XMLStreamWriter xmlWriter) throws XMLStreamException;
+
+}
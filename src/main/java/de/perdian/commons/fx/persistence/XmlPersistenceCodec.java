@@ -0,0 +1,43 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Stores records in the XML format also used by {@code PersistenceEnabled.loadRecords} and
+ * {@code PersistenceEnabled.writeRecords}, using a StAX reader and writer.
+ *
+ * @author Christian Seifert
+ */
+
+public class XmlPersistenceCodec implements PersistenceCodec {
+
+    @Override
+    public <T extends PersistenceEnabled> void readRecords(InputStream inputStream, Class<T> recordClass, Supplier<T> recordFactory, Consumer<T> recordConsumer, PersistenceContext context) throws IOException {
+        PersistenceEnabledStreamSupport.readRecords(inputStream, recordClass, recordFactory, recordConsumer, context);
+    }
+
+    @Override
+    public <T extends PersistenceEnabled> List<T> readRecordsParallel(InputStream inputStream, Class<T> recordClass, Supplier<T> recordFactory, ForkJoinPool forkJoinPool, PersistenceContext context) throws IOException {
+        PersistenceEnabledParallelDecoder<T> recordDecoder = new PersistenceEnabledParallelDecoder<>(recordClass, recordFactory, forkJoinPool, PersistenceEnabledParallelDecoder.DEFAULT_CHUNK_SIZE, context);
+        try {
+            PersistenceEnabledStreamSupport.readRecordElements(inputStream, recordClass.getSimpleName(), recordDecoder, context);
+            return recordDecoder.join();
+        } catch (Exception e) {
+            recordDecoder.cancel();
+            throw new IOException("Cannot import records of class: " + recordClass.getName(), e);
+        }
+    }
+
+    @Override
+    public void writeRecords(Collection<? extends PersistenceEnabled> records, OutputStream outputStream, PersistenceContext context) throws IOException {
+        PersistenceEnabledStreamSupport.writeRecords(records, outputStream, context);
+    }
+
+}
@@ -0,0 +1,167 @@
+package de.perdian.commons.fx.preferences;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.perdian.commons.fx.persistence.PersistenceFileReader;
+import de.perdian.commons.fx.persistence.PersistenceFileWriter;
+
+/**
+ * Stores the values as a log of changes, so that a change only requires the changed values to be
+ * appended to the file instead of rewriting the complete set of values.
+ *
+ * Every entry of the log either puts or removes the value of a single key. When the log contains
+ * considerably more entries than values, it is compacted by rewriting the complete set of values
+ * using the {@code PersistenceFileWriter}. The log is also compacted whenever the file has been
+ * changed since it has been read or written by this store. If the application crashes while a change
+ * is appended, the incomplete entry at the end of the log is ignored when the log is read again.
+ * The same applies to an entry with an invalid operation, after which no further entry is read.
+ *
+ * Large logs are read through the memory mapping of the {@code PersistenceFileReader}.
+ *
+ * @author Christian Seifert
+ */
+
+public class AppendLogPreferencesStore implements PreferencesStore {
+
+    private static final Logger log = LoggerFactory.getLogger(AppendLogPreferencesStore.class);
+
+    static final byte[] MAGIC = { 'P', 'F', 'P', 'L' };
+    static final byte VERSION = 1;
+    static final byte OPERATION_PUT = 1;
+    static final byte OPERATION_REMOVE = 2;
+    static final int HEADER_LENGTH = MAGIC.length + 1;
+    static final int COMPACTION_SLACK = 64;
+
+    private ConcurrentMap<Path, AppendLogPreferencesStoreFile> files = null;
+
+    public AppendLogPreferencesStore() {
+        this.setFiles(new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public Map<String, String> readValues(Path path, PersistenceFileReader fileReader) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        long validLength = HEADER_LENGTH;
+        int entryCount = 0;
+        try (DataInputStream dataStream = new DataInputStream(new BufferedInputStream(fileReader.open(path)))) {
+            byte[] magic = new byte[MAGIC.length];
+            dataStream.readFully(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("Invalid preferences log file: " + path);
+            } else if (dataStream.readByte() != VERSION) {
+                throw new IOException("Unsupported preferences log version in file: " + path);
+            }
+            try {
+                int operation = dataStream.read();
+                while (operation == OPERATION_PUT || operation == OPERATION_REMOVE) {
+                    byte[] keyBytes = AppendLogPreferencesStore.readBytes(dataStream);
+                    String key = new String(keyBytes, StandardCharsets.UTF_8);
+                    if (operation == OPERATION_PUT) {
+                        byte[] valueBytes = AppendLogPreferencesStore.readBytes(dataStream);
+                        values.put(key, new String(valueBytes, StandardCharsets.UTF_8));
+                        validLength += 1 + 4 + keyBytes.length + 4 + valueBytes.length;
+                    } else {
+                        values.remove(key);
+                        validLength += 1 + 4 + keyBytes.length;
+                    }
+                    entryCount++;
+                    operation = dataStream.read();
+                }
+                if (operation >= 0) {
+                    // Everything after an invalid operation is treated like an incomplete entry, so
+                    // that the log is compacted at the last valid entry by the next write
+                    log.warn("Ignoring invalid operation {} at offset {} of preferences log file: {}", operation, validLength, path);
+                }
+            } catch (EOFException e) {
+                log.warn("Ignoring incomplete entry at the end of preferences log file: {}", path);
+            }
+        }
+        this.getFiles().put(path.toAbsolutePath().normalize(), new AppendLogPreferencesStoreFile(validLength, entryCount));
+        return values;
+    }
+
+    @Override
+    public void writeValues(Path path, PersistenceFileWriter fileWriter, Map<String, String> values, Set<String> changedKeys) throws IOException {
+        Path filesKey = path.toAbsolutePath().normalize();
+        AppendLogPreferencesStoreFile file = this.getFiles().get(filesKey);
+        if (file == null || !Files.exists(path) || Files.size(path) != file.getLength() || file.getEntryCount() + changedKeys.size() > 2 * values.size() + COMPACTION_SLACK) {
+            this.getFiles().remove(filesKey);
+            fileWriter.write(path, outputStream -> {
+                DataOutputStream dataStream = new DataOutputStream(outputStream);
+                dataStream.write(MAGIC);
+                dataStream.writeByte(VERSION);
+                for (Map.Entry<String, String> valueEntry : values.entrySet()) {
+                    AppendLogPreferencesStore.writeEntry(valueEntry.getKey(), valueEntry.getValue(), dataStream);
+                }
+                dataStream.flush();
+            });
+            this.getFiles().put(filesKey, new AppendLogPreferencesStoreFile(Files.size(path), values.size()));
+        } else if (!changedKeys.isEmpty()) {
+            ByteArrayOutputStream entriesStream = new ByteArrayOutputStream();
+            DataOutputStream dataStream = new DataOutputStream(entriesStream);
+            for (String changedKey : changedKeys) {
+                AppendLogPreferencesStore.writeEntry(changedKey, values.get(changedKey), dataStream);
+            }
+            ByteBuffer entriesBuffer = ByteBuffer.wrap(entriesStream.toByteArray());
+            this.getFiles().remove(filesKey);
+            try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                fileChannel.position(file.getLength());
+                while (entriesBuffer.hasRemaining()) {
+                    fileChannel.write(entriesBuffer);
+                }
+                fileChannel.force(false);
+            }
+            this.getFiles().put(filesKey, new AppendLogPreferencesStoreFile(file.getLength() + entriesBuffer.limit(), file.getEntryCount() + changedKeys.size()));
+        }
+    }
+
+    private static void writeEntry(String key, String value, DataOutputStream dataStream) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        dataStream.writeByte(value == null ? OPERATION_REMOVE : OPERATION_PUT);
+        dataStream.writeInt(keyBytes.length);
+        dataStream.write(keyBytes);
+        if (value != null) {
+            byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+            dataStream.writeInt(valueBytes.length);
+            dataStream.write(valueBytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream dataStream) throws IOException {
+        int length = dataStream.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid length in preferences log file: " + length);
+        }
+        byte[] bytes = new byte[length];
+        dataStream.readFully(bytes);
+        return bytes;
+    }
+
+    private ConcurrentMap<Path, AppendLogPreferencesStoreFile> getFiles() {
+        return this.files;
+    }
+    private void setFiles(ConcurrentMap<Path, AppendLogPreferencesStoreFile> files) {
+        this.files = files;
+    }
+
+}
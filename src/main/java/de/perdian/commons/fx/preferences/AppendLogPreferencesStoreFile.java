@@ -0,0 +1,31 @@
+package de.perdian.commons.fx.preferences;
+
+/**
+ * The state of an append log file as known after it has been read or written the last time.
+ */
+
+class AppendLogPreferencesStoreFile {
+
+    private long length = 0;
+    private int entryCount = 0;
+
+    AppendLogPreferencesStoreFile(long length, int entryCount) {
+        this.setLength(length);
+        this.setEntryCount(entryCount);
+    }
+
+    long getLength() {
+        return this.length;
+    }
+    private void setLength(long length) {
+        this.length = length;
+    }
+
+    int getEntryCount() {
+        return this.entryCount;
+    }
+    private void setEntryCount(int entryCount) {
+        this.entryCount = entryCount;
+    }
+
+}
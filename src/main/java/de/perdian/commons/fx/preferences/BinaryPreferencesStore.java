@@ -0,0 +1,76 @@
+package de.perdian.commons.fx.preferences;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import de.perdian.commons.fx.persistence.PersistenceFileReader;
+import de.perdian.commons.fx.persistence.PersistenceFileWriter;
+
+/**
+ * Stores the values in a compact binary format, consisting of a header, the number of values and
+ * the keys and values as length-prefixed UTF-8 strings. Reading the values doesn't require any
+ * parsing besides the decoding of the strings.
+ *
+ * @author Christian Seifert
+ */
+
+public class BinaryPreferencesStore implements PreferencesStore {
+
+    static final byte[] MAGIC = { 'P', 'F', 'P', 'B' };
+    static final byte VERSION = 1;
+
+    @Override
+    public Map<String, String> readValues(Path path, PersistenceFileReader fileReader) throws IOException {
+        try (DataInputStream dataStream = new DataInputStream(new BufferedInputStream(fileReader.open(path)))) {
+            byte[] magic = new byte[MAGIC.length];
+            dataStream.readFully(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("Invalid binary preferences file: " + path);
+            } else if (dataStream.readByte() != VERSION) {
+                throw new IOException("Unsupported binary preferences version in file: " + path);
+            }
+            int valueCount = dataStream.readInt();
+            Map<String, String> values = new HashMap<>(Math.max(16, valueCount * 4 / 3 + 1));
+            for (int valueIndex = 0; valueIndex < valueCount; valueIndex++) {
+                values.put(BinaryPreferencesStore.readString(dataStream), BinaryPreferencesStore.readString(dataStream));
+            }
+            return values;
+        }
+    }
+
+    @Override
+    public void writeValues(Path path, PersistenceFileWriter fileWriter, Map<String, String> values, Set<String> changedKeys) throws IOException {
+        fileWriter.write(path, outputStream -> {
+            DataOutputStream dataStream = new DataOutputStream(outputStream);
+            dataStream.write(MAGIC);
+            dataStream.writeByte(VERSION);
+            dataStream.writeInt(values.size());
+            for (Map.Entry<String, String> valueEntry : values.entrySet()) {
+                BinaryPreferencesStore.writeString(valueEntry.getKey(), dataStream);
+                BinaryPreferencesStore.writeString(valueEntry.getValue(), dataStream);
+            }
+            dataStream.flush();
+        });
+    }
+
+    static String readString(DataInputStream dataStream) throws IOException {
+        byte[] stringBytes = new byte[dataStream.readInt()];
+        dataStream.readFully(stringBytes);
+        return new String(stringBytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeString(String value, DataOutputStream dataStream) throws IOException {
+        byte[] stringBytes = value.getBytes(StandardCharsets.UTF_8);
+        dataStream.writeInt(stringBytes.length);
+        dataStream.write(stringBytes);
+    }
+
+}
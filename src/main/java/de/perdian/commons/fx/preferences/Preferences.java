@@ -1,22 +1,60 @@
 package de.perdian.commons.fx.preferences;
 
-import java.util.HashMap;
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import de.perdian.commons.fx.properties.converters.SimpleStringConverter;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.LongProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.Property;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleLongProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.util.StringConverter;
 
 /**
  * A set of preferences and properties, backed by preferences file.
  *
  * Whenever a property within the preferences is changed, the underlying file will be updated so that
- * the complete set of properties are always reflected in the storage file.
+ * the complete set of properties are always reflected in the storage file, either directly or
+ * deferred, depending upon the configuration of the {@code PreferencesBuilder} that created the
+ * preferences. Callers using a deferred configuration should call {@link #close()} before the
+ * application terminates, so that pending changes are not lost.
+ *
+ * Preferences can be organized hierarchically by using child nodes, which are created using
+ * {@link #node(String)}. Every node has its own set of keys and is stored in a separate file, so
+ * that a change within one node doesn't require the values of any other node to be written. The
+ * values of a node are only loaded when the node is requested for the first time.
  *
  * The {@code Preferences} also provides a way to have JavaFX {@code Property} instances that are
  * synchronized to the properties. Basically whenever the value of the {@code Property} changes, the
@@ -27,63 +65,375 @@ import javafx.beans.property.StringProperty;
  * @author Christian Seifert
  */
 
-public class Preferences {
+public class Preferences implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(Preferences.class);
 
     private List<PreferencesListener> preferencesListeners = null;
-    private Map<String, String> values = null;
-    private Map<String, StringProperty> properties = null;
+    private ConcurrentMap<String, String> values = null;
+    private ConcurrentMap<String, StringProperty> properties = null;
+    private ConcurrentMap<String, PreferencesTypedProperty<?>> typedProperties = null;
+    private AtomicLong modificationCount = null;
+    private volatile PreferencesSnapshot snapshot = null;
+    private PreferencesWriter preferencesWriter = null;
+    private ScheduledThreadPoolExecutor writeExecutor = null;
+    private PreferencesWatcher watcher = null;
+    private ConcurrentMap<String, Preferences> nodes = null;
+    private Function<String, Preferences> nodeFactory = null;
+    private CompletableFuture<Preferences> loadFuture = null;
+    private Executor propertiesExecutor = null;
+    private ThreadLocal<Set<String>> updatingKeys = null;
 
-    Preferences(Map<String, String> values) {
+    Preferences(ConcurrentMap<String, String> values) {
         this.setPreferencesListeners(new CopyOnWriteArrayList<>());
         this.setValues(values);
-        this.setProperties(new HashMap<>());
+        this.setProperties(new ConcurrentHashMap<>());
+        this.setTypedProperties(new ConcurrentHashMap<>());
+        this.setModificationCount(new AtomicLong());
+        this.setNodes(new ConcurrentHashMap<>());
+        this.setLoadFuture(CompletableFuture.completedFuture(this));
+        this.setPropertiesExecutor(Runnable::run);
+        this.setUpdatingKeys(ThreadLocal.withInitial(HashSet::new));
+    }
+
+    /**
+     * Gets a stage that is completed as soon as the values have been loaded from the preferences
+     * file. For preferences that have been loaded synchronously, the stage is already completed.
+     */
+    public CompletionStage<Preferences> whenLoaded() {
+        return this.getLoadFuture().minimalCompletionStage();
+    }
+
+    /**
+     * Adds the values loaded from the preferences file. Values that have already been set before the
+     * loaded values became available take precedence over the loaded values. The properties that
+     * have already been created for the keys of the added values are updated using the given
+     * executor.
+     */
+    void applyLoadedValues(Map<String, String> loadedValues, Executor propertiesExecutor) {
+        List<String> addedKeys = new ArrayList<>();
+        loadedValues.forEach((key, value) -> {
+            if (this.getValues().putIfAbsent(key, value) == null && (this.getProperties().containsKey(key) || this.getTypedProperties().containsKey(key))) {
+                addedKeys.add(key);
+            }
+        });
+        this.getModificationCount().incrementAndGet();
+        if (!addedKeys.isEmpty()) {
+            propertiesExecutor.execute(() -> this.updateProperties(addedKeys));
+        }
+    }
+
+    /**
+     * Replaces the values that have been changed outside of this instance, for example by another
+     * process sharing the same preferences file. A value is only replaced if it still equals the
+     * expected value, so that a local change made in the meantime isn't lost. The listeners are not
+     * notified, as the new values are already reflected in the preferences file.
+     *
+     * @param expectedValues
+     *      the values of this instance from which the external values have been derived
+     * @param externalValues
+     *      the complete set of values that have been changed externally
+     */
+    void applyExternalValues(Map<String, String> expectedValues, Map<String, String> externalValues, Executor propertiesExecutor) {
+        Set<String> keys = new HashSet<>(expectedValues.keySet());
+        keys.addAll(externalValues.keySet());
+        List<String> changedKeys = new ArrayList<>();
+        for (String key : keys) {
+            String expectedValue = expectedValues.get(key);
+            String externalValue = externalValues.get(key);
+            if (!Objects.equals(expectedValue, externalValue) && this.replaceValue(key, expectedValue, externalValue)) {
+                this.getModificationCount().incrementAndGet();
+                if (this.getProperties().containsKey(key) || this.getTypedProperties().containsKey(key)) {
+                    changedKeys.add(key);
+                }
+            }
+        }
+        if (!changedKeys.isEmpty()) {
+            propertiesExecutor.execute(() -> this.updateProperties(changedKeys));
+        }
+    }
+
+    /**
+     * Updates the properties of the given keys to reflect the current values. No lock is held while
+     * the properties (and with them their listeners and bindings) are updated. Instead the value is
+     * read again after the properties have been updated, and the update is repeated if the value has
+     * been changed in the meantime, so that the update applied last always reflects the latest value,
+     * even if updates for the same key are performed concurrently. The listeners writing the values
+     * of the properties back into the preferences ignore the changes made here on the same thread, so
+     * that an outdated value never replaces a value that has been set in the meantime.
+     */
+    private void updateProperties(List<String> keys) {
+        Set<String> updatingKeys = this.getUpdatingKeys().get();
+        for (String key : keys) {
+            boolean alreadyUpdating = !updatingKeys.add(key);
+            try {
+                String value = null;
+                do {
+                    value = this.getValues().get(key);
+                    StringProperty stringProperty = this.getProperties().get(key);
+                    if (stringProperty != null) {
+                        stringProperty.setValue(value);
+                    }
+                    PreferencesTypedProperty<?> typedProperty = this.getTypedProperties().get(key);
+                    if (typedProperty != null) {
+                        typedProperty.updateValue(value);
+                    }
+                } while (!Objects.equals(value, this.getValues().get(key)));
+            } finally {
+                if (!alreadyUpdating) {
+                    updatingKeys.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the properties of the given key are currently updated by the calling thread
+     */
+    private boolean isUpdating(String key) {
+        return this.getUpdatingKeys().get().contains(key);
+    }
+
+    /**
+     * Gets the child node with the given name, loading its values when the node is requested for the
+     * first time. Subsequent calls for the same name return the same instance.
+     *
+     * @param name
+     *      the name of the node, which must neither be empty nor contain any path separator
+     */
+    public Preferences node(String name) {
+        if (StringUtils.isEmpty(name) || StringUtils.containsAny(name, '/', '\\') || ".".equals(name) || "..".equals(name)) {
+            throw new IllegalArgumentException("Invalid node name: " + name);
+        } else {
+            Preferences node = this.getNodes().get(name);
+            if (node == null) {
+                // The node is loaded outside of the map, so that loading its file doesn't block the
+                // creation of other nodes. If another thread created the same node in the meantime,
+                // the instance created here is discarded in favor of the one contained in the map
+                Preferences newNode = this.getNodeFactory() == null ? new Preferences(new ConcurrentHashMap<>()) : this.getNodeFactory().apply(name);
+                node = this.getNodes().putIfAbsent(name, newNode);
+                if (node == null) {
+                    node = newNode;
+                } else {
+                    newNode.close();
+                }
+            }
+            return node;
+        }
     }
 
-    public synchronized StringProperty getStringProperty(String key) {
+    public StringProperty getStringProperty(String key) {
         return this.getStringProperty(key, null);
     }
 
-    public synchronized StringProperty getStringProperty(String key, String defaultValue) {
-        StringProperty stringProperty = this.getProperties().get(key);
-        if (stringProperty == null) {
-            stringProperty = new SimpleStringProperty(this.getStringValue(key).orElse(defaultValue));
-            stringProperty.addListener((o, oldValue, newValue) -> this.setStringValue(key, newValue));
-            this.getProperties().put(key, stringProperty);
+    public StringProperty getStringProperty(String key, String defaultValue) {
+        return this.getProperties().computeIfAbsent(key, k -> {
+            StringProperty stringProperty = new SimpleStringProperty(this.getStringValue(key).orElse(defaultValue));
+            stringProperty.addListener((o, oldValue, newValue) -> {
+                if (!this.isUpdating(key)) {
+                    this.setStringValue(key, newValue);
+                }
+            });
+            return stringProperty;
+        });
+    }
+
+    /**
+     * Gets a property reflecting the value for the given key as {@code int}, stored in its canonical
+     * string representation. Subsequent calls for the same key return the same property instance.
+     * The value is only parsed when the stored value changes, so reading the value of the property
+     * doesn't involve any conversion.
+     *
+     * @param defaultValue
+     *      the value of the property if no value is stored or the stored value cannot be parsed, which
+     *      must be the same for all calls for the same key
+     */
+    public IntegerProperty getIntegerProperty(String key, int defaultValue) {
+        return this.getTypedProperty(key, IntegerProperty.class, Number.class, SimpleIntegerProperty::new, new SimpleStringConverter<>(value -> Integer.toString(value.intValue()), Integer::valueOf), defaultValue);
+    }
+
+    public LongProperty getLongProperty(String key, long defaultValue) {
+        return this.getTypedProperty(key, LongProperty.class, Number.class, SimpleLongProperty::new, new SimpleStringConverter<>(value -> Long.toString(value.longValue()), Long::valueOf), defaultValue);
+    }
+
+    public DoubleProperty getDoubleProperty(String key, double defaultValue) {
+        return this.getTypedProperty(key, DoubleProperty.class, Number.class, SimpleDoubleProperty::new, new SimpleStringConverter<>(value -> Double.toString(value.doubleValue()), Double::valueOf), defaultValue);
+    }
+
+    public BooleanProperty getBooleanProperty(String key, boolean defaultValue) {
+        return this.getTypedProperty(key, BooleanProperty.class, Boolean.class, SimpleBooleanProperty::new, new SimpleStringConverter<>(value -> value.toString(), Boolean::valueOf), defaultValue);
+    }
+
+    public <E extends Enum<E>> ObjectProperty<E> getEnumProperty(String key, Class<E> enumClass, E defaultValue) {
+        return this.getObjectProperty(key, enumClass, new SimpleStringConverter<>(value -> value.name(), value -> Enum.valueOf(enumClass, value)), defaultValue);
+    }
+
+    /**
+     * Gets a property reflecting the value for the given key as {@code LocalDate}, stored in the ISO
+     * format ({@code yyyy-MM-dd})
+     */
+    public ObjectProperty<LocalDate> getLocalDateProperty(String key, LocalDate defaultValue) {
+        return this.getObjectProperty(key, LocalDate.class, new SimpleStringConverter<>(value -> value.toString(), LocalDate::parse), defaultValue);
+    }
+
+    public ObjectProperty<Path> getPathProperty(String key, Path defaultValue) {
+        return this.getObjectProperty(key, Path.class, new SimpleStringConverter<>(value -> value.toString(), value -> Path.of(value)), defaultValue);
+    }
+
+    /**
+     * Gets a property reflecting the value for the given key, converted using the given converter.
+     * Subsequent calls for the same key return the same property instance, regardless of the
+     * converter passed. As the class of the values cannot be verified, the property is only returned
+     * for subsequent calls using the same method.
+     */
+    public <T> ObjectProperty<T> getObjectProperty(String key, StringConverter<T> converter, T defaultValue) {
+        return this.getObjectProperty(key, Object.class, converter, defaultValue);
+    }
+
+    /**
+     * Gets a property reflecting the value for the given key, converted using the given converter.
+     * Subsequent calls for the same key return the same property instance, regardless of the
+     * converter passed.
+     *
+     * @param valueClass
+     *      the class of the values, which must match the class passed when the property for the key has
+     *      been created
+     * @throws IllegalArgumentException
+     *      if the property for the key has already been created for another class of values or with
+     *      another default value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ObjectProperty<T> getObjectProperty(String key, Class<? super T> valueClass, StringConverter<T> converter, T defaultValue) {
+        return this.getTypedProperty(key, ObjectProperty.class, valueClass, SimpleObjectProperty::new, converter, defaultValue);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <P extends Property<T>, T> P getTypedProperty(String key, Class<? super P> propertyClass, Class<? super T> valueClass, Supplier<P> propertyFactory, StringConverter<T> converter, T defaultValue) {
+        PreferencesTypedProperty<?> typedProperty = this.getTypedProperties().get(key);
+        if (typedProperty == null) {
+            typedProperty = this.getTypedProperties().computeIfAbsent(key, k -> {
+                PreferencesTypedProperty<T> newTypedProperty = new PreferencesTypedProperty<>(propertyFactory.get(), valueClass, converter, defaultValue);
+                newTypedProperty.updateValue(this.getValues().get(key));
+                newTypedProperty.getProperty().addListener((o, oldValue, newValue) -> {
+                    if (!this.isUpdating(key) && !Objects.equals(newTypedProperty.parseValue(this.getValues().get(key)), newValue)) {
+                        this.setStringValue(key, newTypedProperty.formatValue(newValue));
+                    }
+                });
+                return newTypedProperty;
+            });
+            // A value changed while the property has been created might not have been propagated
+            this.updateProperties(List.of(key));
+        }
+        if (!propertyClass.isInstance(typedProperty.getProperty())) {
+            throw new IllegalArgumentException("Property for key '" + key + "' has already been created as: " + typedProperty.getProperty().getClass().getName());
+        } else if (!valueClass.equals(typedProperty.getValueClass())) {
+            throw new IllegalArgumentException("Property for key '" + key + "' has already been created for values of class: " + typedProperty.getValueClass().getName());
+        } else if (!Objects.equals(defaultValue, typedProperty.getDefaultValue())) {
+            throw new IllegalArgumentException("Property for key '" + key + "' has already been created with default value: " + typedProperty.getDefaultValue());
+        } else {
+            return (P)typedProperty.getProperty();
         }
-        return stringProperty;
     }
 
-    public synchronized Optional<String> getStringValue(String key) {
+    public Optional<String> getStringValue(String key) {
         String storedValue = this.getValues().get(key);
         return StringUtils.isEmpty(storedValue) ? Optional.empty() : Optional.of(storedValue);
     }
 
-    public synchronized boolean setStringValue(String key, String newValue) {
-        String oldValue = this.getValues().get(key);
-        if (Objects.equals(oldValue, newValue)) {
-            return false;
-        } else {
-            this.getValues().put(key, newValue);
-            StringProperty stringProperty = this.getProperties().get(key);
-            if (stringProperty != null) {
-                stringProperty.setValue(newValue);
+    /**
+     * Updates the value for the given key. The listeners are notified on the calling thread after
+     * the value has been updated, without holding any lock, so concurrent updates of the same key
+     * may be reported to the listeners in a different order than they have been applied. The
+     * properties created for the key are updated on the properties executor of the
+     * {@code PreferencesBuilder} and always end up reflecting the value that has been set last.
+     *
+     * @param newValue
+     *      the new value. A {@code null} value removes the key.
+     */
+    public boolean setStringValue(String key, String newValue) {
+        String oldValue = null;
+        do {
+            oldValue = this.getValues().get(key);
+            if (Objects.equals(oldValue, newValue)) {
+                return false;
             }
-            this.getPreferencesListeners().forEach(listener -> listener.onPropertyChanged(key, oldValue, newValue));
-            return true;
+        } while (!this.replaceValue(key, oldValue, newValue));
+        this.getModificationCount().incrementAndGet();
+        if (this.getProperties().containsKey(key) || this.getTypedProperties().containsKey(key)) {
+            this.getPropertiesExecutor().execute(() -> this.updateProperties(List.of(key)));
+        }
+        for (PreferencesListener listener : this.getPreferencesListeners()) {
+            listener.onPropertyChanged(key, oldValue, newValue);
+        }
+        return true;
+    }
+
+    private boolean replaceValue(String key, String oldValue, String newValue) {
+        if (newValue == null) {
+            return this.getValues().remove(key, oldValue);
+        } else if (oldValue == null) {
+            return this.getValues().putIfAbsent(key, newValue) == null;
+        } else {
+            return this.getValues().replace(key, oldValue, newValue);
         }
     }
 
     /**
-     * Creates a snapshot of the values in this {@code Preferences} objects.
+     * Creates a snapshot of the values in this {@code Preferences} objects. As long as no value is
+     * changed, the same snapshot is returned by subsequent calls.
      *
      * @return
-     *      a new {@code Map} that represents the content of this {@code Preferences} instance.
-     *      Any change made to the {@code Preferences} object after the snapshot has been created
-     *      will not be reflected in the result of this method. Also changes to the result map will
-     *      not change the content of this {@code Preferences} object.
+     *      an immutable {@code Map} that represents the content of this {@code Preferences}
+     *      instance. Any change made to the {@code Preferences} object after the snapshot has been
+     *      created will not be reflected in the result of this method.
      */
     public Map<String, String> toMap() {
-        return new HashMap<>(this.getValues());
+        long modificationCount = this.getModificationCount().get();
+        PreferencesSnapshot snapshot = this.getSnapshot();
+        if (snapshot == null || snapshot.getModificationCount() != modificationCount) {
+            snapshot = new PreferencesSnapshot(Map.copyOf(this.getValues()), modificationCount);
+            this.setSnapshot(snapshot);
+        }
+        return snapshot.getValues();
+    }
+
+    /**
+     * Writes all pending changes into the preferences file and waits until the write has been
+     * completed.
+     */
+    public void flush() {
+        if (this.getPreferencesWriter() != null) {
+            this.getPreferencesWriter().flush();
+        }
+        this.getNodes().values().forEach(Preferences::flush);
+    }
+
+    /**
+     * Writes all pending changes of this node and all of its child nodes into the preferences files.
+     * Any further change will be written synchronously.
+     */
+    @Override
+    public void close() {
+        try {
+            this.getLoadFuture().join();
+        } catch (Exception e) {
+            log.debug("Loading of preferences has not been completed successfully", e);
+        }
+        this.getNodes().values().forEach(Preferences::close);
+        if (this.getPreferencesWriter() != null) {
+            this.getPreferencesWriter().close();
+        }
+        if (this.getWatcher() != null) {
+            this.getWatcher().close();
+        }
+        if (this.getWriteExecutor() != null) {
+            this.getWriteExecutor().shutdown();
+            try {
+                this.getWriteExecutor().awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     boolean addPreferencesListener(PreferencesListener listener) {
@@ -96,18 +446,95 @@ public class Preferences {
         this.preferencesListeners = preferencesListeners;
     }
 
-    private Map<String, String> getValues() {
+    private PreferencesWriter getPreferencesWriter() {
+        return this.preferencesWriter;
+    }
+    void setPreferencesWriter(PreferencesWriter preferencesWriter) {
+        this.preferencesWriter = preferencesWriter;
+    }
+
+    private ScheduledThreadPoolExecutor getWriteExecutor() {
+        return this.writeExecutor;
+    }
+    void setWriteExecutor(ScheduledThreadPoolExecutor writeExecutor) {
+        this.writeExecutor = writeExecutor;
+    }
+
+    private PreferencesWatcher getWatcher() {
+        return this.watcher;
+    }
+    void setWatcher(PreferencesWatcher watcher) {
+        this.watcher = watcher;
+    }
+
+    private ConcurrentMap<String, Preferences> getNodes() {
+        return this.nodes;
+    }
+    private void setNodes(ConcurrentMap<String, Preferences> nodes) {
+        this.nodes = nodes;
+    }
+
+    private CompletableFuture<Preferences> getLoadFuture() {
+        return this.loadFuture;
+    }
+    void setLoadFuture(CompletableFuture<Preferences> loadFuture) {
+        this.loadFuture = loadFuture;
+    }
+
+    private Executor getPropertiesExecutor() {
+        return this.propertiesExecutor;
+    }
+    void setPropertiesExecutor(Executor propertiesExecutor) {
+        this.propertiesExecutor = propertiesExecutor;
+    }
+
+    private ThreadLocal<Set<String>> getUpdatingKeys() {
+        return this.updatingKeys;
+    }
+    private void setUpdatingKeys(ThreadLocal<Set<String>> updatingKeys) {
+        this.updatingKeys = updatingKeys;
+    }
+
+    private Function<String, Preferences> getNodeFactory() {
+        return this.nodeFactory;
+    }
+    void setNodeFactory(Function<String, Preferences> nodeFactory) {
+        this.nodeFactory = nodeFactory;
+    }
+
+    private ConcurrentMap<String, String> getValues() {
         return this.values;
     }
-    private void setValues(Map<String, String> values) {
+    private void setValues(ConcurrentMap<String, String> values) {
         this.values = values;
     }
 
-    private Map<String, StringProperty> getProperties() {
+    private ConcurrentMap<String, StringProperty> getProperties() {
         return this.properties;
     }
-    private void setProperties(Map<String, StringProperty> properties) {
+    private void setProperties(ConcurrentMap<String, StringProperty> properties) {
         this.properties = properties;
     }
 
+    private ConcurrentMap<String, PreferencesTypedProperty<?>> getTypedProperties() {
+        return this.typedProperties;
+    }
+    private void setTypedProperties(ConcurrentMap<String, PreferencesTypedProperty<?>> typedProperties) {
+        this.typedProperties = typedProperties;
+    }
+
+    private AtomicLong getModificationCount() {
+        return this.modificationCount;
+    }
+    private void setModificationCount(AtomicLong modificationCount) {
+        this.modificationCount = modificationCount;
+    }
+
+    private PreferencesSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+    private void setSnapshot(PreferencesSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
 }
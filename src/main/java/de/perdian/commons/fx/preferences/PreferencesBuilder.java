@@ -1,27 +1,44 @@
 package de.perdian.commons.fx.preferences;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Properties;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.perdian.commons.fx.persistence.PersistenceFileReader;
+import de.perdian.commons.fx.persistence.PersistenceFileWriter;
+
 /**
  * Used to create new {@code Preferences} instances that are bound to an underlying file on the
  * local filesystem.
  *
+ * By default every change is written synchronously on the thread that performed the change. When
+ * a {@code writeDelay} is configured, changes are coalesced and written on a background thread,
+ * which is shared by the preferences and all of its child nodes, once no further change has been
+ * made within the delay, but no later than the configured {@code maxWriteDelay} after the first
+ * pending change.
+ *
+ * The format of the preferences file is defined by the {@code PreferencesStore}, which defaults to
+ * the GZIP compressed XML format of {@code XmlPreferencesStore}. Files written in that format are
+ * migrated transparently into the format of any other configured store.
+ *
+ * In shared mode the preferences file may be used by multiple processes at the same time. Every
+ * write is guarded by a file lock and only merges the keys changed locally into the values stored
+ * in the file, and changes made by other processes are reflected in the preferences as soon as
+ * they have been written into the file.
+ *
  * @author Christian Seifert
  */
 
@@ -30,8 +47,79 @@ public class PreferencesBuilder {
     private static final Logger log = LoggerFactory.getLogger(PreferencesBuilder.class);
 
     private Path path = null;
+    private PersistenceFileReader fileReader = null;
+    private PersistenceFileWriter fileWriter = null;
+    private PreferencesStore store = null;
+    private Duration writeDelay = Duration.ZERO;
+    private Duration maxWriteDelay = null;
+    private boolean shared = false;
+    private Executor propertiesExecutor = null;
 
     public Preferences buildPreferences() {
+        if (this.isShared() && this.getPropertiesExecutor() == null) {
+            throw new IllegalArgumentException("Property 'propertiesExecutor' must not be null in shared mode");
+        }
+        Path path = this.preparePath();
+        PersistenceFileReader fileReader = this.getFileReader() == null ? new PersistenceFileReader() : this.getFileReader();
+        PersistenceFileWriter fileWriter = this.getFileWriter() == null ? new PersistenceFileWriter() : this.getFileWriter();
+        PreferencesStore store = this.getStore() == null ? new XmlPreferencesStore() : this.getStore();
+        Duration writeDelay = this.getWriteDelay() == null ? Duration.ZERO : this.getWriteDelay();
+        Duration maxWriteDelay = this.getMaxWriteDelay() == null ? writeDelay : this.getMaxWriteDelay();
+        Executor propertiesExecutor = this.getPropertiesExecutor() == null ? Runnable::run : this.getPropertiesExecutor();
+        ScheduledThreadPoolExecutor writeExecutor = PreferencesBuilder.createWriteExecutor(path, writeDelay);
+        PreferencesWatcher watcher = this.isShared() ? new PreferencesWatcher("PreferencesWatcher-" + path.getFileName()) : null;
+        Preferences preferences = PreferencesBuilder.buildPreferences(path, fileReader, fileWriter, store, writeExecutor, writeDelay, maxWriteDelay, watcher, propertiesExecutor);
+        preferences.setWriteExecutor(writeExecutor);
+        preferences.setWatcher(watcher);
+        return preferences;
+    }
+
+    /**
+     * Creates the preferences without waiting for the preferences file to be loaded. The file is
+     * loaded on a background thread, and the loaded values are added to the preferences as soon as
+     * they are available, so that properties can be requested and bound right away. Values set
+     * before the loaded values are available take precedence over the loaded values, and no change is
+     * written into the preferences file before it has been loaded.
+     *
+     * @param propertiesExecutor
+     *      the executor on which the properties already requested are updated with the loaded
+     *      values, for example {@code Platform::runLater} for properties bound to JavaFX controls
+     * @see Preferences#whenLoaded()
+     */
+    public Preferences buildPreferencesAsync(Executor propertiesExecutor) {
+        Path path = this.preparePath();
+        PersistenceFileReader fileReader = this.getFileReader() == null ? new PersistenceFileReader() : this.getFileReader();
+        PersistenceFileWriter fileWriter = this.getFileWriter() == null ? new PersistenceFileWriter() : this.getFileWriter();
+        PreferencesStore store = this.getStore() == null ? new XmlPreferencesStore() : this.getStore();
+        Duration writeDelay = this.getWriteDelay() == null ? Duration.ZERO : this.getWriteDelay();
+        Duration maxWriteDelay = this.getMaxWriteDelay() == null ? writeDelay : this.getMaxWriteDelay();
+        ScheduledThreadPoolExecutor writeExecutor = PreferencesBuilder.createWriteExecutor(path, writeDelay);
+        PreferencesWatcher watcher = this.isShared() ? new PreferencesWatcher("PreferencesWatcher-" + path.getFileName()) : null;
+        Preferences preferences = new Preferences(new ConcurrentHashMap<>());
+        preferences.setWriteExecutor(writeExecutor);
+        preferences.setWatcher(watcher);
+        PreferencesWriter preferencesWriter = PreferencesBuilder.initializePreferences(preferences, path, fileReader, fileWriter, store, writeExecutor, writeDelay, maxWriteDelay, watcher, propertiesExecutor);
+        preferencesWriter.suspend();
+        PreferencesBuilder.migratePreferences(path, store, preferencesWriter);
+        long loadStartNanos = System.nanoTime();
+        Executor loadExecutor = runnable -> {
+            Thread thread = new Thread(runnable, "PreferencesLoader-" + path.getFileName());
+            thread.setDaemon(true);
+            thread.start();
+        };
+        preferences.setLoadFuture(CompletableFuture.supplyAsync(() -> PreferencesBuilder.loadPropertiesFromPath(path, fileReader, store), loadExecutor).thenApply(loadedValues -> {
+            log.debug("Loaded {} preferences in {} ms from: {}", loadedValues.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStartNanos), path);
+            try {
+                preferences.applyLoadedValues(loadedValues, propertiesExecutor);
+            } finally {
+                preferencesWriter.resume();
+            }
+            return preferences;
+        }));
+        return preferences;
+    }
+
+    private Path preparePath() {
         Path path = this.getPath();
         if (path == null) {
             throw new IllegalArgumentException("Property 'path' must not be null");
@@ -43,43 +131,86 @@ public class PreferencesBuilder {
                 throw new IllegalArgumentException("Cannot create preferences directory at: " + this.getPath(), e);
             }
         }
-        Map<String, String> properties = new HashMap<>(PreferencesBuilder.loadPropertiesFromPath(path));
+        return path;
+    }
+
+    /**
+     * Creates the executor on which the writers of the root preferences and all of its child nodes
+     * write deferred changes, or {@code null} if every change is written synchronously
+     */
+    private static ScheduledThreadPoolExecutor createWriteExecutor(Path path, Duration writeDelay) {
+        return writeDelay.isZero() ? null : PreferencesWriteScheduler.createExecutor("PreferencesWriter-" + path.getFileName());
+    }
+
+    /**
+     * Creates the preferences stored in the given file. The child nodes are stored in a directory
+     * next to the file, named like the file with the suffix {@code .nodes}, and share the write
+     * executor and the watcher of the root preferences.
+     */
+    private static Preferences buildPreferences(Path path, PersistenceFileReader fileReader, PersistenceFileWriter fileWriter, PreferencesStore store, ScheduledThreadPoolExecutor writeExecutor, Duration writeDelay, Duration maxWriteDelay, PreferencesWatcher watcher, Executor propertiesExecutor) {
+        ConcurrentMap<String, String> properties = new ConcurrentHashMap<>(PreferencesBuilder.loadPropertiesFromPath(path, fileReader, store));
         Preferences preferences = new Preferences(properties);
-        preferences.addPreferencesListener((key, oldValue, newValue) -> PreferencesBuilder.storePropertiesToPath(properties, path));
+        PreferencesWriter preferencesWriter = PreferencesBuilder.initializePreferences(preferences, path, fileReader, fileWriter, store, writeExecutor, writeDelay, maxWriteDelay, watcher, propertiesExecutor);
+        PreferencesBuilder.migratePreferences(path, store, preferencesWriter);
         return preferences;
     }
 
-    private static Map<String, String> loadPropertiesFromPath(Path sourcePath) {
-        Map<String, String> resultMap = new HashMap<>();
-        if (Files.exists(sourcePath)) {
-            log.info("Loading preferences from: {}", sourcePath);
+    /**
+     * Makes sure that a file not yet written in the format of the given store is rewritten using the
+     * store
+     */
+    private static void migratePreferences(Path path, PreferencesStore store, PreferencesWriter preferencesWriter) {
+        if (!(store instanceof XmlPreferencesStore) && XmlPreferencesStore.isCompressedFile(path)) {
+            log.info("Migrating preferences file into format of {}: {}", store.getClass().getSimpleName(), path);
+            preferencesWriter.markDirty();
+        }
+    }
+
+    private static PreferencesWriter initializePreferences(Preferences preferences, Path path, PersistenceFileReader fileReader, PersistenceFileWriter fileWriter, PreferencesStore store, ScheduledThreadPoolExecutor writeExecutor, Duration writeDelay, Duration maxWriteDelay, PreferencesWatcher watcher, Executor propertiesExecutor) {
+        PreferencesSharedFile sharedFile = watcher != null ? new PreferencesSharedFile(path, fileReader, fileWriter, store, preferences, propertiesExecutor) : null;
+        PreferencesWriter preferencesWriter = new PreferencesWriter(path, fileWriter, store, preferences::toMap, writeExecutor, writeDelay, maxWriteDelay, sharedFile);
+        preferences.addPreferencesListener((key, oldValue, newValue) -> preferencesWriter.markDirty(key));
+        preferences.setPreferencesWriter(preferencesWriter);
+        preferences.setPropertiesExecutor(propertiesExecutor);
+        Path nodesDirectory = path.resolveSibling(path.getFileName() + ".nodes");
+        preferences.setNodeFactory(nodeName -> PreferencesBuilder.buildPreferences(nodesDirectory.resolve(nodeName), fileReader, fileWriter, store, writeExecutor, writeDelay, maxWriteDelay, watcher, propertiesExecutor));
+        if (sharedFile != null) {
             try {
-                try (InputStream sourceStream = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(sourcePath)))) {
-                    Properties properties = new Properties();
-                    properties.loadFromXML(sourceStream);
-                    properties.entrySet().stream()
-                        .map(entry -> Map.entry((String)entry.getKey(), (String)entry.getValue()))
-                        .filter(entry -> StringUtils.isNotEmpty(entry.getKey()) && StringUtils.isNotEmpty(entry.getValue()))
-                        .forEach(entry -> resultMap.put(entry.getKey(), entry.getValue()));
-                }
-            } catch (Exception e) {
-                log.warn("Cannot load properties from path: {}", sourcePath, e);
+                sharedFile.startWatching(watcher, preferencesWriter::reload);
+            } catch (IOException e) {
+                log.warn("Cannot watch shared preferences file for changes: {}", path, e);
             }
         }
-        return resultMap;
+        return preferencesWriter;
     }
 
-    private static void storePropertiesToPath(Map<String, String> properties, Path targetPath) {
-        log.info("Storing preferences into: {}", targetPath);
-        Properties targetProperties = new Properties();
-        properties.forEach((key, value) -> targetProperties.setProperty(key, value));
-        try (OutputStream outStream = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(targetPath, StandardOpenOption.CREATE)))) {
-            targetProperties.storeToXML(outStream, null);
+    private static Map<String, String> loadPropertiesFromPath(Path sourcePath, PersistenceFileReader fileReader, PreferencesStore store) {
+        try {
+            return PreferencesBuilder.readValues(sourcePath, fileReader, store);
         } catch (Exception e) {
-            log.warn("Cannot store properties into path: {}", targetPath, e);
+            log.warn("Cannot load properties from path: {}", sourcePath, e);
+            return new HashMap<>();
         }
     }
 
+    /**
+     * Reads the values from the given file using the given store, or using the {@code XmlPreferencesStore}
+     * if the file still has to be migrated into the format of the given store
+     */
+    static Map<String, String> readValues(Path sourcePath, PersistenceFileReader fileReader, PreferencesStore store) throws IOException {
+        Map<String, String> resultMap = new HashMap<>();
+        if (Files.exists(sourcePath)) {
+            log.info("Loading preferences from: {}", sourcePath);
+            long loadStartNanos = System.nanoTime();
+            PreferencesStore sourceStore = !(store instanceof XmlPreferencesStore) && XmlPreferencesStore.isCompressedFile(sourcePath) ? new XmlPreferencesStore() : store;
+            sourceStore.readValues(sourcePath, fileReader).entrySet().stream()
+                .filter(entry -> StringUtils.isNotEmpty(entry.getKey()) && StringUtils.isNotEmpty(entry.getValue()))
+                .forEach(entry -> resultMap.put(entry.getKey(), entry.getValue()));
+            log.debug("Read {} preferences in {} ms using {}", resultMap.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStartNanos), sourceStore.getClass().getSimpleName());
+        }
+        return resultMap;
+    }
+
     public PreferencesBuilder path(Path path) {
         this.setPath(path);
         return this;
@@ -91,4 +222,113 @@ public class PreferencesBuilder {
         this.path = path;
     }
 
+    /**
+     * Sets the reader used to read the preferences file. If not set, a {@code PersistenceFileReader}
+     * with its default settings is used.
+     */
+    public PreferencesBuilder fileReader(PersistenceFileReader fileReader) {
+        this.setFileReader(fileReader);
+        return this;
+    }
+    private PersistenceFileReader getFileReader() {
+        return this.fileReader;
+    }
+    private void setFileReader(PersistenceFileReader fileReader) {
+        this.fileReader = fileReader;
+    }
+
+    /**
+     * Sets the writer used to write the preferences file. If not set, a {@code PersistenceFileWriter}
+     * in atomic mode without any backups is used.
+     */
+    public PreferencesBuilder fileWriter(PersistenceFileWriter fileWriter) {
+        this.setFileWriter(fileWriter);
+        return this;
+    }
+    private PersistenceFileWriter getFileWriter() {
+        return this.fileWriter;
+    }
+    private void setFileWriter(PersistenceFileWriter fileWriter) {
+        this.fileWriter = fileWriter;
+    }
+
+    /**
+     * Sets the quiet window after which pending changes are written into the preferences file. A
+     * zero delay (which is the default) writes every change synchronously.
+     */
+    public PreferencesBuilder writeDelay(Duration writeDelay) {
+        this.setWriteDelay(writeDelay);
+        return this;
+    }
+    private Duration getWriteDelay() {
+        return this.writeDelay;
+    }
+    private void setWriteDelay(Duration writeDelay) {
+        this.writeDelay = writeDelay;
+    }
+
+    /**
+     * Sets the maximum time a change may stay pending, even if further changes keep arriving within
+     * the quiet window. If not set, the {@code writeDelay} is used.
+     */
+    public PreferencesBuilder maxWriteDelay(Duration maxWriteDelay) {
+        this.setMaxWriteDelay(maxWriteDelay);
+        return this;
+    }
+    private Duration getMaxWriteDelay() {
+        return this.maxWriteDelay;
+    }
+    private void setMaxWriteDelay(Duration maxWriteDelay) {
+        this.maxWriteDelay = maxWriteDelay;
+    }
+
+    /**
+     * Enables the shared mode, in which the preferences file may be used by multiple processes at the
+     * same time. As changes made by other processes are detected on a background thread, a
+     * {@code propertiesExecutor} must be set explicitly in shared mode.
+     */
+    public PreferencesBuilder shared(boolean shared) {
+        this.setShared(shared);
+        return this;
+    }
+    private boolean isShared() {
+        return this.shared;
+    }
+    private void setShared(boolean shared) {
+        this.shared = shared;
+    }
+
+    /**
+     * Sets the executor on which the properties are updated whenever a value has been changed, either
+     * by calling {@code setStringValue} or by another process in shared mode, for example
+     * {@code Platform::runLater} for properties bound to JavaFX controls. If not set, the properties
+     * are updated on the thread that made the change. Required in shared mode, unless the preferences
+     * are built using {@code buildPreferencesAsync}.
+     */
+    public PreferencesBuilder propertiesExecutor(Executor propertiesExecutor) {
+        this.setPropertiesExecutor(propertiesExecutor);
+        return this;
+    }
+    private Executor getPropertiesExecutor() {
+        return this.propertiesExecutor;
+    }
+    private void setPropertiesExecutor(Executor propertiesExecutor) {
+        this.propertiesExecutor = propertiesExecutor;
+    }
+
+    /**
+     * Sets the store defining the format of the preferences file. If not set, the GZIP compressed
+     * XML format of {@code XmlPreferencesStore} is used.
+     */
+    public PreferencesBuilder store(PreferencesStore store) {
+        this.setStore(store);
+        return this;
+    }
+    private PreferencesStore getStore() {
+        return this.store;
+    }
+    private void setStore(PreferencesStore store) {
+        this.store = store;
+    }
+
 }
@@ -0,0 +1,252 @@
+package de.perdian.commons.fx.preferences;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.perdian.commons.fx.persistence.PersistenceFileReader;
+import de.perdian.commons.fx.persistence.PersistenceFileWriter;
+
+/**
+ * Synchronizes a {@code Preferences} instance with a preferences file that is shared with other
+ * processes.
+ *
+ * Every access to the file is guarded by an exclusive {@code FileLock} on a lock file next to the
+ * preferences file, named like the file with the suffix {@code .lock}. Instead of replacing the file
+ * with the local values, only the keys changed locally are merged into the values currently stored
+ * in the file, and all other values are taken over from the file. The file is watched by the
+ * {@code PreferencesWatcher} shared by all nodes, so that changes made by other processes are
+ * reflected in the preferences as soon as they have been written.
+ */
+
+class PreferencesSharedFile {
+
+    private static final Logger log = LoggerFactory.getLogger(PreferencesSharedFile.class);
+    private static final ConcurrentMap<Path, Object> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private Path path = null;
+    private Path lockPath = null;
+    private PersistenceFileReader fileReader = null;
+    private PersistenceFileWriter fileWriter = null;
+    private PreferencesStore store = null;
+    private Preferences preferences = null;
+    private Executor propertiesExecutor = null;
+    private PreferencesWatcher watcher = null;
+    private Runnable watchCallback = null;
+    private FileTime knownModifiedTime = null;
+    private long knownSize = -1;
+
+    PreferencesSharedFile(Path path, PersistenceFileReader fileReader, PersistenceFileWriter fileWriter, PreferencesStore store, Preferences preferences, Executor propertiesExecutor) {
+        this.setStore(store);
+        this.setPath(path);
+        this.setLockPath(path.resolveSibling(path.getFileName() + ".lock"));
+        this.setFileReader(fileReader);
+        this.setFileWriter(fileWriter);
+        this.setPreferences(preferences);
+        this.setPropertiesExecutor(propertiesExecutor);
+    }
+
+    /**
+     * Writes the local values of the given keys into the file, keeping all other values stored in the
+     * file, and updates the preferences with the values that have been changed by other processes.
+     */
+    void write(Set<String> changedKeys) throws IOException {
+        this.synchronizeValues(changedKeys, true);
+    }
+
+    /**
+     * Updates the preferences with the values currently stored in the file, except for the given
+     * keys, which have been changed locally but not yet been written
+     */
+    void reload(Set<String> changedKeys) throws IOException {
+        this.synchronizeValues(changedKeys, false);
+    }
+
+    private void synchronizeValues(Set<String> changedKeys, boolean writeValues) throws IOException {
+        // The properties are only updated once the locks have been released, as listeners of the
+        // properties might change further values, which would require the locks again
+        List<Runnable> propertiesUpdates = new ArrayList<>();
+        synchronized (this.acquireProcessLock()) {
+            try (FileChannel lockChannel = this.openLockChannel()) {
+                FileLock fileLock = lockChannel.lock();
+                try {
+                    Map<String, String> localValues = this.getPreferences().toMap();
+                    Map<String, String> mergedValues = new HashMap<>(PreferencesBuilder.readValues(this.getPath(), this.getFileReader(), this.getStore()));
+                    for (String changedKey : changedKeys) {
+                        String localValue = localValues.get(changedKey);
+                        if (localValue == null) {
+                            mergedValues.remove(changedKey);
+                        } else {
+                            mergedValues.put(changedKey, localValue);
+                        }
+                    }
+                    if (writeValues) {
+                        log.info("Storing shared preferences into: {}", this.getPath());
+                        this.getStore().writeValues(this.getPath(), this.getFileWriter(), mergedValues, changedKeys);
+                    }
+                    this.rememberFileState();
+                    this.getPreferences().applyExternalValues(localValues, mergedValues, propertiesUpdates::add);
+                } finally {
+                    fileLock.release();
+                }
+            }
+        }
+        propertiesUpdates.forEach(this.getPropertiesExecutor()::execute);
+    }
+
+    /**
+     * Starts watching the file using the given watcher, calling the given callback whenever the file
+     * has been changed
+     */
+    void startWatching(PreferencesWatcher watcher, Runnable changeCallback) throws IOException {
+        Runnable watchCallback = () -> {
+            if (this.isKnownFileState()) {
+                log.trace("Ignoring change of shared preferences file already known: {}", this.getPath());
+            } else {
+                log.debug("Detected change of shared preferences file: {}", this.getPath());
+                changeCallback.run();
+            }
+        };
+        watcher.register(this.getPath(), watchCallback);
+        this.setWatcher(watcher);
+        this.setWatchCallback(watchCallback);
+    }
+
+    void close() {
+        if (this.getWatcher() != null) {
+            this.getWatcher().unregister(this.getWatchCallback());
+        }
+    }
+
+    /**
+     * Remembers the modification time and the size of the file after it has been written or read, so
+     * that the events caused by the own write (or by a change that has already been read) can be
+     * told apart from changes made by other processes
+     */
+    private synchronized void rememberFileState() {
+        BasicFileAttributes fileAttributes = this.readFileAttributes();
+        this.setKnownModifiedTime(fileAttributes == null ? null : fileAttributes.lastModifiedTime());
+        this.setKnownSize(fileAttributes == null ? -1 : fileAttributes.size());
+    }
+
+    private synchronized boolean isKnownFileState() {
+        BasicFileAttributes fileAttributes = this.readFileAttributes();
+        return fileAttributes != null && fileAttributes.lastModifiedTime().equals(this.getKnownModifiedTime()) && fileAttributes.size() == this.getKnownSize();
+    }
+
+    private BasicFileAttributes readFileAttributes() {
+        try {
+            return Files.readAttributes(this.getPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the object used to serialize the access to the file within this process, as a
+     * {@code FileLock} is held on behalf of the complete process and cannot be used to serialize
+     * multiple threads
+     */
+    private Object acquireProcessLock() {
+        return PROCESS_LOCKS.computeIfAbsent(this.getLockPath().toAbsolutePath().normalize(), lockPath -> new Object());
+    }
+
+    private FileChannel openLockChannel() throws IOException {
+        Files.createDirectories(this.getLockPath().toAbsolutePath().getParent());
+        return FileChannel.open(this.getLockPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private Path getPath() {
+        return this.path;
+    }
+    private void setPath(Path path) {
+        this.path = path;
+    }
+
+    private Path getLockPath() {
+        return this.lockPath;
+    }
+    private void setLockPath(Path lockPath) {
+        this.lockPath = lockPath;
+    }
+
+    private PersistenceFileReader getFileReader() {
+        return this.fileReader;
+    }
+    private void setFileReader(PersistenceFileReader fileReader) {
+        this.fileReader = fileReader;
+    }
+
+    private PersistenceFileWriter getFileWriter() {
+        return this.fileWriter;
+    }
+    private void setFileWriter(PersistenceFileWriter fileWriter) {
+        this.fileWriter = fileWriter;
+    }
+
+    private PreferencesStore getStore() {
+        return this.store;
+    }
+    private void setStore(PreferencesStore store) {
+        this.store = store;
+    }
+
+    private Preferences getPreferences() {
+        return this.preferences;
+    }
+    private void setPreferences(Preferences preferences) {
+        this.preferences = preferences;
+    }
+
+    private Executor getPropertiesExecutor() {
+        return this.propertiesExecutor;
+    }
+    private void setPropertiesExecutor(Executor propertiesExecutor) {
+        this.propertiesExecutor = propertiesExecutor;
+    }
+
+    private PreferencesWatcher getWatcher() {
+        return this.watcher;
+    }
+    private void setWatcher(PreferencesWatcher watcher) {
+        this.watcher = watcher;
+    }
+
+    private FileTime getKnownModifiedTime() {
+        return this.knownModifiedTime;
+    }
+    private void setKnownModifiedTime(FileTime knownModifiedTime) {
+        this.knownModifiedTime = knownModifiedTime;
+    }
+
+    private long getKnownSize() {
+        return this.knownSize;
+    }
+    private void setKnownSize(long knownSize) {
+        this.knownSize = knownSize;
+    }
+
+    private Runnable getWatchCallback() {
+        return this.watchCallback;
+    }
+    private void setWatchCallback(Runnable watchCallback) {
+        this.watchCallback = watchCallback;
+    }
+
+}
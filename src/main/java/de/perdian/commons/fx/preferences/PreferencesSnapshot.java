@@ -0,0 +1,34 @@
+package de.perdian.commons.fx.preferences;
+
+import java.util.Map;
+
+/**
+ * An immutable copy of the values of a {@code Preferences} instance, together with the number of
+ * modifications that had been completed when the copy was created.
+ */
+
+class PreferencesSnapshot {
+
+    private Map<String, String> values = null;
+    private long modificationCount = 0;
+
+    PreferencesSnapshot(Map<String, String> values, long modificationCount) {
+        this.setValues(values);
+        this.setModificationCount(modificationCount);
+    }
+
+    Map<String, String> getValues() {
+        return this.values;
+    }
+    private void setValues(Map<String, String> values) {
+        this.values = values;
+    }
+
+    long getModificationCount() {
+        return this.modificationCount;
+    }
+    private void setModificationCount(long modificationCount) {
+        this.modificationCount = modificationCount;
+    }
+
+}
@@ -0,0 +1,39 @@
+package de.perdian.commons.fx.preferences;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+import de.perdian.commons.fx.persistence.PersistenceFileReader;
+import de.perdian.commons.fx.persistence.PersistenceFileWriter;
+
+/**
+ * Defines the format in which the values of a {@code Preferences} instance are stored.
+ *
+ * A single store may be used for multiple preferences files (like the files of the child nodes) and
+ * by multiple threads at the same time.
+ *
+ * @author Christian Seifert
+ */
+
+public interface PreferencesStore {
+
+    /**
+     * Reads all values from the given file, which is guaranteed to exist
+     */
+    Map<String, String> readValues(Path path, PersistenceFileReader fileReader) throws IOException;
+
+    /**
+     * Writes the values into the given file.
+     *
+     * @param values
+     *      the complete set of values
+     * @param changedKeys
+     *      the keys that have been changed since the values have been written or read the last time,
+     *      which allows implementations to only write the changes instead of the complete set of
+     *      values
+     */
+    void writeValues(Path path, PersistenceFileWriter fileWriter, Map<String, String> values, Set<String> changedKeys) throws IOException;
+
+}
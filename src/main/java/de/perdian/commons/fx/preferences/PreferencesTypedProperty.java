@@ -0,0 +1,91 @@
+package de.perdian.commons.fx.preferences;
+
+import java.util.Objects;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.beans.property.Property;
+import javafx.util.StringConverter;
+
+/**
+ * Keeps a typed {@code Property} synchronized with the string value stored for a key within the
+ * {@code Preferences}, so that the parsed value is only computed when the string value changes and
+ * not whenever the value is read.
+ */
+
+class PreferencesTypedProperty<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(PreferencesTypedProperty.class);
+
+    private Property<T> property = null;
+    private Class<?> valueClass = null;
+    private StringConverter<T> converter = null;
+    private T defaultValue = null;
+
+    PreferencesTypedProperty(Property<T> property, Class<?> valueClass, StringConverter<T> converter, T defaultValue) {
+        this.setProperty(property);
+        this.setValueClass(valueClass);
+        this.setConverter(converter);
+        this.setDefaultValue(defaultValue);
+    }
+
+    /**
+     * Updates the property to reflect the given string value, or the default value if the string
+     * value is empty or cannot be parsed
+     */
+    void updateValue(String stringValue) {
+        T newValue = this.parseValue(stringValue);
+        if (!Objects.equals(this.getProperty().getValue(), newValue)) {
+            this.getProperty().setValue(newValue);
+        }
+    }
+
+    T parseValue(String stringValue) {
+        if (StringUtils.isEmpty(stringValue)) {
+            return this.getDefaultValue();
+        } else {
+            try {
+                T value = this.getConverter().fromString(stringValue);
+                return value == null ? this.getDefaultValue() : value;
+            } catch (Exception e) {
+                log.debug("Cannot parse preferences value '{}', using default value: {}", stringValue, this.getDefaultValue(), e);
+                return this.getDefaultValue();
+            }
+        }
+    }
+
+    String formatValue(T value) {
+        return value == null ? null : this.getConverter().toString(value);
+    }
+
+    Property<T> getProperty() {
+        return this.property;
+    }
+    private void setProperty(Property<T> property) {
+        this.property = property;
+    }
+
+    Class<?> getValueClass() {
+        return this.valueClass;
+    }
+    private void setValueClass(Class<?> valueClass) {
+        this.valueClass = valueClass;
+    }
+
+    private StringConverter<T> getConverter() {
+        return this.converter;
+    }
+    private void setConverter(StringConverter<T> converter) {
+        this.converter = converter;
+    }
+
+    T getDefaultValue() {
+        return this.defaultValue;
+    }
+    private void setDefaultValue(T defaultValue) {
+        this.defaultValue = defaultValue;
+    }
+
+}
@@ -0,0 +1,140 @@
+package de.perdian.commons.fx.preferences;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the shared preferences files of a root {@code Preferences} and all of its child nodes
+ * using a single {@code WatchService} and a single background thread, which is started as soon as
+ * the first file is registered.
+ */
+
+class PreferencesWatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(PreferencesWatcher.class);
+
+    private String threadName = null;
+    private WatchService watchService = null;
+    private Map<Runnable, Path> changeCallbacks = null;
+    private boolean closed = false;
+
+    PreferencesWatcher(String threadName) {
+        this.setThreadName(threadName);
+        this.setChangeCallbacks(new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Starts watching the given file, calling the given callback on the background thread whenever
+     * the file has been changed
+     */
+    synchronized void register(Path path, Runnable changeCallback) throws IOException {
+        if (this.isClosed()) {
+            throw new IOException("Watcher has already been closed");
+        }
+        Path absolutePath = path.toAbsolutePath().normalize();
+        Path directory = absolutePath.getParent();
+        Files.createDirectories(directory);
+        if (this.getWatchService() == null) {
+            WatchService watchService = directory.getFileSystem().newWatchService();
+            Thread watchThread = new Thread(() -> this.watchFiles(watchService), this.getThreadName());
+            watchThread.setDaemon(true);
+            watchThread.start();
+            this.setWatchService(watchService);
+        }
+        directory.register(this.getWatchService(), StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.getChangeCallbacks().put(changeCallback, absolutePath);
+    }
+
+    /**
+     * Stops calling the given callback. The directory of the file stays registered, as other files
+     * within the same directory might still be watched.
+     */
+    void unregister(Runnable changeCallback) {
+        this.getChangeCallbacks().remove(changeCallback);
+    }
+
+    private void watchFiles(WatchService watchService) {
+        try {
+            while (true) {
+                WatchKey watchKey = watchService.take();
+                Path directory = (Path)watchKey.watchable();
+                List<Runnable> changeCallbacks = new ArrayList<>();
+                for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+                    boolean overflow = watchEvent.kind() == StandardWatchEventKinds.OVERFLOW;
+                    Path changedPath = overflow ? null : directory.resolve((Path)watchEvent.context());
+                    this.getChangeCallbacks().forEach((changeCallback, path) -> {
+                        if ((overflow ? directory.equals(path.getParent()) : path.equals(changedPath)) && !changeCallbacks.contains(changeCallback)) {
+                            changeCallbacks.add(changeCallback);
+                        }
+                    });
+                }
+                watchKey.reset();
+                for (Runnable changeCallback : changeCallbacks) {
+                    try {
+                        changeCallback.run();
+                    } catch (Exception e) {
+                        log.warn("Cannot process change of shared preferences file in directory: {}", directory, e);
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            log.trace("Stopped watching shared preferences files");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    synchronized void close() {
+        this.setClosed(true);
+        this.getChangeCallbacks().clear();
+        if (this.getWatchService() != null) {
+            try {
+                this.getWatchService().close();
+            } catch (IOException e) {
+                log.debug("Cannot close watch service for shared preferences files", e);
+            }
+        }
+    }
+
+    private String getThreadName() {
+        return this.threadName;
+    }
+    private void setThreadName(String threadName) {
+        this.threadName = threadName;
+    }
+
+    private WatchService getWatchService() {
+        return this.watchService;
+    }
+    private void setWatchService(WatchService watchService) {
+        this.watchService = watchService;
+    }
+
+    private Map<Runnable, Path> getChangeCallbacks() {
+        return this.changeCallbacks;
+    }
+    private void setChangeCallbacks(Map<Runnable, Path> changeCallbacks) {
+        this.changeCallbacks = changeCallbacks;
+    }
+
+    private boolean isClosed() {
+        return this.closed;
+    }
+    private void setClosed(boolean closed) {
+        this.closed = closed;
+    }
+
+}
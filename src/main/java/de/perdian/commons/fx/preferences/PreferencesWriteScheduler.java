@@ -0,0 +1,140 @@
+package de.perdian.commons.fx.preferences;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces changes of the preferences into deferred writes.
+ *
+ * Every change postpones the pending write until no further change has been made within the write
+ * delay, but no longer than the maximum write delay after the first change that hasn't been written
+ * yet. Without a write delay (or once the executor has been shut down) nothing is scheduled, and the
+ * caller is expected to write the change directly.
+ */
+
+class PreferencesWriteScheduler {
+
+    private ScheduledExecutorService executor = null;
+    private long writeDelayNanos = 0;
+    private long maxWriteDelayNanos = 0;
+    private ScheduledFuture<?> pendingWrite = null;
+    private long pendingSinceNanos = 0;
+    private boolean pending = false;
+
+    PreferencesWriteScheduler(ScheduledExecutorService executor, Duration writeDelay, Duration maxWriteDelay) {
+        this.setExecutor(executor);
+        this.setWriteDelayNanos(writeDelay.toNanos());
+        this.setMaxWriteDelayNanos(maxWriteDelay.toNanos());
+    }
+
+    /**
+     * Creates an executor running deferred writes on a single daemon thread. Writes that are still
+     * scheduled when the executor is shut down are discarded, so the pending changes must be written
+     * explicitly before.
+     */
+    static ScheduledThreadPoolExecutor createExecutor(String threadName) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return executor;
+    }
+
+    /**
+     * Marks a change as pending without scheduling a write
+     */
+    synchronized void markPending() {
+        if (!this.isPending()) {
+            this.setPending(true);
+            this.setPendingSinceNanos(System.nanoTime());
+        }
+    }
+
+    /**
+     * Marks a change as pending and (re-)schedules the given write
+     *
+     * @return
+     *      {@code true} if the write has been scheduled, {@code false} if the caller must write the
+     *      change directly
+     */
+    synchronized boolean schedule(Runnable write) {
+        this.markPending();
+        if (this.getWriteDelayNanos() == 0 || this.getExecutor() == null || this.getExecutor().isShutdown()) {
+            return false;
+        } else {
+            long remainingNanos = this.getPendingSinceNanos() + this.getMaxWriteDelayNanos() - System.nanoTime();
+            long delayNanos = Math.max(0, Math.min(this.getWriteDelayNanos(), remainingNanos));
+            if (this.getPendingWrite() != null) {
+                this.getPendingWrite().cancel(false);
+            }
+            this.setPendingWrite(this.getExecutor().schedule(write, delayNanos, TimeUnit.NANOSECONDS));
+            return true;
+        }
+    }
+
+    /**
+     * Resets the pending state and cancels the scheduled write, as the caller is about to write all
+     * pending changes
+     *
+     * @return
+     *      {@code true} if any change has been pending
+     */
+    synchronized boolean takePending() {
+        if (this.getPendingWrite() != null) {
+            this.getPendingWrite().cancel(false);
+            this.setPendingWrite(null);
+        }
+        boolean pending = this.isPending();
+        this.setPending(false);
+        return pending;
+    }
+
+    synchronized boolean isPending() {
+        return this.pending;
+    }
+    private void setPending(boolean pending) {
+        this.pending = pending;
+    }
+
+    private ScheduledExecutorService getExecutor() {
+        return this.executor;
+    }
+    private void setExecutor(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    private long getWriteDelayNanos() {
+        return this.writeDelayNanos;
+    }
+    private void setWriteDelayNanos(long writeDelayNanos) {
+        this.writeDelayNanos = writeDelayNanos;
+    }
+
+    private long getMaxWriteDelayNanos() {
+        return this.maxWriteDelayNanos;
+    }
+    private void setMaxWriteDelayNanos(long maxWriteDelayNanos) {
+        this.maxWriteDelayNanos = maxWriteDelayNanos;
+    }
+
+    private ScheduledFuture<?> getPendingWrite() {
+        return this.pendingWrite;
+    }
+    private void setPendingWrite(ScheduledFuture<?> pendingWrite) {
+        this.pendingWrite = pendingWrite;
+    }
+
+    private long getPendingSinceNanos() {
+        return this.pendingSinceNanos;
+    }
+    private void setPendingSinceNanos(long pendingSinceNanos) {
+        this.pendingSinceNanos = pendingSinceNanos;
+    }
+
+}
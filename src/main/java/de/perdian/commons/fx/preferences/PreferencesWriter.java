@@ -0,0 +1,276 @@
+package de.perdian.commons.fx.preferences;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.perdian.commons.fx.persistence.PersistenceFileWriter;
+
+/**
+ * Writes the values of a {@code Preferences} instance into the preferences file.
+ *
+ * Without a write delay every change is written synchronously on the thread that performed the
+ * change. Otherwise changes are coalesced and the complete set of values is written on the
+ * background thread shared by the writers of all nodes once no further change has been made within
+ * the delay, but no later than the maximum delay after the first pending change.
+ *
+ * For a preferences file shared with other processes, the keys changed since the last write are
+ * tracked and handed to the {@code PreferencesSharedFile}, which merges them into the file.
+ */
+
+class PreferencesWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(PreferencesWriter.class);
+
+    private Path path = null;
+    private PersistenceFileWriter fileWriter = null;
+    private PreferencesStore store = null;
+    private Supplier<Map<String, String>> valuesSupplier = null;
+    private ScheduledThreadPoolExecutor executor = null;
+    private PreferencesWriteScheduler writeScheduler = null;
+    private boolean suspended = false;
+    private Set<String> changedKeys = null;
+    private PreferencesSharedFile sharedFile = null;
+    private Object writeLock = null;
+
+    PreferencesWriter(Path path, PersistenceFileWriter fileWriter, PreferencesStore store, Supplier<Map<String, String>> valuesSupplier, ScheduledThreadPoolExecutor executor, Duration writeDelay, Duration maxWriteDelay, PreferencesSharedFile sharedFile) {
+        this.setStore(store);
+        this.setChangedKeys(new HashSet<>());
+        this.setSharedFile(sharedFile);
+        this.setWriteLock(sharedFile == null ? new Object() : sharedFile);
+        this.setPath(path);
+        this.setFileWriter(fileWriter);
+        this.setValuesSupplier(valuesSupplier);
+        this.setExecutor(executor);
+        this.setWriteScheduler(new PreferencesWriteScheduler(this.getExecutor(), writeDelay, maxWriteDelay));
+    }
+
+    /**
+     * Marks the value of the given key as changed, so that the current values are written either
+     * directly or after the write delay has elapsed
+     */
+    void markDirty(String key) {
+        synchronized (this) {
+            this.getChangedKeys().add(key);
+        }
+        this.markDirty();
+    }
+
+    /**
+     * Marks the preferences file as outdated, so that the current values are written either directly
+     * or after the write delay has elapsed
+     */
+    void markDirty() {
+        boolean writeImmediately = false;
+        synchronized (this) {
+            if (this.isSuspended()) {
+                this.getWriteScheduler().markPending();
+                return;
+            } else {
+                writeImmediately = !this.getWriteScheduler().schedule(this::writePendingChanges);
+            }
+        }
+        if (writeImmediately) {
+            this.writePendingChanges();
+        }
+    }
+
+    /**
+     * Prevents any changes from being written until {@link #resume()} is called, so that the
+     * preferences file isn't overwritten before its values have been loaded
+     */
+    synchronized void suspend() {
+        this.setSuspended(true);
+    }
+
+    /**
+     * Allows changes to be written again, scheduling a write if any change has been made while the
+     * writer was suspended
+     */
+    void resume() {
+        boolean pending = false;
+        synchronized (this) {
+            this.setSuspended(false);
+            pending = this.getWriteScheduler().isPending();
+        }
+        if (pending) {
+            this.markDirty();
+        }
+    }
+
+    /**
+     * Writes all pending changes and waits until the write has been completed
+     */
+    void flush() {
+        if (this.getExecutor() != null && !this.getExecutor().isShutdown()) {
+            try {
+                this.getExecutor().submit(this::writePendingChanges).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.warn("Cannot flush preferences into: {}", this.getPath(), e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Updates the preferences with the values stored in the shared preferences file, keeping all
+     * values that have been changed locally but not yet been written
+     */
+    void reload() {
+        synchronized (this.getWriteLock()) {
+            Set<String> changedKeys = null;
+            synchronized (this) {
+                if (this.isSuspended()) {
+                    return;
+                } else {
+                    changedKeys = new HashSet<>(this.getChangedKeys());
+                }
+            }
+            try {
+                this.getSharedFile().reload(changedKeys);
+            } catch (Exception e) {
+                log.warn("Cannot reload preferences from path: {}", this.getPath(), e);
+            }
+        }
+    }
+
+    /**
+     * Stops watching the shared preferences file and writes all pending changes. The executor is
+     * shared with the writers of all other nodes and therefore shut down by the root
+     * {@code Preferences}.
+     */
+    void close() {
+        if (this.getSharedFile() != null) {
+            this.getSharedFile().close();
+        }
+        this.flush();
+    }
+
+    /**
+     * Writes the pending changes while holding the write lock, so that the values are taken and
+     * written by one thread at a time and an older set of values can never overwrite a newer one
+     */
+    private void writePendingChanges() {
+        synchronized (this.getWriteLock()) {
+            Set<String> changedKeys = this.takePendingChanges();
+            if (changedKeys != null) {
+                try {
+                    if (this.getSharedFile() == null) {
+                        log.info("Storing preferences into: {}", this.getPath());
+                        this.getStore().writeValues(this.getPath(), this.getFileWriter(), this.getValuesSupplier().get(), changedKeys);
+                    } else {
+                        this.getSharedFile().write(changedKeys);
+                    }
+                } catch (Exception e) {
+                    log.warn("Cannot store properties into path: {}", this.getPath(), e);
+                    this.restorePendingChanges(changedKeys);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the given keys as pending again after they could not be written, so that they are
+     * written by the next scheduled write or, without a write delay, together with the next change
+     */
+    private synchronized void restorePendingChanges(Set<String> changedKeys) {
+        this.getChangedKeys().addAll(changedKeys);
+        this.getWriteScheduler().schedule(this::writePendingChanges);
+    }
+
+    /**
+     * Resets the pending state of the writer
+     *
+     * @return
+     *      the keys changed since the last write or {@code null} if nothing should be written
+     */
+    private synchronized Set<String> takePendingChanges() {
+        if (this.isSuspended() || !this.getWriteScheduler().takePending()) {
+            return null;
+        } else {
+            Set<String> changedKeys = this.getChangedKeys();
+            this.setChangedKeys(new HashSet<>());
+            return changedKeys;
+        }
+    }
+
+    private Path getPath() {
+        return this.path;
+    }
+    private void setPath(Path path) {
+        this.path = path;
+    }
+
+    private PersistenceFileWriter getFileWriter() {
+        return this.fileWriter;
+    }
+    private void setFileWriter(PersistenceFileWriter fileWriter) {
+        this.fileWriter = fileWriter;
+    }
+
+    private PreferencesStore getStore() {
+        return this.store;
+    }
+    private void setStore(PreferencesStore store) {
+        this.store = store;
+    }
+
+    private Supplier<Map<String, String>> getValuesSupplier() {
+        return this.valuesSupplier;
+    }
+    private void setValuesSupplier(Supplier<Map<String, String>> valuesSupplier) {
+        this.valuesSupplier = valuesSupplier;
+    }
+
+    private ScheduledThreadPoolExecutor getExecutor() {
+        return this.executor;
+    }
+    private void setExecutor(ScheduledThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    private PreferencesWriteScheduler getWriteScheduler() {
+        return this.writeScheduler;
+    }
+    private void setWriteScheduler(PreferencesWriteScheduler writeScheduler) {
+        this.writeScheduler = writeScheduler;
+    }
+
+    private boolean isSuspended() {
+        return this.suspended;
+    }
+    private void setSuspended(boolean suspended) {
+        this.suspended = suspended;
+    }
+
+    private Set<String> getChangedKeys() {
+        return this.changedKeys;
+    }
+    private void setChangedKeys(Set<String> changedKeys) {
+        this.changedKeys = changedKeys;
+    }
+
+    private PreferencesSharedFile getSharedFile() {
+        return this.sharedFile;
+    }
+    private void setSharedFile(PreferencesSharedFile sharedFile) {
+        this.sharedFile = sharedFile;
+    }
+
+    private Object getWriteLock() {
+        return this.writeLock;
+    }
+    private void setWriteLock(Object writeLock) {
+        this.writeLock = writeLock;
+    }
+
+}
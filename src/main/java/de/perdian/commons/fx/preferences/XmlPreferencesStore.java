@@ -0,0 +1,66 @@
+package de.perdian.commons.fx.preferences;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import de.perdian.commons.fx.persistence.PersistenceFileReader;
+import de.perdian.commons.fx.persistence.PersistenceFileWriter;
+
+/**
+ * Stores the values as GZIP compressed XML document in the format of {@code Properties.storeToXML}.
+ *
+ * This is the format used by default, so that existing preferences files remain readable. Files in
+ * this format are detected by every other store and migrated transparently into the format of the
+ * configured store.
+ *
+ * @author Christian Seifert
+ */
+
+public class XmlPreferencesStore implements PreferencesStore {
+
+    @Override
+    public Map<String, String> readValues(Path path, PersistenceFileReader fileReader) throws IOException {
+        try (InputStream sourceStream = new GZIPInputStream(fileReader.open(path))) {
+            Properties properties = new Properties();
+            properties.loadFromXML(sourceStream);
+            Map<String, String> values = new HashMap<>();
+            properties.forEach((key, value) -> values.put((String)key, (String)value));
+            return values;
+        }
+    }
+
+    @Override
+    public void writeValues(Path path, PersistenceFileWriter fileWriter, Map<String, String> values, Set<String> changedKeys) throws IOException {
+        Properties properties = new Properties();
+        values.forEach((key, value) -> properties.setProperty(key, value));
+        fileWriter.write(path, outputStream -> {
+            GZIPOutputStream gzipStream = new GZIPOutputStream(outputStream);
+            properties.storeToXML(gzipStream, null);
+            gzipStream.finish();
+        });
+    }
+
+    /**
+     * Checks whether or not the given file starts with the GZIP header
+     */
+    static boolean isCompressedFile(Path path) {
+        if (Files.exists(path)) {
+            try (InputStream inputStream = Files.newInputStream(path)) {
+                return inputStream.read() == 0x1F && inputStream.read() == 0x8B;
+            } catch (IOException e) {
+                return false;
+            }
+        } else {
+            return false;
+        }
+    }
+
+}
@@ -7,6 +7,8 @@ import java.util.Objects;
 
 import org.apache.commons.lang3.StringUtils;
 
+import de.perdian.commons.fx.persistence.PersistenceNumberFormat;
+
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.Property;
@@ -42,10 +44,14 @@ public class PropertyFactory {
     }
 
     public static IntegerProperty createIntegerProperty(Property<String> stringProperty, NumberFormat numberFormat) {
+        return PropertyFactory.createIntegerProperty(stringProperty, new PersistenceNumberFormat(numberFormat));
+    }
+
+    public static IntegerProperty createIntegerProperty(Property<String> stringProperty, PersistenceNumberFormat numberFormat) {
         return PropertyFactory.initializeNumberProperty(new SimpleIntegerProperty(), stringProperty, numberFormat);
     }
 
-    private static <T extends Property<Number>> T initializeNumberProperty(T numberProperty, Property<String> stringProperty, NumberFormat numberFormat) {
+    private static <T extends Property<Number>> T initializeNumberProperty(T numberProperty, Property<String> stringProperty, PersistenceNumberFormat numberFormat) {
         if (StringUtils.isNotEmpty(stringProperty.getValue())) {
             try {
                 numberProperty.setValue(numberFormat.parse(stringProperty.getValue()));
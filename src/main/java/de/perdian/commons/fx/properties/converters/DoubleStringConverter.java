@@ -7,15 +7,21 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.perdian.commons.fx.persistence.PersistenceNumberFormat;
+
 import javafx.util.StringConverter;
 
 public class DoubleStringConverter extends StringConverter<Number> {
 
     private static final Logger log = LoggerFactory.getLogger(DoubleStringConverter.class);
 
-    private NumberFormat numberFormat = null;
+    private PersistenceNumberFormat numberFormat = null;
 
     public DoubleStringConverter(NumberFormat numberFormat) {
+        this(new PersistenceNumberFormat(numberFormat));
+    }
+
+    public DoubleStringConverter(PersistenceNumberFormat numberFormat) {
         this.setNumberFormat(numberFormat);
     }
 
@@ -38,10 +44,10 @@ public class DoubleStringConverter extends StringConverter<Number> {
         return null;
     }
 
-    private NumberFormat getNumberFormat() {
+    private PersistenceNumberFormat getNumberFormat() {
         return this.numberFormat;
     }
-    private void setNumberFormat(NumberFormat numberFormat) {
+    private void setNumberFormat(PersistenceNumberFormat numberFormat) {
         this.numberFormat = numberFormat;
     }
 
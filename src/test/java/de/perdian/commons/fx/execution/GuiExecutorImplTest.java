@@ -0,0 +1,338 @@
+package de.perdian.commons.fx.execution;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class GuiExecutorImplTest {
+
+    @Test
+    public void executeInParallel() throws Exception {
+        GuiExecutor executor = new GuiExecutorBuilder().workerCount(2).buildExecutor();
+        CountDownLatch startedLatch = new CountDownLatch(2);
+        Future<Void> firstFuture = executor.execute(progressController -> {
+            startedLatch.countDown();
+            Assertions.assertTrue(startedLatch.await(10, TimeUnit.SECONDS));
+        });
+        Future<Void> secondFuture = executor.execute(progressController -> {
+            startedLatch.countDown();
+            Assertions.assertTrue(startedLatch.await(10, TimeUnit.SECONDS));
+        });
+        firstFuture.get(10, TimeUnit.SECONDS);
+        secondFuture.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void executeWithPriority() throws Exception {
+        GuiExecutor executor = new GuiExecutorBuilder().workerCount(1).buildExecutor();
+        CountDownLatch blockingLatch = new CountDownLatch(1);
+        List<String> executedJobs = new CopyOnWriteArrayList<>();
+        executor.execute(progressController -> blockingLatch.await());
+        executor.execute(progressController -> executedJobs.add("low"), -1, null);
+        executor.execute(progressController -> executedJobs.add("normal"), 0, null);
+        Future<Void> lastFuture = executor.execute(progressController -> executedJobs.add("high"), 1, null);
+        blockingLatch.countDown();
+        lastFuture.get(10, TimeUnit.SECONDS);
+        executor.execute(progressController -> {}, -2, null).get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(List.of("high", "normal", "low"), executedJobs);
+    }
+
+    @Test
+    public void executeWithQueueCapacity() throws Exception {
+        List<GuiJob> rejectedJobs = new CopyOnWriteArrayList<>();
+        GuiExecutor executor = new GuiExecutorBuilder().queueCapacity(1).rejectionPolicy(rejectedJobs::add).buildExecutor();
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        CountDownLatch blockingLatch = new CountDownLatch(1);
+        executor.execute(progressController -> {
+            startedLatch.countDown();
+            blockingLatch.await();
+        });
+        Assertions.assertTrue(startedLatch.await(10, TimeUnit.SECONDS));
+        Future<Void> waitingFuture = executor.execute(progressController -> {});
+        GuiJob rejectedJob = progressController -> {};
+        Future<Void> rejectedFuture = executor.execute(rejectedJob);
+        Assertions.assertTrue(rejectedFuture.isCancelled());
+        Assertions.assertEquals(List.of(rejectedJob), rejectedJobs);
+        blockingLatch.countDown();
+        waitingFuture.get(10, TimeUnit.SECONDS);
+        Assertions.assertNull(executor.execute(progressController -> {}).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void executeWithDefaultRejectionPolicy() throws Exception {
+        GuiExecutor executor = new GuiExecutorBuilder().queueCapacity(1).buildExecutor();
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        CountDownLatch blockingLatch = new CountDownLatch(1);
+        executor.execute(progressController -> {
+            startedLatch.countDown();
+            blockingLatch.await();
+        }, 0, "key");
+        Assertions.assertTrue(startedLatch.await(10, TimeUnit.SECONDS));
+        executor.execute(progressController -> {}, 0, "key");
+        Assertions.assertThrows(RejectedExecutionException.class, () -> executor.execute(progressController -> {}, 0, "key"));
+        blockingLatch.countDown();
+    }
+
+    @Test
+    public void cancelRunningJob() throws Exception {
+        GuiExecutor executor = new GuiExecutorBuilder().buildExecutor();
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        CountDownLatch interruptedLatch = new CountDownLatch(1);
+        Future<Void> runningFuture = executor.execute(progressController -> {
+            startedLatch.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interruptedLatch.countDown();
+            }
+        });
+        AtomicInteger cancelledExecutions = new AtomicInteger();
+        Future<Void> waitingFuture = executor.execute(progressController -> cancelledExecutions.incrementAndGet());
+        Assertions.assertTrue(startedLatch.await(10, TimeUnit.SECONDS));
+        Assertions.assertTrue(waitingFuture.cancel(false));
+        Assertions.assertTrue(runningFuture.cancel(true));
+        Assertions.assertTrue(interruptedLatch.await(10, TimeUnit.SECONDS));
+        executor.execute(progressController -> {}).get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(0, cancelledExecutions.get());
+    }
+
+    @Test
+    public void executeWithKey() throws Exception {
+        GuiExecutor executor = new GuiExecutorBuilder().workerCount(4).buildExecutor();
+        AtomicInteger runningJobs = new AtomicInteger();
+        AtomicInteger maxRunningJobs = new AtomicInteger();
+        List<Integer> executedJobs = new CopyOnWriteArrayList<>();
+        CountDownLatch unkeyedLatch = new CountDownLatch(1);
+        Future<Void> lastFuture = null;
+        for (int i = 0; i < 20; i++) {
+            int jobIndex = i;
+            lastFuture = executor.execute(progressController -> {
+                maxRunningJobs.accumulateAndGet(runningJobs.incrementAndGet(), Math::max);
+                Thread.sleep(2);
+                executedJobs.add(jobIndex);
+                runningJobs.decrementAndGet();
+            }, jobIndex % 3, "key");
+        }
+        executor.execute(progressController -> unkeyedLatch.countDown());
+        Assertions.assertTrue(unkeyedLatch.await(10, TimeUnit.SECONDS));
+        lastFuture.get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, maxRunningJobs.get());
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertEquals(i, executedJobs.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void executeWithVirtualThreadsAndConcurrencyLimit() throws Exception {
+        GuiExecutor executor = new GuiExecutorBuilder().virtualThreads(true).concurrencyLimit("disk", 3).buildExecutor();
+        AtomicInteger runningJobs = new AtomicInteger();
+        AtomicInteger maxRunningJobs = new AtomicInteger();
+        CountDownLatch unlimitedLatch = new CountDownLatch(50);
+        List<Future<Void>> futures = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(executor.execute(progressController -> {
+                unlimitedLatch.countDown();
+                Assertions.assertTrue(unlimitedLatch.await(10, TimeUnit.SECONDS));
+            }));
+            futures.add(executor.execute(progressController -> {
+                maxRunningJobs.accumulateAndGet(runningJobs.incrementAndGet(), Math::max);
+                Thread.sleep(5);
+                runningJobs.decrementAndGet();
+            }, 0, "disk"));
+        }
+        for (Future<Void> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        Assertions.assertTrue(maxRunningJobs.get() > 1);
+        Assertions.assertTrue(maxRunningJobs.get() <= 3);
+    }
+
+    @Test
+    public void progressCoalesced() throws Exception {
+        List<Runnable> pendingDeliveries = new CopyOnWriteArrayList<>();
+        GuiExecutor executor = new GuiExecutorBuilder().fxExecutor(pendingDeliveries::add).progressInterval(Duration.ZERO).buildExecutor();
+        List<String> deliveredMessages = new CopyOnWriteArrayList<>();
+        executor.addProgressListener((message, progress) -> deliveredMessages.add(message));
+        executor.execute(progressController -> {
+            for (int i = 0; i < 100000; i++) {
+                progressController.updateProgress("row " + i, i / 100000d);
+            }
+        }).get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, pendingDeliveries.size());
+        pendingDeliveries.get(0).run();
+        Assertions.assertEquals(List.of("row 99999"), deliveredMessages);
+    }
+
+    @Test
+    public void progressCoalescedPerJob() throws Exception {
+        List<Runnable> pendingDeliveries = new CopyOnWriteArrayList<>();
+        GuiExecutor executor = new GuiExecutorBuilder().workerCount(2).fxExecutor(pendingDeliveries::add).progressInterval(Duration.ZERO).buildExecutor();
+        List<String> deliveredMessages = new CopyOnWriteArrayList<>();
+        executor.addProgressListener((message, progress) -> deliveredMessages.add(message));
+        CountDownLatch firstLatch = new CountDownLatch(1);
+        Future<Void> firstFuture = executor.execute(progressController -> {
+            progressController.updateProgress("first 1", null);
+            firstLatch.countDown();
+            progressController.updateProgress("first 2", null);
+        });
+        Assertions.assertTrue(firstLatch.await(10, TimeUnit.SECONDS));
+        executor.execute(progressController -> {
+            progressController.updateProgress("second 1", null);
+            progressController.updateProgress("second 2", null);
+        }).get(10, TimeUnit.SECONDS);
+        firstFuture.get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, pendingDeliveries.size());
+        pendingDeliveries.get(0).run();
+        Assertions.assertEquals(List.of("first 2", "second 2"), deliveredMessages);
+    }
+
+    @Test
+    public void progressThrottled() throws Exception {
+        GuiExecutor executor = new GuiExecutorBuilder().fxExecutor(Runnable::run).progressInterval(Duration.ofMillis(50)).buildExecutor();
+        List<String> deliveredMessages = new CopyOnWriteArrayList<>();
+        executor.addProgressListener((message, progress) -> deliveredMessages.add(message));
+        long startNanos = System.nanoTime();
+        executor.execute(progressController -> {
+            for (int i = 0; System.nanoTime() - startNanos < TimeUnit.MILLISECONDS.toNanos(200); i++) {
+                progressController.updateProgress("row " + i, null);
+            }
+            progressController.updateProgress("done", 1d);
+        }).get(10, TimeUnit.SECONDS);
+        for (int i = 0; i < 500 && !deliveredMessages.contains("done"); i++) {
+            Thread.sleep(10);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        Assertions.assertEquals("done", deliveredMessages.get(deliveredMessages.size() - 1));
+        Assertions.assertTrue(deliveredMessages.size() <= elapsedMillis / 50 + 2, "Delivered " + deliveredMessages.size() + " updates in " + elapsedMillis + " ms");
+    }
+
+    @Test
+    public void submitWithResult() throws Exception {
+        GuiExecutor executor = new GuiExecutorBuilder().fxExecutor(Runnable::run).buildExecutor();
+        GuiJobHandle<String> handle = executor.submit(progressController -> "result");
+        Assertions.assertEquals("result", handle.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(GuiJobState.SUCCEEDED, handle.getState());
+        Assertions.assertNull(handle.getException());
+        Assertions.assertNotNull(handle.getWaitDuration());
+        Assertions.assertNotNull(handle.getRunDuration());
+    }
+
+    @Test
+    public void submitWithException() throws Exception {
+        GuiExecutor executor = new GuiExecutorBuilder().fxExecutor(Runnable::run).buildExecutor();
+        IllegalStateException exception = new IllegalStateException("failed");
+        GuiJobHandle<String> handle = executor.submit(progressController -> {
+            throw exception;
+        });
+        ExecutionException executionException = Assertions.assertThrows(ExecutionException.class, () -> handle.get(10, TimeUnit.SECONDS));
+        Assertions.assertSame(exception, executionException.getCause());
+        Assertions.assertEquals(GuiJobState.FAILED, handle.getState());
+        Assertions.assertSame(exception, handle.getException());
+    }
+
+    @Test
+    public void submitCancelledBeforeStart() throws Exception {
+        GuiExecutor executor = new GuiExecutorBuilder().fxExecutor(Runnable::run).buildExecutor();
+        CountDownLatch blockingLatch = new CountDownLatch(1);
+        AtomicInteger executionCount = new AtomicInteger();
+        GuiJobHandle<Void> blockingHandle = executor.execute(progressController -> blockingLatch.await());
+        GuiJobHandle<Integer> handle = executor.submit(progressController -> executionCount.incrementAndGet());
+        Assertions.assertEquals(GuiJobState.WAITING, handle.getState());
+        Assertions.assertTrue(handle.cancel(false));
+        blockingLatch.countDown();
+        blockingHandle.get(10, TimeUnit.SECONDS);
+        executor.execute(progressController -> {}).get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(GuiJobState.CANCELLED, handle.getState());
+        Assertions.assertNull(handle.getWaitDuration());
+        Assertions.assertEquals(0, executionCount.get());
+    }
+
+    @Test
+    public void submitWithError() throws Exception {
+        GuiExecutor executor = new GuiExecutorBuilder().fxExecutor(Runnable::run).buildExecutor();
+        AssertionError error = new AssertionError("failed");
+        GuiJobHandle<String> handle = executor.submit(progressController -> {
+            throw error;
+        });
+        ExecutionException executionException = Assertions.assertThrows(ExecutionException.class, () -> handle.get(10, TimeUnit.SECONDS));
+        Assertions.assertSame(error, executionException.getCause());
+        Assertions.assertEquals(GuiJobState.FAILED, handle.getState());
+        GuiJobHandle<String> stageHandle = executor.submit(progressController -> "result").thenOnFx(value -> {
+            throw error;
+        });
+        ExecutionException stageException = Assertions.assertThrows(ExecutionException.class, () -> stageHandle.get(10, TimeUnit.SECONDS));
+        Assertions.assertSame(error, stageException.getCause());
+        Assertions.assertEquals(GuiJobState.FAILED, stageHandle.getState());
+    }
+
+    @Test
+    public void submitWithStages() throws Exception {
+        List<String> fxThreadNames = new CopyOnWriteArrayList<>();
+        GuiExecutor executor = new GuiExecutorBuilder().fxExecutor(runnable -> {
+            fxThreadNames.add(Thread.currentThread().getName());
+            runnable.run();
+        }).buildExecutor();
+        GuiJobHandle<String> handle = executor.submit(progressController -> 21)
+            .thenInBackground((value, progressController) -> value * 2)
+            .thenOnFx(value -> "value: " + value);
+        Assertions.assertEquals("value: 42", handle.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(GuiJobState.SUCCEEDED, handle.getState());
+        Assertions.assertEquals(1, fxThreadNames.size());
+    }
+
+    @Test
+    public void submitWithStagesAfterException() throws Exception {
+        GuiExecutor executor = new GuiExecutorBuilder().fxExecutor(Runnable::run).buildExecutor();
+        IllegalStateException exception = new IllegalStateException("failed");
+        AtomicInteger stageCount = new AtomicInteger();
+        CompletableFuture<Throwable> completedException = new CompletableFuture<>();
+        GuiJobHandle<Integer> handle = executor.<Integer>submit(progressController -> {
+            throw exception;
+        }).thenInBackground((value, progressController) -> stageCount.incrementAndGet()).thenOnFx(value -> stageCount.incrementAndGet());
+        handle.whenCompleteOnFx((value, throwable) -> completedException.complete(throwable));
+        Assertions.assertSame(exception, completedException.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(GuiJobState.FAILED, handle.getState());
+        Assertions.assertSame(exception, handle.getException());
+        Assertions.assertEquals(0, stageCount.get());
+    }
+
+    @Test
+    public void submitWithStageRejectedByFxExecutor() throws Exception {
+        RejectedExecutionException exception = new RejectedExecutionException("shut down");
+        GuiExecutor executor = new GuiExecutorBuilder().fxExecutor(runnable -> {
+            throw exception;
+        }).buildExecutor();
+        GuiJobHandle<String> handle = executor.submit(progressController -> 21).thenOnFx(value -> "value: " + value);
+        ExecutionException executionException = Assertions.assertThrows(ExecutionException.class, () -> handle.get(10, TimeUnit.SECONDS));
+        Assertions.assertSame(exception, executionException.getCause());
+        Assertions.assertEquals(GuiJobState.FAILED, handle.getState());
+    }
+
+    @Test
+    public void executeWithJobListener() throws Exception {
+        GuiExecutor executor = new GuiExecutorBuilder().fxExecutor(Runnable::run).buildExecutor();
+        List<GuiJobState> completedStates = new CopyOnWriteArrayList<>();
+        CountDownLatch completedLatch = new CountDownLatch(1);
+        executor.addExecutorListener(new GuiExecutorListener() {
+            @Override
+            public void onJobCompleted(GuiJobHandle<?> handle) {
+                completedStates.add(handle.getState());
+                completedLatch.countDown();
+            }
+        });
+        executor.execute(progressController -> {});
+        Assertions.assertTrue(completedLatch.await(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(List.of(GuiJobState.SUCCEEDED), completedStates);
+    }
+
+}
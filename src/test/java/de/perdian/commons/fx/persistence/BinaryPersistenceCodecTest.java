@@ -0,0 +1,106 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.jimfs.Jimfs;
+
+public class BinaryPersistenceCodecTest {
+
+    @Test
+    public void writeAndReadRecords() throws IOException {
+        List<TestRecord> records = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            records.add(new TestRecord("id" + i, i % 2 == 0 ? "äöü € " + i : String.valueOf(i)));
+        }
+        ByteArrayOutputStream binaryStream = new ByteArrayOutputStream();
+        new BinaryPersistenceCodec().writeRecords(records, binaryStream, PersistenceContext.getDefault());
+        List<TestRecord> loadedRecords = new ArrayList<>();
+        new BinaryPersistenceCodec().readRecords(new ByteArrayInputStream(binaryStream.toByteArray()), TestRecord.class, TestRecord::new, loadedRecords::add, PersistenceContext.getDefault());
+        Assertions.assertEquals(records.stream().map(TestRecord::getId).collect(Collectors.toList()), loadedRecords.stream().map(TestRecord::getId).collect(Collectors.toList()));
+        Assertions.assertEquals(records.stream().map(r -> r.getName().getValue()).collect(Collectors.toList()), loadedRecords.stream().map(r -> r.getName().getValue()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void writeAndReadStreamingRecords() throws IOException {
+        List<PersistenceEnabledStreamingTest.StreamingRecord> records = List.of(new PersistenceEnabledStreamingTest.StreamingRecord("a"), new PersistenceEnabledStreamingTest.StreamingRecord("b"));
+        ByteArrayOutputStream binaryStream = new ByteArrayOutputStream();
+        new BinaryPersistenceCodec().writeRecords(records, binaryStream, PersistenceContext.getDefault());
+        List<PersistenceEnabledStreamingTest.StreamingRecord> loadedRecords = new ArrayList<>();
+        new BinaryPersistenceCodec().readRecords(new ByteArrayInputStream(binaryStream.toByteArray()), PersistenceEnabledStreamingTest.StreamingRecord.class, PersistenceEnabledStreamingTest.StreamingRecord::new, loadedRecords::add, PersistenceContext.getDefault());
+        Assertions.assertEquals(List.of("a", "b"), loadedRecords.stream().map(r -> r.getName().getValue()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void readVersionWithCountedChildren() throws IOException {
+        ByteArrayOutputStream binaryStream = new ByteArrayOutputStream();
+        binaryStream.write(BinaryPersistenceCodec.MAGIC);
+        binaryStream.write(new byte[] { BinaryPersistenceCodec.VERSION_COUNTED_CHILDREN, 0, 7 });
+        binaryStream.write("records".getBytes(StandardCharsets.UTF_8));
+        binaryStream.write(new byte[] { BinaryPersistenceCodec.FRAME_RECORD, 0, 10 });
+        binaryStream.write("TestRecord".getBytes(StandardCharsets.UTF_8));
+        binaryStream.write(new byte[] { 1, 0, 4 });
+        binaryStream.write("name".getBytes(StandardCharsets.UTF_8));
+        binaryStream.write(new byte[] { BinaryPersistenceCodec.VALUE_STRING, 0, 1, 'a', 1, BinaryPersistenceCodec.NODE_TEXT, 0, 1, 'x', BinaryPersistenceCodec.FRAME_END });
+        List<TestRecord> loadedRecords = new ArrayList<>();
+        new BinaryPersistenceCodec().readRecords(new ByteArrayInputStream(binaryStream.toByteArray()), TestRecord.class, TestRecord::new, loadedRecords::add, PersistenceContext.getDefault());
+        Assertions.assertEquals(1, loadedRecords.size());
+        Assertions.assertEquals("a", loadedRecords.get(0).getName().getValue());
+    }
+
+    @Test
+    public void convertLossless() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><records>"
+            + "<TestRecord id=\"a\" date=\"2020-02-29\" long=\"-42\" double=\"1.5\" localized=\"1,23\" padded=\"007\" exponent=\"1e3\"><child>text &amp; more</child><![CDATA[raw <data>]]></TestRecord>"
+            + "<OtherRecord id=\"b\" name=\"a\"/>"
+            + "</records>";
+        ByteArrayOutputStream binaryStream = new ByteArrayOutputStream();
+        BinaryPersistenceCodec.convertFromXml(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), binaryStream, PersistenceContext.getDefault());
+        Assertions.assertTrue(binaryStream.size() < xml.length());
+        ByteArrayOutputStream xmlStream = new ByteArrayOutputStream();
+        BinaryPersistenceCodec.convertToXml(new ByteArrayInputStream(binaryStream.toByteArray()), xmlStream, PersistenceContext.getDefault());
+        String convertedXml = new String(xmlStream.toByteArray(), StandardCharsets.UTF_8);
+        Assertions.assertTrue(convertedXml.contains("date=\"2020-02-29\""), convertedXml);
+        Assertions.assertTrue(convertedXml.contains("long=\"-42\""), convertedXml);
+        Assertions.assertTrue(convertedXml.contains("double=\"1.5\""), convertedXml);
+        Assertions.assertTrue(convertedXml.contains("localized=\"1,23\""), convertedXml);
+        Assertions.assertTrue(convertedXml.contains("padded=\"007\""), convertedXml);
+        Assertions.assertTrue(convertedXml.contains("exponent=\"1e3\""), convertedXml);
+        Assertions.assertTrue(convertedXml.contains("<child>text &amp; more</child>"), convertedXml);
+        Assertions.assertTrue(convertedXml.contains("raw &lt;data&gt;") || convertedXml.contains("<![CDATA[raw <data>]]>"), convertedXml);
+        Assertions.assertTrue(convertedXml.contains("<OtherRecord id=\"b\" name=\"a\">"), convertedXml);
+    }
+
+    @Test
+    public void readInvalidStream() {
+        Assertions.assertThrows(IOException.class, () -> {
+            new BinaryPersistenceCodec().readRecords(new ByteArrayInputStream("<records/>".getBytes(StandardCharsets.UTF_8)), TestRecord.class, TestRecord::new, record -> {}, PersistenceContext.getDefault());
+        });
+    }
+
+    @Test
+    public void storeWithBinaryCodec() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageFile = fileSystem.getPath("records.bin");
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).codec(new BinaryPersistenceCodec()).journal(TestRecord::getId).fxExecutor(Runnable::run).buildStore();
+            store.getRecords().add(new TestRecord("a"));
+            store.getRecords().add(new TestRecord("b"));
+            store.getRecords().get(1).getName().setValue("changed");
+            store.close();
+            PersistenceStore<TestRecord> reloadedStore = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).codec(new BinaryPersistenceCodec()).journal(TestRecord::getId).fxExecutor(Runnable::run).buildStore();
+            Assertions.assertEquals(List.of("a", "changed"), reloadedStore.getRecords().stream().map(r -> r.getName().getValue()).collect(Collectors.toList()));
+            reloadedStore.close();
+        }
+    }
+
+}
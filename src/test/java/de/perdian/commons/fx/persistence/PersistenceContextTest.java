@@ -0,0 +1,61 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+public class PersistenceContextTest {
+
+    @Test
+    public void getDocumentBuilderCachedPerThread() throws Exception {
+        PersistenceContext context = new PersistenceContext();
+        DocumentBuilder documentBuilder = context.getDocumentBuilder();
+        Assertions.assertSame(documentBuilder, context.getDocumentBuilder());
+        Assertions.assertNotSame(documentBuilder, CompletableFuture.supplyAsync(() -> {
+            try {
+                return context.getDocumentBuilder();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).get());
+    }
+
+    @Test
+    public void getTransformerCachedPerThread() throws Exception {
+        PersistenceContext context = new PersistenceContext();
+        Assertions.assertSame(context.getTransformer(), context.getTransformer());
+    }
+
+    @Test
+    public void writeAndLoadRecords() throws Exception {
+        PersistenceContext context = new PersistenceContext().secureProcessing(true);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PersistenceEnabled.writeRecords(List.of(new TestRecord("a")), outputStream, context);
+        List<TestRecord> records = PersistenceEnabled.loadRecords(new ByteArrayInputStream(outputStream.toByteArray()), TestRecord.class, TestRecord::new, context);
+        Assertions.assertEquals("a", records.get(0).getName().getValue());
+    }
+
+    @Test
+    public void getDocumentBuilderWithoutExternalEntities() throws Exception {
+        Path secretFile = Files.createTempFile("secret", ".txt");
+        try {
+            Files.writeString(secretFile, "secretContent");
+            String xml = "<!DOCTYPE r [<!ENTITY e SYSTEM \"" + secretFile.toUri() + "\">]><r>&e;</r>";
+            Document document = new PersistenceContext().getDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+            Assertions.assertFalse(document.getDocumentElement().getTextContent().contains("secretContent"));
+        } finally {
+            Files.delete(secretFile);
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package de.perdian.commons.fx.persistence;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PersistenceEnabledDefaultConstructorSupplierTest {
+
+    @Test
+    public void createRecord() {
+        PersistenceEnabledDefaultConstructorSupplier<TestRecord> supplier = new PersistenceEnabledDefaultConstructorSupplier<>(TestRecord.class);
+        TestRecord firstRecord = supplier.get();
+        TestRecord secondRecord = supplier.get();
+        Assertions.assertNotNull(firstRecord);
+        Assertions.assertNotSame(firstRecord, secondRecord);
+    }
+
+    @Test
+    public void createRecordWithPrivateConstructor() {
+        Assertions.assertNotNull(new PersistenceEnabledDefaultConstructorSupplier<>(PrivateConstructorRecord.class).get());
+    }
+
+    @Test
+    public void factoryCachedPerClass() {
+        Assertions.assertSame(PersistenceEnabledDefaultConstructorFactories.getFactory(TestRecord.class), PersistenceEnabledDefaultConstructorFactories.getFactory(TestRecord.class));
+    }
+
+    @Test
+    public void createWithoutDefaultConstructor() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new PersistenceEnabledDefaultConstructorSupplier<>(NoDefaultConstructorRecord.class));
+    }
+
+    @Test
+    public void constructorExceptionPropagated() {
+        Assertions.assertThrows(IllegalStateException.class, () -> new PersistenceEnabledDefaultConstructorSupplier<>(FailingConstructorRecord.class).get());
+    }
+
+    static class PrivateConstructorRecord extends TestRecord {
+
+        private PrivateConstructorRecord() {
+        }
+
+    }
+
+    static class NoDefaultConstructorRecord extends TestRecord {
+
+        NoDefaultConstructorRecord(String name) {
+            super(name);
+        }
+
+    }
+
+    static class FailingConstructorRecord extends TestRecord {
+
+        FailingConstructorRecord() {
+            throw new IllegalStateException("Cannot create record");
+        }
+
+    }
+
+}
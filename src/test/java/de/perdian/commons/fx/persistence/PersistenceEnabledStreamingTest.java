@@ -0,0 +1,118 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class PersistenceEnabledStreamingTest {
+
+    @Test
+    public void readStreamingFromDomOutput() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PersistenceEnabled.writeRecords(List.of(new TestRecord("a"), new TestRecord("b")), outputStream);
+        List<TestRecord> records = PersistenceEnabled.loadRecordsStreaming(new ByteArrayInputStream(outputStream.toByteArray()), TestRecord.class, TestRecord::new);
+        Assertions.assertEquals(2, records.size());
+        Assertions.assertEquals("a", records.get(0).getName().getValue());
+        Assertions.assertEquals("b", records.get(1).getName().getValue());
+    }
+
+    @Test
+    public void readDomFromStreamingOutput() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PersistenceEnabled.writeRecordsStreaming(List.of(new TestRecord("a"), new TestRecord("b & c")), outputStream);
+        List<TestRecord> records = PersistenceEnabled.loadRecords(new ByteArrayInputStream(outputStream.toByteArray()), TestRecord.class);
+        Assertions.assertEquals(2, records.size());
+        Assertions.assertEquals("b & c", records.get(1).getName().getValue());
+    }
+
+    @Test
+    public void streamingRecords() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PersistenceEnabled.writeRecordsStreaming(List.of(new StreamingRecord("a"), new StreamingRecord("b")), outputStream);
+        List<StreamingRecord> records = new ArrayList<>();
+        PersistenceEnabled.readRecordsStreaming(new ByteArrayInputStream(outputStream.toByteArray()), StreamingRecord.class, StreamingRecord::new, records::add);
+        Assertions.assertEquals(2, records.size());
+        Assertions.assertEquals("a", records.get(0).getName().getValue());
+        Assertions.assertEquals("b", records.get(1).getName().getValue());
+    }
+
+    @Test
+    public void readParallel() throws IOException {
+        List<TestRecord> writtenRecords = IntStream.range(0, 2000).mapToObj(i -> new TestRecord("record" + i)).collect(Collectors.toList());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PersistenceEnabled.writeRecordsStreaming(writtenRecords, outputStream);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+        try {
+            List<TestRecord> records = PersistenceEnabled.loadRecordsParallel(new ByteArrayInputStream(outputStream.toByteArray()), TestRecord.class, TestRecord::new, forkJoinPool, PersistenceContext.getDefault());
+            Assertions.assertEquals(writtenRecords.stream().map(TestRecord::getId).collect(Collectors.toList()), records.stream().map(TestRecord::getId).collect(Collectors.toList()));
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    @Test
+    public void readParallelStreamingRecords() throws IOException {
+        List<StreamingRecord> writtenRecords = IntStream.range(0, 600).mapToObj(i -> new StreamingRecord("record" + i)).collect(Collectors.toList());
+        ByteArrayOutputStream xmlStream = new ByteArrayOutputStream();
+        PersistenceEnabled.writeRecordsStreaming(writtenRecords, xmlStream);
+        ByteArrayOutputStream binaryStream = new ByteArrayOutputStream();
+        new BinaryPersistenceCodec().writeRecords(writtenRecords, binaryStream, PersistenceContext.getDefault());
+        List<String> writtenNames = writtenRecords.stream().map(record -> record.getName().getValue()).collect(Collectors.toList());
+        List<StreamingRecord> xmlRecords = new XmlPersistenceCodec().readRecordsParallel(new ByteArrayInputStream(xmlStream.toByteArray()), StreamingRecord.class, StreamingRecord::new, ForkJoinPool.commonPool(), PersistenceContext.getDefault());
+        Assertions.assertEquals(writtenNames, xmlRecords.stream().map(record -> record.getName().getValue()).collect(Collectors.toList()));
+        List<StreamingRecord> binaryRecords = new BinaryPersistenceCodec().readRecordsParallel(new ByteArrayInputStream(binaryStream.toByteArray()), StreamingRecord.class, StreamingRecord::new, ForkJoinPool.commonPool(), PersistenceContext.getDefault());
+        Assertions.assertEquals(writtenNames, binaryRecords.stream().map(record -> record.getName().getValue()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void readParallelWithFailingRecord() {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Assertions.assertThrows(IOException.class, () -> {
+            PersistenceEnabled.writeRecordsStreaming(List.of(new TestRecord("a"), new TestRecord("b")), outputStream);
+            PersistenceEnabled.loadRecordsParallel(new ByteArrayInputStream(outputStream.toByteArray()), TestRecord.class, () -> {
+                throw new IllegalStateException("Cannot create record");
+            }, ForkJoinPool.commonPool(), PersistenceContext.getDefault());
+        });
+    }
+
+    public static class StreamingRecord extends TestRecord implements PersistenceStreamingEnabled {
+
+        public StreamingRecord() {
+        }
+
+        StreamingRecord(String name) {
+            super(name);
+        }
+
+        @Override
+        public void loadFromXML(Element xmlElement, Document owningDocument) {
+            throw new UnsupportedOperationException("Streaming records must be read from a StAX reader");
+        }
+
+        @Override
+        public void loadFromXML(XMLStreamReader xmlReader) throws XMLStreamException {
+            PersistenceHelper.extractAttributeString(xmlReader, "name").ifPresent(this.getName()::setValue);
+        }
+
+        @Override
+        public void appendToXML(XMLStreamWriter xmlWriter) throws XMLStreamException {
+            PersistenceHelper.appendAttribute(xmlWriter, "name", this.getName().getValue());
+        }
+
+    }
+
+}
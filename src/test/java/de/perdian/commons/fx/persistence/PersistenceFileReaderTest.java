@@ -0,0 +1,76 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.jimfs.Jimfs;
+
+public class PersistenceFileReaderTest {
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    public void readMemoryMapped(@TempDir Path temporaryDirectory) throws IOException {
+        byte[] content = new byte[100000];
+        new Random(42).nextBytes(content);
+        Path sourceFile = temporaryDirectory.resolve("source.bin");
+        Files.write(sourceFile, content);
+        try (InputStream sourceStream = new PersistenceFileReader().memoryMapped(true).mappingThreshold(0).open(sourceFile)) {
+            Assertions.assertTrue(sourceStream instanceof PersistenceFileReaderMappedInputStream);
+            Assertions.assertEquals(content[0] & 0xFF, sourceStream.read());
+            Assertions.assertEquals(10, sourceStream.skip(10));
+            byte[] remainingContent = sourceStream.readAllBytes();
+            Assertions.assertEquals(content.length - 11, remainingContent.length);
+            Assertions.assertEquals(content[11], remainingContent[0]);
+            Assertions.assertEquals(content[content.length - 1], remainingContent[remainingContent.length - 1]);
+            Assertions.assertEquals(-1, sourceStream.read());
+        }
+        new PersistenceFileWriter().write(sourceFile, outputStream -> outputStream.write(1));
+        Assertions.assertEquals(1, Files.size(sourceFile));
+    }
+
+    @Test
+    public void readBelowThreshold(@TempDir Path temporaryDirectory) throws IOException {
+        Path sourceFile = temporaryDirectory.resolve("source.bin");
+        Files.write(sourceFile, new byte[] { 1, 2, 3 });
+        try (InputStream sourceStream = new PersistenceFileReader().memoryMapped(true).open(sourceFile)) {
+            Assertions.assertFalse(sourceStream instanceof PersistenceFileReaderMappedInputStream);
+            Assertions.assertEquals(3, sourceStream.readAllBytes().length);
+        }
+    }
+
+    @Test
+    public void readWithoutMemoryMappingByDefault(@TempDir Path temporaryDirectory) throws IOException {
+        Path sourceFile = temporaryDirectory.resolve("source.bin");
+        Files.write(sourceFile, new byte[] { 1, 2, 3 });
+        try (InputStream sourceStream = new PersistenceFileReader().mappingThreshold(0).open(sourceFile)) {
+            Assertions.assertFalse(sourceStream instanceof PersistenceFileReaderMappedInputStream);
+            Assertions.assertEquals(3, sourceStream.readAllBytes().length);
+        }
+    }
+
+    @Test
+    public void readWithoutMappingSupport() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path sourceFile = fileSystem.getPath("source.xml");
+            try (OutputStream sourceStream = Files.newOutputStream(sourceFile)) {
+                PersistenceEnabled.writeRecordsStreaming(List.of(new TestRecord("a")), sourceStream);
+            }
+            try (InputStream sourceStream = new PersistenceFileReader().memoryMapped(true).mappingThreshold(0).open(sourceFile)) {
+                Assertions.assertEquals("a", PersistenceEnabled.loadRecordsStreaming(sourceStream, TestRecord.class, TestRecord::new).get(0).getId());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.jimfs.Jimfs;
+
+public class PersistenceFileWriterTest {
+
+    @Test
+    public void write() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path targetFile = fileSystem.getPath("a/b/target");
+            new PersistenceFileWriter().write(targetFile, outputStream -> outputStream.write("foo".getBytes(StandardCharsets.UTF_8)));
+            Assertions.assertEquals("foo", Files.readString(targetFile));
+            Assertions.assertEquals(1, Files.list(targetFile.getParent()).count());
+        }
+    }
+
+    @Test
+    public void writeWithExceptionKeepsPreviousContent() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path targetFile = fileSystem.getPath("a/b/target");
+            PersistenceFileWriter fileWriter = new PersistenceFileWriter();
+            fileWriter.write(targetFile, outputStream -> outputStream.write("foo".getBytes(StandardCharsets.UTF_8)));
+            Assertions.assertThrows(IOException.class, () -> fileWriter.write(targetFile, outputStream -> {
+                outputStream.write("bar".getBytes(StandardCharsets.UTF_8));
+                throw new IOException("Simulated failure");
+            }));
+            Assertions.assertEquals("foo", Files.readString(targetFile));
+            Assertions.assertEquals(1, Files.list(targetFile.getParent()).count());
+        }
+    }
+
+    @Test
+    public void writeWithBackups() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path targetFile = fileSystem.getPath("a/b/target");
+            PersistenceFileWriter fileWriter = new PersistenceFileWriter().backupGenerations(2);
+            for (String content : new String[] { "1", "2", "3", "4" }) {
+                fileWriter.write(targetFile, outputStream -> outputStream.write(content.getBytes(StandardCharsets.UTF_8)));
+            }
+            Assertions.assertEquals("4", Files.readString(targetFile));
+            Assertions.assertEquals("3", Files.readString(targetFile.resolveSibling("target.1.bak")));
+            Assertions.assertEquals("2", Files.readString(targetFile.resolveSibling("target.2.bak")));
+            Assertions.assertFalse(Files.exists(targetFile.resolveSibling("target.3.bak")));
+        }
+    }
+
+    @Test
+    public void writeNonAtomicWithBackups() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path targetFile = fileSystem.getPath("a/b/target");
+            PersistenceFileWriter fileWriter = new PersistenceFileWriter().atomic(false).backupGenerations(1);
+            fileWriter.write(targetFile, outputStream -> outputStream.write("foo".getBytes(StandardCharsets.UTF_8)));
+            fileWriter.write(targetFile, outputStream -> outputStream.write("ba".getBytes(StandardCharsets.UTF_8)));
+            Assertions.assertEquals("ba", Files.readString(targetFile));
+            Assertions.assertEquals("foo", Files.readString(targetFile.resolveSibling("target.1.bak")));
+        }
+    }
+
+}
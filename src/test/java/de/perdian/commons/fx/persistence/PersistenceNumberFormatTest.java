@@ -0,0 +1,64 @@
+package de.perdian.commons.fx.persistence;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PersistenceNumberFormatTest {
+
+    @Test
+    public void formatAndParse() throws Exception {
+        PersistenceNumberFormat numberFormat = PersistenceNumberFormat.ofPattern("#,##0.00", Locale.GERMANY);
+        Assertions.assertEquals("1.234,50", numberFormat.format(1234.5d));
+        Assertions.assertEquals(1234.5d, numberFormat.parseDouble("1.234,50"));
+        Assertions.assertEquals(12.34d, numberFormat.parseDouble("12,34"));
+        Assertions.assertEquals(1234.5d, numberFormat.parse("1.234,5").doubleValue());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> numberFormat.parseDouble("INVALID"));
+    }
+
+    @Test
+    public void changesToOriginalFormatNotReflected() {
+        DecimalFormat originalFormat = new DecimalFormat("0.00", DecimalFormatSymbols.getInstance(Locale.GERMANY));
+        PersistenceNumberFormat numberFormat = new PersistenceNumberFormat(originalFormat);
+        originalFormat.applyPattern("0.0000");
+        Assertions.assertEquals("1,50", numberFormat.format(1.5d));
+    }
+
+    @Test
+    public void getNumberFormatCopiedPerThread() throws Exception {
+        PersistenceNumberFormat numberFormat = PersistenceNumberFormat.ofPattern("0.00", Locale.GERMANY);
+        Assertions.assertSame(numberFormat.getNumberFormat(), numberFormat.getNumberFormat());
+        Assertions.assertNotSame(numberFormat.getNumberFormat(), CompletableFuture.supplyAsync(numberFormat::getNumberFormat).get());
+    }
+
+    @Test
+    public void formatAndParseConcurrently() throws Exception {
+        PersistenceNumberFormat numberFormat = PersistenceNumberFormat.ofPattern("#,##0.00", Locale.GERMANY);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int threadIndex = 0; threadIndex < 8; threadIndex++) {
+                int offset = threadIndex * 10000;
+                futures.add(CompletableFuture.runAsync(() -> {
+                    for (int valueIndex = 0; valueIndex < 10000; valueIndex++) {
+                        double value = (offset + valueIndex) / 100d + 1000d;
+                        String formattedValue = numberFormat.format(value);
+                        Assertions.assertEquals(value, numberFormat.parseDouble(formattedValue), 0.001d, formattedValue);
+                    }
+                }, executorService));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,392 @@
+package de.perdian.commons.fx.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.jimfs.Jimfs;
+
+public class PersistenceStoreTest {
+
+    @Test
+    public void buildWithoutStorageFile() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            new PersistenceStoreBuilder<>(TestRecord.class).buildStore();
+        });
+    }
+
+    @Test
+    public void writeSynchronously() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageFile = fileSystem.getPath("a/b/records.xml");
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).buildStore();
+            store.getRecords().add(new TestRecord("a"));
+            Assertions.assertEquals(List.of("a"), this.readNames(storageFile));
+            store.getRecords().get(0).getName().setValue("b");
+            Assertions.assertEquals(List.of("b"), this.readNames(storageFile));
+        }
+    }
+
+    @Test
+    public void writeDeferred() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageFile = fileSystem.getPath("a/b/records.xml");
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).writeDelay(Duration.ofHours(1)).fxExecutor(Runnable::run).buildStore();
+            for (int i = 0; i < 100; i++) {
+                store.getRecords().add(new TestRecord("record" + i));
+            }
+            store.getRecords().get(0).getName().setValue("changed");
+            Assertions.assertFalse(Files.exists(storageFile));
+            store.flush();
+            List<String> names = this.readNames(storageFile);
+            Assertions.assertEquals(100, names.size());
+            Assertions.assertEquals("changed", names.get(0));
+            store.getRecords().remove(0);
+            store.close();
+            Assertions.assertEquals(99, this.readNames(storageFile).size());
+        }
+    }
+
+    @Test
+    public void writeDeferredWithMaxWriteDelay() throws Exception {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageFile = fileSystem.getPath("a/b/records.xml");
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).writeDelay(Duration.ofHours(1)).maxWriteDelay(Duration.ofMillis(10)).fxExecutor(Runnable::run).buildStore();
+            store.getRecords().add(new TestRecord("a"));
+            for (int i = 0; i < 500 && !Files.exists(storageFile); i++) {
+                Thread.sleep(10);
+            }
+            Assertions.assertTrue(Files.exists(storageFile));
+            store.close();
+            Assertions.assertEquals(List.of("a"), this.readNames(storageFile));
+        }
+    }
+
+    @Test
+    public void writeDeferredWithoutFxExecutor() throws Exception {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageFile = fileSystem.getPath("a/b/records.xml");
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).writeDelay(Duration.ofMillis(10)).buildStore();
+            store.getRecords().add(new TestRecord("a"));
+            for (int i = 0; i < 500 && !Files.exists(storageFile); i++) {
+                Thread.sleep(10);
+            }
+            Assertions.assertTrue(Files.exists(storageFile));
+            store.close();
+            Assertions.assertEquals(List.of("a"), this.readNames(storageFile));
+        }
+    }
+
+    @Test
+    public void writeDeferredOnFxExecutor() throws Exception {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageFile = fileSystem.getPath("a/b/records.xml");
+            BlockingQueue<Runnable> fxTasks = new LinkedBlockingQueue<>();
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).writeDelay(Duration.ofMillis(10)).fxExecutor(fxTasks::add).buildStore();
+            store.getRecords().add(new TestRecord("a"));
+            Runnable fxTask = fxTasks.poll(5, TimeUnit.SECONDS);
+            Assertions.assertNotNull(fxTask);
+            Assertions.assertFalse(Files.exists(storageFile));
+            fxTask.run();
+            store.flush();
+            Assertions.assertEquals(List.of("a"), this.readNames(storageFile));
+            store.close();
+        }
+    }
+
+    @Test
+    public void reload() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageFile = fileSystem.getPath("a/b/records.xml");
+            try (PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).writeDelay(Duration.ofSeconds(1)).fxExecutor(Runnable::run).buildStore()) {
+                store.getRecords().addAll(List.of(new TestRecord("a"), new TestRecord("b")));
+            }
+            try (PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).buildStore()) {
+                Assertions.assertEquals(2, store.getRecords().size());
+                Assertions.assertEquals("b", store.getRecords().get(1).getName().getValue());
+            }
+        }
+    }
+
+    @Test
+    public void journal() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageFile = fileSystem.getPath("a/b/records.xml");
+            Path journalFile = fileSystem.getPath("a/b/records.xml.journal");
+            try (PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).journal(TestRecord::getId).journalCompactionRatio(100).fxExecutor(Runnable::run).buildStore()) {
+                store.getRecords().addAll(List.of(new TestRecord("1", "a"), new TestRecord("2", "b"), new TestRecord("3", "c")));
+                store.getRecords().get(0).getName().setValue("changed");
+                store.getRecords().remove(1);
+                store.flush();
+                Assertions.assertFalse(Files.exists(storageFile));
+                Assertions.assertTrue(Files.exists(journalFile));
+            }
+            try (PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).journal(TestRecord::getId).fxExecutor(Runnable::run).buildStore()) {
+                Assertions.assertEquals(2, store.getRecords().size());
+                Assertions.assertEquals("changed", store.getRecords().get(0).getName().getValue());
+                Assertions.assertEquals("c", store.getRecords().get(1).getName().getValue());
+            }
+            Assertions.assertEquals(List.of("changed", "c"), this.readNames(storageFile));
+            Assertions.assertFalse(Files.exists(journalFile));
+        }
+    }
+
+    @Test
+    public void journalCompaction() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageFile = fileSystem.getPath("a/b/records.xml");
+            try (PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).journal(TestRecord::getId).journalCompactionSize(1).fxExecutor(Runnable::run).buildStore()) {
+                store.getRecords().add(new TestRecord("1", "a"));
+                store.getRecords().add(new TestRecord("2", "b"));
+            }
+            Assertions.assertEquals(List.of("a", "b"), this.readNames(storageFile));
+            Assertions.assertFalse(Files.exists(fileSystem.getPath("a/b/records.xml.journal")));
+            Assertions.assertFalse(Files.exists(fileSystem.getPath("a/b/records.xml.journal.compacting")));
+        }
+    }
+
+    @Test
+    public void loadParallel() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageFile = fileSystem.getPath("records.xml");
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).buildStore();
+            for (int i = 0; i < 1000; i++) {
+                store.getRecords().add(new TestRecord("record" + i));
+            }
+            store.close();
+            PersistenceStore<TestRecord> reloadedStore = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).parallelLoad(ForkJoinPool.commonPool()).buildStore();
+            Assertions.assertEquals(this.readNames(storageFile), reloadedStore.getRecords().stream().map(record -> record.getName().getValue()).collect(Collectors.toList()));
+            reloadedStore.getRecords().get(999).getName().setValue("changed");
+            Assertions.assertEquals("changed", this.readNames(storageFile).get(999));
+            reloadedStore.close();
+        }
+    }
+
+    @Test
+    public void loadLazy() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageFile = fileSystem.getPath("records.xml");
+            List<TestRecord> writtenRecords = IntStream.range(0, 1000).mapToObj(i -> new TestRecord("record" + i, i % 10 == 0 ? "<äöü> & \"" + i + "\"" : "name" + i)).collect(Collectors.toList());
+            try (OutputStream storageStream = Files.newOutputStream(storageFile)) {
+                PersistenceEnabled.writeRecords(writtenRecords, storageStream);
+            }
+            AtomicInteger createdRecords = new AtomicInteger();
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).recordFactory(() -> {
+                createdRecords.incrementAndGet();
+                return new TestRecord();
+            }).lazyLoad(10, 2).buildStore();
+            Assertions.assertEquals(1000, store.getRecords().size());
+            Assertions.assertEquals(0, createdRecords.get());
+            Assertions.assertEquals("record505", store.getRecords().get(505).getId());
+            Assertions.assertEquals(10, createdRecords.get());
+            Assertions.assertEquals(writtenRecords.get(990).getName().getValue(), store.getRecords().get(990).getName().getValue());
+
+            store.getRecords().get(505).getName().setValue("changed");
+            store.getRecords().remove(0);
+            store.getRecords().add(new TestRecord("added"));
+            Assertions.assertTrue(createdRecords.get() < 100);
+            List<String> names = this.readNames(storageFile);
+            Assertions.assertEquals(1000, names.size());
+            Assertions.assertEquals("name1", names.get(0));
+            Assertions.assertEquals("changed", names.get(504));
+            Assertions.assertEquals("<äöü> & \"990\"", names.get(989));
+            Assertions.assertEquals("added", names.get(999));
+
+            for (int i = 0; i < 1000; i++) {
+                store.getRecords().get(i);
+            }
+            Assertions.assertEquals(names, store.getRecords().stream().map(record -> record.getName().getValue()).collect(Collectors.toList()));
+            store.getRecords().get(998).getName().setValue("changedAgain");
+            store.close();
+            Assertions.assertEquals("changedAgain", this.readNames(storageFile).get(998));
+        }
+    }
+
+    @Test
+    public void loadLazyRemoveAndSet() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageFile = fileSystem.getPath("records.xml");
+            try (OutputStream storageStream = Files.newOutputStream(storageFile)) {
+                PersistenceEnabled.writeRecords(IntStream.range(0, 20).mapToObj(i -> new TestRecord("record" + i)).collect(Collectors.toList()), storageStream);
+            }
+            AtomicInteger createdRecords = new AtomicInteger();
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).recordFactory(() -> {
+                createdRecords.incrementAndGet();
+                return new TestRecord();
+            }).lazyLoad(10, 1).buildStore();
+            Assertions.assertEquals("record0", store.getRecords().remove(0).getId());
+            Assertions.assertEquals("record1", store.getRecords().set(0, new TestRecord("replaced")).getId());
+            Assertions.assertEquals(10, createdRecords.get());
+            Assertions.assertEquals(List.of("replaced", "record2"), this.readNames(storageFile).subList(0, 2));
+            store.close();
+        }
+    }
+
+    @Test
+    public void loadLazyWithUnreadablePage() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageFile = fileSystem.getPath("records.xml");
+            try (OutputStream storageStream = Files.newOutputStream(storageFile)) {
+                PersistenceEnabled.writeRecords(IntStream.range(0, 20).mapToObj(i -> new TestRecord("record" + i)).collect(Collectors.toList()), storageStream);
+            }
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).lazyLoad(10, 1).buildStore();
+            byte[] storageContent = Files.readAllBytes(storageFile);
+            Files.write(storageFile, Arrays.copyOf(storageContent, storageContent.length * 3 / 4));
+            Assertions.assertThrows(UncheckedIOException.class, () -> store.getRecords().get(15));
+            Assertions.assertEquals("record1", store.getRecords().get(1).getId());
+            store.close();
+        }
+    }
+
+    @Test
+    public void loadLazyWithJournal() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            new PersistenceStoreBuilder<>(TestRecord.class).storageFile(Jimfs.newFileSystem().getPath("records.xml")).lazyLoad(10, 1).journal(TestRecord::getId).buildStore();
+        });
+    }
+
+    @Test
+    public void writeWithFragmentCache() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageFile = fileSystem.getPath("records.xml");
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageFile).fragmentCache(true).buildStore();
+            store.getRecords().addAll(IntStream.range(0, 100).mapToObj(i -> new TestRecord("record" + i)).collect(Collectors.toList()));
+            Assertions.assertEquals(0, store.getFragmentCacheHits());
+            Assertions.assertEquals(100, store.getFragmentCacheMisses());
+            store.getRecords().get(50).getName().setValue("changed & <escaped>");
+            Assertions.assertEquals(99, store.getFragmentCacheHits());
+            Assertions.assertEquals(101, store.getFragmentCacheMisses());
+            store.getRecords().remove(0);
+            Assertions.assertEquals(198, store.getFragmentCacheHits());
+            Assertions.assertEquals(0.66d, store.getFragmentCacheHitRatio(), 0.01d);
+            List<String> names = this.readNames(storageFile);
+            Assertions.assertEquals(99, names.size());
+            Assertions.assertEquals("record1", names.get(0));
+            Assertions.assertEquals("changed & <escaped>", names.get(49));
+            store.close();
+        }
+    }
+
+    @Test
+    public void writeSharded() throws Exception {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageDirectory = fileSystem.getPath("a/records");
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageDirectory).shardedStorage(4).buildStore();
+            for (int i = 0; i < 8; i++) {
+                store.getRecords().add(new TestRecord("record" + i));
+            }
+            for (int i = 0; i < 4; i++) {
+                Assertions.assertEquals(2, this.readNames(storageDirectory.resolve("shard-" + i)).size());
+            }
+            FileTime unchangedModificationTime = FileTime.fromMillis(0);
+            for (int i = 0; i < 4; i++) {
+                Files.setLastModifiedTime(storageDirectory.resolve("shard-" + i), unchangedModificationTime);
+            }
+            store.getRecords().get(5).getName().setValue("changed");
+            long unchangedShards = IntStream.range(0, 4).mapToObj(i -> storageDirectory.resolve("shard-" + i)).filter(shardFile -> {
+                try {
+                    return unchangedModificationTime.equals(Files.getLastModifiedTime(shardFile));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }).count();
+            Assertions.assertEquals(3, unchangedShards);
+            store.close();
+            PersistenceStore<TestRecord> reloadedStore = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageDirectory).shardedStorage(4).buildStore();
+            List<String> names = reloadedStore.getRecords().stream().map(record -> record.getName().getValue()).sorted().collect(Collectors.toList());
+            Assertions.assertEquals(List.of("changed", "record0", "record1", "record2", "record3", "record4", "record6", "record7"), names);
+            reloadedStore.close();
+        }
+    }
+
+    @Test
+    public void writeShardedWithShardKey() throws Exception {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageDirectory = fileSystem.getPath("records");
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageDirectory).shardedStorage(2, record -> record.getName().getValue().length()).buildStore();
+            store.getRecords().addAll(new TestRecord("a"), new TestRecord("bb"), new TestRecord("c"));
+            Assertions.assertEquals(List.of("bb"), this.readNames(storageDirectory.resolve("shard-0")));
+            Assertions.assertEquals(List.of("a", "c"), this.readNames(storageDirectory.resolve("shard-1")));
+            store.getRecords().get(0).getName().setValue("aa");
+            Assertions.assertEquals(List.of("aa", "bb"), this.readNames(storageDirectory.resolve("shard-0")));
+            Assertions.assertEquals(List.of("c"), this.readNames(storageDirectory.resolve("shard-1")));
+            store.getRecords().remove(2);
+            Assertions.assertEquals(List.of(), this.readNames(storageDirectory.resolve("shard-1")));
+            store.close();
+        }
+    }
+
+    @Test
+    public void loadShardedWithChangedShardCount() throws Exception {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageDirectory = fileSystem.getPath("records");
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageDirectory).shardedStorage(4).buildStore();
+            store.getRecords().addAll(IntStream.range(0, 8).mapToObj(i -> new TestRecord("record" + i)).collect(Collectors.toList()));
+            store.close();
+            Files.write(storageDirectory.resolve("shard-2"), "invalid".getBytes());
+            PersistenceStore<TestRecord> reloadedStore = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageDirectory).shardedStorage(2).parallelLoad(ForkJoinPool.commonPool()).buildStore();
+            Assertions.assertEquals(6, reloadedStore.getRecords().size());
+            reloadedStore.getRecords().add(new TestRecord("new"));
+            reloadedStore.close();
+            Assertions.assertTrue(Files.exists(storageDirectory.resolve("shard-2")));
+            Assertions.assertFalse(Files.exists(storageDirectory.resolve("shard-3")));
+            Assertions.assertEquals(7, this.readNames(storageDirectory.resolve("shard-0")).size() + this.readNames(storageDirectory.resolve("shard-1")).size());
+        }
+    }
+
+    @Test
+    public void loadShardedWithTruncatedShard() throws Exception {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path storageDirectory = fileSystem.getPath("records");
+            PersistenceStore<TestRecord> store = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageDirectory).shardedStorage(4).buildStore();
+            store.getRecords().addAll(IntStream.range(0, 8).mapToObj(i -> new TestRecord("record" + i)).collect(Collectors.toList()));
+            store.close();
+            byte[] shardContent = Files.readAllBytes(storageDirectory.resolve("shard-1"));
+            byte[] truncatedShardContent = Arrays.copyOf(shardContent, shardContent.length * 3 / 4);
+            Files.write(storageDirectory.resolve("shard-1"), truncatedShardContent);
+            PersistenceStore<TestRecord> reloadedStore = new PersistenceStoreBuilder<>(TestRecord.class).storageFile(storageDirectory).shardedStorage(4).buildStore();
+            Assertions.assertEquals(6, reloadedStore.getRecords().size());
+            reloadedStore.getRecords().add(new TestRecord("new"));
+            reloadedStore.close();
+            Assertions.assertEquals(List.of("new"), this.readNames(storageDirectory.resolve("shard-1")));
+            try (Stream<Path> directoryFiles = Files.list(storageDirectory)) {
+                List<Path> backupFiles = directoryFiles.filter(file -> file.getFileName().toString().startsWith("shard-1.failed-")).collect(Collectors.toList());
+                Assertions.assertEquals(1, backupFiles.size());
+                Assertions.assertArrayEquals(truncatedShardContent, Files.readAllBytes(backupFiles.get(0)));
+            }
+        }
+    }
+
+    @Test
+    public void shardedWithJournal() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            new PersistenceStoreBuilder<>(TestRecord.class).storageFile(Jimfs.newFileSystem().getPath("records")).shardedStorage(2).journal(TestRecord::getId).buildStore();
+        });
+    }
+
+    private List<String> readNames(Path storageFile) throws IOException {
+        try (InputStream storageStream = Files.newInputStream(storageFile)) {
+            return PersistenceEnabled.loadRecords(storageStream, TestRecord.class).stream().map(record -> record.getName().getValue()).collect(Collectors.toList());
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package de.perdian.commons.fx.persistence;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class PersistenceWriteSchedulerTest {
+
+    @Test
+    public void scheduleWithoutWriteDelay() {
+        PersistenceWriteScheduler writeScheduler = new PersistenceWriteScheduler(null, Duration.ZERO, Duration.ZERO);
+        Assertions.assertFalse(writeScheduler.schedule(() -> {}));
+        Assertions.assertTrue(writeScheduler.isPending());
+        Assertions.assertTrue(writeScheduler.takePending());
+        Assertions.assertFalse(writeScheduler.takePending());
+    }
+
+    @Test
+    public void scheduleWithinMaxWriteDelay() throws InterruptedException {
+        ScheduledExecutorService executor = Mockito.mock(ScheduledExecutorService.class);
+        ScheduledFuture<?> pendingWrite = Mockito.mock(ScheduledFuture.class);
+        Mockito.doReturn(pendingWrite).when(executor).schedule(Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.any());
+        PersistenceWriteScheduler writeScheduler = new PersistenceWriteScheduler(executor, Duration.ofSeconds(10), Duration.ofMillis(50));
+        Assertions.assertTrue(writeScheduler.schedule(() -> {}));
+        Thread.sleep(100);
+        Assertions.assertTrue(writeScheduler.schedule(() -> {}));
+        ArgumentCaptor<Long> delayCaptor = ArgumentCaptor.forClass(Long.class);
+        Mockito.verify(executor, Mockito.times(2)).schedule(Mockito.any(Runnable.class), delayCaptor.capture(), Mockito.eq(TimeUnit.NANOSECONDS));
+        Assertions.assertEquals(Duration.ofMillis(50).toNanos(), delayCaptor.getAllValues().get(0), Duration.ofMillis(10).toNanos());
+        Assertions.assertEquals(0L, delayCaptor.getAllValues().get(1));
+        Mockito.verify(pendingWrite).cancel(false);
+        Assertions.assertTrue(writeScheduler.takePending());
+        Mockito.verify(pendingWrite, Mockito.times(2)).cancel(false);
+    }
+
+}
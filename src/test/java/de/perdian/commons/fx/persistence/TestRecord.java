@@ -0,0 +1,67 @@
+package de.perdian.commons.fx.persistence;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.beans.value.ChangeListener;
+
+public class TestRecord implements PersistenceEnabled {
+
+    private String id = null;
+    private final StringProperty name = new SimpleStringProperty();
+
+    public TestRecord() {
+    }
+
+    public TestRecord(String name) {
+        this(name, name);
+    }
+
+    public TestRecord(String id, String name) {
+        this.setId(id);
+        this.getName().setValue(name);
+    }
+
+    @Override
+    public boolean isPersistable() {
+        return true;
+    }
+
+    @Override
+    public void loadFromXML(Element xmlElement, Document owningDocument) {
+        PersistenceHelper.extractAttributeString(xmlElement, "id").ifPresent(this::setId);
+        PersistenceHelper.extractAttributeString(xmlElement, "name").ifPresent(this.getName()::setValue);
+    }
+
+    @Override
+    public void appendToXML(Element xmlElement, Document owningDocument) {
+        PersistenceHelper.appendAttribute(xmlElement, "id", this.getId());
+        PersistenceHelper.appendAttribute(xmlElement, "name", this.getName().getValue());
+    }
+
+    @Override
+    public boolean addChangeListener(ChangeListener<Object> changeListener) {
+        this.getName().addListener(changeListener);
+        return true;
+    }
+
+    @Override
+    public boolean removeChangeListener(ChangeListener<Object> changeListener) {
+        this.getName().removeListener(changeListener);
+        return true;
+    }
+
+    public String getId() {
+        return this.id;
+    }
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public StringProperty getName() {
+        return this.name;
+    }
+
+}
@@ -0,0 +1,83 @@
+package de.perdian.commons.fx.preferences;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.jimfs.Jimfs;
+
+import de.perdian.commons.fx.persistence.PersistenceFileReader;
+import de.perdian.commons.fx.persistence.PersistenceFileWriter;
+
+public class AppendLogPreferencesStoreTest {
+
+    @Test
+    public void writeValuesAppending() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path path = fileSystem.getPath("test");
+            AppendLogPreferencesStore store = new AppendLogPreferencesStore();
+            Map<String, String> values = new HashMap<>(Map.of("a", "aValue", "b", "bValue"));
+            store.writeValues(path, new PersistenceFileWriter(), values, Set.of());
+            long compactedSize = Files.size(path);
+            values.put("a", "aValueNew");
+            values.remove("b");
+            store.writeValues(path, new PersistenceFileWriter(), values, Set.of("a", "b"));
+            Assertions.assertTrue(Files.size(path) > compactedSize);
+            Assertions.assertEquals(Map.of("a", "aValueNew"), new AppendLogPreferencesStore().readValues(path, new PersistenceFileReader()));
+        }
+    }
+
+    @Test
+    public void writeValuesCompacting() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path path = fileSystem.getPath("test");
+            AppendLogPreferencesStore store = new AppendLogPreferencesStore();
+            Map<String, String> values = new HashMap<>(Map.of("a", "aValue"));
+            store.writeValues(path, new PersistenceFileWriter(), values, Set.of());
+            long compactedSize = Files.size(path);
+            for (int i = 0; i < 1000; i++) {
+                values.put("a", "aValue" + (i % 10));
+                store.writeValues(path, new PersistenceFileWriter(), values, Set.of("a"));
+            }
+            Assertions.assertTrue(Files.size(path) < compactedSize + (AppendLogPreferencesStore.COMPACTION_SLACK + 2) * 20);
+            Assertions.assertEquals(Map.of("a", "aValue9"), store.readValues(path, new PersistenceFileReader()));
+        }
+    }
+
+    @Test
+    public void readValuesWithIncompleteEntry() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path path = fileSystem.getPath("test");
+            AppendLogPreferencesStore store = new AppendLogPreferencesStore();
+            store.writeValues(path, new PersistenceFileWriter(), Map.of("a", "aValue"), Set.of());
+            Files.write(path, new byte[] { AppendLogPreferencesStore.OPERATION_PUT, 0, 0 }, StandardOpenOption.APPEND);
+            Assertions.assertEquals(Map.of("a", "aValue"), store.readValues(path, new PersistenceFileReader()));
+            store.writeValues(path, new PersistenceFileWriter(), Map.of("a", "aValue", "b", "bValue"), Set.of("b"));
+            Assertions.assertEquals(Map.of("a", "aValue", "b", "bValue"), new AppendLogPreferencesStore().readValues(path, new PersistenceFileReader()));
+        }
+    }
+
+    @Test
+    public void readValuesWithInvalidOperation() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path path = fileSystem.getPath("test");
+            AppendLogPreferencesStore store = new AppendLogPreferencesStore();
+            store.writeValues(path, new PersistenceFileWriter(), Map.of("a", "aValue"), Set.of());
+            long validSize = Files.size(path);
+            Files.write(path, new byte[] { 42, 0, 0, 0, 1, 'x' }, StandardOpenOption.APPEND);
+            Assertions.assertEquals(Map.of("a", "aValue"), store.readValues(path, new PersistenceFileReader()));
+            store.writeValues(path, new PersistenceFileWriter(), Map.of("a", "aValue", "b", "bValue"), Set.of("b"));
+            Assertions.assertTrue(Files.size(path) > validSize);
+            Assertions.assertEquals(Map.of("a", "aValue", "b", "bValue"), new AppendLogPreferencesStore().readValues(path, new PersistenceFileReader()));
+        }
+    }
+
+}
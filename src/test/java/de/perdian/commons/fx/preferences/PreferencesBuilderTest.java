@@ -2,12 +2,30 @@ package de.perdian.commons.fx.preferences;
 
 import java.io.IOException;
 import java.nio.file.FileSystem;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 
+import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
+import com.google.common.jimfs.WatchServiceConfiguration;
+
+import de.perdian.commons.fx.persistence.PersistenceFileReader;
+
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.StringProperty;
 
 public class PreferencesBuilderTest {
 
@@ -29,4 +47,214 @@ public class PreferencesBuilderTest {
         }
     }
 
+    @Test
+    public void buildWithWriteDelay() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path fileSystemPath = fileSystem.getPath("a/b/test");
+            Preferences originalPreferences = new PreferencesBuilder().path(fileSystemPath).writeDelay(Duration.ofHours(1)).buildPreferences();
+            for (int i = 0; i < 100; i++) {
+                originalPreferences.setStringValue("a", "aValue" + i);
+            }
+            Assertions.assertFalse(Files.exists(fileSystemPath));
+            originalPreferences.flush();
+            Assertions.assertEquals("aValue99", new PreferencesBuilder().path(fileSystemPath).buildPreferences().getStringValue("a").get());
+            originalPreferences.setStringValue("b", "bValue");
+            originalPreferences.close();
+            Assertions.assertEquals("bValue", new PreferencesBuilder().path(fileSystemPath).buildPreferences().getStringValue("b").get());
+        }
+    }
+
+    @Test
+    public void buildWithMaxWriteDelay() throws Exception {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path fileSystemPath = fileSystem.getPath("a/b/test");
+            Preferences originalPreferences = new PreferencesBuilder().path(fileSystemPath).writeDelay(Duration.ofHours(1)).maxWriteDelay(Duration.ofMillis(10)).buildPreferences();
+            originalPreferences.setStringValue("a", "aValue");
+            for (int i = 0; i < 500 && !Files.exists(fileSystemPath); i++) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals("aValue", new PreferencesBuilder().path(fileSystemPath).buildPreferences().getStringValue("a").get());
+            originalPreferences.close();
+        }
+    }
+
+    @Test
+    public void buildWithConcurrentChanges() throws Exception {
+        for (PreferencesStore store : List.of(new XmlPreferencesStore(), new AppendLogPreferencesStore())) {
+            try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+                Path fileSystemPath = fileSystem.getPath("a/b/test");
+                Preferences originalPreferences = new PreferencesBuilder().path(fileSystemPath).store(store).buildPreferences();
+                ExecutorService executorService = Executors.newFixedThreadPool(4);
+                try {
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (int thread = 0; thread < 4; thread++) {
+                        String keyPrefix = "thread" + thread + ".";
+                        futures.add(executorService.submit(() -> {
+                            for (int i = 0; i < 50; i++) {
+                                originalPreferences.setStringValue(keyPrefix + i, "value" + i);
+                            }
+                        }));
+                    }
+                    for (Future<?> future : futures) {
+                        future.get(30, TimeUnit.SECONDS);
+                    }
+                } finally {
+                    executorService.shutdown();
+                }
+                Map<String, String> reloadedValues = new PreferencesBuilder().path(fileSystemPath).store(store).buildPreferences().toMap();
+                Assertions.assertEquals(originalPreferences.toMap(), reloadedValues, store.getClass().getSimpleName());
+                Assertions.assertEquals(200, reloadedValues.size(), store.getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Test
+    public void buildWithNodes() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path fileSystemPath = fileSystem.getPath("a/b/test");
+            Preferences originalPreferences = new PreferencesBuilder().path(fileSystemPath).buildPreferences();
+            originalPreferences.node("window").node("layout").setStringValue("a", "layoutValue");
+            Assertions.assertFalse(Files.exists(fileSystemPath));
+            Assertions.assertTrue(Files.exists(fileSystem.getPath("a/b/test.nodes/window.nodes/layout")));
+            Assertions.assertFalse(Files.exists(fileSystem.getPath("a/b/test.nodes/window")));
+            originalPreferences.setStringValue("a", "rootValue");
+            Preferences reloadedPreferences = new PreferencesBuilder().path(fileSystemPath).buildPreferences();
+            Assertions.assertEquals("rootValue", reloadedPreferences.getStringValue("a").get());
+            Assertions.assertEquals("layoutValue", reloadedPreferences.node("window").node("layout").getStringValue("a").get());
+            Assertions.assertTrue(reloadedPreferences.node("window").getStringValue("a").isEmpty());
+        }
+    }
+
+    @Test
+    public void buildAsync() throws Exception {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path fileSystemPath = fileSystem.getPath("a/b/test");
+            Preferences originalPreferences = new PreferencesBuilder().path(fileSystemPath).buildPreferences();
+            originalPreferences.setStringValue("a", "aValue");
+            originalPreferences.setStringValue("b", "bValue");
+            Preferences asyncPreferences = new PreferencesBuilder().path(fileSystemPath).buildPreferencesAsync(Runnable::run);
+            StringProperty aProperty = asyncPreferences.getStringProperty("a", "default");
+            asyncPreferences.setStringValue("b", "changedValue");
+            asyncPreferences.whenLoaded().toCompletableFuture().get(10, TimeUnit.SECONDS);
+            Assertions.assertEquals("aValue", aProperty.getValue());
+            Assertions.assertEquals("changedValue", asyncPreferences.getStringValue("b").get());
+            asyncPreferences.close();
+            Preferences reloadedPreferences = new PreferencesBuilder().path(fileSystemPath).buildPreferences();
+            Assertions.assertEquals("aValue", reloadedPreferences.getStringValue("a").get());
+            Assertions.assertEquals("changedValue", reloadedPreferences.getStringValue("b").get());
+        }
+    }
+
+    @Test
+    public void buildSharedWithoutPropertiesExecutor() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            new PreferencesBuilder().path(Jimfs.newFileSystem().getPath("a/b/test")).shared(true).buildPreferences();
+        });
+    }
+
+    @Test
+    public void buildShared() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path fileSystemPath = fileSystem.getPath("a/b/test");
+            Preferences firstPreferences = new PreferencesBuilder().path(fileSystemPath).shared(true).propertiesExecutor(Runnable::run).buildPreferences();
+            Preferences secondPreferences = new PreferencesBuilder().path(fileSystemPath).shared(true).propertiesExecutor(Runnable::run).buildPreferences();
+            firstPreferences.setStringValue("a", "aValue");
+            firstPreferences.setStringValue("c", "cValue");
+            secondPreferences.setStringValue("b", "bValue");
+            Assertions.assertEquals("aValue", secondPreferences.getStringValue("a").get());
+            secondPreferences.setStringValue("c", null);
+            firstPreferences.close();
+            secondPreferences.close();
+            Preferences reloadedPreferences = new PreferencesBuilder().path(fileSystemPath).buildPreferences();
+            Assertions.assertEquals("aValue", reloadedPreferences.getStringValue("a").get());
+            Assertions.assertEquals("bValue", reloadedPreferences.getStringValue("b").get());
+            Assertions.assertFalse(reloadedPreferences.getStringValue("c").isPresent());
+        }
+    }
+
+    @Test
+    public void buildWithWriteDelayRetryingFailedWrite() throws Exception {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path fileSystemPath = fileSystem.getPath("a/b/test");
+            PreferencesStore store = Mockito.mock(PreferencesStore.class);
+            Mockito.doThrow(new IOException("Disk full")).doNothing().when(store).writeValues(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+            Preferences preferences = new PreferencesBuilder().path(fileSystemPath).store(store).writeDelay(Duration.ofMillis(20)).buildPreferences();
+            preferences.setStringValue("a", "aValue");
+            Mockito.verify(store, Mockito.timeout(5000).times(2)).writeValues(Mockito.any(), Mockito.any(), Mockito.eq(Map.of("a", "aValue")), Mockito.eq(Set.of("a")));
+            preferences.close();
+        }
+    }
+
+    @Test
+    public void buildSharedWithExternalChange() throws Exception {
+        Configuration fileSystemConfiguration = Configuration.unix().toBuilder().setWatchServiceConfiguration(WatchServiceConfiguration.polling(10, TimeUnit.MILLISECONDS)).build();
+        try (FileSystem fileSystem = Jimfs.newFileSystem(fileSystemConfiguration)) {
+            Path fileSystemPath = fileSystem.getPath("/a/b/test");
+            Preferences firstPreferences = new PreferencesBuilder().path(fileSystemPath).shared(true).propertiesExecutor(Runnable::run).buildPreferences();
+            Preferences secondPreferences = new PreferencesBuilder().path(fileSystemPath).shared(true).propertiesExecutor(Runnable::run).buildPreferences();
+            StringProperty aProperty = secondPreferences.getStringProperty("a", "default");
+            IntegerProperty bProperty = secondPreferences.getIntegerProperty("b", 0);
+            firstPreferences.setStringValue("a", "aValue");
+            firstPreferences.setStringValue("b", "42");
+            for (int i = 0; i < 500 && (!"aValue".equals(aProperty.getValue()) || bProperty.get() != 42); i++) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals("aValue", aProperty.getValue());
+            Assertions.assertEquals(42, bProperty.get());
+            firstPreferences.close();
+            secondPreferences.close();
+        }
+    }
+
+    @Test
+    public void buildSharedWithExternalChangeOfNode() throws Exception {
+        Configuration fileSystemConfiguration = Configuration.unix().toBuilder().setWatchServiceConfiguration(WatchServiceConfiguration.polling(10, TimeUnit.MILLISECONDS)).build();
+        try (FileSystem fileSystem = Jimfs.newFileSystem(fileSystemConfiguration)) {
+            Path fileSystemPath = fileSystem.getPath("/a/b/test");
+            Preferences firstPreferences = new PreferencesBuilder().path(fileSystemPath).shared(true).propertiesExecutor(Runnable::run).writeDelay(Duration.ofMillis(20)).buildPreferences();
+            Preferences secondPreferences = new PreferencesBuilder().path(fileSystemPath).shared(true).propertiesExecutor(Runnable::run).buildPreferences();
+            StringProperty rootProperty = secondPreferences.getStringProperty("a", "default");
+            StringProperty nodeProperty = secondPreferences.node("x").getStringProperty("a", "default");
+            firstPreferences.setStringValue("a", "rootValue");
+            firstPreferences.node("x").setStringValue("a", "nodeValue");
+            for (int i = 0; i < 500 && (!"rootValue".equals(rootProperty.getValue()) || !"nodeValue".equals(nodeProperty.getValue())); i++) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals("rootValue", rootProperty.getValue());
+            Assertions.assertEquals("nodeValue", nodeProperty.getValue());
+            firstPreferences.close();
+            secondPreferences.close();
+        }
+    }
+
+    @Test
+    public void buildWithStore() throws IOException {
+        for (PreferencesStore store : List.of(new XmlPreferencesStore(), new PropertiesPreferencesStore(), new BinaryPreferencesStore(), new AppendLogPreferencesStore())) {
+            try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+                Path fileSystemPath = fileSystem.getPath("a/b/test");
+                Preferences originalPreferences = new PreferencesBuilder().path(fileSystemPath).store(store).buildPreferences();
+                originalPreferences.setStringValue("a", "aValue");
+                originalPreferences.setStringValue("b", "b\u00e4\nValue");
+                originalPreferences.setStringValue("c", "cValue");
+                originalPreferences.setStringValue("c", null);
+                originalPreferences.node("x").setStringValue("a", "xValue");
+                Preferences reloadedPreferences = new PreferencesBuilder().path(fileSystemPath).store(store).buildPreferences();
+                Assertions.assertEquals(Map.of("a", "aValue", "b", "b\u00e4\nValue"), reloadedPreferences.toMap(), store.getClass().getSimpleName());
+                Assertions.assertEquals("xValue", reloadedPreferences.node("x").getStringValue("a").get(), store.getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Test
+    public void buildWithStoreMigratingXmlFile() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem()) {
+            Path fileSystemPath = fileSystem.getPath("a/b/test");
+            Preferences originalPreferences = new PreferencesBuilder().path(fileSystemPath).buildPreferences();
+            originalPreferences.setStringValue("a", "aValue");
+            Preferences migratedPreferences = new PreferencesBuilder().path(fileSystemPath).store(new BinaryPreferencesStore()).buildPreferences();
+            Assertions.assertEquals("aValue", migratedPreferences.getStringValue("a").get());
+            Assertions.assertEquals("aValue", new BinaryPreferencesStore().readValues(fileSystemPath, new PersistenceFileReader()).get("a"));
+        }
+    }
+
 }
@@ -1,12 +1,21 @@
 package de.perdian.commons.fx.preferences;
 
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.StringProperty;
 
 public class PreferencesTest {
@@ -14,7 +23,7 @@ public class PreferencesTest {
     @Test
     public void getStringProperty() {
         PreferencesListener preferencesListener = Mockito.mock(PreferencesListener.class);
-        Preferences preferences = new Preferences(new HashMap<>(Map.of("aKey", "aValue")));
+        Preferences preferences = new Preferences(new ConcurrentHashMap<>(Map.of("aKey", "aValue")));
         preferences.addPreferencesListener(preferencesListener);
         StringProperty aProperty = preferences.getStringProperty("aKey");
         Assertions.assertEquals("aValue", aProperty.getValue());
@@ -29,14 +38,14 @@ public class PreferencesTest {
 
     @Test
     public void getStringValue() {
-        Preferences preferences = new Preferences(new HashMap<>(Map.of("aKey", "aValue")));
+        Preferences preferences = new Preferences(new ConcurrentHashMap<>(Map.of("aKey", "aValue")));
         Assertions.assertEquals("aValue", preferences.getStringValue("aKey").get());
         Assertions.assertTrue(preferences.getStringValue("INVALID").isEmpty());
     }
 
     @Test
     public void setStringValue() {
-        Map<String, String> properties = new HashMap<>(Map.of("aKey", "aValue"));
+        ConcurrentMap<String, String> properties = new ConcurrentHashMap<>(Map.of("aKey", "aValue"));
         Preferences preferences = new Preferences(properties);
         Assertions.assertTrue(preferences.getStringValue("bKey").isEmpty());
         Assertions.assertTrue(preferences.setStringValue("bKey", "bValue"));
@@ -47,7 +56,7 @@ public class PreferencesTest {
     @Test
     public void setStringValueWithListener() {
         PreferencesListener preferencesListener = Mockito.mock(PreferencesListener.class);
-        Map<String, String> properties = new HashMap<>(Map.of("aKey", "aValue"));
+        ConcurrentMap<String, String> properties = new ConcurrentHashMap<>(Map.of("aKey", "aValue"));
         Preferences preferences = new Preferences(properties);
         preferences.addPreferencesListener(preferencesListener);
         Assertions.assertTrue(preferences.getStringValue("bKey").isEmpty());
@@ -61,7 +70,7 @@ public class PreferencesTest {
     @Test
     public void setStringValueWithListenerNotInvokedDueToSameValue() {
         PreferencesListener preferencesListener = Mockito.mock(PreferencesListener.class);
-        Map<String, String> properties = new HashMap<>(Map.of("aKey", "aValue"));
+        ConcurrentMap<String, String> properties = new ConcurrentHashMap<>(Map.of("aKey", "aValue"));
         Preferences preferences = new Preferences(properties);
         preferences.addPreferencesListener(preferencesListener);
         Assertions.assertFalse(preferences.setStringValue("aKey", "aValue"));
@@ -70,13 +79,165 @@ public class PreferencesTest {
 
     @Test
     public void toMap() {
-        Preferences preferences = new Preferences(new HashMap<>(Map.of("aKey", "aValue")));
+        Preferences preferences = new Preferences(new ConcurrentHashMap<>(Map.of("aKey", "aValue")));
         Map<String, String> map = preferences.toMap();
         Assertions.assertEquals("aValue", map.get("aKey"));
-        map.put("aKey", "newValue");
-        Assertions.assertEquals("aValue", preferences.getStringValue("aKey").get());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> map.put("aKey", "newValue"));
+        Assertions.assertSame(map, preferences.toMap());
         preferences.setStringValue("aKey", "fooValue");
-        Assertions.assertEquals("newValue", map.get("aKey"));
+        Assertions.assertEquals("aValue", map.get("aKey"));
+        Assertions.assertEquals("fooValue", preferences.toMap().get("aKey"));
+    }
+
+    @Test
+    public void setStringValueNull() {
+        ConcurrentMap<String, String> properties = new ConcurrentHashMap<>(Map.of("aKey", "aValue"));
+        Preferences preferences = new Preferences(properties);
+        Assertions.assertTrue(preferences.setStringValue("aKey", null));
+        Assertions.assertTrue(preferences.getStringValue("aKey").isEmpty());
+        Assertions.assertFalse(preferences.toMap().containsKey("aKey"));
+    }
+
+    @Test
+    public void setStringValueConcurrently() throws Exception {
+        Preferences preferences = new Preferences(new ConcurrentHashMap<>());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int threadIndex = 0; threadIndex < 4; threadIndex++) {
+            String key = "key" + threadIndex;
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (int valueIndex = 0; valueIndex < 1000; valueIndex++) {
+                    preferences.setStringValue(key, "value" + valueIndex);
+                    Assertions.assertEquals("value" + valueIndex, preferences.toMap().get(key));
+                }
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        for (int threadIndex = 0; threadIndex < 4; threadIndex++) {
+            Assertions.assertEquals("value999", preferences.getStringValue("key" + threadIndex).get());
+        }
+    }
+
+    @Test
+    public void setStringValueConcurrentlyWithProperty() throws Exception {
+        Preferences preferences = new Preferences(new ConcurrentHashMap<>());
+        StringProperty stringProperty = preferences.getStringProperty("key");
+        IntegerProperty integerProperty = preferences.getIntegerProperty("key", 0);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int threadIndex = 0; threadIndex < 4; threadIndex++) {
+            int threadOffset = threadIndex * 1000;
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (int valueIndex = 0; valueIndex < 1000; valueIndex++) {
+                    preferences.setStringValue("key", Integer.toString(threadOffset + valueIndex));
+                }
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        String finalValue = preferences.getStringValue("key").get();
+        Assertions.assertTrue(finalValue.endsWith("999"));
+        Assertions.assertEquals(finalValue, stringProperty.getValue());
+        Assertions.assertEquals(Integer.parseInt(finalValue), integerProperty.get());
+    }
+
+    @Test
+    public void setStringValueFromListenerWaitingForOtherThread() throws Exception {
+        Preferences preferences = new Preferences(new ConcurrentHashMap<>());
+        StringProperty aProperty = preferences.getStringProperty("a");
+        StringProperty bProperty = preferences.getStringProperty("b");
+        aProperty.addListener((o, oldValue, newValue) -> CompletableFuture.runAsync(() -> preferences.setStringValue("b", newValue)).orTimeout(10, TimeUnit.SECONDS).join());
+        preferences.setStringValue("a", "aValue");
+        Assertions.assertEquals("aValue", aProperty.getValue());
+        Assertions.assertEquals("aValue", bProperty.getValue());
+    }
+
+    @Test
+    public void setStringValueUpdatesPropertiesOnExecutor() {
+        List<Runnable> pendingUpdates = new ArrayList<>();
+        Preferences preferences = new Preferences(new ConcurrentHashMap<>());
+        preferences.setPropertiesExecutor(pendingUpdates::add);
+        StringProperty stringProperty = preferences.getStringProperty("key");
+        preferences.setStringValue("key", "a");
+        preferences.setStringValue("key", "b");
+        Assertions.assertNull(stringProperty.getValue());
+        pendingUpdates.forEach(Runnable::run);
+        Assertions.assertEquals("b", stringProperty.getValue());
+        Assertions.assertEquals("b", preferences.getStringValue("key").get());
+    }
+
+    @Test
+    public void getIntegerProperty() {
+        ConcurrentMap<String, String> properties = new ConcurrentHashMap<>(Map.of("aKey", "42", "bKey", "INVALID"));
+        Preferences preferences = new Preferences(properties);
+        IntegerProperty aProperty = preferences.getIntegerProperty("aKey", 0);
+        Assertions.assertSame(aProperty, preferences.getIntegerProperty("aKey", 0));
+        Assertions.assertEquals(42, aProperty.get());
+        Assertions.assertEquals(7, preferences.getIntegerProperty("bKey", 7).get());
+        Assertions.assertEquals(7, preferences.getIntegerProperty("cKey", 7).get());
+        Assertions.assertFalse(properties.containsKey("cKey"));
+        aProperty.set(43);
+        Assertions.assertEquals("43", properties.get("aKey"));
+        preferences.setStringValue("aKey", "44");
+        Assertions.assertEquals(44, aProperty.get());
+        preferences.setStringValue("aKey", null);
+        Assertions.assertEquals(0, aProperty.get());
+        Assertions.assertFalse(properties.containsKey("aKey"));
+    }
+
+    @Test
+    public void getTypedProperties() {
+        Preferences preferences = new Preferences(new ConcurrentHashMap<>(Map.of("long", "12345678901", "double", "1.5", "boolean", "true", "enum", "SECONDS", "date", "2020-01-31", "path", "/tmp/x")));
+        Assertions.assertEquals(12345678901L, preferences.getLongProperty("long", 0).get());
+        Assertions.assertEquals(1.5d, preferences.getDoubleProperty("double", 0).get());
+        Assertions.assertTrue(preferences.getBooleanProperty("boolean", false).get());
+        Assertions.assertEquals(TimeUnit.SECONDS, preferences.getEnumProperty("enum", TimeUnit.class, TimeUnit.DAYS).get());
+        Assertions.assertEquals(LocalDate.of(2020, 1, 31), preferences.getLocalDateProperty("date", null).get());
+        Assertions.assertEquals(Path.of("/tmp/x"), preferences.getPathProperty("path", null).get());
+        preferences.getLocalDateProperty("date", null).set(LocalDate.of(2021, 2, 1));
+        Assertions.assertEquals("2021-02-01", preferences.getStringValue("date").get());
+        Assertions.assertEquals("2021-02-01", preferences.getStringProperty("date").get());
+    }
+
+    @Test
+    public void getTypedPropertyWithOtherType() {
+        Preferences preferences = new Preferences(new ConcurrentHashMap<>());
+        preferences.getIntegerProperty("aKey", 0);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> preferences.getBooleanProperty("aKey", false));
+    }
+
+    @Test
+    public void getObjectPropertyWithOtherValueClass() {
+        Preferences preferences = new Preferences(new ConcurrentHashMap<>());
+        Assertions.assertSame(preferences.getEnumProperty("aKey", TimeUnit.class, TimeUnit.DAYS), preferences.getEnumProperty("aKey", TimeUnit.class, TimeUnit.DAYS));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> preferences.getEnumProperty("aKey", ChronoUnit.class, ChronoUnit.DAYS));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> preferences.getLocalDateProperty("aKey", null));
+    }
+
+    @Test
+    public void getTypedPropertyWithOtherDefaultValue() {
+        Preferences preferences = new Preferences(new ConcurrentHashMap<>());
+        preferences.getIntegerProperty("aKey", 0);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> preferences.getIntegerProperty("aKey", 1));
+        preferences.getEnumProperty("bKey", TimeUnit.class, TimeUnit.DAYS);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> preferences.getEnumProperty("bKey", TimeUnit.class, TimeUnit.HOURS));
+    }
+
+    @Test
+    public void node() {
+        Preferences preferences = new Preferences(new ConcurrentHashMap<>(Map.of("aKey", "aValue")));
+        Preferences node = preferences.node("table.columns");
+        Assertions.assertSame(node, preferences.node("table.columns"));
+        Assertions.assertTrue(node.getStringValue("aKey").isEmpty());
+        node.setStringValue("aKey", "nodeValue");
+        Assertions.assertEquals("aValue", preferences.getStringValue("aKey").get());
+        Assertions.assertEquals("nodeValue", node.getStringValue("aKey").get());
+        Assertions.assertNotSame(node.node("child"), preferences.node("child"));
+    }
+
+    @Test
+    public void nodeWithInvalidName() {
+        Preferences preferences = new Preferences(new ConcurrentHashMap<>());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> preferences.node(""));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> preferences.node("a/b"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> preferences.node(".."));
     }
 
 }
@@ -2,8 +2,11 @@ package de.perdian.commons.fx.preferences.persistence;
 
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.Locale;
+import java.util.Random;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -65,6 +68,48 @@ public class PersistenceHelperTest {
         Assertions.assertFalse(targetElement.hasAttribute("bar"));
     }
 
+    @Test
+    public void extractAttributeDoubleOrDefault() throws ParseException {
+        DecimalFormat germanFormat = new DecimalFormat("#,##0.00", new DecimalFormatSymbols(Locale.GERMANY));
+        Element element = this.createElement("foo");
+        element.setAttribute("plain", "-1,25");
+        element.setAttribute("grouped", "1.234,5");
+        Assertions.assertEquals(-1.25d, PersistenceHelper.extractAttributeDoubleOrDefault(element, "plain", germanFormat, 0d));
+        Assertions.assertEquals(1234.5d, PersistenceHelper.extractAttributeDoubleOrDefault(element, "grouped", germanFormat, 0d));
+        Assertions.assertEquals(42d, PersistenceHelper.extractAttributeDoubleOrDefault(element, "missing", germanFormat, 42d));
+        DecimalFormat usFormat = new DecimalFormat("0.########", new DecimalFormatSymbols(Locale.US));
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            String value = usFormat.format((random.nextDouble() - 0.5d) * Math.pow(10, random.nextInt(12)));
+            element.setAttribute("random", value);
+            Assertions.assertEquals(usFormat.parse(value).doubleValue(), PersistenceHelper.extractAttributeDoubleOrDefault(element, "random", usFormat, 0d), value);
+        }
+    }
+
+    @Test
+    public void extractAttributeIntOrDefault() {
+        Element element = this.createElement("foo");
+        element.setAttribute("bar", "-42");
+        Assertions.assertEquals(-42, PersistenceHelper.extractAttributeIntOrDefault(element, "bar", 0));
+        Assertions.assertEquals(7, PersistenceHelper.extractAttributeIntOrDefault(element, "missing", 7));
+        element.setAttribute("invalid", "4x");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PersistenceHelper.extractAttributeIntOrDefault(element, "invalid", 0));
+    }
+
+    @Test
+    public void extractAttributeEpochDayOrDefault() {
+        Element element = this.createElement("foo");
+        for (LocalDate date = LocalDate.of(1599, 12, 1); date.isBefore(LocalDate.of(2401, 3, 1)); date = date.plusDays(1)) {
+            element.setAttribute("bar", date.toString());
+            Assertions.assertEquals(date.toEpochDay(), PersistenceHelper.extractAttributeEpochDayOrDefault(element, "bar", 0));
+        }
+        element.setAttribute("bar", "+12345-01-01");
+        Assertions.assertEquals(LocalDate.of(12345, 1, 1).toEpochDay(), PersistenceHelper.extractAttributeEpochDayOrDefault(element, "bar", 0));
+        element.setAttribute("bar", "2019-02-29");
+        Assertions.assertThrows(DateTimeParseException.class, () -> PersistenceHelper.extractAttributeEpochDayOrDefault(element, "bar", 0));
+        Assertions.assertEquals(-1, PersistenceHelper.extractAttributeEpochDayOrDefault(element, "missing", -1));
+    }
+
     private Element createElement(String name) {
         try {
             return DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument().createElement(name);